@@ -0,0 +1,103 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for event dispatch, in events per second, with listener methods
+ * called either through reflection or through generated executors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class EventDispatchBenchmark {
+	@Param({"reflection", "generated"})
+	public String executorType;
+
+	@Param({"1", "8"})
+	public int listeners;
+
+	private final Object owner = new Object();
+	private EventManager eventManager;
+	private BenchmarkEvent event;
+
+	@Setup
+	public void setup() {
+		eventManager = new SimpleEventManager(executorType.equals("generated"));
+		for (int i = 0; i < listeners; i++) {
+			eventManager.registerEvents(new BenchmarkListener(), owner);
+		}
+		event = new BenchmarkEvent();
+	}
+
+	@TearDown
+	public void tearDown() {
+		HandlerList.unregisterAll(owner);
+	}
+
+	@Benchmark
+	public BenchmarkEvent callEvent() {
+		return eventManager.callEvent(event);
+	}
+
+	public static class BenchmarkEvent extends Event {
+		private static final HandlerList handlers = new HandlerList();
+		private int calls;
+
+		@Override
+		public HandlerList getHandlers() {
+			return handlers;
+		}
+
+		public static HandlerList getHandlerList() {
+			return handlers;
+		}
+	}
+
+	public static class BenchmarkListener implements Listener {
+		@EventHandler
+		public void onEvent(BenchmarkEvent event) {
+			event.calls++;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spout.api.basic.blocks.BlockFullState;
+
+/**
+ * Benchmarks for single block reads and writes, bulk copies and snapshots of
+ * an AtomicBlockStore.<br>
+ * <br>
+ * The auxFraction parameter is the fraction of blocks which have data and
+ * auxiliary data, and so use a record in the auxiliary store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class AtomicBlockStoreBenchmark {
+	private static final int SIDE = 16;
+	private static final int MASK = 1023;
+
+	@Param({"ARRAY", "PALETTE", "OFF_HEAP"})
+	public BlockStorageMode mode;
+
+	@Param({"0.0", "0.5"})
+	public double auxFraction;
+
+	@Param({"1234"})
+	public long seed;
+
+	private AtomicBlockStore<Integer> store;
+	private int[] xs;
+	private int[] ys;
+	private int[] zs;
+	private short[] ids;
+	private short[] data;
+	private Integer[] auxData;
+	private short[] copyIds;
+	private short[] copyData;
+	private Integer[] copyAuxData;
+
+	@State(Scope.Thread)
+	public static class Position {
+		int next = 0;
+		BlockFullState<Integer> fullData = new BlockFullState<Integer>();
+	}
+
+	@Setup
+	public void setUp() {
+		store = new AtomicBlockStore<Integer>(4, 10, mode);
+		Random rand = new Random(seed);
+		for (int x = 0; x < SIDE; x++) {
+			for (int z = 0; z < SIDE; z++) {
+				for (int y = 0; y < SIDE; y++) {
+					boolean aux = rand.nextDouble() < auxFraction;
+					store.setBlock(x, y, z, (short) rand.nextInt(64), aux ? (short) rand.nextInt(16) : 0, aux ? Integer.valueOf(rand.nextInt()) : null);
+				}
+			}
+		}
+		xs = new int[MASK + 1];
+		ys = new int[MASK + 1];
+		zs = new int[MASK + 1];
+		ids = new short[MASK + 1];
+		data = new short[MASK + 1];
+		auxData = new Integer[MASK + 1];
+		for (int i = 0; i <= MASK; i++) {
+			xs[i] = rand.nextInt(SIDE);
+			ys[i] = rand.nextInt(SIDE);
+			zs[i] = rand.nextInt(SIDE);
+			ids[i] = (short) rand.nextInt(64);
+			boolean aux = rand.nextDouble() < auxFraction;
+			data[i] = aux ? (short) rand.nextInt(16) : 0;
+			auxData[i] = aux ? Integer.valueOf(rand.nextInt()) : null;
+		}
+		copyIds = new short[SIDE * SIDE * SIDE];
+		copyData = new short[SIDE * SIDE * SIDE];
+		copyAuxData = new Integer[SIDE * SIDE * SIDE];
+	}
+
+	@TearDown
+	public void tearDown() {
+		store.release();
+	}
+
+	@Benchmark
+	public int getBlockId(Position position) {
+		int i = position.next++ & MASK;
+		return store.getBlockId(xs[i], ys[i], zs[i]);
+	}
+
+	@Benchmark
+	public BlockFullState<Integer> getFullData(Position position) {
+		int i = position.next++ & MASK;
+		return store.getFullData(xs[i], ys[i], zs[i], position.fullData);
+	}
+
+	@Benchmark
+	public void setBlock(Position position) {
+		int i = position.next++ & MASK;
+		store.setBlock(xs[i], ys[i], zs[i], ids[i], data[i], auxData[i]);
+	}
+
+	@Benchmark
+	public boolean compareAndSetBlock(Position position) {
+		int i = position.next++ & MASK;
+		BlockFullState<Integer> old = store.getFullData(xs[i], ys[i], zs[i], position.fullData);
+		return store.compareAndSetBlock(xs[i], ys[i], zs[i], old.getId(), old.getData(), old.getAuxData(), ids[i], data[i], auxData[i]);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public BlockFullState<Integer> readWriteGet(Position position) {
+		int i = position.next++ & MASK;
+		return store.getFullData(xs[i], ys[i], zs[i], position.fullData);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public void readWriteSet(Position position) {
+		int i = position.next++ & MASK;
+		store.setBlock(xs[i], ys[i], zs[i], ids[i], data[i], auxData[i]);
+	}
+
+	@Benchmark
+	@Group("contendedCas")
+	@GroupThreads(4)
+	public boolean contendedCas(Position position) {
+		// All threads update the same few blocks
+		int i = position.next++ & 7;
+		BlockFullState<Integer> old = store.getFullData(xs[i], ys[i], zs[i], position.fullData);
+		return store.compareAndSetBlock(xs[i], ys[i], zs[i], old.getId(), old.getData(), old.getAuxData(), ids[i], data[i], auxData[i]);
+	}
+
+	@Benchmark
+	public Integer[] getBlocks() {
+		store.getBlocks(copyIds, copyData, copyAuxData);
+		return copyAuxData;
+	}
+
+	@Benchmark
+	public BlockStoreSnapshot<Integer> getSnapshotUnchanged() {
+		return store.getSnapshot();
+	}
+
+	@Benchmark
+	public BlockStoreSnapshot<Integer> getSnapshotAfterWrite(Position position) {
+		int i = position.next++ & MASK;
+		store.setBlock(xs[i], ys[i], zs[i], ids[i], data[i], auxData[i]);
+		return store.getSnapshot();
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for compressing the auxiliary store of an AtomicBlockStore.<br>
+ * <br>
+ * Before each compression the store is filled with records, and then all but
+ * keptFraction of them are removed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class AtomicBlockStoreCompressionBenchmark {
+	private static final int SIDE = 16;
+
+	@Param({"0.05", "0.25"})
+	public double keptFraction;
+
+	@Param({"1234"})
+	public long seed;
+
+	private AtomicBlockStore<Integer> store;
+	private Random rand;
+
+	@Setup(Level.Trial)
+	public void setUpTrial() {
+		rand = new Random(seed);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		store = new AtomicBlockStore<Integer>(4);
+		for (int x = 0; x < SIDE; x++) {
+			for (int z = 0; z < SIDE; z++) {
+				for (int y = 0; y < SIDE; y++) {
+					store.setBlock(x, y, z, (short) 1, (short) 1, Integer.valueOf(y));
+				}
+			}
+		}
+		for (int x = 0; x < SIDE; x++) {
+			for (int z = 0; z < SIDE; z++) {
+				for (int y = 0; y < SIDE; y++) {
+					if (rand.nextDouble() >= keptFraction) {
+						store.setBlock(x, y, z, (short) 1, (short) 0, null);
+					}
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public CompressionResult compress() {
+		return store.compress();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for adding, removing and reading records in an
+ * AtomicIntReferenceArrayStore
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class AtomicIntReferenceArrayStoreBenchmark {
+	private static final int MAX_ENTRIES = 4096;
+	private static final int MASK = 1023;
+
+	@Param({"256", "2048"})
+	public int entries;
+
+	@Param({"1234"})
+	public long seed;
+
+	private AtomicIntReferenceArrayStore<Integer> store;
+	private int[] indexes;
+
+	@State(Scope.Thread)
+	public static class Position {
+		int next = 0;
+	}
+
+	@Setup
+	public void setUp() {
+		store = new AtomicIntReferenceArrayStore<Integer>(MAX_ENTRIES);
+		int[] added = new int[entries];
+		for (int i = 0; i < entries; i++) {
+			added[i] = store.add((short) i, (short) 1, Integer.valueOf(i));
+		}
+		Random rand = new Random(seed);
+		indexes = new int[MASK + 1];
+		for (int i = 0; i <= MASK; i++) {
+			indexes[i] = added[rand.nextInt(entries)];
+		}
+	}
+
+	@Benchmark
+	public int getInt(Position position) {
+		return store.getInt(indexes[position.next++ & MASK]);
+	}
+
+	@Benchmark
+	public Integer getAuxData(Position position) {
+		return store.getAuxData(indexes[position.next++ & MASK]);
+	}
+
+	@Benchmark
+	public boolean addAndRemove() {
+		return store.remove(store.add((short) 1, (short) 2, null));
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean addAndRemoveContended() {
+		return store.remove(store.add((short) 1, (short) 2, null));
+	}
+}
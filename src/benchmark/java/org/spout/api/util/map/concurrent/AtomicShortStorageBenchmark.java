@@ -0,0 +1,151 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the AtomicShortStorage implementations, reading and writing
+ * random elements of a chunk sized array
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class AtomicShortStorageBenchmark {
+	private static final int LENGTH = 4096;
+	private static final int MASK = 1023;
+
+	/**
+	 * ARRAY is an AtomicShortArray, PALETTE is an AtomicPaletteShortArray
+	 * with the given number of distinct values and DIRECT is an
+	 * AtomicDirectShortArray
+	 */
+	@Param({"ARRAY", "PALETTE", "DIRECT"})
+	public String type;
+
+	@Param({"16"})
+	public int distinctValues;
+
+	@Param({"1234"})
+	public long seed;
+
+	private AtomicShortStorage storage;
+	private int[] indexes;
+	private short[] values;
+	private short[] copy;
+
+	@State(Scope.Thread)
+	public static class Position {
+		int next = 0;
+	}
+
+	@Setup
+	public void setUp() {
+		if (type.equals("ARRAY")) {
+			storage = new AtomicShortArray(LENGTH);
+		} else if (type.equals("PALETTE")) {
+			storage = new AtomicPaletteShortArray(LENGTH);
+		} else if (type.equals("DIRECT")) {
+			storage = new AtomicDirectShortArray(LENGTH);
+		} else {
+			throw new IllegalArgumentException("Unknown storage type " + type);
+		}
+		Random rand = new Random(seed);
+		indexes = new int[MASK + 1];
+		values = new short[MASK + 1];
+		for (int i = 0; i <= MASK; i++) {
+			indexes[i] = rand.nextInt(LENGTH);
+			values[i] = (short) rand.nextInt(distinctValues);
+		}
+		for (int i = 0; i < LENGTH; i++) {
+			storage.set(i, (short) rand.nextInt(distinctValues));
+		}
+		copy = new short[LENGTH];
+	}
+
+	@TearDown
+	public void tearDown() {
+		storage.release();
+	}
+
+	@Benchmark
+	public short get(Position position) {
+		return storage.get(indexes[position.next++ & MASK]);
+	}
+
+	@Benchmark
+	public void set(Position position) {
+		int i = position.next++ & MASK;
+		storage.set(indexes[i], values[i]);
+	}
+
+	@Benchmark
+	public boolean compareAndSet(Position position) {
+		int i = position.next++ & MASK;
+		int index = indexes[i];
+		return storage.compareAndSet(index, storage.get(index), values[i]);
+	}
+
+	@Benchmark
+	public short[] getArray() {
+		return storage.getArray(copy);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public short mixedGet(Position position) {
+		return storage.get(indexes[position.next++ & MASK]);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public void mixedSet(Position position, Blackhole blackhole) {
+		int i = position.next++ & MASK;
+		blackhole.consume(storage.getAndSet(indexes[i], values[i]));
+	}
+}
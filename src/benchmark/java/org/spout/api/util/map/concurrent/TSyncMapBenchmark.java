@@ -0,0 +1,152 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the synchronised chunk and region maps, using keys from a
+ * square of chunk columns around the origin. The long map is either the read
+ * write locked map or the optimistic read map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TSyncMapBenchmark {
+	private static final int MASK = 1023;
+
+	@Param({"rwlock", "optimistic"})
+	public String lockType;
+
+	@Param({"32"})
+	public int radius;
+
+	@Param({"1234"})
+	public long seed;
+
+	private TSyncLongObjectMap<Integer> longMap;
+	private TSyncInt21TripleObjectHashMap<Integer> tripleMap;
+	private int[] xs;
+	private int[] ys;
+	private int[] zs;
+	private long[] keys;
+
+	@State(Scope.Thread)
+	public static class Position {
+		int next = 0;
+	}
+
+	@Setup
+	public void setUp() {
+		if (lockType.equals("optimistic")) {
+			longMap = new TOptimisticLongObjectHashMap<Integer>();
+			tripleMap = new TSyncInt21TripleObjectHashMap<Integer>(new TOptimisticLongObjectHashMap<Integer>());
+		} else {
+			longMap = new TSyncLongObjectHashMap<Integer>();
+			tripleMap = new TSyncInt21TripleObjectHashMap<Integer>();
+		}
+		for (int x = -radius; x < radius; x++) {
+			for (int z = -radius; z < radius; z++) {
+				for (int y = 0; y < 8; y++) {
+					longMap.put(key(x, y, z), Integer.valueOf(y));
+					tripleMap.put(x, y, z, Integer.valueOf(y));
+				}
+			}
+		}
+		Random rand = new Random(seed);
+		xs = new int[MASK + 1];
+		ys = new int[MASK + 1];
+		zs = new int[MASK + 1];
+		keys = new long[MASK + 1];
+		for (int i = 0; i <= MASK; i++) {
+			// A quarter of the lookups miss
+			xs[i] = rand.nextInt(radius * 5 / 2) - radius;
+			ys[i] = rand.nextInt(8);
+			zs[i] = rand.nextInt(radius * 2) - radius;
+			keys[i] = key(xs[i], ys[i], zs[i]);
+		}
+	}
+
+	private static long key(int x, int y, int z) {
+		return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+	}
+
+	@Benchmark
+	public Integer longMapGet(Position position) {
+		return longMap.get(keys[position.next++ & MASK]);
+	}
+
+	@Benchmark
+	public Integer longMapPut(Position position) {
+		int i = position.next++ & MASK;
+		return longMap.put(keys[i], Integer.valueOf(ys[i]));
+	}
+
+	@Benchmark
+	public Integer tripleMapGet(Position position) {
+		int i = position.next++ & MASK;
+		return tripleMap.get(xs[i], ys[i], zs[i]);
+	}
+
+	@Benchmark
+	public Integer tripleMapPut(Position position) {
+		int i = position.next++ & MASK;
+		return tripleMap.put(xs[i], ys[i], zs[i], Integer.valueOf(ys[i]));
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public Integer readWriteGet(Position position) {
+		return longMap.get(keys[position.next++ & MASK]);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public Integer readWritePut(Position position) {
+		int i = position.next++ & MASK;
+		return longMap.put(keys[i], Integer.valueOf(ys[i]));
+	}
+}
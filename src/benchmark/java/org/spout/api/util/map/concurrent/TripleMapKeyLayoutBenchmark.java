@@ -0,0 +1,147 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import gnu.trove.procedure.TObjectProcedure;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spout.api.util.map.TInt21TripleObjectHashMap;
+
+/**
+ * Compares the concatenated key layout of the synchronised triple int map
+ * with the Morton key layout, for single lookups, neighbour lookups and box
+ * iteration
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TripleMapKeyLayoutBenchmark {
+	private static final int MASK = 1023;
+
+	@Param({"concat", "morton"})
+	public String layout;
+
+	@Param({"32"})
+	public int radius;
+
+	@Param({"4"})
+	public int boxRadius;
+
+	@Param({"1234"})
+	public long seed;
+
+	private TInt21TripleObjectHashMap<Integer> map;
+	private int[] xs;
+	private int[] ys;
+	private int[] zs;
+
+	@State(Scope.Thread)
+	public static class Position {
+		int next = 0;
+		int sum = 0;
+		final TObjectProcedure<Integer> sumProcedure = new TObjectProcedure<Integer>() {
+			@Override
+			public boolean execute(Integer value) {
+				sum += value.intValue();
+				return true;
+			}
+		};
+	}
+
+	@Setup
+	public void setUp() {
+		if (layout.equals("morton")) {
+			map = new TSyncMortonInt21TripleObjectHashMap<Integer>();
+		} else {
+			map = new TSyncInt21TripleObjectHashMap<Integer>();
+		}
+		for (int x = -radius; x < radius; x++) {
+			for (int z = -radius; z < radius; z++) {
+				for (int y = 0; y < 8; y++) {
+					map.put(x, y, z, Integer.valueOf(y));
+				}
+			}
+		}
+		Random rand = new Random(seed);
+		xs = new int[MASK + 1];
+		ys = new int[MASK + 1];
+		zs = new int[MASK + 1];
+		for (int i = 0; i <= MASK; i++) {
+			xs[i] = rand.nextInt(radius * 2) - radius;
+			ys[i] = rand.nextInt(8);
+			zs[i] = rand.nextInt(radius * 2) - radius;
+		}
+	}
+
+	@Benchmark
+	public Integer get(Position position) {
+		int i = position.next++ & MASK;
+		return map.get(xs[i], ys[i], zs[i]);
+	}
+
+	@Benchmark
+	public int getNeighbours(Position position) {
+		int i = position.next++ & MASK;
+		int x = xs[i];
+		int y = ys[i];
+		int z = zs[i];
+		int found = 0;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dz = -1; dz <= 1; dz++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if (map.get(x + dx, y + dy, z + dz) != null) {
+						found++;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int forEachInBox(Position position) {
+		int i = position.next++ & MASK;
+		position.sum = 0;
+		map.forEachInBox(xs[i] - boxRadius, 0, zs[i] - boxRadius, xs[i] + boxRadius, 7, zs[i] + boxRadius, position.sumProcedure);
+		return position.sum;
+	}
+}
@@ -25,10 +25,13 @@
  */
 package org.spout.api.basic.blocks;
 
+import java.util.Arrays;
+
 public class BlockFullState<T> implements Cloneable {
 	private short id;
 	private short data;
 	private T auxData;
+	private int[] channels;
 
 	public BlockFullState() {
 	}
@@ -63,6 +66,91 @@ public class BlockFullState<T> implements Cloneable {
 		this.auxData = auxData;
 	}
 
+	/**
+	 * Gets the value of an int channel. Channels which have not been set are
+	 * 0.
+	 *
+	 * @param channel the channel
+	 * @return the channel value
+	 */
+	public final int getIntChannel(int channel) {
+		if (channels == null || channel >= channels.length) {
+			return 0;
+		}
+		return channels[channel];
+	}
+
+	/**
+	 * Sets the value of an int channel
+	 *
+	 * @param channel the channel
+	 * @param value the new value
+	 */
+	public final void setIntChannel(int channel, int value) {
+		if (channels == null) {
+			channels = new int[channel + 1];
+		} else if (channel >= channels.length) {
+			channels = Arrays.copyOf(channels, channel + 1);
+		}
+		channels[channel] = value;
+	}
+
+	/**
+	 * Gets the value of a float channel. Channels which have not been set are
+	 * 0.
+	 *
+	 * @param channel the channel
+	 * @return the channel value
+	 */
+	public final float getFloatChannel(int channel) {
+		return Float.intBitsToFloat(getIntChannel(channel));
+	}
+
+	/**
+	 * Sets the value of a float channel
+	 *
+	 * @param channel the channel
+	 * @param value the new value
+	 */
+	public final void setFloatChannel(int channel, float value) {
+		setIntChannel(channel, Float.floatToRawIntBits(value));
+	}
+
+	/**
+	 * Gets the channel values as an array, which may be shorter than the
+	 * number of channels in a store
+	 *
+	 * @return the channel values, or null if no channel has been set
+	 */
+	public final int[] getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Sets every channel to 0
+	 */
+	public final void clearChannels() {
+		if (channels != null) {
+			Arrays.fill(channels, 0);
+		}
+	}
+
+	/**
+	 * Sets every channel to 0 and resizes the channel array to a given number
+	 * of channels, so that no value is left from a store with more channels
+	 *
+	 * @param count the number of channels
+	 */
+	public final void resetChannels(int count) {
+		if (count == 0) {
+			channels = null;
+		} else if (channels == null || channels.length != count) {
+			channels = new int[count];
+		} else {
+			Arrays.fill(channels, 0);
+		}
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName() + "{" + id + ", " + data + ", " + auxData + "}";
@@ -78,10 +166,20 @@ public class BlockFullState<T> implements Cloneable {
 			@SuppressWarnings("unchecked")
 			BlockFullState<T> fullState = (BlockFullState<T>) o;
 
-			return fullState.id == id && fullState.data == data && fullState.auxData.equals(auxData);
+			return fullState.id == id && fullState.data == data && fullState.auxData.equals(auxData) && channelsEqual(fullState);
 		}
 	}
 
+	private boolean channelsEqual(BlockFullState<T> other) {
+		int length = Math.max(channels == null ? 0 : channels.length, other.channels == null ? 0 : other.channels.length);
+		for (int i = 0; i < length; i++) {
+			if (getIntChannel(i) != other.getIntChannel(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Gets a shallow copy of the BlockFullState, the auxiliary data is not
 	 * cloned.
@@ -89,6 +187,10 @@ public class BlockFullState<T> implements Cloneable {
 	 * @return the shallow clone
 	 */
 	public BlockFullState<T> shallowClone() {
-		return new BlockFullState<T>(id, data, auxData);
+		BlockFullState<T> clone = new BlockFullState<T>(id, data, auxData);
+		if (channels != null) {
+			clone.channels = channels.clone();
+		}
+		return clone;
 	}
 }
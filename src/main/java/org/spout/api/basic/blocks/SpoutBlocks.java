@@ -25,10 +25,11 @@
  */
 package org.spout.api.basic.blocks;
 
+import org.spout.api.collision.model.CollisionStrategy;
 import org.spout.api.material.BlockMaterial;
 
 public final class SpoutBlocks {
-	public static final BlockMaterial air = new SpoutBlock("air", 0).setOpaque(false);
+	public static final BlockMaterial air = new SpoutBlock("air", 0).setOpaque(false).setCollisionStrategy(CollisionStrategy.NOCOLLIDE);
 	public static final BlockMaterial solid = new SpoutBlock("solid", 1).setHardness(1.f);
 	public static final BlockMaterial unbreakable = new SpoutBlock("Unbreakable", 2).setHardness(100.f);
 	public static final BlockMaterial skybox = new SpoutBlock("Skybox", 3);
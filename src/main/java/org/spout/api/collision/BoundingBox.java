@@ -45,6 +45,24 @@ public class BoundingBox implements CollisionVolume {
 		this(Vector3.ZERO, Vector3.ONE);
 	}
 
+	/**
+	 * Gets the corner of the box with the smallest coordinates
+	 *
+	 * @return the minimum corner
+	 */
+	public Vector3 getMin() {
+		return min;
+	}
+
+	/**
+	 * Gets the corner of the box with the largest coordinates
+	 *
+	 * @return the maximum corner
+	 */
+	public Vector3 getMax() {
+		return max;
+	}
+
 	public boolean intersects(BoundingBox b) {
 		return CollisionHelper.checkCollision(this, b);
 	}
@@ -0,0 +1,314 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.entity;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An index from controller types to the entities which have a controller of
+ * that type.<br>
+ * <br>
+ * An entity is indexed under the class of its controller and every
+ * superclass and interface of that class, so getAll(type) returns the
+ * entities for which entity.is(type) would be true, without scanning every
+ * entity.<br>
+ * <br>
+ * Worlds and regions keep one index each. Controller changes take effect
+ * when the snapshot is copied, so that is when setController(...) must be
+ * called, at the same time as the EntityControllerChangeEvent is fired.
+ * Reads during the tick stages see the index as of the last snapshot.<br>
+ * <br>
+ * Controller classes are held weakly, so the index does not keep a plugin's
+ * classes loaded after it is unloaded, and a type is dropped from the index
+ * once it has no entities.
+ */
+public class ControllerTypeIndex {
+	private final ConcurrentMap<TypeKey, TypeKey[]> hierarchies = new ConcurrentHashMap<TypeKey, TypeKey[]>();
+	private final ConcurrentMap<TypeKey, TypeSet> types = new ConcurrentHashMap<TypeKey, TypeSet>();
+	private final ReferenceQueue<Class<?>> collectedTypes = new ReferenceQueue<Class<?>>();
+
+	/**
+	 * Adds an entity to the index
+	 *
+	 * @param entity the entity
+	 * @param controller the controller of the entity
+	 */
+	public void add(Entity entity, Controller controller) {
+		if (controller == null) {
+			return;
+		}
+		for (TypeKey type : getHierarchyKeys(controller.getClass())) {
+			addToType(type, entity);
+		}
+	}
+
+	/**
+	 * Removes an entity from the index
+	 *
+	 * @param entity the entity
+	 * @param controller the controller the entity was added with
+	 */
+	public void remove(Entity entity, Controller controller) {
+		if (controller == null) {
+			return;
+		}
+		for (TypeKey type : getHierarchyKeys(controller.getClass())) {
+			removeFromType(type, entity);
+		}
+	}
+
+	/**
+	 * Moves an entity from the types of its old controller to the types of its
+	 * new controller. Types which both controllers share are not changed.
+	 *
+	 * @param entity the entity
+	 * @param oldController the previous controller, or null if the entity was
+	 *            not indexed
+	 * @param newController the new controller, or null to remove the entity
+	 */
+	public void setController(Entity entity, Controller oldController, Controller newController) {
+		Class<?> oldClass = oldController == null ? null : oldController.getClass();
+		Class<?> newClass = newController == null ? null : newController.getClass();
+		if (oldClass == newClass) {
+			return;
+		}
+		if (oldClass == null) {
+			add(entity, newController);
+			return;
+		}
+		if (newClass == null) {
+			remove(entity, oldController);
+			return;
+		}
+		TypeKey[] oldHierarchy = getHierarchyKeys(oldClass);
+		TypeKey[] newHierarchy = getHierarchyKeys(newClass);
+		for (TypeKey type : oldHierarchy) {
+			if (!contains(newHierarchy, type)) {
+				removeFromType(type, entity);
+			}
+		}
+		for (TypeKey type : newHierarchy) {
+			if (!contains(oldHierarchy, type)) {
+				addToType(type, entity);
+			}
+		}
+	}
+
+	/**
+	 * Gets all entities with a controller of the given type. The returned set
+	 * is an unmodifiable view of the index and is not copied. It stops being
+	 * updated once the type has no entities, so it should not be kept.
+	 *
+	 * @param type the controller class, superclass or interface
+	 * @return the entities
+	 */
+	public Set<Entity> getAll(Class<?> type) {
+		TypeSet set = types.get(new TypeKey(type, null));
+		if (set == null) {
+			return Collections.emptySet();
+		}
+		return set.view;
+	}
+
+	/**
+	 * Gets the number of entities with a controller of the given type
+	 *
+	 * @param type the controller class, superclass or interface
+	 * @return the number of entities
+	 */
+	public int count(Class<?> type) {
+		TypeSet set = types.get(new TypeKey(type, null));
+		return set == null ? 0 : set.entities.size();
+	}
+
+	/**
+	 * Removes every entity from the index
+	 */
+	public void clear() {
+		for (TypeSet set : types.values()) {
+			synchronized (set) {
+				set.removed = true;
+			}
+		}
+		types.clear();
+	}
+
+	/**
+	 * Gets the number of types which have entities in the index
+	 *
+	 * @return the number of types
+	 */
+	int getTypeCount() {
+		return types.size();
+	}
+
+	private void addToType(TypeKey type, Entity entity) {
+		while (true) {
+			TypeSet set = types.get(type);
+			if (set == null) {
+				TypeSet newSet = new TypeSet();
+				set = types.putIfAbsent(new TypeKey(type.get(), collectedTypes), newSet);
+				if (set == null) {
+					set = newSet;
+				}
+			}
+			// A set which has been dropped from the map must not be added to
+			synchronized (set) {
+				if (!set.removed) {
+					set.entities.add(entity);
+					return;
+				}
+			}
+		}
+	}
+
+	private void removeFromType(TypeKey type, Entity entity) {
+		TypeSet set = types.get(type);
+		if (set == null) {
+			return;
+		}
+		synchronized (set) {
+			if (set.entities.remove(entity) && set.entities.isEmpty()) {
+				set.removed = true;
+				types.remove(type, set);
+			}
+		}
+	}
+
+	private static boolean contains(TypeKey[] hierarchy, TypeKey type) {
+		Class<?> clazz = type.get();
+		for (TypeKey c : hierarchy) {
+			if (c.get() == clazz) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets a class and all of its superclasses and interfaces, excluding
+	 * Object.
+	 *
+	 * @param clazz the class
+	 * @return the hierarchy
+	 */
+	Class<?>[] getHierarchy(Class<?> clazz) {
+		TypeKey[] keys = getHierarchyKeys(clazz);
+		Class<?>[] hierarchy = new Class<?>[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			hierarchy[i] = keys[i].get();
+		}
+		return hierarchy;
+	}
+
+	/**
+	 * Gets the keys for a class and all of its superclasses and interfaces,
+	 * excluding Object. The hierarchy of each class is only worked out once
+	 * per index, while the class is loaded.
+	 *
+	 * @param clazz the class
+	 * @return the hierarchy
+	 */
+	private TypeKey[] getHierarchyKeys(Class<?> clazz) {
+		TypeKey[] hierarchy = hierarchies.get(new TypeKey(clazz, null));
+		if (hierarchy == null) {
+			Reference<?> collected;
+			while ((collected = collectedTypes.poll()) != null) {
+				hierarchies.remove(collected);
+				types.remove(collected);
+			}
+			Set<Class<?>> found = new LinkedHashSet<Class<?>>();
+			List<Class<?>> pending = new ArrayList<Class<?>>();
+			pending.add(clazz);
+			while (!pending.isEmpty()) {
+				Class<?> c = pending.remove(pending.size() - 1);
+				if (c == null || c == Object.class || !found.add(c)) {
+					continue;
+				}
+				pending.add(c.getSuperclass());
+				Collections.addAll(pending, c.getInterfaces());
+			}
+			hierarchy = new TypeKey[found.size()];
+			int i = 0;
+			for (Class<?> c : found) {
+				hierarchy[i++] = new TypeKey(c, null);
+			}
+			TypeKey[] previous = hierarchies.putIfAbsent(new TypeKey(clazz, collectedTypes), hierarchy);
+			if (previous != null) {
+				hierarchy = previous;
+			}
+		}
+		return hierarchy;
+	}
+
+	/**
+	 * A weak key for a controller type, which compares classes by identity. A
+	 * key whose class has been collected is only equal to itself.
+	 */
+	private static class TypeKey extends WeakReference<Class<?>> {
+		private final int hash;
+
+		public TypeKey(Class<?> clazz, ReferenceQueue<Class<?>> queue) {
+			super(clazz, queue);
+			this.hash = System.identityHashCode(clazz);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof TypeKey)) {
+				return false;
+			}
+			Class<?> clazz = get();
+			return clazz != null && clazz == ((TypeKey) obj).get();
+		}
+	}
+
+	private static class TypeSet {
+		private final Set<Entity> entities = Collections.newSetFromMap(new ConcurrentHashMap<Entity, Boolean>());
+		private final Set<Entity> view = Collections.unmodifiableSet(entities);
+		/**
+		 * Set, while synchronized on the set, when the set is dropped from the index
+		 */
+		private boolean removed = false;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import java.util.BitSet;
+
+/**
+ * An event which holds many occurrences of another event type, so that they
+ * can be passed to listeners together.<br>
+ * <br>
+ * Batches are called with EventManager.callBatchEvent(batch). Listeners of
+ * the single event type are called first, once for each entry, with events
+ * created by createEvent(index). Afterwards, listeners of the batch type are
+ * called once with the whole batch. Entries cancelled by single event
+ * listeners are marked as cancelled in the batch.
+ *
+ * @param <E> the type of the single events
+ */
+public abstract class BatchEvent<E extends Event> extends Event {
+	private final BitSet cancelledEntries = new BitSet();
+
+	/**
+	 * Gets the number of entries in the batch
+	 *
+	 * @return the number of entries
+	 */
+	public abstract int size();
+
+	/**
+	 * Gets the type of the single events in the batch
+	 *
+	 * @return the event type
+	 */
+	public abstract Class<E> getEventType();
+
+	/**
+	 * Creates the single event for an entry, for listeners which do not handle
+	 * batches
+	 *
+	 * @param index the index of the entry
+	 * @return the event
+	 */
+	protected abstract E createEvent(int index);
+
+	/**
+	 * Called after the single event for an entry has been passed to its
+	 * listeners. Subclasses can override this to copy changes made by the
+	 * listeners back into the batch.
+	 *
+	 * @param index the index of the entry
+	 * @param event the event
+	 */
+	protected void eventCalled(int index, E event) {
+		if (event.isCancelled()) {
+			setCancelled(index, true);
+		}
+	}
+
+	/**
+	 * Gets if an entry has been cancelled
+	 *
+	 * @param index the index of the entry
+	 * @return true if the entry is cancelled
+	 */
+	public boolean isCancelled(int index) {
+		return cancelledEntries.get(index);
+	}
+
+	/**
+	 * Sets if an entry is cancelled
+	 *
+	 * @param index the index of the entry
+	 * @param cancelled true to cancel the entry
+	 */
+	public void setCancelled(int index, boolean cancelled) {
+		cancelledEntries.set(index, cancelled);
+	}
+}
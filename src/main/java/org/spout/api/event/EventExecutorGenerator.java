@@ -0,0 +1,193 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.spout.api.exception.EventException;
+
+/**
+ * Generates an EventExecutor class for each listener method, which calls the
+ * method directly instead of through Method.invoke.<br>
+ * <br>
+ * The generated class is defined in the class loader and package of the
+ * listener, so package-private listeners and methods can be called. It is
+ * created once per listener method and shared by every instance of the
+ * listener class. Methods which cannot be called from generated code, such as
+ * private methods, are remembered and create(...) returns null for them, so
+ * the caller can fall back to reflection.<br>
+ * <br>
+ * The cache holds listener classes as weak keys and generated classes as weak
+ * values, and each class is generated with a class pool which is discarded
+ * afterwards, so nothing here keeps a plugin class loader reachable.
+ */
+final class EventExecutorGenerator {
+	private static final String EVENT = Event.class.getName();
+	private static final String EVENT_EXCEPTION = EventException.class.getName();
+	/**
+	 * The pool for the API classes, which is the parent of the pool for each
+	 * generated class
+	 */
+	private static final ClassPool basePool = new ClassPool(true);
+	/**
+	 * The generated classes, by listener class and method signature. A
+	 * generated class is only weakly referenced, but it stays reachable from
+	 * its class loader as long as the listener class does.
+	 */
+	private static final Map<Class<?>, Map<String, Reference<Class<? extends EventExecutor>>>> executors = new WeakHashMap<Class<?>, Map<String, Reference<Class<? extends EventExecutor>>>>();
+	/**
+	 * The cache entry for methods which cannot be called by a generated class
+	 */
+	private static final Reference<Class<? extends EventExecutor>> FAILED = new WeakReference<Class<? extends EventExecutor>>(null);
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	static {
+		basePool.appendClassPath(new ClassClassPath(EventExecutor.class));
+	}
+
+	private EventExecutorGenerator() {
+	}
+
+	/**
+	 * Creates an executor which calls a listener method directly
+	 *
+	 * @param listener the listener
+	 * @param method the method, which takes a single event parameter
+	 * @return the executor, or null if the method cannot be called by a
+	 *         generated class
+	 */
+	public static EventExecutor create(Object listener, Method method) {
+		Class<? extends EventExecutor> executorClass = getExecutorClass(method);
+		if (executorClass == null) {
+			return null;
+		}
+		try {
+			return executorClass.getConstructor(Object.class).newInstance(listener);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static synchronized Class<? extends EventExecutor> getExecutorClass(Method method) {
+		Class<?> listenerClass = method.getDeclaringClass();
+		Map<String, Reference<Class<? extends EventExecutor>>> generated = executors.get(listenerClass);
+		if (generated == null) {
+			generated = new HashMap<String, Reference<Class<? extends EventExecutor>>>();
+			executors.put(listenerClass, generated);
+		}
+		// The key must not reference the listener class, or it would never be collected
+		String signature = method.getName() + "(" + method.getParameterTypes()[0].getName() + ")";
+		Reference<Class<? extends EventExecutor>> reference = generated.get(signature);
+		if (reference == FAILED) {
+			return null;
+		}
+		Class<? extends EventExecutor> executorClass = reference == null ? null : reference.get();
+		if (executorClass == null) {
+			executorClass = generate(method);
+			generated.put(signature, executorClass == null ? FAILED : new WeakReference<Class<? extends EventExecutor>>(executorClass));
+		}
+		return executorClass;
+	}
+
+	private static Class<? extends EventExecutor> generate(Method method) {
+		Class<?> listenerClass = method.getDeclaringClass();
+		Class<?> eventClass = method.getParameterTypes()[0];
+		ClassLoader loader = listenerClass.getClassLoader();
+		if (loader == null || Modifier.isPrivate(method.getModifiers()) || !isAccessible(listenerClass, listenerClass) || !isAccessible(eventClass, listenerClass)) {
+			return null;
+		}
+		// The child pool caches the listener and event classes, and is discarded after the class is generated
+		ClassPool pool = new ClassPool(basePool);
+		pool.appendClassPath(new LoaderClassPath(loader));
+		String listenerName = listenerClass.getName();
+		String eventName = eventClass.getName();
+		String target = Modifier.isStatic(method.getModifiers()) ? listenerName : "this.listener";
+		CtClass generated = pool.makeClass(listenerName + "$$EventExecutor$" + nextId.getAndIncrement());
+		try {
+			generated.addInterface(pool.get(EventExecutor.class.getName()));
+			generated.addField(CtField.make("private final " + listenerName + " listener;", generated));
+			generated.addConstructor(CtNewConstructor.make(new CtClass[] {pool.get(Object.class.getName())}, new CtClass[0], "{ this.listener = (" + listenerName + ") $1; }", generated));
+			generated.addMethod(CtNewMethod.make(
+					"public void execute(" + EVENT + " event) throws " + EVENT_EXCEPTION + " {" +
+					"	if (!(event instanceof " + eventName + ")) {" +
+					"		throw new " + EVENT_EXCEPTION + "(\"Wrong event type passed to registered method\");" +
+					"	}" +
+					"	try {" +
+					"		" + target + "." + method.getName() + "((" + eventName + ") event);" +
+					"	} catch (Throwable t) {" +
+					"		throw new " + EVENT_EXCEPTION + "(t);" +
+					"	}" +
+					"}", generated));
+			return generated.toClass(loader, listenerClass.getProtectionDomain()).asSubclass(EventExecutor.class);
+		} catch (Throwable t) {
+			return null;
+		} finally {
+			generated.detach();
+		}
+	}
+
+	/**
+	 * Checks if a class can be referenced by a class defined in the package
+	 * and class loader of another class. Nested classes which are not public
+	 * are compiled as package-private classes, so they can be referenced from
+	 * the same package.
+	 */
+	private static boolean isAccessible(Class<?> clazz, Class<?> from) {
+		if (clazz.isPrimitive() || clazz.isArray()) {
+			return false;
+		}
+		if (clazz.getClassLoader() == from.getClassLoader() && getPackageName(clazz).equals(getPackageName(from))) {
+			return true;
+		}
+		for (Class<?> c = clazz; c != null; c = c.getDeclaringClass()) {
+			if (!Modifier.isPublic(c.getModifiers())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String getPackageName(Class<?> clazz) {
+		String name = clazz.getName();
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(0, dot);
+	}
+}
@@ -31,11 +31,29 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- * An annotation to mark methods as being event handler methods
+ * An annotation to mark methods as being event handler methods.<br>
+ * <br>
+ * Handlers marked as async are called on the event manager's worker threads
+ * after all the other handlers have finished, and the caller does not wait
+ * for them. Async handlers of the same event may run in parallel with each
+ * other, so they must not change the event, and only handlers with the
+ * MONITOR order may be async.
  */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface EventHandler {
 
 	Order order() default Order.DEFAULT;
+
+	/**
+	 * Whether the handler is called on a worker thread after the event has
+	 * been returned to the caller.<br>
+	 * <br>
+	 * The handler sees the same event object as the caller, so the event may
+	 * still be changed by the caller while the handler runs, unless the
+	 * caller follows the rule in EventManager.callEvent(event).
+	 *
+	 * @return true if the handler is async
+	 */
+	boolean async() default false;
 }
@@ -25,15 +25,71 @@
  */
 package org.spout.api.event;
 
+import java.util.Collection;
+import java.util.concurrent.Future;
+
 public interface EventManager {
 	/**
-	 * Calls an event with the given details
+	 * Calls an event with the given details.<br>
+	 * <br>
+	 * Async handlers of the event are still running, with the same event
+	 * object, after this method returns. If the event has async handlers, the
+	 * caller must not change the event after calling it, and should copy any
+	 * state it needs to change.
 	 *
 	 * @param event Event details
 	 * @return Called event
 	 */
 	public <T extends Event> T callEvent(T event);
 
+	/**
+	 * Calls a batch of events. Listeners of the single event type are called
+	 * once per entry, then listeners of the batch type are called once with
+	 * the whole batch.
+	 *
+	 * @param batch Batch details
+	 * @return Called batch
+	 */
+	public <T extends BatchEvent<?>> T callBatchEvent(T batch);
+
+	/**
+	 * Calls an event with the given details on a worker thread. The listeners
+	 * are called in the same order as by callEvent(event), but the caller
+	 * does not wait for them.
+	 *
+	 * @param event Event details
+	 * @return A future which completes with the called event
+	 */
+	public <T extends Event> Future<T> callEventAsync(T event);
+
+	/**
+	 * Calls an event which is only created if there are listeners for it. This
+	 * avoids creating events which nobody listens to.
+	 *
+	 * @param event Event type to call
+	 * @param factory Factory which creates the event details
+	 * @return Called event, or null if there are no listeners for the event
+	 */
+	public <T extends Event> T callEvent(Class<T> event, EventFactory<? extends T> factory);
+
+	/**
+	 * Checks if there are any listeners registered for an event type
+	 *
+	 * @param event Event type to check
+	 * @return true if the event has listeners
+	 */
+	public boolean hasListeners(Class<? extends Event> event);
+
+	/**
+	 * Checks if there are any listeners registered for an event type at the
+	 * given order
+	 *
+	 * @param event Event type to check
+	 * @param order Order to check
+	 * @return true if the event has listeners at the order
+	 */
+	public boolean hasListeners(Class<? extends Event> event, Order order);
+
 	/**
 	 * Calls an event with the given details, on the next tick
 	 *
@@ -49,6 +105,16 @@ public interface EventManager {
 	 */
 	public void registerEvents(Listener listener, Object owner);
 
+	/**
+	 * Registers all the events in the given listener classes. Each handler
+	 * list which gains listeners is only rebuilt once, after every listener
+	 * has been registered.
+	 *
+	 * @param listeners Listeners to register
+	 * @param owner Plugin to register
+	 */
+	public void registerEvents(Collection<? extends Listener> listeners, Object owner);
+
 	/**
 	 * Registers the specified executor to the given event class
 	 *
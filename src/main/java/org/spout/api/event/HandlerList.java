@@ -42,6 +42,12 @@ public class HandlerList {
 	 */
 	private ListenerRegistration[] handlers = null;
 
+	/**
+	 * Bit mask of the order slots which have handlers, with one bit per
+	 * order index. This is updated whenever the handlers array is baked.
+	 */
+	private int orders = 0;
+
 	/**
 	 * Dynamic handler lists. These are changed using register() and
 	 * unregister() and are automatically baked to the handlers array any time
@@ -149,6 +155,11 @@ public class HandlerList {
 		for (Entry<Order, ArrayList<ListenerRegistration>> entry : handlerslots.entrySet()) {
 			entries.addAll(entry.getValue());
 		}
+		int mask = 0;
+		for (ListenerRegistration entry : entries) {
+			mask |= 1 << entry.getOrder().getIndex();
+		}
+		orders = mask;
 		handlers = entries.toArray(new ListenerRegistration[entries.size()]);
 	}
 
@@ -160,6 +171,30 @@ public class HandlerList {
 		return handlers;
 	}
 
+	/**
+	 * Checks if any handlers are registered in this list. This is cheap enough
+	 * to call before creating an event, so that events nobody listens to are
+	 * never created.
+	 *
+	 * @return true if there are any handlers
+	 */
+	public boolean hasListeners() {
+		return getRegisteredListeners().length > 0;
+	}
+
+	/**
+	 * Checks if any handlers are registered in this list for an order slot
+	 *
+	 * @param order the order slot
+	 * @return true if there are any handlers in the slot
+	 */
+	public boolean hasListeners(Order order) {
+		if (handlers == null) {
+			bake();
+		}
+		return (orders & 1 << order.getIndex()) != 0;
+	}
+
 	public static HandlerList create() {
 		return new HandlerList();
 	}
@@ -32,6 +32,7 @@ public class ListenerRegistration {
 	private final EventExecutor executor;
 	private final Order orderSlot;
 	private final Object owner;
+	private final boolean async;
 
 	/**
 	 * @param executor Listener this registration represents
@@ -39,9 +40,20 @@ public class ListenerRegistration {
 	 * @param owner object that created this registration
 	 */
 	public ListenerRegistration(final EventExecutor executor, final Order orderSlot, final Object owner) {
+		this(executor, orderSlot, owner, false);
+	}
+
+	/**
+	 * @param executor Listener this registration represents
+	 * @param orderSlot Order position this registration is in
+	 * @param owner object that created this registration
+	 * @param async true if the listener is called on a worker thread
+	 */
+	public ListenerRegistration(final EventExecutor executor, final Order orderSlot, final Object owner, final boolean async) {
 		this.executor = executor;
 		this.orderSlot = orderSlot;
 		this.owner = owner;
+		this.async = async;
 	}
 
 	/**
@@ -70,4 +82,14 @@ public class ListenerRegistration {
 	public Order getOrder() {
 		return orderSlot;
 	}
+
+	/**
+	 * Gets if the listener is called on a worker thread, after the event has
+	 * been passed to all the other listeners
+	 *
+	 * @return true if the listener is async
+	 */
+	public boolean isAsync() {
+		return async;
+	}
 }
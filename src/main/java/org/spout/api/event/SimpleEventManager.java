@@ -25,18 +25,91 @@
  */
 package org.spout.api.event;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import org.spout.api.Spout;
 import org.spout.api.exception.EventException;
 import org.spout.api.exception.IllegalPluginAccessException;
 
+/**
+ * The default event manager.<br>
+ * <br>
+ * Events are passed to listeners in the following ways:
+ * <ul>
+ * <li>callEvent(event) calls every synchronous listener on the caller's
+ * thread, sorted by their order slots, and returns once they have all
+ * finished.</li>
+ * <li>Async listeners, which are always MONITOR listeners, are then handed to
+ * the worker threads. They are called after every synchronous listener has
+ * finished, but in no particular order and possibly in parallel, and the
+ * caller does not wait for them. They are given the same event object that
+ * is returned to the caller, so the caller must not change it.</li>
+ * <li>callBatchEvent(batch) first calls the listeners of the single event
+ * type once per entry, then the listeners of the batch type once.</li>
+ * <li>callEventAsync(event) runs the whole of callEvent(event) on a worker
+ * thread. Synchronous listeners keep their order relative to each other, but
+ * not to other events called from the same thread.</li>
+ * </ul>
+ */
 public class SimpleEventManager implements EventManager {
+	private final ConcurrentMap<EventClassKey, EventClassInfo> eventClasses = new ConcurrentHashMap<EventClassKey, EventClassInfo>();
+	private final ReferenceQueue<Class<? extends Event>> collectedClasses = new ReferenceQueue<Class<? extends Event>>();
+	private final boolean generateExecutors;
+	private volatile ExecutorService workers;
+
+	/**
+	 * Creates an event manager which calls listener methods through generated
+	 * executors
+	 */
+	public SimpleEventManager() {
+		this(true);
+	}
+
+	/**
+	 * Creates an event manager.<br>
+	 * <br>
+	 * If executors are generated, each listener method is called by a class
+	 * generated for that method, rather than through reflection. Methods which
+	 * the generated classes cannot call, such as private methods, are always
+	 * called through reflection.
+	 *
+	 * @param generateExecutors true to generate executors for listener methods
+	 */
+	public SimpleEventManager(boolean generateExecutors) {
+		this(generateExecutors, null);
+	}
+
+	/**
+	 * Creates an event manager which runs async listeners and events on the
+	 * given workers. If workers is null, a pool of daemon threads is created
+	 * the first time it is needed.
+	 *
+	 * @param generateExecutors true to generate executors for listener methods
+	 * @param workers the workers for async listeners and events
+	 */
+	public SimpleEventManager(boolean generateExecutors, ExecutorService workers) {
+		this.generateExecutors = generateExecutors;
+		this.workers = workers;
+	}
+
 	public <T extends Event> void callDelayedEvent(final T event) {
 		Spout.getGame().getScheduler().scheduleSyncDelayedTask(null, new Runnable() {
 			public void run() {
@@ -50,27 +123,139 @@ public class SimpleEventManager implements EventManager {
 		ListenerRegistration[] listeners = handlers.getRegisteredListeners();
 
 		if (listeners != null) {
+			boolean async = false;
 			for (ListenerRegistration listener : listeners) {
-				try {
-					if (!event.isCancelled() || listener.getOrder().ignoresCancelled()) {
-						listener.getExecutor().execute(event);
+				if (listener.isAsync()) {
+					async = true;
+					continue;
+				}
+				callListener(event, listener);
+			}
+			if (async) {
+				ExecutorService workers = getWorkers();
+				for (final ListenerRegistration listener : listeners) {
+					if (listener.isAsync()) {
+						final Event asyncEvent = event;
+						workers.execute(new Runnable() {
+							public void run() {
+								callListener(asyncEvent, listener);
+							}
+						});
 					}
-				} catch (Throwable ex) {
-					Spout.getGame().getLogger().log(Level.SEVERE, "Could not pass event " + event.getEventName() + " to " + listener.getOwner().getClass().getName(), ex);
 				}
 			}
 		}
 		return event;
 	}
 
-	public void registerEvents(Listener listener, Object owner) {
-		for (Map.Entry<Class<? extends Event>, Set<ListenerRegistration>> entry : createRegisteredListeners(listener, owner).entrySet()) {
-			Class<? extends Event> delegatedClass = getRegistrationClass(entry.getKey());
-			if (!entry.getKey().equals(delegatedClass)) {
-				Spout.getGame().getLogger().severe("Plugin attempted to register delegated event class " + entry.getKey() + ". It should be using " + delegatedClass + "!");
+	public <T extends BatchEvent<?>> T callBatchEvent(T batch) {
+		BatchEvent<?> events = batch;
+		fanOut(events);
+		return callEvent(batch);
+	}
+
+	/**
+	 * Passes each entry of a batch to the listeners of the single event type,
+	 * if it has any
+	 *
+	 * @param batch the batch
+	 */
+	private <E extends Event> void fanOut(BatchEvent<E> batch) {
+		if (!hasListeners(batch.getEventType())) {
+			return;
+		}
+		int size = batch.size();
+		for (int i = 0; i < size; i++) {
+			if (batch.isCancelled(i)) {
 				continue;
 			}
-			getEventListeners(delegatedClass).registerAll(entry.getValue());
+			E event = batch.createEvent(i);
+			callEvent(event);
+			batch.eventCalled(i, event);
+		}
+	}
+
+	public <T extends Event> Future<T> callEventAsync(final T event) {
+		return getWorkers().submit(new Callable<T>() {
+			public T call() {
+				return callEvent(event);
+			}
+		});
+	}
+
+	private void callListener(Event event, ListenerRegistration listener) {
+		try {
+			if (!event.isCancelled() || listener.getOrder().ignoresCancelled()) {
+				listener.getExecutor().execute(event);
+			}
+		} catch (Throwable ex) {
+			Spout.getGame().getLogger().log(Level.SEVERE, "Could not pass event " + event.getEventName() + " to " + listener.getOwner().getClass().getName(), ex);
+		}
+	}
+
+	/**
+	 * Gets the workers for async listeners and events, creating a pool of
+	 * daemon threads if none were provided
+	 *
+	 * @return the workers
+	 */
+	private ExecutorService getWorkers() {
+		ExecutorService workers = this.workers;
+		if (workers == null) {
+			synchronized (this) {
+				workers = this.workers;
+				if (workers == null) {
+					workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+						private final AtomicInteger nextId = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "Event Worker - " + nextId.getAndIncrement());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+					this.workers = workers;
+				}
+			}
+		}
+		return workers;
+	}
+
+	public <T extends Event> T callEvent(Class<T> event, EventFactory<? extends T> factory) {
+		if (!hasListeners(event)) {
+			return null;
+		}
+		return callEvent(factory.createEvent());
+	}
+
+	public boolean hasListeners(Class<? extends Event> event) {
+		return getEventListeners(event).hasListeners();
+	}
+
+	public boolean hasListeners(Class<? extends Event> event, Order order) {
+		return getEventListeners(event).hasListeners(order);
+	}
+
+	public void registerEvents(Listener listener, Object owner) {
+		registerEvents(Collections.singleton(listener), owner);
+	}
+
+	public void registerEvents(Collection<? extends Listener> listeners, Object owner) {
+		Set<HandlerList> changed = new HashSet<HandlerList>();
+		for (Listener listener : listeners) {
+			for (Map.Entry<Class<? extends Event>, Set<ListenerRegistration>> entry : createRegisteredListeners(listener, owner).entrySet()) {
+				Class<? extends Event> delegatedClass = getRegistrationClass(entry.getKey());
+				if (!entry.getKey().equals(delegatedClass)) {
+					Spout.getGame().getLogger().severe("Plugin attempted to register delegated event class " + entry.getKey() + ". It should be using " + delegatedClass + "!");
+					continue;
+				}
+				HandlerList handlers = getEventListeners(delegatedClass);
+				handlers.registerAll(entry.getValue());
+				changed.add(handlers);
+			}
+		}
+		for (HandlerList handlers : changed) {
+			handlers.bake();
 		}
 	}
 
@@ -85,26 +270,64 @@ public class SimpleEventManager implements EventManager {
 	 * @return HandlerList The list of registered handlers for the event.
 	 */
 	private HandlerList getEventListeners(Class<? extends Event> type) {
+		return getEventClassInfo(type).getHandlerList();
+	}
+
+	private Class<? extends Event> getRegistrationClass(Class<? extends Event> clazz) {
+		return getEventClassInfo(clazz).getRegistrationClass();
+	}
+
+	/**
+	 * Gets the registration class and handler list of an event class. These
+	 * are found once per event class and cached, including failures.<br>
+	 * <br>
+	 * The event classes are weakly referenced, so the cache does not keep the
+	 * event classes of unloaded plugins. Entries for collected classes are
+	 * removed when a new event class is resolved.
+	 *
+	 * @param clazz the event class
+	 * @return the cached information
+	 */
+	private EventClassInfo getEventClassInfo(Class<? extends Event> clazz) {
+		EventClassInfo info = eventClasses.get(new EventClassKey(clazz, null));
+		if (info == null) {
+			Reference<?> collected;
+			while ((collected = collectedClasses.poll()) != null) {
+				eventClasses.remove(collected);
+			}
+			info = resolveEventClass(clazz);
+			EventClassInfo previous = eventClasses.putIfAbsent(new EventClassKey(clazz, collectedClasses), info);
+			if (previous != null) {
+				info = previous;
+			}
+		}
+		return info;
+	}
+
+	private EventClassInfo resolveEventClass(Class<? extends Event> clazz) {
+		Method method = getHandlerListMethod(clazz);
+		if (method == null) {
+			Class<?> superclass = clazz.getSuperclass();
+			if (superclass != null && !superclass.equals(Event.class) && Event.class.isAssignableFrom(superclass)) {
+				return getEventClassInfo(superclass.asSubclass(Event.class));
+			}
+			return new EventClassInfo(null, null, "Unable to find handler list for event " + clazz.getName());
+		}
 		try {
-			Method method = getRegistrationClass(type).getDeclaredMethod("getHandlerList");
 			method.setAccessible(true);
-			return (HandlerList) method.invoke(null);
+			return new EventClassInfo(clazz, (HandlerList) method.invoke(null), null);
 		} catch (Exception e) {
-			throw new IllegalPluginAccessException(e.toString());
+			return new EventClassInfo(clazz, null, e.toString());
 		}
 	}
 
-	private Class<? extends Event> getRegistrationClass(Class<? extends Event> clazz) {
-		try {
-			clazz.getDeclaredMethod("getHandlerList");
-			return clazz;
-		} catch (NoSuchMethodException e) {
-			if (clazz.getSuperclass() != null && !clazz.getSuperclass().equals(Event.class) && Event.class.isAssignableFrom(clazz.getSuperclass())) {
-				return getRegistrationClass(clazz.getSuperclass().asSubclass(Event.class));
-			} else {
-				throw new IllegalPluginAccessException("Unable to find handler list for event " + clazz.getName());
+	private static Method getHandlerListMethod(Class<?> clazz) {
+		for (Method method : clazz.getDeclaredMethods()) {
+			if (method.getName().equals("getHandlerList") && method.getParameterTypes().length == 0) {
+				return method;
 			}
 		}
+		return null;
 	}
 
 	public Map<Class<? extends Event>, Set<ListenerRegistration>> createRegisteredListeners(final Listener listener, Object plugin) {
@@ -135,21 +358,94 @@ public class SimpleEventManager implements EventManager {
 				eventSet = new HashSet<ListenerRegistration>();
 				ret.put(eventClass, eventSet);
 			}
-			eventSet.add(new ListenerRegistration(new EventExecutor() {
+			EventExecutor executor = generateExecutors ? EventExecutorGenerator.create(listener, method) : null;
+			if (executor == null) {
+				executor = new EventExecutor() {
 
-				public void execute(Event event) throws EventException {
-					try {
-						if (!checkClass.isAssignableFrom(event.getClass())) {
-							throw new EventException("Wrong event type passed to registered method");
+					public void execute(Event event) throws EventException {
+						try {
+							if (!checkClass.isAssignableFrom(event.getClass())) {
+								throw new EventException("Wrong event type passed to registered method");
+							}
+							method.invoke(listener, event);
+						} catch (Throwable t) {
+							throw new EventException(t);
 						}
-						method.invoke(listener, event);
-					} catch (Throwable t) {
-						throw new EventException(t);
 					}
-				}
 
-			}, eh.order(), plugin));
+				};
+			}
+			boolean async = eh.async();
+			if (async && eh.order() != Order.MONITOR) {
+				Spout.getGame().getLogger().severe("Async event handler " + method + " must use Order.MONITOR. It will be called synchronously");
+				async = false;
+			}
+			eventSet.add(new ListenerRegistration(executor, eh.order(), plugin, async));
 		}
 		return ret;
 	}
+
+	/**
+	 * A weak key for an event class, which compares classes by identity. A
+	 * key whose class has been collected is only equal to itself.
+	 */
+	private static class EventClassKey extends WeakReference<Class<? extends Event>> {
+		private final int hash;
+
+		public EventClassKey(Class<? extends Event> clazz, ReferenceQueue<Class<? extends Event>> queue) {
+			super(clazz, queue);
+			this.hash = System.identityHashCode(clazz);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof EventClassKey)) {
+				return false;
+			}
+			Class<? extends Event> clazz = get();
+			return clazz != null && clazz == ((EventClassKey) obj).get();
+		}
+	}
+
+	/**
+	 * The resolved registration class and handler list of an event class. If
+	 * they could not be resolved, error holds the reason.<br>
+	 * <br>
+	 * The registration class is usually the key class, so it is weakly
+	 * referenced too. It is reachable for as long as the key class is.
+	 */
+	private static class EventClassInfo {
+		private final WeakReference<Class<? extends Event>> registrationClass;
+		private final HandlerList handlers;
+		private final String error;
+
+		public EventClassInfo(Class<? extends Event> registrationClass, HandlerList handlers, String error) {
+			this.registrationClass = new WeakReference<Class<? extends Event>>(registrationClass);
+			this.handlers = handlers;
+			this.error = error;
+		}
+
+		public Class<? extends Event> getRegistrationClass() {
+			Class<? extends Event> clazz = registrationClass.get();
+			if (clazz == null) {
+				throw new IllegalPluginAccessException(error);
+			}
+			return clazz;
+		}
+
+		public HandlerList getHandlerList() {
+			if (handlers == null) {
+				throw new IllegalPluginAccessException(error);
+			}
+			return handlers;
+		}
+	}
 }
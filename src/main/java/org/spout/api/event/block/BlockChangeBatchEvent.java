@@ -0,0 +1,264 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event.block;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.spout.api.Source;
+import org.spout.api.event.BatchEvent;
+import org.spout.api.event.HandlerList;
+import org.spout.api.geo.World;
+import org.spout.api.geo.cuboid.Block;
+import org.spout.api.material.Material;
+import org.spout.api.material.MaterialData;
+import org.spout.api.material.block.BlockSnapshot;
+import org.spout.nbt.Tag;
+
+/**
+ * Called when many blocks change their state at once, for example during an
+ * explosion or a world edit.<br>
+ * <br>
+ * The positions and the old and new block ids and data are stored in
+ * primitive arrays. Listeners of BlockChangeEvent are given one event per
+ * entry, and changes they make to the new state are copied back into the
+ * batch.
+ */
+public class BlockChangeBatchEvent extends BatchEvent<BlockChangeEvent> {
+	private static final HandlerList handlers = new HandlerList();
+	private final World world;
+	private final Source source;
+	private int size = 0;
+	private int[] xs;
+	private int[] ys;
+	private int[] zs;
+	private short[] oldIds;
+	private short[] oldData;
+	private short[] newIds;
+	private short[] newData;
+
+	public BlockChangeBatchEvent(World world, Source source) {
+		this(world, source, 16);
+	}
+
+	/**
+	 * Creates an empty batch
+	 *
+	 * @param world the world containing the blocks
+	 * @param source the source of the changes
+	 * @param capacity the number of entries to allocate space for
+	 */
+	public BlockChangeBatchEvent(World world, Source source, int capacity) {
+		this.world = world;
+		this.source = source;
+		capacity = Math.max(capacity, 1);
+		xs = new int[capacity];
+		ys = new int[capacity];
+		zs = new int[capacity];
+		oldIds = new short[capacity];
+		oldData = new short[capacity];
+		newIds = new short[capacity];
+		newData = new short[capacity];
+	}
+
+	/**
+	 * Adds a block change to the batch
+	 *
+	 * @param x the x coordinate of the block
+	 * @param y the y coordinate of the block
+	 * @param z the z coordinate of the block
+	 * @param oldId the previous block id
+	 * @param oldData the previous block data
+	 * @param newId the new block id
+	 * @param newData the new block data
+	 * @return the index of the entry
+	 */
+	public int add(int x, int y, int z, short oldId, short oldData, short newId, short newData) {
+		if (size == xs.length) {
+			int capacity = size << 1;
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			zs = Arrays.copyOf(zs, capacity);
+			oldIds = Arrays.copyOf(oldIds, capacity);
+			this.oldData = Arrays.copyOf(this.oldData, capacity);
+			newIds = Arrays.copyOf(newIds, capacity);
+			this.newData = Arrays.copyOf(this.newData, capacity);
+		}
+		xs[size] = x;
+		ys[size] = y;
+		zs[size] = z;
+		oldIds[size] = oldId;
+		this.oldData[size] = oldData;
+		newIds[size] = newId;
+		this.newData[size] = newData;
+		return size++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the world containing the blocks
+	 *
+	 * @return the world
+	 */
+	public World getWorld() {
+		return world;
+	}
+
+	/**
+	 * Gets the source of the changes
+	 *
+	 * @return the source
+	 */
+	public Source getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the x coordinate of a block
+	 *
+	 * @param index the index of the entry
+	 * @return the x coordinate
+	 */
+	public int getX(int index) {
+		return xs[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the y coordinate of a block
+	 *
+	 * @param index the index of the entry
+	 * @return the y coordinate
+	 */
+	public int getY(int index) {
+		return ys[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the z coordinate of a block
+	 *
+	 * @param index the index of the entry
+	 * @return the z coordinate
+	 */
+	public int getZ(int index) {
+		return zs[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the previous id of a block
+	 *
+	 * @param index the index of the entry
+	 * @return the previous id
+	 */
+	public short getOldId(int index) {
+		return oldIds[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the previous data of a block
+	 *
+	 * @param index the index of the entry
+	 * @return the previous data
+	 */
+	public short getOldData(int index) {
+		return oldData[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the new id of a block
+	 *
+	 * @param index the index of the entry
+	 * @return the new id
+	 */
+	public short getNewId(int index) {
+		return newIds[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the new data of a block
+	 *
+	 * @param index the index of the entry
+	 * @return the new data
+	 */
+	public short getNewData(int index) {
+		return newData[checkIndex(index)];
+	}
+
+	/**
+	 * Sets the new state of a block
+	 *
+	 * @param index the index of the entry
+	 * @param id the new block id
+	 * @param data the new block data
+	 */
+	public void setNewState(int index, short id, short data) {
+		newIds[checkIndex(index)] = id;
+		newData[index] = data;
+	}
+
+	@Override
+	public Class<BlockChangeEvent> getEventType() {
+		return BlockChangeEvent.class;
+	}
+
+	@Override
+	protected BlockChangeEvent createEvent(int index) {
+		Block block = world.getBlock(xs[index], ys[index], zs[index]);
+		BlockChangeEvent event = new BlockChangeEvent(block, source);
+		event.setNewState(new BlockSnapshot(block, MaterialData.getMaterial(newIds[index], newData[index]), Collections.<String, Tag>emptyMap()));
+		return event;
+	}
+
+	@Override
+	protected void eventCalled(int index, BlockChangeEvent event) {
+		super.eventCalled(index, event);
+		BlockSnapshot snapshot = event.getSnapshot();
+		Material material = snapshot == null ? null : snapshot.getMaterial();
+		if (material != null) {
+			newIds[index] = material.getId();
+			newData[index] = material.getData();
+		}
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " is out of range for a batch of size " + size);
+		}
+		return index;
+	}
+
+	@Override
+	public HandlerList getHandlers() {
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
+	}
+}
@@ -34,6 +34,8 @@ import org.spout.api.material.block.BlockSnapshot;
  * Called when a block changes its state.
  */
 public class BlockChangeEvent extends BlockEvent {
+	private static final HandlerList handlers = new HandlerList();
+
 	public BlockChangeEvent(Block block, Source source) {
 		super(block, source);
 	}
@@ -65,7 +67,10 @@ public class BlockChangeEvent extends BlockEvent {
 
 	@Override
 	public HandlerList getHandlers() {
-		// TODO Auto-generated method stub
-		return null;
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
 	}
 }
@@ -0,0 +1,205 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event.entity;
+
+import java.util.Arrays;
+
+import org.spout.api.entity.Entity;
+import org.spout.api.event.BatchEvent;
+import org.spout.api.event.HandlerList;
+import org.spout.api.geo.World;
+import org.spout.api.geo.discrete.Point;
+
+/**
+ * Called when many entities in a world move at once.<br>
+ * <br>
+ * The start and end positions are stored in a primitive array, with six
+ * coordinates per entry. Listeners of EntityMoveEvent are given one event per
+ * entry, and changes they make to the destination are copied back into the
+ * batch.
+ */
+public class EntityMoveBatchEvent extends BatchEvent<EntityMoveEvent> {
+	private static final HandlerList handlers = new HandlerList();
+	private static final int STRIDE = 6;
+	private final World world;
+	private int size = 0;
+	private Entity[] entities;
+	private float[] coords;
+
+	public EntityMoveBatchEvent(World world) {
+		this(world, 16);
+	}
+
+	/**
+	 * Creates an empty batch
+	 *
+	 * @param world the world containing the entities
+	 * @param capacity the number of entries to allocate space for
+	 */
+	public EntityMoveBatchEvent(World world, int capacity) {
+		this.world = world;
+		capacity = Math.max(capacity, 1);
+		entities = new Entity[capacity];
+		coords = new float[capacity * STRIDE];
+	}
+
+	/**
+	 * Adds an entity movement to the batch
+	 *
+	 * @param entity the entity
+	 * @param fromX the previous x coordinate
+	 * @param fromY the previous y coordinate
+	 * @param fromZ the previous z coordinate
+	 * @param toX the new x coordinate
+	 * @param toY the new y coordinate
+	 * @param toZ the new z coordinate
+	 * @return the index of the entry
+	 */
+	public int add(Entity entity, float fromX, float fromY, float fromZ, float toX, float toY, float toZ) {
+		if (size == entities.length) {
+			entities = Arrays.copyOf(entities, size << 1);
+			coords = Arrays.copyOf(coords, (size << 1) * STRIDE);
+		}
+		int offset = size * STRIDE;
+		entities[size] = entity;
+		coords[offset] = fromX;
+		coords[offset + 1] = fromY;
+		coords[offset + 2] = fromZ;
+		coords[offset + 3] = toX;
+		coords[offset + 4] = toY;
+		coords[offset + 5] = toZ;
+		return size++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the world containing the entities
+	 *
+	 * @return the world
+	 */
+	public World getWorld() {
+		return world;
+	}
+
+	/**
+	 * Gets the entity of an entry
+	 *
+	 * @param index the index of the entry
+	 * @return the entity
+	 */
+	public Entity getEntity(int index) {
+		return entities[checkIndex(index)];
+	}
+
+	/**
+	 * Gets a coordinate of an entry. Coordinates 0 to 2 are the x, y and z
+	 * coordinates the entity moved from, and 3 to 5 are the coordinates it
+	 * moved to.
+	 *
+	 * @param index the index of the entry
+	 * @param coord the coordinate, from 0 to 5
+	 * @return the coordinate
+	 */
+	public float getCoord(int index, int coord) {
+		if (coord < 0 || coord >= STRIDE) {
+			throw new IndexOutOfBoundsException("Coordinate " + coord + " is out of range");
+		}
+		return coords[checkIndex(index) * STRIDE + coord];
+	}
+
+	/**
+	 * Gets the Point an entity moved from
+	 *
+	 * @param index the index of the entry
+	 * @return the Point
+	 */
+	public Point getFrom(int index) {
+		int offset = checkIndex(index) * STRIDE;
+		return new Point(world, coords[offset], coords[offset + 1], coords[offset + 2]);
+	}
+
+	/**
+	 * Gets the Point an entity moved to
+	 *
+	 * @param index the index of the entry
+	 * @return the Point
+	 */
+	public Point getTo(int index) {
+		int offset = checkIndex(index) * STRIDE + 3;
+		return new Point(world, coords[offset], coords[offset + 1], coords[offset + 2]);
+	}
+
+	/**
+	 * Sets the Point an entity will move to
+	 *
+	 * @param index the index of the entry
+	 * @param to the new Point
+	 */
+	public void setTo(int index, Point to) {
+		int offset = checkIndex(index) * STRIDE + 3;
+		coords[offset] = to.getX();
+		coords[offset + 1] = to.getY();
+		coords[offset + 2] = to.getZ();
+	}
+
+	@Override
+	public Class<EntityMoveEvent> getEventType() {
+		return EntityMoveEvent.class;
+	}
+
+	@Override
+	protected EntityMoveEvent createEvent(int index) {
+		return new EntityMoveEvent(entities[index], getFrom(index), getTo(index));
+	}
+
+	@Override
+	protected void eventCalled(int index, EntityMoveEvent event) {
+		super.eventCalled(index, event);
+		if (event.getTo() != null) {
+			setTo(index, event.getTo());
+		}
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " is out of range for a batch of size " + size);
+		}
+		return index;
+	}
+
+	@Override
+	public HandlerList getHandlers() {
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
+	}
+}
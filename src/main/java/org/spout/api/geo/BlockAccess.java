@@ -32,6 +32,12 @@ import org.spout.api.datatable.DatatableMap;
 import org.spout.api.material.BlockMaterial;
 import org.spout.api.util.thread.LiveWrite;
 
+/**
+ * Write access to blocks.<br>
+ * <br>
+ * Every block write updates the world's ColumnHeightMap for the block's
+ * column.
+ */
 public interface BlockAccess extends BlockData {
 	/**
 	 * Sets the block at (x, y, z) to the given material type.
@@ -214,4 +220,27 @@ public interface BlockAccess extends BlockData {
 	 */
 	@LiveWrite
 	public boolean compareAndRemove(int x, int y, int z, BlockFullState<DatatableMap> expect, String key, Datatable auxData);
+
+	/**
+	 * Commits a batch of block changes.<br>
+	 * <br>
+	 * The changes for each chunk are applied together, with a single update
+	 * to the chunk's version. Each changed block is marked as dirty once, and
+	 * if updatePhysics is true, a physics update is scheduled once for each
+	 * changed block after the changes for its chunk are applied.<br>
+	 * <br>
+	 * If the batch is atomic, no changes are applied to any chunk unless all
+	 * of the expected states, in every chunk, match. The chunks' block stores
+	 * should be updated together with AtomicBlockStore.setBlocks(stores,
+	 * batches, true), which holds an exclusive write on every store while the
+	 * states are checked and the changes are applied.
+	 *
+	 * @param batch the batch of changes
+	 * @param updatePhysics whether the changes should update the physics of
+	 *            neighbor blocks afterword
+	 * @param source of the change
+	 * @return the number of blocks changed
+	 */
+	@LiveWrite
+	public int commit(BlockEditBatch batch, boolean updatePhysics, Source source);
 }
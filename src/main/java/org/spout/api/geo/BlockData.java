@@ -52,4 +52,26 @@ public interface BlockData {
 	 */
 	@LiveRead
 	public short getBlockData(int x, int y, int z);
+
+	/**
+	 * Gets the light level emitted by nearby blocks at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the block light level, from 0 to 15
+	 */
+	@LiveRead
+	public byte getBlockLight(int x, int y, int z);
+
+	/**
+	 * Gets the sky light level at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the sky light level, from 0 to 15
+	 */
+	@LiveRead
+	public byte getSkyLight(int x, int y, int z);
 }
@@ -0,0 +1,270 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.geo;
+
+import java.util.Collection;
+
+import org.spout.api.basic.blocks.BlockFullState;
+import org.spout.api.datatable.DatatableMap;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.util.map.TInt21TripleObjectHashMap;
+import org.spout.api.util.map.concurrent.BlockStoreBatch;
+
+/**
+ * A batch of block changes, which are committed together by
+ * BlockAccess.commit(...).<br>
+ * <br>
+ * Changes are grouped by chunk, and if the same block is changed more than
+ * once, only the last change is kept.<br>
+ * <br>
+ * The changes for each chunk are committed together, so snapshot reads of a
+ * chunk see either all or none of its changes. If the batch is atomic, the
+ * changes are only applied if the expected states in every chunk match, so a
+ * batch which spans several chunks is never partly applied.<br>
+ * <br>
+ * Batches are not thread safe, and should be filled by a single thread.
+ */
+public class BlockEditBatch {
+	private final TInt21TripleObjectHashMap<ChunkEdits> chunks = new TInt21TripleObjectHashMap<ChunkEdits>();
+	private boolean atomic;
+	private ChunkEdits last = null;
+
+	/**
+	 * Creates an empty batch, which applies the changes that match their
+	 * expected states
+	 */
+	public BlockEditBatch() {
+		this(false);
+	}
+
+	/**
+	 * Creates an empty batch
+	 *
+	 * @param atomic true if none of the changes should be applied unless all
+	 *            of their expected states match
+	 */
+	public BlockEditBatch(boolean atomic) {
+		this.atomic = atomic;
+	}
+
+	/**
+	 * Gets if the changes are only applied if all of their expected states
+	 * match, in every chunk
+	 *
+	 * @return true if the batch is atomic
+	 */
+	public boolean isAtomic() {
+		return atomic;
+	}
+
+	/**
+	 * Sets if the changes are only applied if all of their expected states
+	 * match, in every chunk
+	 *
+	 * @param atomic true if the batch should be atomic
+	 */
+	public void setAtomic(boolean atomic) {
+		this.atomic = atomic;
+	}
+
+	/**
+	 * Sets the block at (x, y, z) to the given material.<br>
+	 * <br>
+	 * This will clear the block's auxiliary data.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param material the new material
+	 */
+	public void setBlockMaterial(int x, int y, int z, BlockMaterial material) {
+		setBlockIdAndData(x, y, z, material.getId(), material.getData());
+	}
+
+	/**
+	 * Sets the id and data for the block at (x, y, z).<br>
+	 * <br>
+	 * This will clear the block's auxiliary data.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param id the new block id
+	 * @param data the new block data
+	 */
+	public void setBlockIdAndData(int x, int y, int z, short id, short data) {
+		getEdits(x, y, z).getEdits().set(x & (Chunk.CHUNK_SIZE - 1), y & (Chunk.CHUNK_SIZE - 1), z & (Chunk.CHUNK_SIZE - 1), id, data, null);
+	}
+
+	/**
+	 * Sets the id and data for the block at (x, y, z), but only if the block
+	 * matches the expected state when the batch is committed.<br>
+	 * <br>
+	 * This will clear the block's auxiliary data.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param expect the expected block state
+	 * @param id the new block id
+	 * @param data the new block data
+	 */
+	public void compareAndSetBlockIdAndData(int x, int y, int z, BlockFullState<DatatableMap> expect, short id, short data) {
+		getEdits(x, y, z).getEdits().compareAndSet(x & (Chunk.CHUNK_SIZE - 1), y & (Chunk.CHUNK_SIZE - 1), z & (Chunk.CHUNK_SIZE - 1), expect.getId(), expect.getData(), expect.getAuxData(), id, data, null);
+	}
+
+	/**
+	 * Gets the changes grouped by chunk
+	 *
+	 * @return the changes for each chunk
+	 */
+	public Collection<ChunkEdits> getChunkEdits() {
+		return chunks.valueCollection();
+	}
+
+	/**
+	 * Gets the changes for a chunk
+	 *
+	 * @param chunkX the x coordinate of the chunk
+	 * @param chunkY the y coordinate of the chunk
+	 * @param chunkZ the z coordinate of the chunk
+	 * @return the changes, or null if there are no changes for the chunk
+	 */
+	public ChunkEdits getChunkEdits(int chunkX, int chunkY, int chunkZ) {
+		return chunks.get(chunkX, chunkY, chunkZ);
+	}
+
+	/**
+	 * Gets the number of blocks changed by the batch
+	 *
+	 * @return the number of blocks
+	 */
+	public int size() {
+		int size = 0;
+		for (ChunkEdits edits : chunks.valueCollection()) {
+			size += edits.getEdits().size();
+		}
+		return size;
+	}
+
+	/**
+	 * Removes all the changes from the batch
+	 */
+	public void clear() {
+		chunks.clear();
+		last = null;
+	}
+
+	private ChunkEdits getEdits(int x, int y, int z) {
+		int chunkX = x >> Chunk.CHUNK_SIZE_BITS;
+		int chunkY = y >> Chunk.CHUNK_SIZE_BITS;
+		int chunkZ = z >> Chunk.CHUNK_SIZE_BITS;
+		// Consecutive changes are usually in the same chunk
+		ChunkEdits edits = last;
+		if (edits != null && edits.chunkX == chunkX && edits.chunkY == chunkY && edits.chunkZ == chunkZ) {
+			return edits;
+		}
+		edits = chunks.get(chunkX, chunkY, chunkZ);
+		if (edits == null) {
+			edits = new ChunkEdits(chunkX, chunkY, chunkZ);
+			chunks.put(chunkX, chunkY, chunkZ, edits);
+		}
+		last = edits;
+		return edits;
+	}
+
+	/**
+	 * The changes for a single chunk, using coordinates relative to the chunk
+	 */
+	public static class ChunkEdits {
+		private final int chunkX;
+		private final int chunkY;
+		private final int chunkZ;
+		private final BlockStoreBatch<DatatableMap> edits = new BlockStoreBatch<DatatableMap>(Chunk.CHUNK_SIZE_BITS);
+
+		private ChunkEdits(int chunkX, int chunkY, int chunkZ) {
+			this.chunkX = chunkX;
+			this.chunkY = chunkY;
+			this.chunkZ = chunkZ;
+		}
+
+		public int getChunkX() {
+			return chunkX;
+		}
+
+		public int getChunkY() {
+			return chunkY;
+		}
+
+		public int getChunkZ() {
+			return chunkZ;
+		}
+
+		/**
+		 * Gets the changes for the chunk, which can be applied to the chunk's
+		 * block store.<br>
+		 * <br>
+		 * After the changes are applied, the batch records which changes were
+		 * applied.
+		 *
+		 * @return the changes
+		 */
+		public BlockStoreBatch<DatatableMap> getEdits() {
+			return edits;
+		}
+
+		/**
+		 * Gets the world x coordinate of the change at the given position
+		 *
+		 * @param i the position of the change
+		 * @return the x coordinate
+		 */
+		public int getBlockX(int i) {
+			return (chunkX << Chunk.CHUNK_SIZE_BITS) + edits.getX(i);
+		}
+
+		/**
+		 * Gets the world y coordinate of the change at the given position
+		 *
+		 * @param i the position of the change
+		 * @return the y coordinate
+		 */
+		public int getBlockY(int i) {
+			return (chunkY << Chunk.CHUNK_SIZE_BITS) + edits.getY(i);
+		}
+
+		/**
+		 * Gets the world z coordinate of the change at the given position
+		 *
+		 * @param i the position of the change
+		 * @return the z coordinate
+		 */
+		public int getBlockZ(int i) {
+			return (chunkZ << Chunk.CHUNK_SIZE_BITS) + edits.getZ(i);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.geo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.spout.api.datatable.Outputable;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.material.BlockMaterial;
+
+/**
+ * The heights of the highest blocks in each of the 16x16 block columns above
+ * a chunk column, for each HeightMapType.<br>
+ * <br>
+ * Heights can be read at any time without locking. The world must call
+ * blockChanged(...) after every block write, which updates the heights. If
+ * the highest block in a column is removed, the column is scanned downwards
+ * to find the new highest block.<br>
+ * <br>
+ * Heightmaps are saved with the regions in their column, using output(...)
+ * and input(...).
+ */
+public class ColumnHeightMap implements Outputable {
+	/**
+	 * The height of a column which has no matching blocks
+	 */
+	public static final int NO_BLOCK = -1;
+	private static final HeightMapType[] TYPES = HeightMapType.values();
+	private static final int COLUMNS = Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE;
+	private final int x;
+	private final int z;
+	private final AtomicIntegerArray heights = new AtomicIntegerArray(TYPES.length * COLUMNS);
+	private final Object[] locks = new Object[Chunk.CHUNK_SIZE];
+	private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+	/**
+	 * Creates a heightmap with no blocks in any column
+	 *
+	 * @param x the chunk x coordinate of the column
+	 * @param z the chunk z coordinate of the column
+	 */
+	public ColumnHeightMap(int x, int z) {
+		this.x = x;
+		this.z = z;
+		for (int i = 0; i < heights.length(); i++) {
+			heights.set(i, NO_BLOCK);
+		}
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Gets the chunk x coordinate of the column
+	 *
+	 * @return the x coordinate
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Gets the chunk z coordinate of the column
+	 *
+	 * @return the z coordinate
+	 */
+	public int getZ() {
+		return z;
+	}
+
+	/**
+	 * Gets the y coordinate of the highest block of the given kind in the
+	 * block column at (x, z)
+	 *
+	 * @param x the block x coordinate
+	 * @param z the block z coordinate
+	 * @param type the kind of block
+	 * @return the height, or NO_BLOCK if the column has no matching blocks
+	 */
+	public int getHeight(int x, int z, HeightMapType type) {
+		return heights.get(getIndex(x, z, type));
+	}
+
+	/**
+	 * Updates the heights for the block column at (x, z) after the block at
+	 * (x, y, z) has changed. This must be called after the new block has been
+	 * written to the world.
+	 *
+	 * @param x the block x coordinate
+	 * @param y the block y coordinate
+	 * @param z the block z coordinate
+	 * @param material the new material of the block
+	 * @param world the world, which is used to find the next highest block
+	 *            when the highest block is removed
+	 */
+	public void blockChanged(int x, int y, int z, BlockMaterial material, BlockData world) {
+		// Writes to a column are serialized, since a lowering scan must see any
+		// block placed below the old height while it runs
+		synchronized (locks[x & (Chunk.CHUNK_SIZE - 1)]) {
+			for (HeightMapType type : TYPES) {
+				int index = getIndex(x, z, type);
+				int height = heights.get(index);
+				if (type.matches(material)) {
+					if (y > height) {
+						heights.set(index, y);
+						dirty.set(true);
+					}
+				} else if (y == height) {
+					heights.set(index, scan(x, y - 1, z, type, world));
+					dirty.set(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recalculates every height by scanning each column downwards. This
+	 * should be called after a column is generated.
+	 *
+	 * @param top the y coordinate to start scanning from
+	 * @param world the world
+	 */
+	public void recalculate(int top, BlockData world) {
+		int baseX = x << Chunk.CHUNK_SIZE_BITS;
+		int baseZ = z << Chunk.CHUNK_SIZE_BITS;
+		for (int dx = 0; dx < Chunk.CHUNK_SIZE; dx++) {
+			synchronized (locks[dx]) {
+				for (int dz = 0; dz < Chunk.CHUNK_SIZE; dz++) {
+					for (HeightMapType type : TYPES) {
+						heights.set(getIndex(dx, dz, type), scan(baseX + dx, top, baseZ + dz, type, world));
+					}
+				}
+			}
+		}
+		dirty.set(true);
+	}
+
+	/**
+	 * Gets if any height has changed since the last call to resetDirty()
+	 *
+	 * @return true if the heightmap needs saving
+	 */
+	public boolean isDirty() {
+		return dirty.get();
+	}
+
+	/**
+	 * Clears the dirty flag for the heightmap
+	 *
+	 * @return true if the heightmap was dirty
+	 */
+	public boolean resetDirty() {
+		return dirty.getAndSet(false);
+	}
+
+	@Override
+	public void output(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeByte(TYPES.length);
+		for (HeightMapType type : TYPES) {
+			data.writeUTF(type.name());
+			for (int i = 0; i < COLUMNS; i++) {
+				data.writeInt(heights.get(type.ordinal() * COLUMNS + i));
+			}
+		}
+		data.flush();
+	}
+
+	@Override
+	public void input(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		int types = data.readUnsignedByte();
+		for (int t = 0; t < types; t++) {
+			String name = data.readUTF();
+			HeightMapType type;
+			try {
+				type = HeightMapType.valueOf(name);
+			} catch (IllegalArgumentException e) {
+				type = null;
+			}
+			for (int i = 0; i < COLUMNS; i++) {
+				int height = data.readInt();
+				if (type != null) {
+					heights.set(type.ordinal() * COLUMNS + i, height);
+				}
+			}
+		}
+	}
+
+	private int scan(int x, int y, int z, HeightMapType type, BlockData world) {
+		for (; y >= 0; y--) {
+			BlockMaterial material = world.getBlockMaterial(x, y, z);
+			if (material != null && type.matches(material)) {
+				return y;
+			}
+		}
+		return NO_BLOCK;
+	}
+
+	private int getIndex(int x, int z, HeightMapType type) {
+		return type.ordinal() * COLUMNS + ((x & (Chunk.CHUNK_SIZE - 1)) << Chunk.CHUNK_SIZE_BITS) + (z & (Chunk.CHUNK_SIZE - 1));
+	}
+}
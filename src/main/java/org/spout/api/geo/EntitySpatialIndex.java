@@ -0,0 +1,451 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.geo;
+
+import gnu.trove.procedure.TObjectProcedure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.spout.api.collision.BoundingBox;
+import org.spout.api.entity.Controller;
+import org.spout.api.entity.Entity;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.math.Vector3;
+import org.spout.api.util.map.concurrent.TOptimisticLongObjectHashMap;
+import org.spout.api.util.set.concurrent.AtomicInt21TripleBitSet;
+
+/**
+ * A uniform grid of the entities in a world, with one cell for each chunk.<br>
+ * <br>
+ * The world must call update(...) for every entity whose transform changed,
+ * and remove(...) for every entity which was killed or despawned, while it
+ * copies the snapshot. Queries are made during the tick stages and only look
+ * at the cells which overlap the query, so finding the entities near a point
+ * costs time proportional to the number of entities nearby rather than the
+ * number of entities in the world.<br>
+ * <br>
+ * Query results are passed to a procedure or added to a collection provided
+ * by the caller, so no intermediate sets are created.
+ */
+public class EntitySpatialIndex {
+	private static final int CELL_BITS = Chunk.CHUNK_SIZE_BITS;
+	private final TOptimisticLongObjectHashMap<Cell> cells = new TOptimisticLongObjectHashMap<Cell>();
+	private final ConcurrentHashMap<Entity, Entry> entries = new ConcurrentHashMap<Entity, Entry>();
+
+	/**
+	 * Updates the position of an entity from its snapshot transform. Dead and
+	 * unspawned entities are removed from the index.
+	 *
+	 * @param entity the entity
+	 */
+	public void update(Entity entity) {
+		if (entity.isDead() || !entity.isSpawned()) {
+			remove(entity);
+			return;
+		}
+		update(entity, entity.getTransform().getPosition());
+	}
+
+	/**
+	 * Updates the position of an entity, adding it to the index if it is not
+	 * already indexed
+	 *
+	 * @param entity the entity
+	 * @param position the new position
+	 */
+	public void update(Entity entity, Point position) {
+		update(entity, position.getX(), position.getY(), position.getZ());
+	}
+
+	/**
+	 * Updates the position of an entity, adding it to the index if it is not
+	 * already indexed
+	 *
+	 * @param entity the entity
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 */
+	public void update(Entity entity, float x, float y, float z) {
+		long key = cellKey(x, y, z);
+		while (true) {
+			Entry entry = entries.get(entity);
+			if (entry == null) {
+				Entry newEntry = new Entry(entity);
+				entry = entries.putIfAbsent(entity, newEntry);
+				if (entry == null) {
+					entry = newEntry;
+				}
+			}
+			synchronized (entry) {
+				if (entry.removed) {
+					continue;
+				}
+				entry.x = x;
+				entry.y = y;
+				entry.z = z;
+				Cell cell = entry.cell;
+				if (cell == null || cell.key != key) {
+					if (cell != null) {
+						removeFromCell(entry);
+					}
+					addToCell(key, entry);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes an entity from the index
+	 *
+	 * @param entity the entity
+	 * @return true if the entity was indexed
+	 */
+	public boolean remove(Entity entity) {
+		Entry entry = entries.remove(entity);
+		if (entry == null) {
+			return false;
+		}
+		synchronized (entry) {
+			entry.removed = true;
+			if (entry.cell != null) {
+				removeFromCell(entry);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of entities in the index
+	 *
+	 * @return the number of entities
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Calls the procedure for every entity within a given distance of a point.
+	 * The iteration stops if the procedure returns false.
+	 *
+	 * @param center the center of the sphere
+	 * @param radius the radius of the sphere
+	 * @param type the controller type of the entities, or null for all entities
+	 * @param procedure the procedure
+	 * @return false if the procedure returned false
+	 */
+	public boolean forEachNearby(Point center, float radius, Class<? extends Controller> type, TObjectProcedure<? super Entity> procedure) {
+		float cx = center.getX();
+		float cy = center.getY();
+		float cz = center.getZ();
+		return forEach(cx - radius, cy - radius, cz - radius, cx + radius, cy + radius, cz + radius, cx, cy, cz, radius * radius, type, procedure);
+	}
+
+	/**
+	 * Calls the procedure for every entity inside a box. The iteration stops if
+	 * the procedure returns false.
+	 *
+	 * @param minX the minimum x coordinate
+	 * @param minY the minimum y coordinate
+	 * @param minZ the minimum z coordinate
+	 * @param maxX the maximum x coordinate
+	 * @param maxY the maximum y coordinate
+	 * @param maxZ the maximum z coordinate
+	 * @param type the controller type of the entities, or null for all entities
+	 * @param procedure the procedure
+	 * @return false if the procedure returned false
+	 */
+	public boolean forEachInBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Class<? extends Controller> type, TObjectProcedure<? super Entity> procedure) {
+		return forEach(minX, minY, minZ, maxX, maxY, maxZ, 0, 0, 0, -1, type, procedure);
+	}
+
+	/**
+	 * Adds every entity within a given distance of a point to a collection
+	 *
+	 * @param center the center of the sphere
+	 * @param radius the radius of the sphere
+	 * @param type the controller type of the entities, or null for all entities
+	 * @param out the collection to add the entities to
+	 * @return the collection
+	 */
+	public <C extends Collection<? super Entity>> C getNearby(Point center, float radius, Class<? extends Controller> type, C out) {
+		forEachNearby(center, radius, type, new CollectionAdder(out));
+		return out;
+	}
+
+	/**
+	 * Adds every entity inside a box to a collection
+	 *
+	 * @param box the box
+	 * @param type the controller type of the entities, or null for all entities
+	 * @param out the collection to add the entities to
+	 * @return the collection
+	 */
+	public <C extends Collection<? super Entity>> C getInBox(BoundingBox box, Class<? extends Controller> type, C out) {
+		Vector3 min = box.getMin();
+		Vector3 max = box.getMax();
+		forEachInBox(min.getX(), min.getY(), min.getZ(), max.getX(), max.getY(), max.getZ(), type, new CollectionAdder(out));
+		return out;
+	}
+
+	/**
+	 * Gets the entities closest to a point, nearest first.<br>
+	 * <br>
+	 * The cells are searched in shells around the cell containing the point,
+	 * and the search stops once no unsearched cell could contain an entity
+	 * closer than the furthest one found. If more cells are left to search
+	 * than there are entities in the index, every entity is checked instead.
+	 *
+	 * @param center the point
+	 * @param count the maximum number of entities to return
+	 * @param maxRadius the maximum distance from the point
+	 * @param type the controller type of the entities, or null for all entities
+	 * @return the entities, nearest first
+	 */
+	public List<Entity> getNearest(Point center, int count, float maxRadius, Class<? extends Controller> type) {
+		if (count <= 0) {
+			return Collections.emptyList();
+		}
+		float cx = center.getX();
+		float cy = center.getY();
+		float cz = center.getZ();
+		int cellX = cellCoord(cx);
+		int cellY = cellCoord(cy);
+		int cellZ = cellCoord(cz);
+		float maxDistanceSquared = maxRadius * maxRadius;
+		Entity[] nearest = new Entity[count];
+		float[] distances = new float[count];
+		int found = 0;
+		int maxShell = ((int) Math.ceil(maxRadius) >> CELL_BITS) + 1;
+		double maxSide = 2.0 * maxShell + 1;
+		for (int shell = 0; shell <= maxShell; shell++) {
+			double searchedSide = 2.0 * shell - 1;
+			if (shell > 0 && maxSide * maxSide * maxSide - searchedSide * searchedSide * searchedSide > entries.size()) {
+				// The entities already found are found again by the scan
+				found = 0;
+				for (Entry entry : entries.values()) {
+					found = addNearest(entry, cx, cy, cz, maxDistanceSquared, type, nearest, distances, found);
+				}
+				break;
+			}
+			for (int dx = -shell; dx <= shell; dx++) {
+				boolean edgeX = dx == -shell || dx == shell;
+				for (int dz = -shell; dz <= shell; dz++) {
+					boolean edgeXZ = edgeX || dz == -shell || dz == shell;
+					int step = edgeXZ || shell == 0 ? 1 : shell << 1;
+					for (int dy = -shell; dy <= shell; dy += step) {
+						Cell cell = cells.get(AtomicInt21TripleBitSet.key(cellX + dx, cellY + dy, cellZ + dz));
+						if (cell == null) {
+							continue;
+						}
+						for (Entry entry : cell.entries) {
+							found = addNearest(entry, cx, cy, cz, maxDistanceSquared, type, nearest, distances, found);
+						}
+					}
+				}
+			}
+			float searched = shell << CELL_BITS;
+			if (found == count && distances[found - 1] <= searched * searched) {
+				break;
+			}
+		}
+		List<Entity> list = new ArrayList<Entity>(found);
+		for (int i = 0; i < found; i++) {
+			list.add(nearest[i]);
+		}
+		return list;
+	}
+
+	/**
+	 * Inserts an entity into the sorted nearest entities, if it is close
+	 * enough
+	 *
+	 * @return the new number of entities found
+	 */
+	private static int addNearest(Entry entry, float cx, float cy, float cz, float maxDistanceSquared, Class<? extends Controller> type, Entity[] nearest, float[] distances, int found) {
+		int count = nearest.length;
+		float distance = distanceSquared(entry, cx, cy, cz);
+		if (distance > maxDistanceSquared || (found == count && distance >= distances[found - 1])) {
+			return found;
+		}
+		if (!matches(entry.entity, type)) {
+			return found;
+		}
+		int i = found == count ? found - 1 : found++;
+		while (i > 0 && distances[i - 1] > distance) {
+			nearest[i] = nearest[i - 1];
+			distances[i] = distances[i - 1];
+			i--;
+		}
+		nearest[i] = entry.entity;
+		distances[i] = distance;
+		return found;
+	}
+
+	private boolean forEach(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float cx, float cy, float cz, float radiusSquared, Class<? extends Controller> type, TObjectProcedure<? super Entity> procedure) {
+		int minCellX = cellCoord(minX);
+		int minCellY = cellCoord(minY);
+		int minCellZ = cellCoord(minZ);
+		int maxCellX = cellCoord(maxX);
+		int maxCellY = cellCoord(maxY);
+		int maxCellZ = cellCoord(maxZ);
+		long volume = (long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) * (maxCellZ - minCellZ + 1);
+		if (volume > entries.size()) {
+			for (Entry entry : entries.values()) {
+				if (!visit(entry, minX, minY, minZ, maxX, maxY, maxZ, cx, cy, cz, radiusSquared, type, procedure)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		for (int x = minCellX; x <= maxCellX; x++) {
+			for (int y = minCellY; y <= maxCellY; y++) {
+				for (int z = minCellZ; z <= maxCellZ; z++) {
+					Cell cell = cells.get(AtomicInt21TripleBitSet.key(x, y, z));
+					if (cell == null) {
+						continue;
+					}
+					for (Entry entry : cell.entries) {
+						if (!visit(entry, minX, minY, minZ, maxX, maxY, maxZ, cx, cy, cz, radiusSquared, type, procedure)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean visit(Entry entry, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float cx, float cy, float cz, float radiusSquared, Class<? extends Controller> type, TObjectProcedure<? super Entity> procedure) {
+		float x = entry.x;
+		float y = entry.y;
+		float z = entry.z;
+		if (x < minX || y < minY || z < minZ || x > maxX || y > maxY || z > maxZ) {
+			return true;
+		}
+		if (radiusSquared >= 0 && distanceSquared(entry, cx, cy, cz) > radiusSquared) {
+			return true;
+		}
+		if (!matches(entry.entity, type)) {
+			return true;
+		}
+		return procedure.execute(entry.entity);
+	}
+
+	private void addToCell(long key, Entry entry) {
+		while (true) {
+			Cell cell = cells.get(key);
+			if (cell == null) {
+				Cell newCell = new Cell(key);
+				cell = cells.putIfAbsent(key, newCell);
+				if (cell == null) {
+					cell = newCell;
+				}
+			}
+			synchronized (cell) {
+				if (!cell.dead) {
+					cell.entries.add(entry);
+					entry.cell = cell;
+					return;
+				}
+			}
+		}
+	}
+
+	private void removeFromCell(Entry entry) {
+		Cell cell = entry.cell;
+		synchronized (cell) {
+			cell.entries.remove(entry);
+			if (cell.entries.isEmpty()) {
+				cell.dead = true;
+				cells.remove(cell.key, cell);
+			}
+		}
+		entry.cell = null;
+	}
+
+	private static boolean matches(Entity entity, Class<? extends Controller> type) {
+		return type == null || entity.is(type);
+	}
+
+	private static float distanceSquared(Entry entry, float x, float y, float z) {
+		float dx = entry.x - x;
+		float dy = entry.y - y;
+		float dz = entry.z - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private static int cellCoord(float coord) {
+		return (int) Math.floor(coord) >> CELL_BITS;
+	}
+
+	private static long cellKey(float x, float y, float z) {
+		return AtomicInt21TripleBitSet.key(cellCoord(x), cellCoord(y), cellCoord(z));
+	}
+
+	private static class Entry {
+		private final Entity entity;
+		private volatile float x;
+		private volatile float y;
+		private volatile float z;
+		private volatile Cell cell;
+		private boolean removed;
+
+		public Entry(Entity entity) {
+			this.entity = entity;
+		}
+	}
+
+	private static class Cell {
+		private final long key;
+		private final Set<Entry> entries = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+		private boolean dead;
+
+		public Cell(long key) {
+			this.key = key;
+		}
+	}
+
+	private static class CollectionAdder implements TObjectProcedure<Entity> {
+		private final Collection<? super Entity> collection;
+
+		public CollectionAdder(Collection<? super Entity> collection) {
+			this.collection = collection;
+		}
+
+		public boolean execute(Entity entity) {
+			collection.add(entity);
+			return true;
+		}
+	}
+}
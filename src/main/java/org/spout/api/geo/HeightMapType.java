@@ -0,0 +1,71 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.geo;
+
+import org.spout.api.collision.model.CollisionStrategy;
+import org.spout.api.material.BlockMaterial;
+
+/**
+ * The kinds of block tracked by a ColumnHeightMap
+ */
+public enum HeightMapType {
+	/**
+	 * The highest opaque block, which is the highest block that blocks sky
+	 * light
+	 */
+	OPAQUE {
+		@Override
+		public boolean matches(BlockMaterial material) {
+			return material.isOpaque();
+		}
+	},
+	/**
+	 * The highest block which is not air
+	 */
+	NON_AIR {
+		@Override
+		public boolean matches(BlockMaterial material) {
+			return material.getId() != 0;
+		}
+	},
+	/**
+	 * The highest block which is not air and has a solid collision volume
+	 */
+	MOTION_BLOCKING {
+		@Override
+		public boolean matches(BlockMaterial material) {
+			return material.getId() != 0 && material.getCollisionStrategy() == CollisionStrategy.SOLID;
+		}
+	};
+
+	/**
+	 * Gets if a block counts as the top of a column for this kind of height
+	 *
+	 * @param material the material of the block
+	 * @return true if the material matches
+	 */
+	public abstract boolean matches(BlockMaterial material);
+}
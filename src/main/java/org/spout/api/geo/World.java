@@ -25,12 +25,14 @@
  */
 package org.spout.api.geo;
 
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
 import org.spout.api.Game;
 import org.spout.api.Source;
 import org.spout.api.entity.Controller;
+import org.spout.api.entity.ControllerTypeIndex;
 import org.spout.api.entity.Entity;
 import org.spout.api.generator.WorldGenerator;
 import org.spout.api.geo.cuboid.Block;
@@ -249,7 +251,33 @@ public interface World extends Source, BlockAccess {
 	public int getHeight();
 
 	/**
-	 * Gets all entities with the specified type.
+	 * Gets the y coordinate of the highest block of the given kind in the
+	 * column at (x, z). This is read from the world's heightmap, which is
+	 * updated on every block write.
+	 *
+	 * @param x the x coordinate
+	 * @param z the z coordinate
+	 * @param type the kind of block
+	 * @return the height, or ColumnHeightMap.NO_BLOCK if the column has no
+	 *         matching blocks
+	 */
+	@LiveRead
+	public int getSurfaceHeight(int x, int z, HeightMapType type);
+
+	/**
+	 * Gets the heightmap for the column of chunks at (x, z).
+	 *
+	 * @param x the chunk x coordinate
+	 * @param z the chunk z coordinate
+	 * @return the heightmap, or null if no chunks in the column are loaded
+	 */
+	@LiveRead
+	public ColumnHeightMap getHeightMap(int x, int z);
+
+	/**
+	 * Gets all entities with the specified type. The entities are read from
+	 * the controller index, so this takes time proportional to the number of
+	 * matching entities.
 	 *
 	 * @param type The {@link Class} for the type.
 	 * @param <T> The type of entity.
@@ -266,6 +294,47 @@ public interface World extends Source, BlockAccess {
 	@SnapshotRead
 	public Set<Entity> getAll();
 
+	/**
+	 * Gets the index from controller types to the entities in this world. The
+	 * index is updated when the snapshot is copied.
+	 *
+	 * @return the index
+	 */
+	@SnapshotRead
+	public ControllerTypeIndex getControllerIndex();
+
+	/**
+	 * Gets the spatial index of the entities in this world. The index is
+	 * updated when the snapshot is copied.
+	 *
+	 * @return the index
+	 */
+	@SnapshotRead
+	public EntitySpatialIndex getEntityIndex();
+
+	/**
+	 * Gets all entities within a given distance of a point. This is the same
+	 * as getEntityIndex().getNearby(position, radius, null, list).
+	 *
+	 * @param position the point
+	 * @param radius the distance in blocks
+	 * @return a list of the entities
+	 */
+	@SnapshotRead
+	public List<Entity> getNearbyEntities(Point position, float radius);
+
+	/**
+	 * Gets all entities with the specified type within a given distance of a
+	 * point.
+	 *
+	 * @param position the point
+	 * @param radius the distance in blocks
+	 * @param type The {@link Class} for the type.
+	 * @return a list of the entities
+	 */
+	@SnapshotRead
+	public List<Entity> getNearbyEntities(Point position, float radius, Class<? extends Controller> type);
+
 	public Set<Player> getPlayers();
 
 	Chunk getChunkFromBlock(int x, int y, int z);
@@ -113,6 +113,14 @@ public abstract class Chunk extends Cube implements BlockAccess {
 	@DelayedWrite
 	public abstract boolean removeObserver(Player player);
 
+	/**
+	 * Gets the number of players observing the chunk
+	 *
+	 * @return the number of observers
+	 */
+	@LiveRead
+	public abstract int getNumObservers();
+
 	/**
 	 * Gets the region that this chunk is located in
 	 *
@@ -0,0 +1,67 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.geo.cuboid;
+
+import org.spout.api.util.map.concurrent.TSyncLongObjectCache;
+
+/**
+ * The pin policy and eviction listener for a {@link TSyncLongObjectCache} of
+ * loaded chunks.<br>
+ * <br>
+ * Chunks which are observed by players, or which contain entities, are
+ * pinned. Evicted chunks are unloaded, and saved if requested.
+ */
+public class ChunkCachePolicy implements TSyncLongObjectCache.PinPolicy<Chunk>, TSyncLongObjectCache.EvictionListener<Chunk> {
+	private final boolean save;
+
+	/**
+	 * Creates a chunk cache policy which saves evicted chunks
+	 */
+	public ChunkCachePolicy() {
+		this(true);
+	}
+
+	/**
+	 * Creates a chunk cache policy
+	 *
+	 * @param save whether evicted chunks should be saved
+	 */
+	public ChunkCachePolicy(boolean save) {
+		this.save = save;
+	}
+
+	@Override
+	public boolean isPinned(long key, Chunk chunk) {
+		return chunk.getNumObservers() > 0 || !chunk.getLiveEntities().isEmpty();
+	}
+
+	@Override
+	public void evicted(long key, Chunk chunk) {
+		if (!chunk.isUnloaded()) {
+			chunk.unload(save);
+		}
+	}
+}
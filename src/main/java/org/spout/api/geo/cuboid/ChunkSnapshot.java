@@ -48,6 +48,33 @@ public abstract class ChunkSnapshot extends Cube implements BlockData {
 
 	public abstract short[] getBlockData();
 
+	/**
+	 * Gets the id of every block in the snapshot, if all the blocks in the
+	 * snapshot have the same id and no data.<br>
+	 * <br>
+	 * Snapshots of uniform chunks, such as empty sky, can return the id here
+	 * and create the id and data arrays only if they are requested.
+	 *
+	 * @return the block id, or -1 if the snapshot is not uniform
+	 */
+	public int getUniformBlockId() {
+		return -1;
+	}
+
+	/**
+	 * Gets the version of the chunk when the snapshot was taken.<br>
+	 * <br>
+	 * Two snapshots of the same chunk with the same version contain the same
+	 * blocks, so observers can skip chunks which have not changed. Snapshots
+	 * which share their block arrays with earlier snapshots, such as those
+	 * created from a BlockStoreSnapshot, should return the store version.
+	 *
+	 * @return the version, or -1 if the snapshot is not versioned
+	 */
+	public int getVersion() {
+		return -1;
+	}
+
 	/**
 	 * Gets the region that this chunk is located in
 	 *
@@ -28,6 +28,7 @@ package org.spout.api.geo.cuboid;
 import java.util.Collection;
 
 import org.spout.api.entity.Controller;
+import org.spout.api.entity.ControllerTypeIndex;
 import org.spout.api.entity.Entity;
 import org.spout.api.geo.World;
 import org.spout.api.geo.discrete.Point;
@@ -129,7 +130,9 @@ public abstract class Region extends Cube {
 	public abstract void unload(boolean save);
 
 	/**
-	 * Gets all entities with the specified type.
+	 * Gets all entities with the specified type. The entities are read from
+	 * the controller index, so this takes time proportional to the number of
+	 * matching entities.
 	 *
 	 * @param type The {@link Class} for the type.
 	 * @param <T> The type of entity.
@@ -138,6 +141,15 @@ public abstract class Region extends Cube {
 	@SnapshotRead
 	public abstract Collection<Entity> getAll(Class<? extends Controller> type);
 
+	/**
+	 * Gets the index from controller types to the entities in this region. The
+	 * index is updated when the snapshot is copied.
+	 *
+	 * @return the index
+	 */
+	@SnapshotRead
+	public abstract ControllerTypeIndex getControllerIndex();
+
 	/**
 	 * Gets all entities.
 	 *
@@ -0,0 +1,66 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.lighting;
+
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.util.map.concurrent.AtomicLightStore;
+
+/**
+ * The view of a world used by a LightEngine.<br>
+ * <br>
+ * All coordinates are world coordinates, and the methods may be called from
+ * the lighting thread while the world is being updated.
+ */
+public interface LightAccess {
+	/**
+	 * Gets the material of the block at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the material, or null if the block is not loaded
+	 */
+	public BlockMaterial getBlockMaterial(int x, int y, int z);
+
+	/**
+	 * Gets the light store for the chunk at (x, y, z). The store must use
+	 * Chunk.CHUNK_SIZE_BITS as its shift.
+	 *
+	 * @param x the chunk x coordinate
+	 * @param y the chunk y coordinate
+	 * @param z the chunk z coordinate
+	 * @return the light store, or null if the chunk is not loaded
+	 */
+	public AtomicLightStore getLightStore(int x, int y, int z);
+
+	/**
+	 * Gets the height of the world in blocks. Blocks at or above this height
+	 * receive full sky light.
+	 *
+	 * @return the height of the world
+	 */
+	public int getHeight();
+}
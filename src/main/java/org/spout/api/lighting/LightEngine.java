@@ -0,0 +1,393 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.lighting;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.util.map.concurrent.AtomicLightStore;
+
+/**
+ * Incrementally propagates block light and sky light through a world.<br>
+ * <br>
+ * Block changes and chunk loads are queued from any thread, and are processed
+ * in batches, normally once per tick on a thread other than the main thread.
+ * Processing uses a breadth first search, which first removes the light which
+ * came from changed blocks, and then spreads light back into the removed
+ * volume, so the cost of an update is proportional to the volume whose light
+ * changes.<br>
+ * <br>
+ * Light spreads to adjacent non-opaque blocks, losing one level per block,
+ * except that full sky light spreads straight down without any loss. Light
+ * crosses chunk and region boundaries, but not into chunks which are not
+ * loaded.<br>
+ * <br>
+ * The world should call blockChanged(...) whenever a setBlock* call changes a
+ * block, and chunkLoaded(...) whenever a chunk is loaded.
+ */
+public class LightEngine {
+	/**
+	 * The maximum light level
+	 */
+	public static final int MAX_LIGHT = 15;
+	private static final int CHUNK_MASK = Chunk.CHUNK_SIZE - 1;
+	private static final int[] DX = {1, -1, 0, 0, 0, 0};
+	private static final int[] DY = {0, 0, 1, -1, 0, 0};
+	private static final int[] DZ = {0, 0, 0, 0, 1, -1};
+	private static final int DOWN = 3;
+	private final LightAccess access;
+	private final Object pendingLock = new Object();
+	private LightQueue pendingBlocks = new LightQueue();
+	private LightQueue pendingChunks = new LightQueue();
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final AtomicBoolean processing = new AtomicBoolean(false);
+	private final Runnable task = new Runnable() {
+		public void run() {
+			try {
+				processUpdates();
+			} finally {
+				scheduled.set(false);
+			}
+		}
+	};
+	// The remaining fields are only used by the processing thread
+	private LightQueue blocks = new LightQueue();
+	private LightQueue chunks = new LightQueue();
+	private final Channel blockChannel = new Channel(false);
+	private final Channel skyChannel = new Channel(true);
+	private AtomicLightStore lastStore = null;
+	private int lastChunkX;
+	private int lastChunkY;
+	private int lastChunkZ;
+	private int height;
+	private int updates;
+
+	/**
+	 * Creates a light engine for a world
+	 *
+	 * @param access the view of the world
+	 */
+	public LightEngine(LightAccess access) {
+		this.access = access;
+	}
+
+	/**
+	 * Queues a light update for a block which has changed. This method is
+	 * thread safe.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 */
+	public void blockChanged(int x, int y, int z) {
+		synchronized (pendingLock) {
+			pendingBlocks.add(x, y, z, 0);
+		}
+	}
+
+	/**
+	 * Queues a light update for a chunk which has been loaded. This spreads
+	 * light from the chunk's light sources and from adjacent chunks into the
+	 * chunk. This method is thread safe.
+	 *
+	 * @param x the chunk x coordinate
+	 * @param y the chunk y coordinate
+	 * @param z the chunk z coordinate
+	 */
+	public void chunkLoaded(int x, int y, int z) {
+		synchronized (pendingLock) {
+			pendingChunks.add(x, y, z, 0);
+		}
+	}
+
+	/**
+	 * Gets if there are queued updates which have not been processed
+	 *
+	 * @return true if there are pending updates
+	 */
+	public boolean hasPendingUpdates() {
+		synchronized (pendingLock) {
+			return !pendingBlocks.isEmpty() || !pendingChunks.isEmpty();
+		}
+	}
+
+	/**
+	 * Submits a task to process the queued updates, unless a task is already
+	 * queued or running, or there are no queued updates.<br>
+	 * <br>
+	 * This should be called once per tick, so updates made during the tick
+	 * are processed as a single batch.
+	 *
+	 * @param executor the executor to run the task
+	 * @return true if a task was submitted
+	 */
+	public boolean schedule(Executor executor) {
+		if (!hasPendingUpdates() || !scheduled.compareAndSet(false, true)) {
+			return false;
+		}
+		try {
+			executor.execute(task);
+		} catch (RuntimeException e) {
+			scheduled.set(false);
+			throw e;
+		}
+		return true;
+	}
+
+	/**
+	 * Processes all the queued updates in the current thread.<br>
+	 * <br>
+	 * If another thread is processing updates, this method returns
+	 * immediately.
+	 *
+	 * @return the number of light levels which were changed
+	 */
+	public int processUpdates() {
+		if (!processing.compareAndSet(false, true)) {
+			return 0;
+		}
+		try {
+			updates = 0;
+			height = access.getHeight();
+			lastStore = null;
+			while (true) {
+				synchronized (pendingLock) {
+					if (pendingBlocks.isEmpty() && pendingChunks.isEmpty()) {
+						break;
+					}
+					LightQueue swap = blocks;
+					blocks = pendingBlocks;
+					pendingBlocks = swap;
+					swap = chunks;
+					chunks = pendingChunks;
+					pendingChunks = swap;
+				}
+				process(blockChannel);
+				process(skyChannel);
+				blocks.clear();
+				chunks.clear();
+			}
+			return updates;
+		} finally {
+			lastStore = null;
+			processing.set(false);
+		}
+	}
+
+	private void process(Channel channel) {
+		LightQueue removal = channel.removal;
+		LightQueue increase = channel.increase;
+		// The pending queues are read by index, since both channels use them
+		int changed = blocks.size();
+		for (int i = 0; i < changed; i++) {
+			int x = blocks.getX(i);
+			int y = blocks.getY(i);
+			int z = blocks.getZ(i);
+			int old = getLight(channel, x, y, z);
+			if (old > 0) {
+				setLight(channel, x, y, z, 0);
+				removal.add(x, y, z, old);
+			}
+		}
+		while (!removal.isEmpty()) {
+			removal.poll();
+			int x = removal.getX();
+			int y = removal.getY();
+			int z = removal.getZ();
+			int level = removal.getLevel();
+			for (int d = 0; d < 6; d++) {
+				int nx = x + DX[d];
+				int ny = y + DY[d];
+				int nz = z + DZ[d];
+				int neighbor = getLight(channel, nx, ny, nz);
+				if (neighbor == 0) {
+					continue;
+				}
+				if (ny < height && (neighbor < level || (channel.sky && d == DOWN && level == MAX_LIGHT && neighbor == MAX_LIGHT))) {
+					setLight(channel, nx, ny, nz, 0);
+					removal.add(nx, ny, nz, neighbor);
+					if (!channel.sky) {
+						seedEmission(nx, ny, nz);
+					}
+				} else {
+					increase.add(nx, ny, nz, 0);
+				}
+			}
+		}
+		for (int i = 0; i < changed; i++) {
+			int x = blocks.getX(i);
+			int y = blocks.getY(i);
+			int z = blocks.getZ(i);
+			if (!channel.sky) {
+				seedEmission(x, y, z);
+			}
+			increase.add(x, y, z, 0);
+			for (int d = 0; d < 6; d++) {
+				increase.add(x + DX[d], y + DY[d], z + DZ[d], 0);
+			}
+		}
+		for (int i = 0; i < chunks.size(); i++) {
+			seedChunk(channel, chunks.getX(i), chunks.getY(i), chunks.getZ(i));
+		}
+		while (!increase.isEmpty()) {
+			increase.poll();
+			int x = increase.getX();
+			int y = increase.getY();
+			int z = increase.getZ();
+			int level = getLight(channel, x, y, z);
+			if (level <= 1) {
+				continue;
+			}
+			for (int d = 0; d < 6; d++) {
+				int nx = x + DX[d];
+				int ny = y + DY[d];
+				int nz = z + DZ[d];
+				if (ny >= height) {
+					continue;
+				}
+				BlockMaterial material = access.getBlockMaterial(nx, ny, nz);
+				if (material == null || material.isOpaque()) {
+					continue;
+				}
+				int newLevel = channel.sky && d == DOWN && level == MAX_LIGHT ? MAX_LIGHT : level - 1;
+				if (newLevel > getLight(channel, nx, ny, nz)) {
+					setLight(channel, nx, ny, nz, newLevel);
+					increase.add(nx, ny, nz, 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the block light at (x, y, z) to the light emitted by the block, if
+	 * it is brighter, and queues it for spreading
+	 */
+	private void seedEmission(int x, int y, int z) {
+		BlockMaterial material = access.getBlockMaterial(x, y, z);
+		if (material == null) {
+			return;
+		}
+		int emission = Math.min(MAX_LIGHT, material.getLightLevel());
+		if (emission > getLight(blockChannel, x, y, z)) {
+			setLight(blockChannel, x, y, z, emission);
+			blockChannel.increase.add(x, y, z, 0);
+		}
+	}
+
+	/**
+	 * Queues the blocks needed to light a newly loaded chunk. These are the
+	 * chunk's light sources, the blocks on its faces and the adjacent blocks
+	 * in neighboring chunks.
+	 */
+	private void seedChunk(Channel channel, int chunkX, int chunkY, int chunkZ) {
+		if (access.getLightStore(chunkX, chunkY, chunkZ) == null) {
+			return;
+		}
+		int bx = chunkX << Chunk.CHUNK_SIZE_BITS;
+		int by = chunkY << Chunk.CHUNK_SIZE_BITS;
+		int bz = chunkZ << Chunk.CHUNK_SIZE_BITS;
+		LightQueue increase = channel.increase;
+		for (int x = -1; x <= Chunk.CHUNK_SIZE; x++) {
+			for (int z = -1; z <= Chunk.CHUNK_SIZE; z++) {
+				for (int y = -1; y <= Chunk.CHUNK_SIZE; y++) {
+					int outside = isOutside(x) + isOutside(y) + isOutside(z);
+					if (outside == 0) {
+						if (!channel.sky) {
+							seedEmission(bx + x, by + y, bz + z);
+						}
+						if (x == 0 || y == 0 || z == 0 || x == CHUNK_MASK || y == CHUNK_MASK || z == CHUNK_MASK) {
+							increase.add(bx + x, by + y, bz + z, 0);
+						}
+					} else if (outside == 1) {
+						// Only the blocks sharing a face with the chunk are adjacent
+						increase.add(bx + x, by + y, bz + z, 0);
+					}
+				}
+			}
+		}
+	}
+
+	private static int isOutside(int coord) {
+		return coord < 0 || coord > CHUNK_MASK ? 1 : 0;
+	}
+
+	private int getLight(Channel channel, int x, int y, int z) {
+		if (y >= height) {
+			return channel.sky ? MAX_LIGHT : 0;
+		}
+		AtomicLightStore store = getStore(x, y, z);
+		if (store == null) {
+			return 0;
+		}
+		if (channel.sky) {
+			return store.getSkyLight(x & CHUNK_MASK, y & CHUNK_MASK, z & CHUNK_MASK);
+		} else {
+			return store.getBlockLight(x & CHUNK_MASK, y & CHUNK_MASK, z & CHUNK_MASK);
+		}
+	}
+
+	private void setLight(Channel channel, int x, int y, int z, int level) {
+		AtomicLightStore store = getStore(x, y, z);
+		if (store == null) {
+			return;
+		}
+		byte old;
+		if (channel.sky) {
+			old = store.setSkyLight(x & CHUNK_MASK, y & CHUNK_MASK, z & CHUNK_MASK, (byte) level);
+		} else {
+			old = store.setBlockLight(x & CHUNK_MASK, y & CHUNK_MASK, z & CHUNK_MASK, (byte) level);
+		}
+		if (old != level) {
+			updates++;
+		}
+	}
+
+	private AtomicLightStore getStore(int x, int y, int z) {
+		int chunkX = x >> Chunk.CHUNK_SIZE_BITS;
+		int chunkY = y >> Chunk.CHUNK_SIZE_BITS;
+		int chunkZ = z >> Chunk.CHUNK_SIZE_BITS;
+		// Consecutive lookups are usually in the same chunk
+		if (lastStore == null || chunkX != lastChunkX || chunkY != lastChunkY || chunkZ != lastChunkZ) {
+			lastStore = access.getLightStore(chunkX, chunkY, chunkZ);
+			lastChunkX = chunkX;
+			lastChunkY = chunkY;
+			lastChunkZ = chunkZ;
+		}
+		return lastStore;
+	}
+
+	private static class Channel {
+		private final boolean sky;
+		private final LightQueue removal = new LightQueue();
+		private final LightQueue increase = new LightQueue();
+
+		public Channel(boolean sky) {
+			this.sky = sky;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.lighting;
+
+import java.util.Arrays;
+
+/**
+ * A growable FIFO queue of block positions, each with a light level
+ */
+class LightQueue {
+	private static final int STRIDE = 4;
+	private int[] entries = new int[64 * STRIDE];
+	private int head = 0;
+	private int tail = 0;
+	private int x;
+	private int y;
+	private int z;
+	private int level;
+
+	public void add(int x, int y, int z, int level) {
+		if (tail == entries.length) {
+			if (head > 0) {
+				System.arraycopy(entries, head, entries, 0, tail - head);
+				tail -= head;
+				head = 0;
+			}
+			if (tail > entries.length >> 1) {
+				entries = Arrays.copyOf(entries, entries.length << 1);
+			}
+		}
+		entries[tail] = x;
+		entries[tail + 1] = y;
+		entries[tail + 2] = z;
+		entries[tail + 3] = level;
+		tail += STRIDE;
+	}
+
+	public boolean isEmpty() {
+		return head == tail;
+	}
+
+	public int size() {
+		return (tail - head) / STRIDE;
+	}
+
+	/**
+	 * Moves to the next entry in the queue, which can then be read using
+	 * getX(), getY(), getZ() and getLevel()
+	 */
+	public void poll() {
+		if (head == tail) {
+			throw new IllegalStateException("Queue is empty");
+		}
+		x = entries[head];
+		y = entries[head + 1];
+		z = entries[head + 2];
+		level = entries[head + 3];
+		head += STRIDE;
+		if (head == tail) {
+			head = 0;
+			tail = 0;
+		}
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getZ() {
+		return z;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public int getX(int i) {
+		return entries[head + i * STRIDE];
+	}
+
+	public int getY(int i) {
+		return entries[head + i * STRIDE + 1];
+	}
+
+	public int getZ(int i) {
+		return entries[head + i * STRIDE + 2];
+	}
+
+	public void clear() {
+		head = 0;
+		tail = 0;
+	}
+}
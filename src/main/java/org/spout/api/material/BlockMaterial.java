@@ -25,6 +25,7 @@
  */
 package org.spout.api.material;
 
+import org.spout.api.collision.model.CollisionStrategy;
 import org.spout.api.geo.World;
 
 public interface BlockMaterial extends ItemMaterial {
@@ -46,6 +47,16 @@ public interface BlockMaterial extends ItemMaterial {
 
 	public BlockMaterial setLightLevel(int level);
 
+	/**
+	 * Gets how entities collide with the material. Only solid materials block
+	 * motion.
+	 *
+	 * @return the collision strategy
+	 */
+	public CollisionStrategy getCollisionStrategy();
+
+	public BlockMaterial setCollisionStrategy(CollisionStrategy strategy);
+
 	/**
 	 * True if this block requires physic updates when a neighbor block changes,
 	 * false if not.
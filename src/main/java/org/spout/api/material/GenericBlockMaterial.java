@@ -25,6 +25,7 @@
  */
 package org.spout.api.material;
 
+import org.spout.api.collision.model.CollisionStrategy;
 import org.spout.api.geo.World;
 
 public class GenericBlockMaterial extends GenericItemMaterial implements BlockMaterial {
@@ -32,6 +33,7 @@ public class GenericBlockMaterial extends GenericItemMaterial implements BlockMa
 	private float friction = 0F;
 	private boolean opaque = true;
 	private int lightLevel = 0;
+	private CollisionStrategy collisionStrategy = CollisionStrategy.SOLID;
 
 	private GenericBlockMaterial(String name, int id, int data, boolean subtypes) {
 		super(name, id, data, subtypes);
@@ -81,6 +83,15 @@ public class GenericBlockMaterial extends GenericItemMaterial implements BlockMa
 		return this;
 	}
 
+	public CollisionStrategy getCollisionStrategy() {
+		return collisionStrategy;
+	}
+
+	public BlockMaterial setCollisionStrategy(CollisionStrategy strategy) {
+		collisionStrategy = strategy;
+		return this;
+	}
+
 	public void onWorldRender() {
 		// TODO Auto-generated method stub
 	}
@@ -56,6 +56,9 @@ public class PermissionsGroup implements PermissionsSubject, DataSubject {
 	}
 
 	public boolean hasPermission(World world, String node) {
+		if (!manager.hasListeners(PermissionNodeEvent.class)) {
+			return false;
+		}
 		PermissionNodeEvent event = manager.callEvent(new PermissionNodeEvent(world, this, node));
 		if (event.getResult() == Result.DEFAULT) {
 			return false;
@@ -65,11 +68,17 @@ public class PermissionsGroup implements PermissionsSubject, DataSubject {
 	}
 
 	public boolean isInGroup(String group) {
+		if (!manager.hasListeners(PermissionGroupEvent.class)) {
+			return false;
+		}
 		PermissionGroupEvent event = manager.callEvent(new PermissionGroupEvent(null, this, group));
 		return event.getResult();
 	}
 
 	public String[] getGroups() {
+		if (!manager.hasListeners(PermissionGetGroupsEvent.class)) {
+			return null;
+		}
 		PermissionGetGroupsEvent event = manager.callEvent(new PermissionGetGroupsEvent(null, this));
 		return event.getGroups();
 	}
@@ -91,6 +100,9 @@ public class PermissionsGroup implements PermissionsSubject, DataSubject {
 	}
 
 	public Object getData(World world, String node, Object defaultValue) {
+		if (!manager.hasListeners(RetrieveObjectDataEvent.class)) {
+			return defaultValue;
+		}
 		RetrieveObjectDataEvent event = manager.callEvent(new RetrieveObjectDataEvent(world, this, node));
 		Object res = event.getResult();
 		if (res == null) {
@@ -112,6 +124,9 @@ public class PermissionsGroup implements PermissionsSubject, DataSubject {
 	}
 
 	public int getInt(World world, String node, int defaultValue) {
+		if (!manager.hasListeners(RetrieveIntDataEvent.class)) {
+			return defaultValue;
+		}
 		RetrieveIntDataEvent event = manager.callEvent(new RetrieveIntDataEvent(world, this, node));
 		int res = event.getResult();
 		if (res == RetrieveIntDataEvent.DEFAULT_VALUE) {
@@ -133,6 +148,9 @@ public class PermissionsGroup implements PermissionsSubject, DataSubject {
 	}
 
 	public String getString(World world, String node, String defaultValue) {
+		if (!manager.hasListeners(RetrieveStringDataEvent.class)) {
+			return defaultValue;
+		}
 		RetrieveStringDataEvent event = manager.callEvent(new RetrieveStringDataEvent(world, this, node));
 		String res = event.getResult();
 		if (res == null) {
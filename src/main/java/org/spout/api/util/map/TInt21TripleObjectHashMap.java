@@ -30,6 +30,8 @@ import java.util.Collection;
 import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.procedure.TLongObjectProcedure;
+import gnu.trove.procedure.TObjectProcedure;
 import gnu.trove.set.TLongSet;
 
 /**
@@ -52,17 +54,17 @@ public class TInt21TripleObjectHashMap<K> {
 	}
 
 	public K put(int key1, int key2, int key3, K value) {
-		long key = key(key1, key2, key3);
+		long key = toKey(key1, key2, key3);
 		return map.put(key, value);
 	}
 
 	public K get(int key1, int key2, int key3) {
-		long key = key(key1, key2, key3);
+		long key = toKey(key1, key2, key3);
 		return map.get(key);
 	}
 
 	public boolean containsKey(int key1, int key2, int key3) {
-		long key = key(key1, key2, key3);
+		long key = toKey(key1, key2, key3);
 		return map.containsKey(key);
 	}
 
@@ -91,7 +93,7 @@ public class TInt21TripleObjectHashMap<K> {
 	}
 
 	public K remove(int key1, int key2, int key3) {
-		long key = key(key1, key2, key3);
+		long key = toKey(key1, key2, key3);
 		return map.remove(key);
 	}
 
@@ -107,10 +109,106 @@ public class TInt21TripleObjectHashMap<K> {
 		return map.values();
 	}
 
+	/**
+	 * Executes the procedure for each value whose key is inside the box from
+	 * (minX, minY, minZ) to (maxX, maxY, maxZ), inclusive.<br>
+	 * <br>
+	 * If the box contains fewer positions than the map has entries, each
+	 * position in the box is looked up. Otherwise, the entries of the map are
+	 * scanned in place with forEachEntry, without copying the keys. The
+	 * synchronised maps lock each sub-map during the scan, so the procedure
+	 * must not write to the map. The order of the values is undefined.
+	 *
+	 * @param minX the minimum x coordinate
+	 * @param minY the minimum y coordinate
+	 * @param minZ the minimum z coordinate
+	 * @param maxX the maximum x coordinate
+	 * @param maxY the maximum y coordinate
+	 * @param maxZ the maximum z coordinate
+	 * @param procedure the procedure to execute
+	 * @return false if the procedure returned false for any value
+	 */
+	public boolean forEachInBox(final int minX, final int minY, final int minZ, final int maxX, final int maxY, final int maxZ, final TObjectProcedure<? super K> procedure) {
+		if (minX > maxX || minY > maxY || minZ > maxZ) {
+			return true;
+		}
+		long volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+		if (volume <= map.size()) {
+			for (int x = minX; x <= maxX; x++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					for (int y = minY; y <= maxY; y++) {
+						K value = map.get(toKey(x, y, z));
+						if (value != null && !procedure.execute(value)) {
+							return false;
+						}
+					}
+				}
+			}
+		} else {
+			return map.forEachEntry(new TLongObjectProcedure<K>() {
+				@Override
+				public boolean execute(long key, K value) {
+					int x = getKeyX(key);
+					int y = getKeyY(key);
+					int z = getKeyZ(key);
+					if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+						return true;
+					}
+					return value == null || procedure.execute(value);
+				}
+			});
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the x coordinate from a key returned by keys() or iterator()
+	 *
+	 * @param key the key
+	 * @return the x coordinate
+	 */
+	public int getKeyX(long key) {
+		return (int) (key >>> 42) << 11 >> 11;
+	}
+
+	/**
+	 * Gets the y coordinate from a key returned by keys() or iterator()
+	 *
+	 * @param key the key
+	 * @return the y coordinate
+	 */
+	public int getKeyY(long key) {
+		return (int) key << 11 >> 11;
+	}
+
+	/**
+	 * Gets the z coordinate from a key returned by keys() or iterator()
+	 *
+	 * @param key the key
+	 * @return the z coordinate
+	 */
+	public int getKeyZ(long key) {
+		return (int) (key >>> 21) << 11 >> 11;
+	}
+
 	protected TLongObjectMap<K> getInternalMap() {
 		return map;
 	}
 
+	/**
+	 * Converts a set of coordinates to the key used in the backing map.
+	 * Subclasses may override this, and the getKey methods, to use a
+	 * different key layout.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the key
+	 */
+	protected long toKey(int x, int y, int z) {
+		return key(x, y, z);
+	}
+
 	protected static final long key(int x, int y, int z) {
 		return ((long) x & 0x1FFFFF) << 42 | ((long) z & 0x1FFFFF) << 21 | (long) y & 0x1FFFFF;
 	}
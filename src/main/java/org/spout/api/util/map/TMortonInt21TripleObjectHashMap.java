@@ -0,0 +1,145 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map;
+
+import gnu.trove.map.TLongObjectMap;
+
+/**
+ * A map that supports 3 21 bit integers for keys, where the keys are stored
+ * in Morton (Z-order) order, using a trove long Object hashmap in the
+ * backend.<br>
+ * <br>
+ * The bits of the three coordinates are interleaved, so positions that are
+ * close together have keys that are close together. The coordinates are
+ * offset before they are interleaved, so that -1 and 0 are neighbours. Each
+ * coordinate must be in the range -1048576 to 1048575.
+ *
+ * @param <K> the value type
+ */
+public class TMortonInt21TripleObjectHashMap<K> extends TInt21TripleObjectHashMap<K> {
+	private static final int OFFSET = 0x100000;
+
+	public TMortonInt21TripleObjectHashMap() {
+		super();
+	}
+
+	public TMortonInt21TripleObjectHashMap(int capacity) {
+		super(capacity);
+	}
+
+	public TMortonInt21TripleObjectHashMap(TLongObjectMap<K> map) {
+		super(map);
+	}
+
+	@Override
+	public int getKeyX(long key) {
+		return mortonX(key);
+	}
+
+	@Override
+	public int getKeyY(long key) {
+		return mortonY(key);
+	}
+
+	@Override
+	public int getKeyZ(long key) {
+		return mortonZ(key);
+	}
+
+	@Override
+	protected long toKey(int x, int y, int z) {
+		return mortonKey(x, y, z);
+	}
+
+	/**
+	 * Gets the Morton key for a set of coordinates
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the key
+	 */
+	public static long mortonKey(int x, int y, int z) {
+		return spread(x + OFFSET) | spread(y + OFFSET) << 1 | spread(z + OFFSET) << 2;
+	}
+
+	/**
+	 * Gets the x coordinate from a Morton key
+	 *
+	 * @param key the key
+	 * @return the x coordinate
+	 */
+	public static int mortonX(long key) {
+		return compact(key) - OFFSET;
+	}
+
+	/**
+	 * Gets the y coordinate from a Morton key
+	 *
+	 * @param key the key
+	 * @return the y coordinate
+	 */
+	public static int mortonY(long key) {
+		return compact(key >>> 1) - OFFSET;
+	}
+
+	/**
+	 * Gets the z coordinate from a Morton key
+	 *
+	 * @param key the key
+	 * @return the z coordinate
+	 */
+	public static int mortonZ(long key) {
+		return compact(key >>> 2) - OFFSET;
+	}
+
+	/**
+	 * Spreads the lower 21 bits of a value so that there are 2 zero bits
+	 * between each bit
+	 */
+	private static long spread(int value) {
+		long v = value & 0x1FFFFFL;
+		v = (v | v << 32) & 0x1F00000000FFFFL;
+		v = (v | v << 16) & 0x1F0000FF0000FFL;
+		v = (v | v << 8) & 0x100F00F00F00F00FL;
+		v = (v | v << 4) & 0x10C30C30C30C30C3L;
+		v = (v | v << 2) & 0x1249249249249249L;
+		return v;
+	}
+
+	/**
+	 * Reverses spread, using every third bit starting at bit 0
+	 */
+	private static int compact(long key) {
+		long v = key & 0x1249249249249249L;
+		v = (v | v >>> 2) & 0x10C30C30C30C30C3L;
+		v = (v | v >>> 4) & 0x100F00F00F00F00FL;
+		v = (v | v >>> 8) & 0x1F0000FF0000FFL;
+		v = (v | v >>> 16) & 0x1F00000000FFFFL;
+		v = (v | v >>> 32) & 0x1FFFFFL;
+		return (int) v;
+	}
+}
@@ -32,8 +32,11 @@ import gnu.trove.impl.unmodifiable.TUnmodifiableLongObjectMap;
  * using a trove long Object hashmap in the backend. 1 bit is wasted.
  */
 public class TUnmodifiableInt21TripleObjectHashMap<K> extends TInt21TripleObjectHashMap<K> {
+	private TInt21TripleObjectHashMap<K> source;
+
 	public TUnmodifiableInt21TripleObjectHashMap(TInt21TripleObjectHashMap<K> map) {
 		this.map = new TUnmodifiableLongObjectMap<K>(map.getInternalMap());
+		this.source = map;
 	}
 
 	/**
@@ -43,5 +46,26 @@ public class TUnmodifiableInt21TripleObjectHashMap<K> extends TInt21TripleObject
 	 */
 	public void update(TInt21TripleObjectHashMap<K> newMap) {
 		map = new TUnmodifiableLongObjectMap<K>(newMap.getInternalMap());
+		source = newMap;
+	}
+
+	@Override
+	public int getKeyX(long key) {
+		return source.getKeyX(key);
+	}
+
+	@Override
+	public int getKeyY(long key) {
+		return source.getKeyY(key);
+	}
+
+	@Override
+	public int getKeyZ(long key) {
+		return source.getKeyZ(key);
+	}
+
+	@Override
+	protected long toKey(int x, int y, int z) {
+		return source.toKey(x, y, z);
 	}
 }
@@ -25,8 +25,14 @@
  */
 package org.spout.api.util.map.concurrent;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.spout.api.basic.blocks.BlockFullState;
 import org.spout.api.datatable.DatatableSequenceNumber;
@@ -35,35 +41,131 @@ import org.spout.api.geo.cuboid.Blockm;
 /**
  * This store stores block data for each chunk. Each block can either store a
  * short id, or a short id, a short data value and a reference to a &lt;T&gt;
- * object.
+ * object.<br>
+ * <br>
+ * The block id array can be stored as a plain array or as a palette
+ * compressed array, see {@link BlockStorageMode}.
  */
 public class AtomicBlockStore<T> {
+	private static final AtomicLong nextStoreId = new AtomicLong(0);
 	private final int side;
 	private final int shift;
 	private final int doubleShift;
-	private final AtomicShortArray blockIds;
-	private AtomicIntReferenceArrayStore<T> auxStore;
+	private final AtomicShortStorage blockIds;
+	private final AtomicIntReferenceArrayStore<T> auxStore;
 	private final AtomicBoolean compressing = new AtomicBoolean(false);
-	private final byte[] dirtyX;
-	private final byte[] dirtyY;
-	private final byte[] dirtyZ;
-	private final AtomicInteger dirtyBlocks = new AtomicInteger(0);
-	private final AtomicInteger waiting = new AtomicInteger(0);
-	private final int SPINS = 10;
+	private final AtomicDirtyBitmap dirtyBlocks;
+	private final int dirtySize;
+	private final BackoffStrategy backoffStrategy;
+	private final ContentionStats stats = new ContentionStats();
+	private final AtomicWaitQueue waitQueue = new AtomicWaitQueue();
+	/**
+	 * The order in which exclusive writes are started by setBlocks(stores, batches, atomic)
+	 */
+	private final long storeId = nextStoreId.getAndIncrement();
+	private final AtomicInteger writesStarted = new AtomicInteger(0);
+	private final AtomicInteger writesFinished = new AtomicInteger(0);
+	private final AtomicInteger snapshotsWaiting = new AtomicInteger(0);
+	private final AtomicBoolean exclusiveWrite = new AtomicBoolean(false);
+	private final AtomicIntegerArray sectionVersions;
+	private final AtomicReference<BlockStoreSnapshot<T>> lastSnapshot = new AtomicReference<BlockStoreSnapshot<T>>(null);
+	private final short[] emptySectionData;
+	private final T[] emptySectionAuxData;
+	private final int COMPRESSION_PASSES = 3;
+	private final int SNAPSHOT_RETRIES = 2;
+	private final int SNAPSHOT_SPINS = 16;
+	/**
+	 * Returned by readSnapshotSequence(false) when writes have been in
+	 * progress for too long and new writes should be held back
+	 */
+	private static final long SNAPSHOT_WAIT = Long.MIN_VALUE;
+	/**
+	 * The estimated number of bytes needed to send a single block update
+	 */
+	public static final int DELTA_UPDATE_COST = 16;
+	/**
+	 * The estimated number of bytes per block needed to send the full store
+	 */
+	public static final int FULL_UPDATE_BLOCK_COST = 4;
 
+	/**
+	 * Creates a store with 2^shift blocks along each side.<br>
+	 * <br>
+	 * The store is treated as overflowed when sending the dirty blocks
+	 * individually is estimated to cost more than sending the full store.
+	 *
+	 * @param shift the log2 of the side length
+	 */
 	public AtomicBlockStore(int shift) {
-		this(shift, 10);
+		this(shift, (FULL_UPDATE_BLOCK_COST << (3 * shift)) / DELTA_UPDATE_COST);
 	}
 
+	/**
+	 * Creates a store with 2^shift blocks along each side.
+	 *
+	 * @param shift the log2 of the side length
+	 * @param dirtySize the number of dirty blocks before the store is treated
+	 *            as overflowed
+	 */
 	public AtomicBlockStore(int shift, int dirtySize) {
+		this(shift, dirtySize, BlockStorageMode.ARRAY);
+	}
+
+	/**
+	 * Creates a store with 2^shift blocks along each side.
+	 *
+	 * @param shift the log2 of the side length
+	 * @param dirtySize the number of dirty blocks before the store is treated
+	 *            as overflowed
+	 * @param mode the storage mode for the block id array
+	 */
+	public AtomicBlockStore(int shift, int dirtySize, BlockStorageMode mode) {
+		this(shift, dirtySize, mode, StandardBackoff.ADAPTIVE);
+	}
+
+	/**
+	 * Creates a store with 2^shift blocks along each side.
+	 *
+	 * @param shift the log2 of the side length
+	 * @param dirtySize the number of dirty blocks before the store is treated
+	 *            as overflowed
+	 * @param mode the storage mode for the block id array
+	 * @param backoffStrategy the strategy for waiting before contended
+	 *            operations are retried
+	 */
+	public AtomicBlockStore(int shift, int dirtySize, BlockStorageMode mode, BackoffStrategy backoffStrategy) {
+		this(shift, dirtySize, mode, backoffStrategy, 0);
+	}
+
+	/**
+	 * Creates a store with 2^shift blocks along each side, where each block
+	 * has the given number of int channels.<br>
+	 * <br>
+	 * Channels store small numeric values, such as a growth stage or a fluid
+	 * level, without an auxiliary data object. A block with a non-zero
+	 * channel is stored as a record, even if its data is 0 and it has no
+	 * auxiliary data.
+	 *
+	 * @param shift the log2 of the side length
+	 * @param dirtySize the number of dirty blocks before the store is treated
+	 *            as overflowed
+	 * @param mode the storage mode for the block id array
+	 * @param backoffStrategy the strategy for waiting before contended
+	 *            operations are retried
+	 * @param channels the number of int channels for each block
+	 */
+	public AtomicBlockStore(int shift, int dirtySize, BlockStorageMode mode, BackoffStrategy backoffStrategy, int channels) {
+		this.backoffStrategy = backoffStrategy;
 		this.side = 1 << shift;
 		this.shift = shift;
 		this.doubleShift = shift << 1;
-		blockIds = new AtomicShortArray(side * side * side);
-		auxStore = new AtomicIntReferenceArrayStore<T>(side * side * side);
-		dirtyX = new byte[dirtySize];
-		dirtyY = new byte[dirtySize];
-		dirtyZ = new byte[dirtySize];
+		this.dirtySize = dirtySize;
+		blockIds = mode.createStorage(side * side * side);
+		auxStore = new AtomicIntReferenceArrayStore<T>(side * side * side, channels, backoffStrategy, stats);
+		dirtyBlocks = new AtomicDirtyBitmap(side * side * side);
+		sectionVersions = new AtomicIntegerArray(side);
+		emptySectionData = new short[side * side];
+		emptySectionAuxData = newAuxArray(side * side);
 	}
 
 	/**
@@ -82,16 +184,12 @@ public class AtomicBlockStore<T> {
 	 *         single short record
 	 */
 	public final int getSequence(int x, int y, int z) {
-		checkCompressing();
 		int index = getIndex(x, y, z);
 		int spins = 0;
 		boolean interrupted = false;
 		try {
 			while (true) {
-				if (spins++ > SPINS) {
-					interrupted |= atomicWait();
-				}
-				checkCompressing();
+				interrupted |= backoff(spins++, index);
 
 				int blockId = blockIds.get(index);
 				if (!auxStore.isReserved(blockId)) {
@@ -127,15 +225,11 @@ public class AtomicBlockStore<T> {
 			return false;
 		}
 
-		checkCompressing();
 		int index = getIndex(x, y, z);
 		int spins = 0;
 		boolean interrupted = false;
 		try {
-			if (spins++ > SPINS) {
-				interrupted |= atomicWait();
-			}
-			checkCompressing();
+			interrupted |= backoff(spins++, index);
 
 			int blockId = blockIds.get(index);
 			return auxStore.isReserved(blockId) && auxStore.testSequence(blockId, expected);
@@ -162,10 +256,7 @@ public class AtomicBlockStore<T> {
 		boolean interrupted = false;
 		try {
 			while (true) {
-				if (spins++ > SPINS) {
-					interrupted |= atomicWait();
-				}
-				checkCompressing();
+				interrupted |= backoff(spins++, index);
 
 				int seq = getSequence(x, y, z);
 				short blockId = blockIds.get(index);
@@ -201,10 +292,7 @@ public class AtomicBlockStore<T> {
 		boolean interrupted = false;
 		try {
 			while (true) {
-				if (spins++ > SPINS) {
-					interrupted |= atomicWait();
-				}
-				checkCompressing();
+				interrupted |= backoff(spins++, index);
 
 				int seq = getSequence(x, y, z);
 				short blockId = blockIds.get(index);
@@ -240,10 +328,7 @@ public class AtomicBlockStore<T> {
 		boolean interrupted = false;
 		try {
 			while (true) {
-				if (spins++ > SPINS) {
-					interrupted |= atomicWait();
-				}
-				checkCompressing();
+				interrupted |= backoff(spins++, index);
 
 				int seq = getSequence(x, y, z);
 				short blockId = blockIds.get(index);
@@ -298,10 +383,7 @@ public class AtomicBlockStore<T> {
 		boolean interrupted = false;
 		try {
 			while (true) {
-				if (spins++ > SPINS) {
-					interrupted |= atomicWait();
-				}
-				checkCompressing();
+				interrupted |= backoff(spins++, index);
 
 				int seq = getSequence(x, y, z);
 				short blockId = blockIds.get(index);
@@ -309,6 +391,11 @@ public class AtomicBlockStore<T> {
 					fullData.setId(auxStore.getId(blockId));
 					fullData.setData(auxStore.getData(blockId));
 					fullData.setAuxData(auxStore.getAuxData(blockId));
+					int channels = auxStore.getChannels();
+					fullData.resetChannels(channels);
+					for (int c = 0; c < channels; c++) {
+						fullData.setIntChannel(c, auxStore.getChannel(blockId, c));
+					}
 					if (testSequence(x, y, z, seq)) {
 						return fullData;
 					}
@@ -316,6 +403,7 @@ public class AtomicBlockStore<T> {
 					fullData.setId(blockId);
 					fullData.setData((short) 0);
 					fullData.setAuxData(null);
+					fullData.resetChannels(auxStore.getChannels());
 					return fullData;
 				}
 			}
@@ -338,11 +426,12 @@ public class AtomicBlockStore<T> {
 	 * @param fullState the new state of the Block
 	 */
 	public final void setBlock(int x, int y, int z, BlockFullState<T> fullState) {
-		setBlock(x, y, z, fullState.getId(), fullState.getData(), fullState.getAuxData());
+		setBlock(x, y, z, fullState.getId(), fullState.getData(), fullState.getAuxData(), fullState.getChannels());
 	}
 
 	/**
-	 * Sets the block id, data and auxData for the block at (x, y, z).<br>
+	 * Sets the block id, data and auxData for the block at (x, y, z). The
+	 * block's channels are set to 0.<br>
 	 * <br>
 	 * If the data is 0 and the auxData is null, then the block will be stored
 	 * as a single short.<br>
@@ -355,20 +444,44 @@ public class AtomicBlockStore<T> {
 	 * @param auxData the block auxiliary data
 	 */
 	public final void setBlock(int x, int y, int z, short id, short data, T auxData) {
+		setBlock(x, y, z, id, data, auxData, null);
+	}
+
+	private final void setBlock(int x, int y, int z, short id, short data, T auxData, int[] channelValues) {
 		int index = getIndex(x, y, z);
+		startWrite();
+		try {
+			replaceBlock(index, id, data, auxData, channelValues);
+		} finally {
+			markSectionChanged(index);
+			finishWrite();
+			markDirty(x, y, z);
+			atomicNotify(index);
+		}
+	}
+
+	/**
+	 * Replaces the block at the given index. This must be called between
+	 * startWrite() and finishWrite().
+	 *
+	 * @param index the block index
+	 * @param id the block id
+	 * @param data the block data
+	 * @param auxData the block auxiliary data
+	 * @param channelValues the block channel values, or null for all zero
+	 */
+	private final void replaceBlock(int index, short id, short data, T auxData, int[] channelValues) {
 		int spins = 0;
 		boolean interrupted = false;
 		try {
 			while (true) {
-				if (spins++ > SPINS) {
-					interrupted |= atomicWait();
-				}
-				checkCompressing();
+				interrupted |= backoff(spins++, index);
 
 				short oldBlockId = blockIds.get(index);
 				boolean oldReserved = auxStore.isReserved(oldBlockId);
-				if (data == 0 && auxData == null && !auxStore.isReserved(id)) {
+				if (data == 0 && auxData == null && !auxStore.isReserved(id) && isZero(channelValues)) {
 					if (!blockIds.compareAndSet(index, oldBlockId, id)) {
+						stats.recordCasFailure();
 						continue;
 					}
 					if (oldReserved) {
@@ -378,10 +491,11 @@ public class AtomicBlockStore<T> {
 					}
 					return;
 				} else {
-					int newIndex = auxStore.add(id, data, auxData);
+					int newIndex = auxStore.add(id, data, auxData, channelValues);
 					if (!blockIds.compareAndSet(index, oldBlockId, (short) newIndex)) {
-						if (auxStore.remove(newIndex)) {
-							throw new IllegalStateException("setBlock() tried to remove old record, but it had already been removed");
+						stats.recordCasFailure();
+						if (!auxStore.remove(newIndex)) {
+							throw new IllegalStateException("setBlock() tried to remove new record, but it had already been removed");
 						}
 						continue;
 					}
@@ -395,8 +509,6 @@ public class AtomicBlockStore<T> {
 
 			}
 		} finally {
-			markDirty(x, y, z);
-			atomicNotify();
 			if (interrupted) {
 				Thread.currentThread().interrupt();
 			}
@@ -405,7 +517,8 @@ public class AtomicBlockStore<T> {
 
 	/**
 	 * Sets the block id, data and auxData for the block at (x, y, z), if the
-	 * current data matches the expected data.<br>
+	 * current data matches the expected data. The block's channels are set
+	 * to 0.<br>
 	 *
 	 * @param x the x coordinate
 	 * @param y the y coordinate
@@ -419,25 +532,30 @@ public class AtomicBlockStore<T> {
 	 * @return true if the block was set
 	 */
 	public final boolean compareAndSetBlock(int x, int y, int z, short expectId, short expectData, T expectAuxData, short newId, short newData, T newAuxData) {
+		return compareAndSetBlock(x, y, z, expectId, expectData, expectAuxData, newId, newData, newAuxData, null);
+	}
+
+	private final boolean compareAndSetBlock(int x, int y, int z, short expectId, short expectData, T expectAuxData, short newId, short newData, T newAuxData, int[] newChannelValues) {
 		int index = getIndex(x, y, z);
 		int spins = 0;
 		boolean interrupted = false;
+		// The write is only started once the expected state has matched, so
+		// that failed comparisons do not invalidate snapshots
+		boolean writing = false;
 		try {
 			while (true) {
-				if (spins++ > SPINS) {
-					interrupted |= atomicWait();
-				}
-				checkCompressing();
+				interrupted |= backoff(spins++, index);
 
 				short oldBlockId = blockIds.get(index);
 				boolean oldReserved = auxStore.isReserved(oldBlockId);
+				int seq = DatatableSequenceNumber.ATOMIC;
 
 				if (!oldReserved) {
 					if (blockIds.get(index) != expectId || expectData != 0 || expectAuxData != null) {
 						return false;
 					}
 				} else {
-					int seq = auxStore.getSequence(oldBlockId);
+					seq = auxStore.getSequence(oldBlockId);
 					short oldId = auxStore.getId(oldBlockId);
 					short oldData = auxStore.getData(oldBlockId);
 					T oldAuxData = auxStore.getAuxData(oldBlockId);
@@ -449,36 +567,57 @@ public class AtomicBlockStore<T> {
 					}
 				}
 
-				if (newData == 0 && newAuxData == null && !auxStore.isReserved(newId)) {
+				if (!writing) {
+					startWrite();
+					writing = true;
+				}
+
+				// The old record is locked until it is removed, otherwise it could be
+				// replaced and its index reused by another record before the swap
+				if (newData == 0 && newAuxData == null && !auxStore.isReserved(newId) && isZero(newChannelValues)) {
+					if (oldReserved && !auxStore.lock(oldBlockId, seq)) {
+						stats.recordCasFailure();
+						continue;
+					}
 					if (!blockIds.compareAndSet(index, oldBlockId, newId)) {
+						stats.recordCasFailure();
+						if (oldReserved) {
+							auxStore.unlock(oldBlockId);
+						}
 						continue;
 					}
 					if (oldReserved) {
-						if (!auxStore.remove(oldBlockId)) {
-							throw new IllegalStateException("setBlock() tried to remove old record, but it had already been removed");
-						}
+						auxStore.removeLocked(oldBlockId);
 					}
+					markSectionChanged(index);
 					markDirty(x, y, z);
 					return true;
 				} else {
-					int newIndex = auxStore.add(newId, newData, newAuxData);
-					if (!blockIds.compareAndSet(index, oldBlockId, (short) newIndex)) {
+					int newIndex = auxStore.add(newId, newData, newAuxData, newChannelValues);
+					boolean locked = !oldReserved || auxStore.lock(oldBlockId, seq);
+					if (!locked || !blockIds.compareAndSet(index, oldBlockId, (short) newIndex)) {
+						stats.recordCasFailure();
+						if (locked && oldReserved) {
+							auxStore.unlock(oldBlockId);
+						}
 						if (!auxStore.remove(newIndex)) {
-							throw new IllegalStateException("setBlock() tried to remove old record, but it had already been removed");
+							throw new IllegalStateException("compareAndSetBlock() tried to remove new record, but it had already been removed");
 						}
 						continue;
 					}
 					if (oldReserved) {
-						if (!auxStore.remove(oldBlockId)) {
-							throw new IllegalStateException("setBlock() tried to remove old record, but it had already been removed");
-						}
+						auxStore.removeLocked(oldBlockId);
 					}
+					markSectionChanged(index);
 					markDirty(x, y, z);
 					return true;
 				}
 			}
 		} finally {
-			atomicNotify();
+			if (writing) {
+				finishWrite();
+				atomicNotify(index);
+			}
 			if (interrupted) {
 				Thread.currentThread().interrupt();
 			}
@@ -486,8 +625,9 @@ public class AtomicBlockStore<T> {
 	}
 
 	/**
-	 * Sets the block id, data and auxData for the block at (x, y, z), if the
-	 * current data matches the expected data.<br>
+	 * Sets the block id, data, auxData and channels for the block at (x, y,
+	 * z), if the current id, data and auxData match the expected state. The
+	 * channels are not compared.<br>
 	 * <br>
 	 *
 	 * @param x the x coordinate
@@ -498,7 +638,396 @@ public class AtomicBlockStore<T> {
 	 * @return true if the block was set
 	 */
 	public final boolean compareAndSetBlock(int x, int y, int z, BlockFullState<T> expect, BlockFullState<T> newValue) {
-		return compareAndSetBlock(x, y, z, expect.getId(), expect.getData(), expect.getAuxData(), newValue.getId(), newValue.getData(), newValue.getAuxData());
+		return compareAndSetBlock(x, y, z, expect.getId(), expect.getData(), expect.getAuxData(), newValue.getId(), newValue.getData(), newValue.getAuxData(), newValue.getChannels());
+	}
+
+	/**
+	 * Applies a batch of block changes to the store.<br>
+	 * <br>
+	 * Other writes to the store wait until the batch has been applied, and
+	 * snapshot reads, such as getBlocks(...) and getSnapshot(), see either all
+	 * or none of the changes. Single block reads may see the changes as they
+	 * are applied.<br>
+	 * <br>
+	 * Each changed section is marked as changed once, and every changed block
+	 * is marked as dirty.<br>
+	 * <br>
+	 * If atomic is true and the expected state of any change does not match
+	 * the store, then no changes are applied. Otherwise, only the changes
+	 * with a matching or no expected state are applied. The batch records
+	 * which changes were applied.
+	 *
+	 * @param batch the batch of changes
+	 * @param atomic true if either all or none of the changes should be applied
+	 * @return the number of changes applied
+	 */
+	public final int setBlocks(BlockStoreBatch<T> batch, boolean atomic) {
+		checkBatch(batch);
+		if (batch.size() == 0) {
+			return 0;
+		}
+		startExclusiveWrite();
+		boolean[] changedSections = new boolean[side];
+		try {
+			// No other writes can happen, so the expected states can be checked first
+			if (!matchBatch(batch) && atomic) {
+				clearApplied(batch);
+				return 0;
+			}
+			return applyBatch(batch, changedSections);
+		} finally {
+			finishBatch(changedSections);
+		}
+	}
+
+	/**
+	 * Applies batches of block changes to several stores, such as the stores
+	 * of every chunk changed by a multi chunk edit. The batch at each position
+	 * in batches is applied to the store at the same position in stores.<br>
+	 * <br>
+	 * An exclusive write is started on every store before any expected state
+	 * is checked. The writes are started in a fixed global order, so calls
+	 * which share stores can't wait for each other. Snapshot reads of each
+	 * store see either all or none of its changes.<br>
+	 * <br>
+	 * If atomic is true and the expected state of any change in any batch
+	 * does not match its store, then no changes are applied to any store.
+	 * Otherwise, this is the same as calling setBlocks(batch, false) for each
+	 * store.
+	 *
+	 * @param stores the stores, which must all be different
+	 * @param batches the batch of changes for each store
+	 * @param atomic true if either all or none of the changes should be applied
+	 * @return the number of changes applied
+	 */
+	public static <T> int setBlocks(List<AtomicBlockStore<T>> stores, List<BlockStoreBatch<T>> batches, boolean atomic) {
+		final int count = stores.size();
+		if (batches.size() != count) {
+			throw new IllegalArgumentException("Got " + batches.size() + " batches for " + count + " stores");
+		}
+		final long[] ids = new long[count];
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			stores.get(i).checkBatch(batches.get(i));
+			ids[i] = stores.get(i).storeId;
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				long idA = ids[a];
+				long idB = ids[b];
+				return idA < idB ? -1 : idA == idB ? 0 : 1;
+			}
+		});
+		for (int i = 1; i < count; i++) {
+			if (ids[order[i]] == ids[order[i - 1]]) {
+				throw new IllegalArgumentException("The same store was given more than once");
+			}
+		}
+		boolean[][] changedSections = new boolean[count][];
+		int started = 0;
+		try {
+			for (; started < count; started++) {
+				AtomicBlockStore<T> store = stores.get(order[started]);
+				store.startExclusiveWrite();
+				changedSections[order[started]] = new boolean[store.side];
+			}
+			boolean allMatch = true;
+			for (int i = 0; i < count; i++) {
+				allMatch &= stores.get(i).matchBatch(batches.get(i));
+			}
+			if (atomic && !allMatch) {
+				for (int i = 0; i < count; i++) {
+					clearApplied(batches.get(i));
+				}
+				return 0;
+			}
+			int applied = 0;
+			for (int i = 0; i < count; i++) {
+				applied += stores.get(i).applyBatch(batches.get(i), changedSections[i]);
+			}
+			return applied;
+		} finally {
+			for (int i = started - 1; i >= 0; i--) {
+				stores.get(order[i]).finishBatch(changedSections[order[i]]);
+			}
+		}
+	}
+
+	private final void checkBatch(BlockStoreBatch<T> batch) {
+		if (batch.getShift() != shift) {
+			throw new IllegalArgumentException("Batch shift " + batch.getShift() + " does not match the store shift " + shift);
+		}
+	}
+
+	/**
+	 * Checks the expected states of a batch and records which changes match.
+	 * This must be called during an exclusive write.
+	 *
+	 * @param batch the batch
+	 * @return true if all the changes match
+	 */
+	private final boolean matchBatch(BlockStoreBatch<T> batch) {
+		boolean allMatch = true;
+		int size = batch.size();
+		for (int i = 0; i < size; i++) {
+			boolean matches = !batch.hasExpected(i) || matchesBlock(batch.getIndex(i), batch.getExpectedId(i), batch.getExpectedData(i), batch.getExpectedAuxData(i));
+			batch.setApplied(i, matches);
+			allMatch &= matches;
+		}
+		return allMatch;
+	}
+
+	private static void clearApplied(BlockStoreBatch<?> batch) {
+		int size = batch.size();
+		for (int i = 0; i < size; i++) {
+			batch.setApplied(i, false);
+		}
+	}
+
+	/**
+	 * Applies the changes of a batch which matched. This must be called during
+	 * an exclusive write, after matchBatch(batch).
+	 *
+	 * @param batch the batch
+	 * @param changedSections the sections changed, which are set by this method
+	 * @return the number of changes applied
+	 */
+	private final int applyBatch(BlockStoreBatch<T> batch, boolean[] changedSections) {
+		int applied = 0;
+		int size = batch.size();
+		for (int i = 0; i < size; i++) {
+			if (!batch.isApplied(i)) {
+				continue;
+			}
+			int index = batch.getIndex(i);
+			replaceBlock(index, batch.getId(i), batch.getData(i), batch.getAuxData(i), null);
+			dirtyBlocks.set(index);
+			changedSections[index >> doubleShift] = true;
+			applied++;
+		}
+		return applied;
+	}
+
+	/**
+	 * Marks the changed sections and finishes the exclusive write of a batch
+	 *
+	 * @param changedSections the sections changed by the batch
+	 */
+	private final void finishBatch(boolean[] changedSections) {
+		for (int x = 0; x < side; x++) {
+			if (changedSections[x]) {
+				sectionVersions.incrementAndGet(x);
+			}
+		}
+		finishExclusiveWrite();
+		atomicNotify(AtomicWaitQueue.ANY);
+	}
+
+	/**
+	 * Tests if the block at the given index matches a given state. The result
+	 * is only reliable if no other writes are in progress.
+	 *
+	 * @param index the block index
+	 * @param id the expected block id
+	 * @param data the expected block data
+	 * @param auxData the expected block auxiliary data
+	 * @return true if the block matches
+	 */
+	private final boolean matchesBlock(int index, short id, short data, T auxData) {
+		short blockId = blockIds.get(index);
+		if (!auxStore.isReserved(blockId)) {
+			return blockId == id && data == 0 && auxData == null;
+		}
+		return auxStore.getId(blockId) == id && auxStore.getData(blockId) == data && auxStore.getAuxData(blockId) == auxData;
+	}
+
+	/**
+	 * Gets the number of int channels for each block
+	 *
+	 * @return the number of channels
+	 */
+	public final int getChannels() {
+		return auxStore.getChannels();
+	}
+
+	/**
+	 * Gets the value of an int channel for the block at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param channel the channel
+	 * @return the channel value
+	 */
+	public final int getIntChannel(int x, int y, int z, int channel) {
+		checkChannel(channel);
+		int index = getIndex(x, y, z);
+		int spins = 0;
+		boolean interrupted = false;
+		try {
+			while (true) {
+				interrupted |= backoff(spins++, index);
+
+				int seq = getSequence(x, y, z);
+				short blockId = blockIds.get(index);
+				if (auxStore.isReserved(blockId)) {
+					int value = auxStore.getChannel(blockId, channel);
+					if (testSequence(x, y, z, seq)) {
+						return value;
+					}
+				} else {
+					return 0;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Gets the value of a float channel for the block at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param channel the channel
+	 * @return the channel value
+	 */
+	public final float getFloatChannel(int x, int y, int z, int channel) {
+		return Float.intBitsToFloat(getIntChannel(x, y, z, channel));
+	}
+
+	/**
+	 * Sets an int channel for the block at (x, y, z), if its current value
+	 * matches the expected value.<br>
+	 * <br>
+	 * The channel is updated in place, so no objects are created unless the
+	 * block is stored as a single short and needs a record for the channel.
+	 * The block's other channels, id, data and auxiliary data are not
+	 * changed.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param channel the channel
+	 * @param expect the expected value
+	 * @param update the new value
+	 * @return true if the channel was set
+	 */
+	public final boolean compareAndSetIntChannel(int x, int y, int z, int channel, int expect, int update) {
+		checkChannel(channel);
+		int index = getIndex(x, y, z);
+		int spins = 0;
+		boolean interrupted = false;
+		boolean changed = false;
+		boolean writing = false;
+		try {
+			while (true) {
+				interrupted |= backoff(spins++, index);
+
+				short blockId = blockIds.get(index);
+				if (!auxStore.isReserved(blockId)) {
+					if (expect != 0) {
+						return false;
+					} else if (update == 0) {
+						return true;
+					}
+					if (!writing) {
+						startWrite();
+						writing = true;
+					}
+					int[] channelValues = new int[auxStore.getChannels()];
+					channelValues[channel] = update;
+					int newIndex = auxStore.add(blockId, (short) 0, null, channelValues);
+					if (!blockIds.compareAndSet(index, blockId, (short) newIndex)) {
+						stats.recordCasFailure();
+						if (!auxStore.remove(newIndex)) {
+							throw new IllegalStateException("compareAndSetIntChannel() tried to remove new record, but it had already been removed");
+						}
+						continue;
+					}
+					changed = true;
+					return true;
+				}
+
+				// A mismatch is checked before the write is started, so that failed
+				// comparisons do not invalidate snapshots
+				int seq = auxStore.getSequence(blockId);
+				int value = auxStore.getChannel(blockId, channel);
+				if (value != expect && testSequence(x, y, z, seq) && blockIds.get(index) == blockId) {
+					return false;
+				}
+				if (!writing) {
+					startWrite();
+					writing = true;
+				}
+				if (!auxStore.lock(blockId, seq)) {
+					stats.recordCasFailure();
+					continue;
+				}
+				try {
+					// The record may have been replaced, and its index reused, before it was locked
+					if (blockIds.get(index) != blockId) {
+						continue;
+					}
+					if (auxStore.getLockedChannel(blockId, channel) != expect) {
+						return false;
+					}
+					auxStore.setLockedChannel(blockId, channel, update);
+					changed = true;
+					return true;
+				} finally {
+					auxStore.unlock(blockId);
+				}
+			}
+		} finally {
+			if (writing) {
+				finishWrite();
+				atomicNotify(index);
+			}
+			if (changed) {
+				markDirty(x, y, z);
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Sets a float channel for the block at (x, y, z), if its current value
+	 * matches the expected value. The values are compared by their raw bits.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param channel the channel
+	 * @param expect the expected value
+	 * @param update the new value
+	 * @return true if the channel was set
+	 */
+	public final boolean compareAndSetFloatChannel(int x, int y, int z, int channel, float expect, float update) {
+		return compareAndSetIntChannel(x, y, z, channel, Float.floatToRawIntBits(expect), Float.floatToRawIntBits(update));
+	}
+
+	private final void checkChannel(int channel) {
+		if (channel < 0 || channel >= auxStore.getChannels()) {
+			throw new IndexOutOfBoundsException("Channel " + channel + " is out of range, the store has " + auxStore.getChannels() + " channels");
+		}
+	}
+
+	private static boolean isZero(int[] channelValues) {
+		if (channelValues != null) {
+			for (int value : channelValues) {
+				if (value != 0) {
+					return false;
+				}
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -513,11 +1042,27 @@ public class AtomicBlockStore<T> {
 		return (auxStore.getEntries() << 3) / 3 < auxStore.getSize();
 	}
 
+	/**
+	 * Gets the id of every block in the store, if all the blocks in the store
+	 * have the same id, no data and no auxiliary data.<br>
+	 * <br>
+	 * A store is uniform until the first write of a different block, so this
+	 * is a cheap test for chunks which are all air or all one material.
+	 *
+	 * @return the block id, or -1 if the store is not uniform
+	 */
+	public int getUniformBlockId() {
+		int uniform = blockIds.getUniformValue();
+		if (uniform == -1 || auxStore.isReserved(uniform)) {
+			return -1;
+		}
+		return uniform;
+	}
+
 	/**
 	 * Gets a short array containing the block ids in the store.<br>
 	 * <br>
-	 * If the store is updated while this snapshot is being taken, data tearing
-	 * could occur.
+	 * The array is a consistent snapshot of the store.
 	 *
 	 * @return the array
 	 */
@@ -528,8 +1073,7 @@ public class AtomicBlockStore<T> {
 	/**
 	 * Copies the block ids in the store into an array.<br>
 	 * <br>
-	 * If the store is updated while this snapshot is being taken, data tearing
-	 * could occur.<br>
+	 * The array is a consistent snapshot of the store.<br>
 	 * <br>
 	 * If the array is the wrong length or null, a new array is created.
 	 *
@@ -541,17 +1085,14 @@ public class AtomicBlockStore<T> {
 		if (array == null || array.length != length) {
 			array = new short[length];
 		}
-		for (int i = 0; i < length; i++) {
-			array[i] = blockIds.get(i);
-		}
+		getBlocks(array, null, null);
 		return array;
 	}
 
 	/**
 	 * Gets a short array containing the block data for the blocks in the store.<br>
 	 * <br>
-	 * If the store is updated while this snapshot is being taken, data tearing
-	 * could occur.
+	 * The array is a consistent snapshot of the store.
 	 *
 	 * @return the array
 	 */
@@ -562,8 +1103,7 @@ public class AtomicBlockStore<T> {
 	/**
 	 * Copies the block data in the store into an array.<br>
 	 * <br>
-	 * If the store is updated while this snapshot is being taken, data tearing
-	 * could occur.<br>
+	 * The array is a consistent snapshot of the store.<br>
 	 * <br>
 	 * If the array is the wrong length or null, a new array is created.
 	 *
@@ -575,43 +1115,377 @@ public class AtomicBlockStore<T> {
 		if (array == null || array.length != length) {
 			array = new short[length];
 		}
-		for (int i = 0; i < length; i++) {
-			short blockId = blockIds.get(i);
-			if (auxStore.isReserved(blockId)) {
-				array[i] = auxStore.getData(blockId);
-			} else {
-				array[i] = 0;
+		getBlocks(null, array, null);
+		return array;
+	}
+
+	/**
+	 * Copies the block ids, data and auxiliary data for every block in the
+	 * store into the given arrays.<br>
+	 * <br>
+	 * The copy is a consistent snapshot of the store. If a write occurs during
+	 * the copy, the copy is repeated. If the copy is repeatedly interrupted,
+	 * new writes are held back until it completes.<br>
+	 * <br>
+	 * The arrays are indexed in the same order as the store, the index of the
+	 * block at (x, y, z) is (x * side + z) * side + y. Any of the arrays may be
+	 * null, if that part of the block state is not required.
+	 *
+	 * @param ids the array for the block ids
+	 * @param data the array for the block data
+	 * @param auxData the array for the block auxiliary data
+	 */
+	public final void getBlocks(short[] ids, short[] data, T[] auxData) {
+		int length = blockIds.length();
+		checkLength(ids, length);
+		checkLength(data, length);
+		checkLength(auxData, length);
+
+		int uniform = getUniformBlockId();
+		if (uniform != -1) {
+			fillUniform(ids, data, auxData, (short) uniform);
+			return;
+		}
+
+		short[] values = ids != null ? ids : new short[length];
+		int retries = 0;
+		boolean waiting = false;
+		try {
+			while (true) {
+				long next = readSnapshotSequence(waiting);
+				if (next == SNAPSHOT_WAIT) {
+					snapshotsWaiting.incrementAndGet();
+					waiting = true;
+					continue;
+				}
+				int seq = (int) next;
+				blockIds.getArray(values);
+				auxStore.copyRecords(values, ids, data, auxData);
+				if (testSnapshotSequence(seq)) {
+					return;
+				}
+				if (!waiting && retries++ == SNAPSHOT_RETRIES) {
+					snapshotsWaiting.incrementAndGet();
+					waiting = true;
+				}
+			}
+		} finally {
+			if (waiting) {
+				snapshotsWaiting.decrementAndGet();
 			}
 		}
-		return array;
+	}
+
+	/**
+	 * Copies the block ids, data and auxiliary data for a cuboid of blocks in
+	 * the store into the given arrays.<br>
+	 * <br>
+	 * The copy is a consistent snapshot of the store. If a write occurs during
+	 * the copy, the copy is repeated. If the copy is repeatedly interrupted,
+	 * new writes are held back until it completes.<br>
+	 * <br>
+	 * The arrays are indexed in the same order as the store, the index of the
+	 * block at (bx + x, by + y, bz + z) is (x * sz + z) * sy + y. Any of the
+	 * arrays may be null, if that part of the block state is not required.
+	 *
+	 * @param bx the x coordinate of the base of the cuboid
+	 * @param by the y coordinate of the base of the cuboid
+	 * @param bz the z coordinate of the base of the cuboid
+	 * @param sx the size of the cuboid in the x direction
+	 * @param sy the size of the cuboid in the y direction
+	 * @param sz the size of the cuboid in the z direction
+	 * @param ids the array for the block ids
+	 * @param data the array for the block data
+	 * @param auxData the array for the block auxiliary data
+	 */
+	public final void getBlocks(int bx, int by, int bz, int sx, int sy, int sz, short[] ids, short[] data, T[] auxData) {
+		if (bx < 0 || by < 0 || bz < 0 || sx < 0 || sy < 0 || sz < 0 || bx + sx > side || by + sy > side || bz + sz > side) {
+			throw new IllegalArgumentException("Cuboid is not contained in the store");
+		}
+		int length = sx * sy * sz;
+		checkLength(ids, length);
+		checkLength(data, length);
+		checkLength(auxData, length);
+
+		int uniform = getUniformBlockId();
+		if (uniform != -1) {
+			fillUniform(ids, data, auxData, (short) uniform);
+			return;
+		}
+
+		short[] values = ids != null ? ids : new short[length];
+		int retries = 0;
+		boolean waiting = false;
+		try {
+			while (true) {
+				long next = readSnapshotSequence(waiting);
+				if (next == SNAPSHOT_WAIT) {
+					snapshotsWaiting.incrementAndGet();
+					waiting = true;
+					continue;
+				}
+				int seq = (int) next;
+				int i = 0;
+				for (int x = bx; x < bx + sx; x++) {
+					for (int z = bz; z < bz + sz; z++) {
+						int index = getIndex(x, by, z);
+						for (int y = 0; y < sy; y++) {
+							values[i++] = blockIds.get(index + y);
+						}
+					}
+				}
+				auxStore.copyRecords(values, ids, data, auxData);
+				if (testSnapshotSequence(seq)) {
+					return;
+				}
+				if (!waiting && retries++ == SNAPSHOT_RETRIES) {
+					snapshotsWaiting.incrementAndGet();
+					waiting = true;
+				}
+			}
+		} finally {
+			if (waiting) {
+				snapshotsWaiting.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Gets an immutable snapshot of the store.<br>
+	 * <br>
+	 * If the store has not changed since the last snapshot, the last snapshot
+	 * is returned. Otherwise, only the sections which have changed since the
+	 * last snapshot are copied and the other sections are shared with it, so
+	 * the cost of a snapshot depends on the number of changed sections rather
+	 * than the size of the store.<br>
+	 * <br>
+	 * The snapshot is consistent, in the same way as getBlocks(...).
+	 *
+	 * @return the snapshot
+	 */
+	public final BlockStoreSnapshot<T> getSnapshot() {
+		BlockStoreSnapshot<T> last = lastSnapshot.get();
+		if (last != null && writesStarted.get() == last.getVersion()) {
+			return last;
+		}
+		int sectionLength = side * side;
+		int[] versions = new int[side];
+		short[][] ids = new short[side][];
+		short[][] data = new short[side][];
+		T[][] auxData = newAuxSections(side);
+		int seq;
+		int retries = 0;
+		boolean waiting = false;
+		try {
+			while (true) {
+				long next = readSnapshotSequence(waiting);
+				if (next == SNAPSHOT_WAIT) {
+					snapshotsWaiting.incrementAndGet();
+					waiting = true;
+					continue;
+				}
+				seq = (int) next;
+				if (last != null && seq == last.getVersion()) {
+					return last;
+				}
+				int uniform = blockIds.getUniformValue();
+				short[] uniformIds = null;
+				for (int x = 0; x < side; x++) {
+					versions[x] = sectionVersions.get(x);
+					if (last != null && versions[x] == last.getSectionVersion(x)) {
+						ids[x] = last.getSectionIds(x);
+						data[x] = last.getSectionData(x);
+						auxData[x] = last.getSectionAuxData(x);
+					} else if (uniform != -1 && !auxStore.isReserved(uniform)) {
+						if (uniformIds == null) {
+							uniformIds = new short[sectionLength];
+							Arrays.fill(uniformIds, (short) uniform);
+						}
+						ids[x] = uniformIds;
+						data[x] = emptySectionData;
+						auxData[x] = emptySectionAuxData;
+					} else {
+						copySection(x, ids, data, auxData);
+					}
+				}
+				if (testSnapshotSequence(seq)) {
+					break;
+				}
+				if (!waiting && retries++ == SNAPSHOT_RETRIES) {
+					snapshotsWaiting.incrementAndGet();
+					waiting = true;
+				}
+			}
+		} finally {
+			if (waiting) {
+				snapshotsWaiting.decrementAndGet();
+			}
+		}
+		BlockStoreSnapshot<T> snapshot = new BlockStoreSnapshot<T>(shift, seq, versions, ids, data, auxData);
+		lastSnapshot.compareAndSet(last, snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Copies a section into new arrays, without checking the store sequence
+	 * number.<br>
+	 * <br>
+	 * Sections with no data or no auxiliary data share the empty arrays.
+	 */
+	private final void copySection(int x, short[][] ids, short[][] data, T[][] auxData) {
+		int sectionLength = side * side;
+		int index = x << doubleShift;
+		short[] sectionIds = new short[sectionLength];
+		short[] sectionData = new short[sectionLength];
+		T[] sectionAuxData = newAuxArray(sectionLength);
+		for (int i = 0; i < sectionLength; i++) {
+			sectionIds[i] = blockIds.get(index + i);
+		}
+		auxStore.copyRecords(sectionIds, sectionIds, sectionData, sectionAuxData);
+		boolean hasData = false;
+		boolean hasAuxData = false;
+		for (int i = 0; i < sectionLength; i++) {
+			hasData |= sectionData[i] != 0;
+			hasAuxData |= sectionAuxData[i] != null;
+		}
+		ids[x] = sectionIds;
+		data[x] = hasData ? sectionData : emptySectionData;
+		auxData[x] = hasAuxData ? sectionAuxData : emptySectionAuxData;
+	}
+
+	/**
+	 * Gets the storage used for the block id array
+	 *
+	 * @return the storage
+	 */
+	final AtomicShortStorage getBlockIdStorage() {
+		return blockIds;
+	}
+
+	@SuppressWarnings("unchecked")
+	private final T[] newAuxArray(int length) {
+		return (T[]) new Object[length];
+	}
+
+	@SuppressWarnings("unchecked")
+	private final T[][] newAuxSections(int length) {
+		return (T[][]) new Object[length][];
 	}
 
 	/**
 	 * Compresses the auxiliary store.<br>
 	 * <br>
-	 * This method should only be called when the store is guaranteed not to be
-	 * accessed from any other thread.<br>
+	 * This method may be called from any thread while the store is being
+	 * accessed. Records above the new size of the auxiliary store are copied
+	 * to lower indexes and the block id array is updated using compare and
+	 * set, so concurrent readers and writers only need to retry.<br>
+	 * <br>
+	 * Afterwards, the block id array is compacted, which drops the ids of
+	 * removed records from a palette array. This holds back other writes
+	 * while the array is scanned.<br>
+	 * <br>
+	 * If another thread is compressing the store, the method returns
+	 * immediately.
+	 *
+	 * @return the result of the compression
 	 */
-	public final void compress() {
+	public final CompressionResult compress() {
+		long startTime = System.nanoTime();
 		if (!compressing.compareAndSet(false, true)) {
-			throw new IllegalStateException("Compression started while compression was in progress");
+			return new CompressionResult(0, 0, System.nanoTime() - startTime);
 		}
-		int length = side * side * side;
-		AtomicIntReferenceArrayStore<T> newAuxStore = new AtomicIntReferenceArrayStore<T>(side * side * side);
+		int oldSize = auxStore.getSize();
+		int moved = 0;
+		try {
+			int limit = auxStore.startCompaction();
+			if (limit != -1) {
+				boolean finished = false;
+				for (int pass = 0; pass < COMPRESSION_PASSES && !finished; pass++) {
+					moved += moveRecords(limit);
+					startWrite();
+					try {
+						finished = auxStore.finishCompaction(limit);
+					} finally {
+						finishWrite();
+					}
+				}
+				if (!finished) {
+					auxStore.cancelCompaction(limit);
+				}
+			}
+			startExclusiveWrite();
+			try {
+				blockIds.compact();
+			} finally {
+				finishExclusiveWrite();
+			}
+		} finally {
+			compressing.set(false);
+		}
+		return new CompressionResult(Math.max(0, oldSize - auxStore.getSize()), moved, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Moves the records which are above the compaction limit
+	 *
+	 * @param limit the compaction limit
+	 * @return the number of records moved
+	 */
+	private final int moveRecords(int limit) {
+		int moved = 0;
+		int length = blockIds.length();
 		for (int i = 0; i < length; i++) {
-			short blockId = blockIds.get(i);
-			if (auxStore.isReserved(blockId)) {
-				short storedId = auxStore.getId(blockId);
-				short storedData = auxStore.getData(blockId);
-				T storedAuxData = auxStore.getAuxData(blockId);
-				int newIndex = newAuxStore.add(storedId, storedData, storedAuxData);
-				if (!blockIds.compareAndSet(i, blockId, (short) newIndex)) {
-					throw new IllegalStateException("Unstable block id data during compression step");
+			while (true) {
+				short blockId = blockIds.get(i);
+				if (!auxStore.isReserved(blockId) || !auxStore.isAboveLimit(blockId, limit)) {
+					break;
+				}
+				int seq = auxStore.getSequence(blockId);
+				int newIndex = auxStore.copy(blockId);
+				if (newIndex == -1) {
+					// The record was replaced by a writer
+					continue;
+				}
+				startWrite();
+				try {
+					// The lock fails if the record changed after the sequence number was read
+					boolean locked = auxStore.lock(blockId, seq);
+					if (locked && blockIds.compareAndSet(i, blockId, (short) newIndex)) {
+						auxStore.removeLocked(blockId);
+						moved++;
+						break;
+					}
+					stats.recordCasFailure();
+					if (locked) {
+						auxStore.unlock(blockId);
+					}
+					if (!auxStore.remove(newIndex)) {
+						throw new IllegalStateException("compress() tried to remove new record, but it had already been removed");
+					}
+				} finally {
+					finishWrite();
+					atomicNotify(i);
 				}
 			}
 		}
-		auxStore = newAuxStore;
-		compressing.set(false);
+		return moved;
+	}
+
+	/**
+	 * Frees any memory used by the store outside the Java heap.<br>
+	 * <br>
+	 * This should be called when the chunk which owns the store is unloaded,
+	 * once no other threads can read from the store. The memory is freed
+	 * under an exclusive write, so writes which are still in progress finish
+	 * first. The store must not be used after it is released.
+	 */
+	public void release() {
+		startExclusiveWrite();
+		try {
+			blockIds.release();
+		} finally {
+			finishExclusiveWrite();
+		}
 	}
 
 	/**
@@ -620,7 +1494,6 @@ public class AtomicBlockStore<T> {
 	 * @return the size of the arrays
 	 */
 	public final int getSize() {
-		checkCompressing();
 		return auxStore.getSize();
 	}
 
@@ -630,18 +1503,32 @@ public class AtomicBlockStore<T> {
 	 * @return the size of the arrays
 	 */
 	public final int getEntries() {
-		checkCompressing();
 		return auxStore.getEntries();
 	}
 
 	/**
-	 * Gets if the dirty array has overflowed since the last reset.<br>
+	 * Gets if the number of dirty blocks has reached the dirty size of the
+	 * store since the last reset.<br>
 	 * <br>
+	 * When the store has overflowed, the full store should be sent rather than
+	 * the individual dirty blocks.
 	 *
 	 * @return true if there was an overflow
 	 */
 	public boolean isDirtyOverflow() {
-		return dirtyBlocks.get() >= dirtyX.length;
+		return dirtyBlocks.getCount() >= dirtySize;
+	}
+
+	/**
+	 * Gets if sending the dirty blocks individually is estimated to cost more
+	 * than sending the full store.
+	 *
+	 * @param deltaCost the cost of sending a single block update
+	 * @param fullBlockCost the cost per block of sending the full store
+	 * @return true if the full store should be sent
+	 */
+	public boolean isDirtyOverflow(int deltaCost, int fullBlockCost) {
+		return (long) dirtyBlocks.getCount() * deltaCost >= (long) dirtyBlocks.length() * fullBlockCost;
 	}
 
 	/**
@@ -651,14 +1538,26 @@ public class AtomicBlockStore<T> {
 	 * @return true if the store is dirty
 	 */
 	public boolean isDirty() {
-		return dirtyBlocks.get() > 0;
+		return !dirtyBlocks.isEmpty();
+	}
+
+	/**
+	 * Gets the number of dirty blocks.<br>
+	 * <br>
+	 * Each block is only counted once, no matter how many times it was
+	 * changed.
+	 *
+	 * @return the number of dirty blocks
+	 */
+	public int getDirtyBlocks() {
+		return dirtyBlocks.getCount();
 	}
 
 	/**
 	 * Resets the dirty arrays
 	 */
 	public void resetDirtyArrays() {
-		dirtyBlocks.set(0);
+		dirtyBlocks.clear();
 	}
 
 	/**
@@ -669,18 +1568,58 @@ public class AtomicBlockStore<T> {
 	 * Note: the x, y and z values returned are the chunk coordinates, not the
 	 * world coordinates and the method has no effect on the world field of the
 	 * block.<br>
+	 * <br>
+	 * Each call searches the dirty blocks from the start, so looping over the
+	 * indexes takes quadratic time. If blocks are marked dirty during the
+	 * loop, the indexes shift and blocks may be skipped or repeated.
 	 *
-	 * @param i
-	 * @param block
-	 * @return
+	 * @param i the index of the dirty block
+	 * @param block the block to copy the position into
+	 * @return the block, or null if there are fewer than i + 1 dirty blocks
+	 * @deprecated use drainDirtyBlock(int, Blockm), which continues from the
+	 *             last block and removes each block as it is returned
 	 */
+	@Deprecated
 	public Blockm getDirtyBlock(int i, Blockm block) {
-		if (i >= dirtyBlocks.get()) {
+		int index = dirtyBlocks.getSetIndex(i);
+		if (index < 0) {
 			return null;
 		}
-		block.setX(dirtyX[i] & 0xFF);
-		block.setY(dirtyY[i] & 0xFF);
-		block.setZ(dirtyZ[i] & 0xFF);
+		return setPosition(index, block);
+	}
+
+	/**
+	 * Removes the first dirty block at or after the given index and copies its
+	 * position into the block.<br>
+	 * <br>
+	 * The dirty blocks can be drained, without allocating any objects, using
+	 * <br>
+	 * <br>
+	 * for (int i = store.drainDirtyBlock(0, block); i >= 0; i = store.drainDirtyBlock(i, block)) { ... }<br>
+	 * <br>
+	 * Note: the x, y and z values returned are the chunk coordinates, not the
+	 * world coordinates and the method has no effect on the world field of the
+	 * block.<br>
+	 *
+	 * @param start the index to start searching from
+	 * @param block the block to copy the position into
+	 * @return the index to continue draining from, or -1 if there are no more
+	 *         dirty blocks
+	 */
+	public int drainDirtyBlock(int start, Blockm block) {
+		int index = dirtyBlocks.drainNext(start);
+		if (index < 0) {
+			return -1;
+		}
+		setPosition(index, block);
+		return index + 1;
+	}
+
+	private final Blockm setPosition(int index, Blockm block) {
+		int mask = side - 1;
+		block.setX((index >> doubleShift) & mask);
+		block.setY(index & mask);
+		block.setZ((index >> shift) & mask);
 		return block;
 	}
 
@@ -698,49 +1637,200 @@ public class AtomicBlockStore<T> {
 	 * @param z the z coordinate of the dirty block
 	 */
 	public void markDirty(int x, int y, int z) {
-		int index = dirtyBlocks.getAndIncrement();
-		if (index < dirtyX.length) {
-			dirtyX[index] = (byte) x;
-			dirtyY[index] = (byte) y;
-			dirtyZ[index] = (byte) z;
+		dirtyBlocks.set(getIndex(x, y, z));
+	}
+
+	/**
+	 * Marks the start of a write to the store.<br>
+	 * <br>
+	 * If a snapshot has failed several times because of concurrent writes, new
+	 * writes wait until the snapshot completes.
+	 */
+	private final void startWrite() {
+		int spins = 0;
+		boolean interrupted = false;
+		while (true) {
+			while (snapshotsWaiting.get() != 0 || exclusiveWrite.get()) {
+				interrupted |= backoff(++spins, AtomicWaitQueue.ANY);
+			}
+			writesStarted.incrementAndGet();
+			// An exclusive write may have started after the check, in which
+			// case it waits for this write, so this write must back out
+			if (!exclusiveWrite.get()) {
+				break;
+			}
+			writesFinished.incrementAndGet();
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
-	private final void checkCompressing() {
-		if (compressing.get()) {
-			throw new IllegalStateException("Attempting to access block store during compression phase");
+	/**
+	 * Marks the start of a write which excludes all other writes to the
+	 * store.<br>
+	 * <br>
+	 * The exclusive flag is set before the started count is read, and other
+	 * writes increment the started count before checking the flag, so any
+	 * write which misses the flag is waited for.
+	 */
+	private final void startExclusiveWrite() {
+		int spins = 0;
+		boolean interrupted = false;
+		while (snapshotsWaiting.get() != 0 || !exclusiveWrite.compareAndSet(false, true)) {
+			interrupted |= backoff(++spins, AtomicWaitQueue.ANY);
+		}
+		writesStarted.incrementAndGet();
+		while (true) {
+			// The finished count must be read first, see testSnapshotSequence
+			int finished = writesFinished.get();
+			int started = writesStarted.get();
+			if (started - finished == 1) {
+				break;
+			}
+			interrupted |= backoff(++spins, AtomicWaitQueue.ANY);
 		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Marks the end of an exclusive write to the store
+	 */
+	private final void finishExclusiveWrite() {
+		writesFinished.incrementAndGet();
+		exclusiveWrite.set(false);
 	}
 
 	/**
-	 * Waits until a notify
+	 * Marks the section containing a block as changed, for the next snapshot.
+	 * This must be called before the write is finished.
 	 *
-	 * @return true if interrupted during the wait
+	 * @param index the block index
+	 */
+	private final void markSectionChanged(int index) {
+		sectionVersions.incrementAndGet(index >> doubleShift);
+	}
+
+	/**
+	 * Marks the end of a write to the store
+	 */
+	private final void finishWrite() {
+		writesFinished.incrementAndGet();
+	}
+
+	/**
+	 * Waits until there are no writes in progress and gets the store sequence
+	 * number for a snapshot read.<br>
+	 * <br>
+	 * If new writes are not already held back and the wait exceeds
+	 * SNAPSHOT_SPINS backoffs, SNAPSHOT_WAIT is returned instead, so that the
+	 * caller can raise snapshotsWaiting before waiting again. Otherwise a
+	 * steady stream of writers could keep the store busy indefinitely.
+	 *
+	 * @param waiting true if the caller has already raised snapshotsWaiting
+	 * @return the sequence number, or SNAPSHOT_WAIT
 	 */
-	private final boolean atomicWait() {
-		waiting.incrementAndGet();
+	private final long readSnapshotSequence(boolean waiting) {
+		int spins = 0;
+		boolean interrupted = false;
 		try {
-			synchronized (this) {
-				try {
-					wait();
-				} catch (InterruptedException e) {
-					return true;
+			while (true) {
+				// The finished count must be read first, see testSnapshotSequence
+				int finished = writesFinished.get();
+				int started = writesStarted.get();
+				if (started == finished) {
+					return started;
 				}
+				if (!waiting && spins == SNAPSHOT_SPINS) {
+					return SNAPSHOT_WAIT;
+				}
+				interrupted |= backoff(++spins, AtomicWaitQueue.ANY);
 			}
 		} finally {
-			waiting.decrementAndGet();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
 		}
-		return true;
 	}
 
 	/**
-	 * Notifies all waiting threads
+	 * Tests if any writes were started since a snapshot sequence number was
+	 * read.<br>
+	 * <br>
+	 * Every finished write had already started, so if the started count
+	 * matched the earlier finished count, no write was in progress. If the
+	 * started count has not changed since, no write has occurred.<br>
+	 * <br>
+	 * This method counts as both a volatile read and write, which is required
+	 * for confirming that no change has occurred in another thread.
+	 *
+	 * @param seq the sequence number returned by readSnapshotSequence()
+	 * @return true if no writes occurred
 	 */
-	private final void atomicNotify() {
-		if (waiting.getAndAdd(0) > 0) {
-			synchronized (this) {
-				notifyAll();
-			}
+	private final boolean testSnapshotSequence(int seq) {
+		return writesStarted.compareAndSet(seq, seq);
+	}
+
+	private final void checkLength(short[] array, int length) {
+		if (array != null && array.length != length) {
+			throw new IllegalArgumentException("Array length does not match the number of blocks, expected " + length);
+		}
+	}
+
+	private final void checkLength(Object[] array, int length) {
+		if (array != null && array.length != length) {
+			throw new IllegalArgumentException("Array length does not match the number of blocks, expected " + length);
+		}
+	}
+
+	private final void fillUniform(short[] ids, short[] data, T[] auxData, short id) {
+		if (ids != null) {
+			Arrays.fill(ids, id);
 		}
+		if (data != null) {
+			Arrays.fill(data, (short) 0);
+		}
+		if (auxData != null) {
+			Arrays.fill(auxData, null);
+		}
+	}
+
+	/**
+	 * Gets the contention counters for the store.<br>
+	 * <br>
+	 * The counters include contention in the auxiliary store.
+	 *
+	 * @return the counters
+	 */
+	public final ContentionStats getContentionStats() {
+		return stats;
+	}
+
+	/**
+	 * Waits before an operation is retried, using the backoff strategy for
+	 * the store
+	 *
+	 * @param attempt the number of failed attempts
+	 * @param key the index being waited for, or AtomicWaitQueue.ANY
+	 * @return true if interrupted during the wait
+	 */
+	private final boolean backoff(int attempt, int key) {
+		if (attempt == 0) {
+			return false;
+		}
+		stats.recordRetry();
+		return backoffStrategy.backoff(attempt, key, waitQueue, stats);
+	}
+
+	/**
+	 * Wakes the threads parked by the backoff strategy which are waiting for
+	 * the given index
+	 *
+	 * @param key the index which was updated, or AtomicWaitQueue.ANY
+	 */
+	private final void atomicNotify(int key) {
+		waitQueue.wake(key);
 	}
 }
@@ -0,0 +1,329 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import sun.misc.Unsafe;
+
+/**
+ * An atomic short array which is stored outside the Java heap, in a direct
+ * ByteBuffer.<br>
+ * <br>
+ * The array has the same semantics as AtomicShortArray, but the garbage
+ * collector does not have to scan or copy its contents. The memory is freed
+ * when release() is called, or when the array is garbage collected if it was
+ * never released.<br>
+ * <br>
+ * Atomic updates require sun.misc.Unsafe, see isSupported(). When it is not
+ * available, BlockStorageMode.OFF_HEAP falls back to heap arrays.<br>
+ * <br>
+ * Accesses are not tracked, so release() must only be called when no other
+ * thread can access the array, such as when the chunk which owns it is
+ * unloaded. Accesses after the array is released throw an
+ * IllegalStateException.
+ */
+public final class AtomicDirectShortArray implements AtomicShortStorage {
+	private static final Unsafe unsafe;
+	private static final long addressOffset;
+	private final int length;
+	private final ByteBuffer buffer;
+	private final long address;
+	private volatile boolean released = false;
+
+	static {
+		Unsafe u = null;
+		long offset = -1;
+		try {
+			Field field = Unsafe.class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			u = (Unsafe) field.get(null);
+			offset = u.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+		} catch (Throwable t) {
+			u = null;
+		}
+		unsafe = u;
+		addressOffset = offset;
+	}
+
+	/**
+	 * Creates an off heap atomic short array of a given length
+	 *
+	 * @param length the length of the array
+	 */
+	public AtomicDirectShortArray(int length) {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("Off heap arrays are not supported by this JVM");
+		}
+		this.length = length;
+		int ints = (length & 1) + (length >> 1);
+		// Extra space so the ints can be aligned
+		buffer = ByteBuffer.allocateDirect((ints << 2) + 4);
+		long base = unsafe.getLong(buffer, addressOffset);
+		address = (base + 3) & ~3L;
+		for (int i = 0; i < ints; i++) {
+			unsafe.putInt(address + (i << 2), 0);
+		}
+	}
+
+	/**
+	 * Gets if off heap arrays can be created by this JVM
+	 *
+	 * @return true if supported
+	 */
+	public static boolean isSupported() {
+		return unsafe != null;
+	}
+
+	/**
+	 * Gets the length of the array
+	 *
+	 * @return the length
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Gets an element from the array at a given index
+	 *
+	 * @param index the index
+	 * @return the element
+	 */
+	public short get(int index) {
+		return unpack(getPacked(index), index);
+	}
+
+	/**
+	 * Sets an element to the given value
+	 *
+	 * @param index the index
+	 * @param value the new value
+	 */
+	public void set(int index, short value) {
+		getAndSet(index, value);
+	}
+
+	/**
+	 * Sets an element to the given value, but the update may not happen
+	 * immediately
+	 *
+	 * @param index the index
+	 * @param value the new value
+	 */
+	public void lazySet(int index, short value) {
+		set(index, value);
+	}
+
+	/**
+	 * Sets an element in the array at a given index and returns the old value
+	 *
+	 * @param index the index
+	 * @param value the new value
+	 * @return the old value
+	 */
+	public int getAndSet(int index, short value) {
+		long elementAddress = getAddress(index);
+		while (true) {
+			int oldPacked = unsafe.getIntVolatile(null, elementAddress);
+			int newPacked = replace(oldPacked, index, value);
+			if (unsafe.compareAndSwapInt(null, elementAddress, oldPacked, newPacked)) {
+				return unpack(oldPacked, index);
+			}
+		}
+	}
+
+	/**
+	 * Sets the element at the given index, but only if the previous value was
+	 * the expected value.
+	 *
+	 * @param index the index
+	 * @param expected the expected value
+	 * @param newValue the new value
+	 * @return true on success
+	 */
+	public boolean compareAndSet(int index, short expected, short newValue) {
+		long elementAddress = getAddress(index);
+		while (true) {
+			int oldPacked = unsafe.getIntVolatile(null, elementAddress);
+			if (unpack(oldPacked, index) != expected) {
+				return false;
+			}
+			int newPacked = replace(oldPacked, index, newValue);
+			if (unsafe.compareAndSwapInt(null, elementAddress, oldPacked, newPacked)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gets an array containing all the values in the array. The returned values
+	 * are not guaranteed to be from the same time instant.
+	 *
+	 * If an array is provided and it is the correct length, then that array
+	 * will be used as the destination array.
+	 *
+	 * @param array the provided array
+	 * @return an array containing the values in the array
+	 */
+	public short[] getArray(short[] array) {
+		if (array == null || array.length != length) {
+			array = new short[length];
+		}
+		for (int i = 0; i < length; i += 2) {
+			int packed = getPacked(i);
+			array[i] = unpack(packed, i);
+			if (i + 1 < length) {
+				array[i + 1] = unpack(packed, i + 1);
+			}
+		}
+		return array;
+	}
+
+	/**
+	 * Gets the value of every element in the array, if the array is stored as
+	 * a single value. An AtomicDirectShortArray always stores each element
+	 * separately.
+	 *
+	 * @return -1
+	 */
+	public int getUniformValue() {
+		return -1;
+	}
+
+	/**
+	 * Does nothing, since the array always uses 16 bits per element
+	 *
+	 * @return false
+	 */
+	public boolean compact() {
+		return false;
+	}
+
+	/**
+	 * Frees the memory used by the array.<br>
+	 * <br>
+	 * The array can not be used after it is released, and later accesses
+	 * throw an IllegalStateException. No other thread may be accessing the
+	 * array while it is released, since the memory is freed immediately.
+	 */
+	public synchronized void release() {
+		if (released) {
+			return;
+		}
+		released = true;
+		try {
+			Method invokeCleaner = getInvokeCleaner();
+			if (invokeCleaner != null) {
+				invokeCleaner.invoke(unsafe, buffer);
+			} else {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (Exception e) {
+			// The memory is freed when the buffer is garbage collected
+		}
+	}
+
+	/**
+	 * Gets if the array has been released
+	 *
+	 * @return true if released
+	 */
+	public boolean isReleased() {
+		return released;
+	}
+
+	/**
+	 * Returns a string representation of the array.
+	 *
+	 * The returned values are not guaranteed to be from the same time instant.
+	 *
+	 * @return the String
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(getArray(null));
+	}
+
+	/**
+	 * Gets the address of the int containing an element
+	 *
+	 * @param index the index of the element
+	 * @return the address
+	 */
+	private long getAddress(int index) {
+		if (index < 0 || index >= length) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		if (released) {
+			throw new IllegalStateException("Array has been released");
+		}
+		return address + ((index >> 1) << 2);
+	}
+
+	private int getPacked(int index) {
+		return unsafe.getIntVolatile(null, getAddress(index));
+	}
+
+	/**
+	 * Gets Unsafe.invokeCleaner(ByteBuffer), which replaced the buffer's own
+	 * cleaner in Java 9
+	 *
+	 * @return the method, or null before Java 9
+	 */
+	private static Method getInvokeCleaner() {
+		try {
+			return Unsafe.class.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private int replace(int packed, int index, short value) {
+		if ((index & 1) == 0) {
+			return value << 16 | packed & 0xFFFF;
+		} else {
+			return packed & 0xFFFF0000 | value & 0xFFFF;
+		}
+	}
+
+	private short unpack(int packed, int index) {
+		if ((index & 1) == 0) {
+			return (short) (packed >> 16);
+		} else {
+			return (short) packed;
+		}
+	}
+}
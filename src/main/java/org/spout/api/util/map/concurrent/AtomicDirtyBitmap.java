@@ -0,0 +1,266 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed length set of bits which can be set and drained concurrently.<br>
+ * <br>
+ * The bits are grouped into sections of 64 bits, and a summary bit is kept
+ * for each section which may have bits set. Empty sections are skipped when
+ * searching for set bits, so sparse bitmaps can be drained quickly.<br>
+ * <br>
+ * Setting a bit which is already set has no effect, so a bit is only counted
+ * once, no matter how many threads set it.
+ */
+public class AtomicDirtyBitmap {
+	private final int length;
+	private final AtomicLongArray words;
+	private final AtomicLongArray summary;
+	private final AtomicInteger count = new AtomicInteger(0);
+
+	/**
+	 * Creates a bitmap with the given number of bits
+	 *
+	 * @param length the number of bits
+	 */
+	public AtomicDirtyBitmap(int length) {
+		this.length = length;
+		int wordCount = (length + 63) >> 6;
+		words = new AtomicLongArray(wordCount);
+		summary = new AtomicLongArray((wordCount + 63) >> 6);
+	}
+
+	/**
+	 * Gets the number of bits in the bitmap
+	 *
+	 * @return the length
+	 */
+	public final int length() {
+		return length;
+	}
+
+	/**
+	 * Gets the number of set bits.<br>
+	 * <br>
+	 * The count is updated after the bit is changed, so it may briefly be out
+	 * of date if other threads are updating the bitmap.
+	 *
+	 * @return the number of set bits
+	 */
+	public final int getCount() {
+		return Math.max(0, count.get());
+	}
+
+	/**
+	 * Gets if no bits are set
+	 *
+	 * @return true if the bitmap is empty
+	 */
+	public final boolean isEmpty() {
+		return count.get() <= 0;
+	}
+
+	/**
+	 * Gets the bit at the given index
+	 *
+	 * @param index the index
+	 * @return true if the bit is set
+	 */
+	public final boolean get(int index) {
+		checkIndex(index);
+		return (words.get(index >> 6) & (1L << index)) != 0;
+	}
+
+	/**
+	 * Sets the bit at the given index
+	 *
+	 * @param index the index
+	 * @return true if the bit was not already set
+	 */
+	public final boolean set(int index) {
+		checkIndex(index);
+		int word = index >> 6;
+		long mask = 1L << index;
+		while (true) {
+			long old = words.get(word);
+			if ((old & mask) != 0) {
+				return false;
+			}
+			if (words.compareAndSet(word, old, old | mask)) {
+				break;
+			}
+		}
+		setSummary(word);
+		count.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Clears the first set bit at or after the start index and returns its
+	 * index.<br>
+	 * <br>
+	 * All the set bits can be drained, without allocating any objects, by
+	 * starting at 0 and then restarting at the index after the last drained
+	 * bit, until -1 is returned. Bits set behind the current position are left
+	 * for the next drain.
+	 *
+	 * @param start the index to start searching from
+	 * @return the index of the cleared bit, or -1 if there are no set bits at
+	 *         or after the start index
+	 */
+	public final int drainNext(int start) {
+		if (start < 0) {
+			start = 0;
+		}
+		if (start >= length) {
+			return -1;
+		}
+		int startWord = start >> 6;
+		long startMask = -1L << start;
+		long summaryMask = -1L << startWord;
+		for (int s = startWord >> 6; s < summary.length(); s++) {
+			long sections = summary.get(s) & summaryMask;
+			while (sections != 0) {
+				int word = (s << 6) + Long.numberOfTrailingZeros(sections);
+				sections &= sections - 1;
+				int bit = drainWord(word, word == startWord ? startMask : -1L);
+				if (bit >= 0) {
+					return (word << 6) + bit;
+				}
+			}
+			summaryMask = -1L;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the index of the nth set bit, without clearing it.<br>
+	 * <br>
+	 * The bitmap is searched from the start on each call, so drainNext(start)
+	 * should be used to visit all the set bits.
+	 *
+	 * @param n the number of set bits to skip
+	 * @return the index, or -1 if fewer than n + 1 bits are set
+	 */
+	public final int getSetIndex(int n) {
+		if (n < 0) {
+			return -1;
+		}
+		for (int s = 0; s < summary.length(); s++) {
+			long sections = summary.get(s);
+			while (sections != 0) {
+				int word = (s << 6) + Long.numberOfTrailingZeros(sections);
+				sections &= sections - 1;
+				long bits = words.get(word);
+				int bitCount = Long.bitCount(bits);
+				if (n < bitCount) {
+					for (int i = 0; i < n; i++) {
+						bits &= bits - 1;
+					}
+					return (word << 6) + Long.numberOfTrailingZeros(bits);
+				}
+				n -= bitCount;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Clears all the bits in the bitmap
+	 */
+	public final void clear() {
+		for (int word = 0; word < words.length(); word++) {
+			long old = words.getAndSet(word, 0);
+			if (old != 0) {
+				count.addAndGet(-Long.bitCount(old));
+			}
+			clearSummaryIfEmpty(word);
+		}
+	}
+
+	private final int drainWord(int word, long mask) {
+		while (true) {
+			long old = words.get(word);
+			long bits = old & mask;
+			if (bits == 0) {
+				if (old == 0) {
+					clearSummaryIfEmpty(word);
+				}
+				return -1;
+			}
+			long lowest = bits & -bits;
+			long updated = old & ~lowest;
+			if (words.compareAndSet(word, old, updated)) {
+				count.decrementAndGet();
+				if (updated == 0) {
+					clearSummaryIfEmpty(word);
+				}
+				return Long.numberOfTrailingZeros(lowest);
+			}
+		}
+	}
+
+	private final void setSummary(int word) {
+		int s = word >> 6;
+		long mask = 1L << word;
+		while (true) {
+			long old = summary.get(s);
+			if ((old & mask) != 0 || summary.compareAndSet(s, old, old | mask)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Clears the summary bit for a word.<br>
+	 * <br>
+	 * A bit may have been set between the word being cleared and the summary
+	 * bit being cleared. Setters update the word before the summary, so the
+	 * word is checked again after the summary is cleared.
+	 */
+	private final void clearSummaryIfEmpty(int word) {
+		int s = word >> 6;
+		long mask = 1L << word;
+		while (true) {
+			long old = summary.get(s);
+			if ((old & mask) == 0 || summary.compareAndSet(s, old, old & ~mask)) {
+				break;
+			}
+		}
+		if (words.get(word) != 0) {
+			setSummary(word);
+		}
+	}
+
+	private final void checkIndex(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index + " is out of range for a bitmap of length " + length);
+		}
+	}
+}
@@ -48,6 +48,15 @@ import org.spout.api.math.MathHelper;
  * A method is provided to test if an index is a reserved index, based on the
  * maximum lengths of the arrays. Only reserved indexes are used as element
  * indexes.<br>
+ * <br>
+ * The arrays can be shrunk while the store is in use. A compaction limits new
+ * elements to the bottom part of the arrays, the owner of the store moves the
+ * elements above the limit using the copy(...) method and the arrays are then
+ * shrunk by finishCompaction(...).<br>
+ * <br>
+ * Each element can also have a fixed number of int channels, which store
+ * small numeric values without creating an auxiliary data object. Float
+ * values are stored in the channels as their raw int bits.<br>
  *
  * @param <T> the type of the Object in the {int, &lt;T&gt;} pair
  */
@@ -55,10 +64,9 @@ public final class AtomicIntReferenceArrayStore<T> {
 	@SuppressWarnings("unchecked")
 	private final T EMPTY = (T) new Object();
 
-	private final int SPINS = 10;
-
 	private final int maxLength;
 	private AtomicInteger length = new AtomicInteger(0);
+	private AtomicInteger allocLength = new AtomicInteger(0);
 	private AtomicInteger entries = new AtomicInteger(0);
 	private AtomicInteger scan = new AtomicInteger(0);
 	private final int reservedMask;
@@ -66,26 +74,71 @@ public final class AtomicIntReferenceArrayStore<T> {
 	private AtomicReference<AtomicIntegerArray> seqArray;
 	private AtomicReference<T[]> auxArray;
 	private AtomicReference<int[]> intArray;
+	private AtomicReference<int[]> channelArray;
+	private final int channels;
 
-	private AtomicInteger waiting = new AtomicInteger(0);
+	private final BackoffStrategy backoffStrategy;
+	private final ContentionStats stats;
+	private final AtomicWaitQueue waitQueue = new AtomicWaitQueue();
 
 	public AtomicIntReferenceArrayStore(int maxEntries) {
-		this(maxEntries, 0.49);
+		this(maxEntries, StandardBackoff.ADAPTIVE, new ContentionStats());
+	}
+
+	/**
+	 * Creates a store which uses the given backoff strategy for contended
+	 * operations.
+	 *
+	 * @param maxEntries the maximum number of entries
+	 * @param backoffStrategy the backoff strategy
+	 * @param stats the counters to record contention in
+	 */
+	public AtomicIntReferenceArrayStore(int maxEntries, BackoffStrategy backoffStrategy, ContentionStats stats) {
+		this(maxEntries, 0, backoffStrategy, stats);
+	}
+
+	/**
+	 * Creates a store where each element has the given number of int
+	 * channels.
+	 *
+	 * @param maxEntries the maximum number of entries
+	 * @param channels the number of int channels for each element
+	 * @param backoffStrategy the backoff strategy
+	 * @param stats the counters to record contention in
+	 */
+	public AtomicIntReferenceArrayStore(int maxEntries, int channels, BackoffStrategy backoffStrategy, ContentionStats stats) {
+		this(maxEntries, 0.49, 0, channels, backoffStrategy, stats);
 	}
 
 	public AtomicIntReferenceArrayStore(int maxEntries, double loadFactor) {
 		this(maxEntries, loadFactor, 0);
 	}
 
-	@SuppressWarnings("unchecked")
 	public AtomicIntReferenceArrayStore(int maxEntries, double loadFactor, int initialSize) {
+		this(maxEntries, loadFactor, initialSize, StandardBackoff.ADAPTIVE, new ContentionStats());
+	}
+
+	public AtomicIntReferenceArrayStore(int maxEntries, double loadFactor, int initialSize, BackoffStrategy backoffStrategy, ContentionStats stats) {
+		this(maxEntries, loadFactor, initialSize, 0, backoffStrategy, stats);
+	}
+
+	@SuppressWarnings("unchecked")
+	public AtomicIntReferenceArrayStore(int maxEntries, double loadFactor, int initialSize, int channels, BackoffStrategy backoffStrategy, ContentionStats stats) {
+		if (channels < 0) {
+			throw new IllegalArgumentException("The number of channels may not be negative");
+		}
+		this.channels = channels;
+		this.backoffStrategy = backoffStrategy;
+		this.stats = stats;
 		this.maxLength = MathHelper.roundUpPow2((int) (maxEntries / loadFactor));
 		this.reservedMask = -MathHelper.roundUpPow2(maxLength) & 0xFFFF;
 
 		this.length.set(MathHelper.roundUpPow2(initialSize));
+		this.allocLength.set(this.length.get());
 		this.entries.set(0);
 
 		intArray = new AtomicReference<int[]>(new int[this.length.get()]);
+		channelArray = new AtomicReference<int[]>(new int[this.length.get() * channels]);
 		auxArray = new AtomicReference<T[]>((T[]) new Object[this.length.get()]);
 		seqArray = new AtomicReference<AtomicIntegerArray>(new AtomicIntegerArray(this.length.get()));
 		emptyFill(auxArray.get(), seqArray.get());
@@ -123,15 +176,23 @@ public final class AtomicIntReferenceArrayStore<T> {
 		int spins = 0;
 		boolean interrupted = false;
 		while (true) {
-			if (spins++ > SPINS) {
-				interrupted |= atomicWait();
+			interrupted |= backoff(spins++, index);
+			AtomicIntegerArray seq = seqArray.get();
+			if (index >= seq.length()) {
+				// The element was moved by a compaction
+				return 0;
 			}
-			int initialSequence = seqArray.get().get(index);
+			int initialSequence = seq.get(index);
 			if (initialSequence == DatatableSequenceNumber.UNSTABLE) {
 				continue;
 			}
-			int value = intArray.get()[index];
-			if (!seqArray.get().compareAndSet(index, initialSequence, initialSequence)) {
+			int[] ints = intArray.get();
+			if (index >= ints.length) {
+				continue;
+			}
+			int value = ints[index];
+			if (!seq.compareAndSet(index, initialSequence, initialSequence)) {
+				stats.recordCasFailure();
 				continue;
 			}
 			if (interrupted) {
@@ -154,7 +215,12 @@ public final class AtomicIntReferenceArrayStore<T> {
 	 * @return the sequence number
 	 */
 	public int getSequence(int index) {
-		return this.seqArray.get().get(toInternal(index));
+		index = toInternal(index);
+		AtomicIntegerArray seq = seqArray.get();
+		if (index >= seq.length()) {
+			return DatatableSequenceNumber.UNSTABLE;
+		}
+		return seq.get(index);
 	}
 
 	/**
@@ -168,7 +234,9 @@ public final class AtomicIntReferenceArrayStore<T> {
 	 * @return true if the sequence number matches expected
 	 */
 	public boolean testSequence(int index, int expected) {
-		return seqArray.get().compareAndSet(toInternal(index), expected, expected);
+		index = toInternal(index);
+		AtomicIntegerArray seq = seqArray.get();
+		return index < seq.length() && seq.compareAndSet(index, expected, expected);
 	}
 
 	/**
@@ -219,15 +287,23 @@ public final class AtomicIntReferenceArrayStore<T> {
 		int spins = 0;
 		boolean interrupted = false;
 		while (true) {
-			if (spins++ > SPINS) {
-				interrupted |= atomicWait();
+			interrupted |= backoff(spins++, index);
+			AtomicIntegerArray seq = seqArray.get();
+			if (index >= seq.length()) {
+				// The element was moved by a compaction
+				return EMPTY;
 			}
-			int initialSequence = seqArray.get().get(index);
+			int initialSequence = seq.get(index);
 			if (initialSequence == DatatableSequenceNumber.UNSTABLE) {
 				continue;
 			}
-			T auxData = auxArray.get()[index];
-			if (!seqArray.get().compareAndSet(index, initialSequence, initialSequence)) {
+			T[] aux = auxArray.get();
+			if (index >= aux.length) {
+				continue;
+			}
+			T auxData = aux[index];
+			if (!seq.compareAndSet(index, initialSequence, initialSequence)) {
+				stats.recordCasFailure();
 				continue;
 			}
 			if (interrupted) {
@@ -237,6 +313,85 @@ public final class AtomicIntReferenceArrayStore<T> {
 		}
 	}
 
+	/**
+	 * Gets the number of int channels for each element
+	 *
+	 * @return the number of channels
+	 */
+	public final int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Gets the value of an int channel for the element at a given index.<br>
+	 * <br>
+	 * If there is no element stored at the index, then the return value is
+	 * undefined.
+	 *
+	 * @param index the index
+	 * @param channel the channel
+	 * @return the channel value
+	 */
+	public final int getChannel(int index, int channel) {
+		checkChannel(channel);
+		index = toInternal(index);
+		int spins = 0;
+		boolean interrupted = false;
+		while (true) {
+			interrupted |= backoff(spins++, index);
+			AtomicIntegerArray seq = seqArray.get();
+			if (index >= seq.length()) {
+				// The element was moved by a compaction
+				return 0;
+			}
+			int initialSequence = seq.get(index);
+			if (initialSequence == DatatableSequenceNumber.UNSTABLE) {
+				continue;
+			}
+			int[] channelValues = channelArray.get();
+			int channelIndex = index * channels + channel;
+			if (channelIndex >= channelValues.length) {
+				continue;
+			}
+			int value = channelValues[channelIndex];
+			if (!seq.compareAndSet(index, initialSequence, initialSequence)) {
+				stats.recordCasFailure();
+				continue;
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Gets the value of an int channel for an element which has been locked
+	 * by lock(...)
+	 *
+	 * @param index the index
+	 * @param channel the channel
+	 * @return the channel value
+	 */
+	public final int getLockedChannel(int index, int channel) {
+		checkChannel(channel);
+		return channelArray.get()[toInternal(index) * channels + channel];
+	}
+
+	/**
+	 * Sets the value of an int channel for an element which has been locked
+	 * by lock(...). The element's sequence number changes when it is
+	 * unlocked.
+	 *
+	 * @param index the index
+	 * @param channel the channel
+	 * @param value the new channel value
+	 */
+	public final void setLockedChannel(int index, int channel, int value) {
+		checkChannel(channel);
+		channelArray.get()[toInternal(index) * channels + channel] = value;
+	}
+
 	/**
 	 * Adds an entry to the store. The auxData parameter should be set to null
 	 * to indicate no auxiliary data.<br>
@@ -251,31 +406,92 @@ public final class AtomicIntReferenceArrayStore<T> {
 	 * @return the index that the entry was stored in the array
 	 */
 	public final int add(short id, short data, T auxData) {
+		return add(id, data, auxData, null, true);
+	}
+
+	/**
+	 * Adds an entry to the store, with initial values for its int channels.
+	 * The auxData parameter should be set to null to indicate no auxiliary
+	 * data.<br>
+	 * <br>
+	 * The index that is returned is guaranteed to be one of the reserved
+	 * indexes.<br>
+	 *
+	 * @param id the id
+	 * @param data the data
+	 * @param auxData the auxiliary data
+	 * @param channelValues the channel values, or null for all zero
+	 * @return the index that the entry was stored in the array
+	 */
+	public final int add(short id, short data, T auxData, int[] channelValues) {
+		return add(id, data, auxData, channelValues, true);
+	}
+
+	/**
+	 * Adds an entry to the store.<br>
+	 * <br>
+	 * If resize is false, the arrays are only resized if the part of the
+	 * arrays in use is full. This prevents an element which is being moved
+	 * from cancelling a compaction, since it is counted twice until the old
+	 * element is removed.
+	 *
+	 * @param id the id
+	 * @param data the data
+	 * @param auxData the auxiliary data
+	 * @param channelValues the channel values, or null for all zero
+	 * @param resize true to allow the arrays to be resized
+	 * @return the index that the entry was stored in the array
+	 */
+	private final int add(short id, short data, T auxData, int[] channelValues, boolean resize) {
 		if (auxData == EMPTY) {
 			throw new IllegalArgumentException("The EMPTY singleton may not be passed as auxilary data");
 		}
 		entries.incrementAndGet();
 
-		while (true) {
-			if (needsResize()) {
-				resizeArrays();
-			}
-			int testIndex = scan.getAndIncrement() & length.get() - 1;
-			int prevSeq = seqArray.get().getAndSet(testIndex, DatatableSequenceNumber.UNSTABLE);
-			if (prevSeq == DatatableSequenceNumber.UNSTABLE) {
-				continue;
-			}
-			try {
-				if (auxArray.get()[testIndex] != EMPTY) {
+		int spins = 0;
+		boolean interrupted = false;
+		try {
+			while (true) {
+				if ((resize || entries.get() >= allocLength.get()) && needsResize()) {
+					resizeArrays();
+				}
+				int testIndex = scan.getAndIncrement() & allocLength.get() - 1;
+				AtomicIntegerArray seq = seqArray.get();
+				if (testIndex >= seq.length()) {
+					continue;
+				}
+				int prevSeq = seq.getAndSet(testIndex, DatatableSequenceNumber.UNSTABLE);
+				if (prevSeq == DatatableSequenceNumber.UNSTABLE) {
+					stats.recordCasFailure();
+					interrupted |= backoff(++spins, AtomicWaitQueue.ANY);
 					continue;
 				}
-				int idAndData = id << 16 | data & 0xFFFF;
-				intArray.get()[testIndex] = idAndData;
-				auxArray.get()[testIndex] = auxData;
-				return toExternal(testIndex);
-			} finally {
-				seqArray.get().set(testIndex, DatatableSequenceNumber.get());
-				atomicNotify();
+				boolean stored = false;
+				try {
+					if (auxArray.get()[testIndex] != EMPTY) {
+						continue;
+					}
+					int idAndData = id << 16 | data & 0xFFFF;
+					intArray.get()[testIndex] = idAndData;
+					auxArray.get()[testIndex] = auxData;
+					if (channels > 0) {
+						int[] values = channelArray.get();
+						int channelIndex = testIndex * channels;
+						for (int c = 0; c < channels; c++) {
+							values[channelIndex + c] = channelValues == null || c >= channelValues.length ? 0 : channelValues[c];
+						}
+					}
+					stored = true;
+					return toExternal(testIndex);
+				} finally {
+					// An element which was skipped keeps its sequence number, so readers of it don't retry
+					seqArray.get().set(testIndex, stored ? DatatableSequenceNumber.get() : prevSeq);
+					atomicNotify(testIndex);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
 			}
 		}
 	}
@@ -290,26 +506,92 @@ public final class AtomicIntReferenceArrayStore<T> {
 	public boolean remove(int index) {
 		index = toInternal(index);
 
-		while (true) {
-			int prevSeq = seqArray.get().getAndSet(index, DatatableSequenceNumber.UNSTABLE);
-			if (prevSeq == DatatableSequenceNumber.UNSTABLE) {
-				continue;
-			}
-			try {
-				T current = auxArray.get()[index];
-				if (current == EMPTY) {
+		int spins = 0;
+		boolean interrupted = false;
+		try {
+			while (true) {
+				AtomicIntegerArray seq = seqArray.get();
+				if (index >= seq.length()) {
 					return false;
 				}
-				auxArray.get()[index] = EMPTY;
-				entries.decrementAndGet();
-				return true;
-			} finally {
-				seqArray.get().set(index, DatatableSequenceNumber.get());
-				atomicNotify();
+				int prevSeq = seq.getAndSet(index, DatatableSequenceNumber.UNSTABLE);
+				if (prevSeq == DatatableSequenceNumber.UNSTABLE) {
+					stats.recordCasFailure();
+					interrupted |= backoff(++spins, index);
+					continue;
+				}
+				try {
+					T current = auxArray.get()[index];
+					if (current == EMPTY) {
+						return false;
+					}
+					auxArray.get()[index] = EMPTY;
+					entries.decrementAndGet();
+					return true;
+				} finally {
+					seqArray.get().set(index, DatatableSequenceNumber.get());
+					atomicNotify(index);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
 			}
 		}
 	}
 
+	/**
+	 * Locks the element at the given index, but only if its sequence number
+	 * matches the expected sequence number.<br>
+	 * <br>
+	 * A locked element can not be changed, removed or reused until it is
+	 * released by unlock(...) or removeLocked(...). The element must not be
+	 * held locked while adding elements, since the arrays can not be resized
+	 * while any element is locked.
+	 *
+	 * @param index the index
+	 * @param expectedSequence the sequence number when the element was read
+	 * @return true if the element was locked
+	 */
+	public final boolean lock(int index, int expectedSequence) {
+		index = toInternal(index);
+		if (expectedSequence == DatatableSequenceNumber.UNSTABLE) {
+			return false;
+		}
+		AtomicIntegerArray seq = seqArray.get();
+		if (index >= seq.length()) {
+			return false;
+		}
+		return seq.compareAndSet(index, expectedSequence, DatatableSequenceNumber.UNSTABLE);
+	}
+
+	/**
+	 * Unlocks an element locked by lock(...), without changing it
+	 *
+	 * @param index the index
+	 */
+	public final void unlock(int index) {
+		index = toInternal(index);
+		seqArray.get().set(index, DatatableSequenceNumber.get());
+		atomicNotify(index);
+	}
+
+	/**
+	 * Removes an element locked by lock(...) and unlocks it
+	 *
+	 * @param index the index
+	 */
+	public final void removeLocked(int index) {
+		index = toInternal(index);
+		try {
+			auxArray.get()[index] = EMPTY;
+			entries.decrementAndGet();
+		} finally {
+			seqArray.get().set(index, DatatableSequenceNumber.get());
+			atomicNotify(index);
+		}
+	}
+
 	/**
 	 * Resizes the arrays, if required.
 	 *
@@ -329,6 +611,13 @@ public final class AtomicIntReferenceArrayStore<T> {
 			lockedIndexes++;
 			// Once locked, no other thread can do the resize operation
 
+			// Cancelling a compaction in progress makes the full length available again
+			int alloc = allocLength.get();
+			if (alloc < length.get()) {
+				allocLength.compareAndSet(alloc, length.get());
+				return;
+			}
+
 			// Lock the remaining elements
 			for (int i = 1; i < length.get(); i++) {
 				int seq;
@@ -349,10 +638,12 @@ public final class AtomicIntReferenceArrayStore<T> {
 
 			//
 			int[] newIntArray = new int[newLength];
+			int[] newChannelArray = new int[newLength * channels];
 			@SuppressWarnings("unchecked")
 			T[] newAuxArray = (T[]) new Object[newLength];
 			AtomicIntegerArray newSeqArray = new AtomicIntegerArray(newLength);
 			emptyFill(newAuxArray, null);
+			System.arraycopy(channelArray.get(), 0, newChannelArray, 0, length.get() * channels);
 
 			// Copy the state of the current array to the new array
 			for (int i = 0; i < length.get(); i++) {
@@ -367,6 +658,7 @@ public final class AtomicIntReferenceArrayStore<T> {
 				newAuxArray[i] = EMPTY;
 			}
 			intArray.set(newIntArray);
+			channelArray.set(newChannelArray);
 			auxArray.set(newAuxArray);
 			seqArray.set(newSeqArray);
 
@@ -374,6 +666,7 @@ public final class AtomicIntReferenceArrayStore<T> {
 
 			// Update the length, the array already has been lengthened, so this is safe
 			length.set(newLength);
+			allocLength.set(newLength);
 
 			// Set the top half of the array's sequence number to 0 (from UNSTABLE)
 			for (int i = oldLength; i < newLength; i++) {
@@ -388,9 +681,219 @@ public final class AtomicIntReferenceArrayStore<T> {
 					throw new IllegalStateException("Element " + i + " + was not locked when released during resizing");
 				}
 			}
-			atomicNotify();
+			atomicNotify(AtomicWaitQueue.ANY);
+		}
+
+	}
+
+	/**
+	 * Resolves an array of block values into ids, data and auxiliary data.<br>
+	 * <br>
+	 * Each value is either an id or a reserved index. For reserved indexes,
+	 * the id, data and auxiliary data of the element at that index are copied,
+	 * otherwise the value is the id and the data and auxiliary data are 0 and
+	 * null.<br>
+	 * <br>
+	 * The elements are read without checking their sequence numbers, so the
+	 * result may be torn unless the caller can confirm by other means that no
+	 * element was updated during the copy.<br>
+	 * <br>
+	 * The ids array may be the same array as the values array. Any of the
+	 * destination arrays may be null.
+	 *
+	 * @param values the values to resolve
+	 * @param ids the array for the ids
+	 * @param data the array for the data
+	 * @param auxData the array for the auxiliary data
+	 */
+	public final void copyRecords(short[] values, short[] ids, short[] data, T[] auxData) {
+		int[] ints = intArray.get();
+		T[] aux = auxArray.get();
+		for (int i = 0; i < values.length; i++) {
+			short value = values[i];
+			if (isReserved(value)) {
+				int index = toInternal(value);
+				int idAndData = 0;
+				T auxValue = null;
+				if (index < ints.length && index < aux.length) {
+					idAndData = ints[index];
+					auxValue = aux[index];
+					if (auxValue == EMPTY) {
+						auxValue = null;
+					}
+				}
+				if (ids != null) {
+					ids[i] = (short) (idAndData >> 16);
+				}
+				if (data != null) {
+					data[i] = (short) idAndData;
+				}
+				if (auxData != null) {
+					auxData[i] = auxValue;
+				}
+			} else {
+				if (ids != null) {
+					ids[i] = value;
+				}
+				if (data != null) {
+					data[i] = 0;
+				}
+				if (auxData != null) {
+					auxData[i] = null;
+				}
+			}
 		}
+	}
 
+	/**
+	 * Starts a compaction of the store.<br>
+	 * <br>
+	 * After this method is called, new elements are only added at indexes
+	 * below the returned limit. Elements above the limit should be moved using
+	 * copy(...), followed by remove(...) for the old index, and then
+	 * finishCompaction(...) called to shrink the arrays.<br>
+	 * <br>
+	 * A resize of the arrays cancels the compaction.
+	 *
+	 * @return the new length of the arrays, or -1 if the arrays would not be
+	 *         shrunk or if a compaction is already in progress
+	 */
+	public final int startCompaction() {
+		int currentLength = length.get();
+		int currentEntries = entries.get();
+		int limit = MathHelper.roundUpPow2(currentEntries + currentEntries / 3 + 1);
+		if (limit >= currentLength || !allocLength.compareAndSet(currentLength, limit)) {
+			return -1;
+		}
+		return limit;
+	}
+
+	/**
+	 * Indicates if the element at a given index needs to be moved before a
+	 * compaction to the given limit can finish.
+	 *
+	 * @param index the index
+	 * @param limit the compaction limit
+	 * @return true if the element is above the limit
+	 */
+	public final boolean isAboveLimit(int index, int limit) {
+		return toInternal(index) >= limit;
+	}
+
+	/**
+	 * Copies the element at a given index to a new index.<br>
+	 * <br>
+	 * The element at the original index is not removed.
+	 *
+	 * @param index the index
+	 * @return the new index, or -1 if there is no element at the index
+	 */
+	public final int copy(int index) {
+		index = toInternal(index);
+		while (true) {
+			AtomicIntegerArray seq = seqArray.get();
+			if (index >= seq.length()) {
+				return -1;
+			}
+			int initialSequence = seq.get(index);
+			if (initialSequence == DatatableSequenceNumber.UNSTABLE) {
+				continue;
+			}
+			int[] ints = intArray.get();
+			T[] aux = auxArray.get();
+			if (index >= ints.length || index >= aux.length) {
+				continue;
+			}
+			int value = ints[index];
+			T auxData = aux[index];
+			int[] channelValues = null;
+			if (channels > 0) {
+				int[] values = channelArray.get();
+				if ((index + 1) * channels > values.length) {
+					continue;
+				}
+				channelValues = new int[channels];
+				System.arraycopy(values, index * channels, channelValues, 0, channels);
+			}
+			if (!seq.compareAndSet(index, initialSequence, initialSequence)) {
+				stats.recordCasFailure();
+				continue;
+			}
+			if (auxData == EMPTY) {
+				return -1;
+			}
+			return add((short) (value >> 16), (short) value, auxData, channelValues, false);
+		}
+	}
+
+	/**
+	 * Shrinks the arrays to the compaction limit.<br>
+	 * <br>
+	 * The arrays are only shrunk if there are no elements above the limit and
+	 * the compaction has not been cancelled.
+	 *
+	 * @param limit the limit returned by startCompaction()
+	 * @return true if the arrays were shrunk
+	 */
+	public final boolean finishCompaction(int limit) {
+		int lockedIndexes = 0;
+		try {
+			// Lock all the elements, this also prevents resizing
+			for (int i = 0; i < length.get(); i++) {
+				while (seqArray.get().getAndSet(i, DatatableSequenceNumber.UNSTABLE) == DatatableSequenceNumber.UNSTABLE) {
+				}
+				lockedIndexes++;
+			}
+
+			int oldLength = length.get();
+			if (allocLength.get() != limit || limit >= oldLength) {
+				return false;
+			}
+
+			T[] oldAuxArray = auxArray.get();
+			for (int i = limit; i < oldLength; i++) {
+				if (oldAuxArray[i] != EMPTY) {
+					return false;
+				}
+			}
+
+			int[] newIntArray = new int[limit];
+			int[] newChannelArray = new int[limit * channels];
+			@SuppressWarnings("unchecked")
+			T[] newAuxArray = (T[]) new Object[limit];
+			AtomicIntegerArray newSeqArray = new AtomicIntegerArray(limit);
+			System.arraycopy(intArray.get(), 0, newIntArray, 0, limit);
+			System.arraycopy(channelArray.get(), 0, newChannelArray, 0, limit * channels);
+			System.arraycopy(oldAuxArray, 0, newAuxArray, 0, limit);
+			for (int i = 0; i < limit; i++) {
+				newSeqArray.set(i, DatatableSequenceNumber.UNSTABLE);
+			}
+			intArray.set(newIntArray);
+			channelArray.set(newChannelArray);
+			auxArray.set(newAuxArray);
+			seqArray.set(newSeqArray);
+
+			length.set(limit);
+			return true;
+		} finally {
+			// The elements of the old arrays above the limit stay locked
+			int unlock = Math.min(lockedIndexes, length.get());
+			for (int i = 0; i < unlock; i++) {
+				if (!seqArray.get().compareAndSet(i, DatatableSequenceNumber.UNSTABLE, DatatableSequenceNumber.get())) {
+					throw new IllegalStateException("Element " + i + " + was not locked when released during compaction");
+				}
+			}
+			atomicNotify(AtomicWaitQueue.ANY);
+		}
+	}
+
+	/**
+	 * Cancels a compaction which could not be finished.
+	 *
+	 * @param limit the limit returned by startCompaction()
+	 */
+	public final void cancelCompaction(int limit) {
+		allocLength.compareAndSet(limit, length.get());
 	}
 
 	/**
@@ -413,6 +916,12 @@ public final class AtomicIntReferenceArrayStore<T> {
 		return external & ~reservedMask & 0xFFFF;
 	}
 
+	private final void checkChannel(int channel) {
+		if (channel < 0 || channel >= channels) {
+			throw new IndexOutOfBoundsException("Channel " + channel + " is out of range, the store has " + channels + " channels");
+		}
+	}
+
 	/**
 	 * Fills an auxiliary array with all empty objects.
 	 *
@@ -447,48 +956,54 @@ public final class AtomicIntReferenceArrayStore<T> {
 
 	/**
 	 * Indicates if the array needs resizing. An array is considered to need
-	 * resizing if it is more than 50% full.
+	 * resizing if it is more than 75% full.
 	 *
 	 * Once an array has a length of the maximum length, it is never considered
 	 * in need to resizing.
 	 *
+	 * During a compaction, the part of the array below the compaction limit is
+	 * used instead. A resize then cancels the compaction.
+	 *
 	 * @return true if the array needs to be resized
 	 */
 	private final boolean needsResize() {
-		int lengthThreshold = length.get();
-		lengthThreshold -= lengthThreshold >> 2;
-		return length.get() < maxLength && entries.get() >= lengthThreshold;
+		int alloc = allocLength.get();
+		int lengthThreshold = alloc - (alloc >> 2);
+		return alloc < maxLength && entries.get() >= lengthThreshold;
+	}
+
+	/**
+	 * Gets the contention counters for the store
+	 *
+	 * @return the counters
+	 */
+	public final ContentionStats getContentionStats() {
+		return stats;
 	}
 
 	/**
-	 * Waits until a notify
+	 * Waits before an operation is retried, using the backoff strategy for
+	 * the store
 	 *
+	 * @param attempt the number of failed attempts
+	 * @param key the index being waited for, or AtomicWaitQueue.ANY
 	 * @return true if interrupted during the wait
 	 */
-	private final boolean atomicWait() {
-		waiting.incrementAndGet();
-		try {
-			synchronized (this) {
-				try {
-					wait();
-				} catch (InterruptedException e) {
-					return true;
-				}
-			}
-		} finally {
-			waiting.decrementAndGet();
+	private final boolean backoff(int attempt, int key) {
+		if (attempt == 0) {
+			return false;
 		}
-		return true;
+		stats.recordRetry();
+		return backoffStrategy.backoff(attempt, key, waitQueue, stats);
 	}
 
 	/**
-	 * Notifies all waiting threads
+	 * Wakes the threads parked by the backoff strategy which are waiting for
+	 * the given index
+	 *
+	 * @param key the index which was updated, or AtomicWaitQueue.ANY
 	 */
-	private final void atomicNotify() {
-		if (!waiting.compareAndSet(0, 0)) {
-			synchronized (this) {
-				notifyAll();
-			}
-		}
+	private final void atomicNotify(int key) {
+		waitQueue.wake(key);
 	}
 }
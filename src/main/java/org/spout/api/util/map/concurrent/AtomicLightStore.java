@@ -0,0 +1,171 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores the block light and sky light levels for a cube of blocks, such as
+ * a chunk, alongside its AtomicBlockStore.<br>
+ * <br>
+ * Light levels range from 0 to 15 and are stored as nibbles. Each level can be
+ * read and updated atomically.
+ */
+public class AtomicLightStore {
+	private final int shift;
+	private final int doubleShift;
+	private final int side;
+	private final AtomicNibbleArray blockLight;
+	private final AtomicNibbleArray skyLight;
+	private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+	/**
+	 * Creates a light store with all light levels set to 0
+	 *
+	 * @param shift the log2 of the side length of the cube
+	 */
+	public AtomicLightStore(int shift) {
+		this.shift = shift;
+		this.doubleShift = shift << 1;
+		this.side = 1 << shift;
+		int size = side * side * side;
+		blockLight = new AtomicNibbleArray(size);
+		skyLight = new AtomicNibbleArray(size);
+	}
+
+	/**
+	 * Gets the log2 of the side length of the store
+	 *
+	 * @return the shift
+	 */
+	public final int getShift() {
+		return shift;
+	}
+
+	/**
+	 * Gets the block light level for the block at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the light level
+	 */
+	public final byte getBlockLight(int x, int y, int z) {
+		return blockLight.get(getIndex(x, y, z));
+	}
+
+	/**
+	 * Sets the block light level for the block at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param level the new light level
+	 * @return the old light level
+	 */
+	public final byte setBlockLight(int x, int y, int z, byte level) {
+		return markDirty(blockLight.getAndSet(getIndex(x, y, z), level), level);
+	}
+
+	/**
+	 * Gets the sky light level for the block at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the light level
+	 */
+	public final byte getSkyLight(int x, int y, int z) {
+		return skyLight.get(getIndex(x, y, z));
+	}
+
+	/**
+	 * Sets the sky light level for the block at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param level the new light level
+	 * @return the old light level
+	 */
+	public final byte setSkyLight(int x, int y, int z, byte level) {
+		return markDirty(skyLight.getAndSet(getIndex(x, y, z), level), level);
+	}
+
+	/**
+	 * Gets the block light levels for the store, using the same index order
+	 * as AtomicBlockStore. The returned values are not guaranteed to be from
+	 * the same time instant.
+	 *
+	 * @param array an array to store the levels, or null to create a new one
+	 * @return the light levels, one per byte
+	 */
+	public byte[] getBlockLightArray(byte[] array) {
+		return blockLight.getArray(array);
+	}
+
+	/**
+	 * Gets the sky light levels for the store, using the same index order as
+	 * AtomicBlockStore. The returned values are not guaranteed to be from the
+	 * same time instant.
+	 *
+	 * @param array an array to store the levels, or null to create a new one
+	 * @return the light levels, one per byte
+	 */
+	public byte[] getSkyLightArray(byte[] array) {
+		return skyLight.getArray(array);
+	}
+
+	/**
+	 * Gets if any light level has changed since the last call to
+	 * resetDirty()
+	 *
+	 * @return true if the store is dirty
+	 */
+	public boolean isDirty() {
+		return dirty.get();
+	}
+
+	/**
+	 * Clears the dirty flag for the store
+	 *
+	 * @return true if the store was dirty
+	 */
+	public boolean resetDirty() {
+		return dirty.getAndSet(false);
+	}
+
+	private final byte markDirty(byte oldLevel, byte newLevel) {
+		if (oldLevel != newLevel && !dirty.get()) {
+			dirty.set(true);
+		}
+		return oldLevel;
+	}
+
+	private final int getIndex(int x, int y, int z) {
+		return (x << doubleShift) + (z << shift) + y;
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A fixed length array of nibbles (4 bit values) where each element can be
+ * updated atomically.<br>
+ * <br>
+ * Eight nibbles are packed into each int of the backing array.
+ */
+public class AtomicNibbleArray {
+	private final int length;
+	private final AtomicIntegerArray backingArray;
+
+	/**
+	 * Creates an atomic nibble array of a given length, with all elements set
+	 * to 0
+	 *
+	 * @param length the length of the array
+	 */
+	public AtomicNibbleArray(int length) {
+		this.length = length;
+		backingArray = new AtomicIntegerArray((length + 7) >> 3);
+	}
+
+	/**
+	 * Gets the length of the array
+	 *
+	 * @return the length
+	 */
+	public final int length() {
+		return length;
+	}
+
+	/**
+	 * Gets an element from the array at a given index
+	 *
+	 * @param index the index
+	 * @return the element, from 0 to 15
+	 */
+	public final byte get(int index) {
+		return (byte) ((backingArray.get(index >> 3) >>> getShift(index)) & 0xF);
+	}
+
+	/**
+	 * Sets an element in the array at a given index and returns the old value
+	 *
+	 * @param index the index
+	 * @param value the new value, from 0 to 15
+	 * @return the old value
+	 */
+	public final byte getAndSet(int index, byte value) {
+		checkValue(value);
+		int backingIndex = index >> 3;
+		int shift = getShift(index);
+		int mask = 0xF << shift;
+		while (true) {
+			int oldPacked = backingArray.get(backingIndex);
+			int newPacked = (oldPacked & ~mask) | (value << shift);
+			if (oldPacked == newPacked || backingArray.compareAndSet(backingIndex, oldPacked, newPacked)) {
+				return (byte) ((oldPacked >>> shift) & 0xF);
+			}
+		}
+	}
+
+	/**
+	 * Sets an element to the given value
+	 *
+	 * @param index the index
+	 * @param value the new value, from 0 to 15
+	 */
+	public final void set(int index, byte value) {
+		getAndSet(index, value);
+	}
+
+	/**
+	 * Sets the element at the given index, but only if the previous value was
+	 * the expected value.
+	 *
+	 * @param index the index
+	 * @param expected the expected value
+	 * @param newValue the new value, from 0 to 15
+	 * @return true on success
+	 */
+	public final boolean compareAndSet(int index, byte expected, byte newValue) {
+		checkValue(newValue);
+		int backingIndex = index >> 3;
+		int shift = getShift(index);
+		int mask = 0xF << shift;
+		while (true) {
+			int oldPacked = backingArray.get(backingIndex);
+			if (((oldPacked >>> shift) & 0xF) != expected) {
+				return false;
+			}
+			int newPacked = (oldPacked & ~mask) | (newValue << shift);
+			if (backingArray.compareAndSet(backingIndex, oldPacked, newPacked)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Sets every element in the array to the given value. This is not atomic
+	 * with respect to the array as a whole.
+	 *
+	 * @param value the new value, from 0 to 15
+	 */
+	public final void fill(byte value) {
+		checkValue(value);
+		int packed = value * 0x11111111;
+		for (int i = 0; i < backingArray.length(); i++) {
+			backingArray.set(i, packed);
+		}
+	}
+
+	/**
+	 * Gets an array containing all the values in the array, with one element
+	 * per byte. The returned values are not guaranteed to be from the same
+	 * time instant.
+	 *
+	 * If an array is provided and it is the correct length, then that array
+	 * will be used as the destination array.
+	 *
+	 * @param array the provided array
+	 * @return an array containing the values in the array
+	 */
+	public byte[] getArray(byte[] array) {
+		if (array == null || array.length != length) {
+			array = new byte[length];
+		}
+		for (int i = 0; i < length; i += 8) {
+			int packed = backingArray.get(i >> 3);
+			int end = Math.min(8, length - i);
+			for (int j = 0; j < end; j++) {
+				array[i + j] = (byte) ((packed >>> (j << 2)) & 0xF);
+			}
+		}
+		return array;
+	}
+
+	/**
+	 * Gets an array containing all the values in the array, with two elements
+	 * per byte. The element at an even index is stored in the low nibble. The
+	 * returned values are not guaranteed to be from the same time instant.
+	 *
+	 * If an array is provided and it is the correct length, then that array
+	 * will be used as the destination array.
+	 *
+	 * @param array the provided array
+	 * @return an array containing the packed values in the array
+	 */
+	public byte[] getPackedArray(byte[] array) {
+		int packedLength = (length + 1) >> 1;
+		if (array == null || array.length != packedLength) {
+			array = new byte[packedLength];
+		}
+		for (int i = 0; i < packedLength; i += 4) {
+			int packed = backingArray.get(i >> 2);
+			int end = Math.min(4, packedLength - i);
+			for (int j = 0; j < end; j++) {
+				array[i + j] = (byte) (packed >>> (j << 3));
+			}
+		}
+		return array;
+	}
+
+	private final int getShift(int index) {
+		return (index & 7) << 2;
+	}
+
+	private final void checkValue(byte value) {
+		if (value < 0 || value > 15) {
+			throw new IllegalArgumentException("Nibble values must be between 0 and 15, got " + value);
+		}
+	}
+}
@@ -0,0 +1,530 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An atomic short array which stores its elements as indexes into a local
+ * palette of the distinct values in the array.<br>
+ * <br>
+ * A new array is uniform, it stores a single value for all elements and does
+ * not allocate any per element storage. The first write of a different value
+ * inflates the array.<br>
+ * <br>
+ * The indexes are bit packed into longs. The number of bits per index starts
+ * at 1 and is doubled each time the palette fills up. Once the palette would
+ * need more than the maximum number of palette bits, the array switches to
+ * storing the values directly, 16 bits per element.<br>
+ * <br>
+ * Entries are not removed from the palette by writes, so a value which was
+ * stored once keeps its palette slot until {@link #compact()} rebuilds the
+ * palette from the values still in the array.<br>
+ * <br>
+ * Reads are lock free. Writes are lock free, except while the palette is being
+ * resized, in which case the writer waits for the resize to complete.
+ */
+public class AtomicPaletteShortArray implements AtomicShortStorage {
+	/**
+	 * The default maximum number of bits per palette index
+	 */
+	public final static int DEFAULT_MAX_PALETTE_BITS = 8;
+
+	private final static int FROZEN = 0x80000000;
+
+	private final int length;
+	private final int maxPaletteBits;
+	private final boolean offHeap;
+	private final AtomicReference<PaletteState> state;
+
+	/**
+	 * Creates an atomic palette short array of a given length, with all
+	 * elements set to zero
+	 *
+	 * @param length the length of the array
+	 */
+	public AtomicPaletteShortArray(int length) {
+		this(length, DEFAULT_MAX_PALETTE_BITS);
+	}
+
+	/**
+	 * Creates an atomic palette short array of a given length, with all
+	 * elements set to zero
+	 *
+	 * @param length the length of the array
+	 * @param maxPaletteBits the maximum number of bits per palette index, this
+	 *            should be 1, 2, 4 or 8, or 0 to switch from uniform to direct
+	 *            storage
+	 */
+	public AtomicPaletteShortArray(int length, int maxPaletteBits) {
+		this(length, maxPaletteBits, false);
+	}
+
+	/**
+	 * Creates an atomic palette short array of a given length, with all
+	 * elements set to zero
+	 *
+	 * @param length the length of the array
+	 * @param maxPaletteBits the maximum number of bits per palette index, this
+	 *            should be 1, 2, 4 or 8, or 0 to switch from uniform to direct
+	 *            storage
+	 * @param offHeap true to use an AtomicDirectShortArray for direct storage
+	 */
+	public AtomicPaletteShortArray(int length, int maxPaletteBits, boolean offHeap) {
+		if (maxPaletteBits < 0 || maxPaletteBits > DEFAULT_MAX_PALETTE_BITS || Integer.bitCount(maxPaletteBits) > 1) {
+			throw new IllegalArgumentException("The maximum palette bits must be 0, 1, 2, 4 or 8");
+		}
+		this.length = length;
+		this.maxPaletteBits = maxPaletteBits;
+		this.offHeap = offHeap;
+		PaletteState initial = new PaletteState(length, 0);
+		initial.add((short) 0);
+		this.state = new AtomicReference<PaletteState>(initial);
+	}
+
+	public final int length() {
+		return length;
+	}
+
+	public final short get(int index) {
+		PaletteState s = state.get();
+		if (s.words != null) {
+			return s.palette[s.getPaletteIndex(index)];
+		} else if (s.direct != null) {
+			return s.direct.get(index);
+		}
+		return s.palette[0];
+	}
+
+	public final void set(int index, short value) {
+		getAndSet(index, value);
+	}
+
+	public final int getAndSet(int index, short value) {
+		while (true) {
+			short oldValue = get(index);
+			if (compareAndSet(index, oldValue, value)) {
+				return oldValue;
+			}
+		}
+	}
+
+	public final boolean compareAndSet(int index, short expected, short newValue) {
+		while (true) {
+			PaletteState s = state.get();
+			if (s.direct != null) {
+				return s.direct.compareAndSet(index, expected, newValue);
+			} else if (s.words == null) {
+				short oldValue = s.palette[0];
+				if (oldValue != expected) {
+					return false;
+				} else if (oldValue == newValue) {
+					return true;
+				}
+				// The first different value inflates the uniform array
+				resize(s);
+				continue;
+			}
+			if (!s.enterWrite()) {
+				// A resize is in progress, wait for it to release the lock
+				synchronized (this) {
+				}
+				continue;
+			}
+			try {
+				int wordIndex = index >> s.indexShift;
+				int shift = (index & s.indexMask) << s.bitsShift;
+				long mask = (long) s.valueMask << shift;
+				int newPaletteIndex = -1;
+				while (true) {
+					long oldWord = s.words.get(wordIndex);
+					short oldValue = s.palette[(int) ((oldWord & mask) >>> shift)];
+					if (oldValue != expected) {
+						return false;
+					} else if (oldValue == newValue) {
+						return true;
+					}
+					if (newPaletteIndex == -1) {
+						newPaletteIndex = s.add(newValue);
+						if (newPaletteIndex == -1) {
+							break;
+						}
+					}
+					long newWord = oldWord & ~mask | (long) newPaletteIndex << shift;
+					if (s.words.compareAndSet(wordIndex, oldWord, newWord)) {
+						return true;
+					}
+				}
+			} finally {
+				s.exitWrite();
+			}
+			// The palette is full
+			resize(s);
+		}
+	}
+
+	public short[] getArray(short[] array) {
+		if (array == null || array.length != length) {
+			array = new short[length];
+		}
+		PaletteState s = state.get();
+		if (s.direct != null) {
+			return s.direct.getArray(array);
+		}
+		s.copyTo(array);
+		return array;
+	}
+
+	/**
+	 * Gets an array containing all the values in the array.
+	 *
+	 * The returned values are not guaranteed to be from the same time instant.
+	 *
+	 * @return the array
+	 */
+	public short[] getArray() {
+		return getArray(null);
+	}
+
+	/**
+	 * Gets the number of bits used to store each element. This is 0 for a
+	 * uniform array and 16 once the array has switched to direct storage.
+	 *
+	 * @return the number of bits per element
+	 */
+	public final int getBitsPerElement() {
+		PaletteState s = state.get();
+		return s.direct != null ? 16 : s.bits;
+	}
+
+	/**
+	 * Gets the number of values in the palette, or 0 if the array has switched
+	 * to direct storage.
+	 *
+	 * @return the palette size
+	 */
+	public final int getPaletteSize() {
+		PaletteState s = state.get();
+		return s.direct != null ? 0 : s.paletteSize.get();
+	}
+
+	/**
+	 * Gets the value of every element in the array, if the array is uniform.
+	 *
+	 * @return the value as an unsigned short, or -1 if the array is not uniform
+	 */
+	public final int getUniformValue() {
+		PaletteState s = state.get();
+		if (s.words == null && s.direct == null) {
+			return s.palette[0] & 0xFFFF;
+		}
+		return -1;
+	}
+
+	/**
+	 * Frees the off heap memory used for direct storage, if any. The array
+	 * must not be used after it is released.
+	 */
+	public void release() {
+		PaletteState s = state.get();
+		if (s.direct != null) {
+			s.direct.release();
+		}
+	}
+
+	/**
+	 * Rebuilds the palette from the values currently in the array, dropping
+	 * values which are no longer stored. The number of bits per index is
+	 * reduced to the smallest that fits the remaining values, and an array
+	 * using direct storage returns to a palette if the values fit.<br>
+	 * <br>
+	 * No writes may be made to the array while it is being compacted.
+	 *
+	 * @return true if the storage was changed
+	 */
+	public synchronized boolean compact() {
+		PaletteState s = state.get();
+		if (s.words == null && s.direct == null) {
+			return false;
+		}
+		short[] values = new short[length];
+		if (s.direct != null) {
+			s.direct.getArray(values);
+		} else {
+			s.copyTo(values);
+		}
+		long[] seen = new long[1 << 10];
+		int distinct = 0;
+		for (int i = 0; i < length; i++) {
+			int v = values[i] & 0xFFFF;
+			long bit = 1L << (v & 63);
+			if ((seen[v >> 6] & bit) == 0) {
+				seen[v >> 6] |= bit;
+				distinct++;
+			}
+		}
+		int newBits = 0;
+		while (1 << newBits < distinct) {
+			newBits = newBits == 0 ? 1 : newBits << 1;
+		}
+		if (newBits > maxPaletteBits || newBits == s.bits && s.paletteSize.get() == distinct) {
+			return false;
+		}
+		PaletteState newState = new PaletteState(length, newBits);
+		for (int i = 0; i < length; i++) {
+			newState.add(values[i]);
+		}
+		if (newBits != 0) {
+			for (int i = 0; i < length; i++) {
+				newState.setPaletteIndex(i, newState.indexOf(values[i]));
+			}
+		}
+		if (s.direct == null) {
+			s.freeze();
+		}
+		state.set(newState);
+		return true;
+	}
+
+	/**
+	 * Returns a string representation of the array.
+	 *
+	 * The returned values are not guaranteed to be from the same time instant.
+	 *
+	 * @return the String
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(getArray());
+	}
+
+	/**
+	 * Replaces a full palette state with a state that has twice the number of
+	 * bits per index, or with direct storage if that would exceed the maximum
+	 * number of palette bits. A uniform state is replaced with a 1 bit state.
+	 *
+	 * @param s the full state
+	 */
+	private synchronized void resize(PaletteState s) {
+		if (state.get() != s) {
+			return;
+		}
+		s.freeze();
+		short[] values = new short[length];
+		s.copyTo(values);
+		int newBits = s.bits == 0 ? 1 : s.bits << 1;
+		PaletteState newState;
+		if (newBits > maxPaletteBits) {
+			if (offHeap) {
+				AtomicDirectShortArray direct = new AtomicDirectShortArray(length);
+				for (int i = 0; i < length; i++) {
+					direct.set(i, values[i]);
+				}
+				newState = new PaletteState(direct);
+			} else {
+				AtomicShortArray direct = new AtomicShortArray(length);
+				for (int i = 0; i < length; i += 2) {
+					direct.set(i, values[i], i + 1 < length ? values[i + 1] : (short) 0);
+				}
+				newState = new PaletteState(direct);
+			}
+		} else {
+			newState = new PaletteState(length, newBits);
+			int size = s.paletteSize.get();
+			for (int i = 0; i < size; i++) {
+				newState.add(s.palette[i]);
+			}
+			for (int i = 0; i < length; i++) {
+				newState.setPaletteIndex(i, newState.indexOf(values[i]));
+			}
+		}
+		state.set(newState);
+	}
+
+	private final static class PaletteState {
+		private final int bits;
+		private final int bitsShift;
+		private final int valueMask;
+		private final int indexShift;
+		private final int indexMask;
+		private final short[] palette;
+		private final AtomicInteger paletteSize;
+		private final AtomicLongArray words;
+		private final AtomicShortStorage direct;
+		private final AtomicInteger writers = new AtomicInteger(0);
+
+		/**
+		 * Creates a state which stores the array values directly
+		 */
+		public PaletteState(AtomicShortStorage direct) {
+			this.bits = 16;
+			this.bitsShift = 4;
+			this.valueMask = 0xFFFF;
+			this.indexShift = 0;
+			this.indexMask = 0;
+			this.palette = null;
+			this.paletteSize = null;
+			this.words = null;
+			this.direct = direct;
+		}
+
+		/**
+		 * Creates a state which stores the array values as palette indexes, or
+		 * a uniform state if bits is 0
+		 */
+		public PaletteState(int length, int bits) {
+			this.bits = bits;
+			this.palette = new short[1 << bits];
+			this.paletteSize = new AtomicInteger(0);
+			this.direct = null;
+			if (bits == 0) {
+				this.bitsShift = 0;
+				this.valueMask = 0;
+				this.indexShift = 0;
+				this.indexMask = 0;
+				this.words = null;
+			} else {
+				this.bitsShift = Integer.numberOfTrailingZeros(bits);
+				this.valueMask = (1 << bits) - 1;
+				this.indexShift = 6 - bitsShift;
+				this.indexMask = (1 << indexShift) - 1;
+				this.words = new AtomicLongArray((length + indexMask) >> indexShift);
+			}
+		}
+
+		public final int getPaletteIndex(int index) {
+			long word = words.get(index >> indexShift);
+			return (int) (word >>> ((index & indexMask) << bitsShift)) & valueMask;
+		}
+
+		/**
+		 * Sets a palette index, this is only used before the state is published
+		 */
+		public final void setPaletteIndex(int index, int paletteIndex) {
+			int wordIndex = index >> indexShift;
+			int shift = (index & indexMask) << bitsShift;
+			words.set(wordIndex, words.get(wordIndex) & ~((long) valueMask << shift) | (long) paletteIndex << shift);
+		}
+
+		public final int indexOf(short value) {
+			int size = paletteSize.get();
+			for (int i = 0; i < size; i++) {
+				if (palette[i] == value) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Gets the palette index for a value, adding it to the palette if
+		 * required.
+		 *
+		 * @param value the value
+		 * @return the palette index, or -1 if the palette is full
+		 */
+		public final int add(short value) {
+			int index = indexOf(value);
+			if (index != -1) {
+				return index;
+			}
+			synchronized (this) {
+				int size = paletteSize.get();
+				for (int i = 0; i < size; i++) {
+					if (palette[i] == value) {
+						return i;
+					}
+				}
+				if (size >= palette.length) {
+					return -1;
+				}
+				palette[size] = value;
+				// The volatile write publishes the new palette entry
+				paletteSize.set(size + 1);
+				return size;
+			}
+		}
+
+		public final void copyTo(short[] array) {
+			if (words == null) {
+				Arrays.fill(array, palette[0]);
+				return;
+			}
+			int perWord = indexMask + 1;
+			int length = array.length;
+			int wordCount = words.length();
+			for (int w = 0; w < wordCount; w++) {
+				long word = words.get(w);
+				int base = w << indexShift;
+				int end = Math.min(length, base + perWord);
+				for (int i = base; i < end; i++) {
+					array[i] = palette[(int) word & valueMask];
+					word >>>= bits;
+				}
+			}
+		}
+
+		/**
+		 * Enters a write to the state
+		 *
+		 * @return false if the state has been frozen
+		 */
+		public final boolean enterWrite() {
+			while (true) {
+				int w = writers.get();
+				if ((w & FROZEN) != 0) {
+					return false;
+				}
+				if (writers.compareAndSet(w, w + 1)) {
+					return true;
+				}
+			}
+		}
+
+		public final void exitWrite() {
+			writers.decrementAndGet();
+		}
+
+		/**
+		 * Prevents new writes to the state and waits for writes in progress to
+		 * complete
+		 */
+		public final void freeze() {
+			while (true) {
+				int w = writers.get();
+				if (writers.compareAndSet(w, w | FROZEN)) {
+					break;
+				}
+			}
+			while (writers.get() != FROZEN) {
+				Thread.yield();
+			}
+		}
+	}
+}
@@ -29,7 +29,7 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 
-public class AtomicShortArray implements Serializable {
+public class AtomicShortArray implements AtomicShortStorage, Serializable {
 	private static final long serialVersionUID = 12344553523475L;
 	private final int length;
 	private final int backingArraySize;
@@ -192,6 +192,32 @@ public class AtomicShortArray implements Serializable {
 		return array;
 	}
 
+	/**
+	 * Gets the value of every element in the array, if the array is stored as
+	 * a single value. An AtomicShortArray always stores each element
+	 * separately.
+	 *
+	 * @return -1
+	 */
+	public int getUniformValue() {
+		return -1;
+	}
+
+	/**
+	 * Does nothing, since the array is stored on the Java heap
+	 */
+	public void release() {
+	}
+
+	/**
+	 * Does nothing, since the array always uses 16 bits per element
+	 *
+	 * @return false
+	 */
+	public boolean compact() {
+		return false;
+	}
+
 	/*
 	 * The remaining methods use the above methods
 	 */
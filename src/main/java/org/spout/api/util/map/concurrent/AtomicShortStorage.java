@@ -0,0 +1,113 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+/**
+ * A fixed length array of shorts where each element can be updated
+ * atomically.<br>
+ * <br>
+ * This is the storage used by the AtomicBlockStore for the block id array.
+ */
+public interface AtomicShortStorage {
+	/**
+	 * Gets the length of the array
+	 *
+	 * @return the length
+	 */
+	public int length();
+
+	/**
+	 * Gets an element from the array at a given index
+	 *
+	 * @param index the index
+	 * @return the element
+	 */
+	public short get(int index);
+
+	/**
+	 * Sets an element to the given value
+	 *
+	 * @param index the index
+	 * @param value the new value
+	 */
+	public void set(int index, short value);
+
+	/**
+	 * Sets an element in the array at a given index and returns the old value
+	 *
+	 * @param index the index
+	 * @param value the new value
+	 * @return the old value
+	 */
+	public int getAndSet(int index, short value);
+
+	/**
+	 * Sets the element at the given index, but only if the previous value was
+	 * the expected value.
+	 *
+	 * @param index the index
+	 * @param expected the expected value
+	 * @param newValue the new value
+	 * @return true on success
+	 */
+	public boolean compareAndSet(int index, short expected, short newValue);
+
+	/**
+	 * Gets an array containing all the values in the array. The returned values
+	 * are not guaranteed to be from the same time instant.
+	 *
+	 * If an array is provided and it is the correct length, then that array
+	 * will be used as the destination array.
+	 *
+	 * @param array the provided array
+	 * @return an array containing the values in the array
+	 */
+	public short[] getArray(short[] array);
+
+	/**
+	 * Gets the value of every element in the array, if the array is stored as
+	 * a single value.
+	 *
+	 * @return the value as an unsigned short, or -1 if the array is not stored
+	 *         as a single value
+	 */
+	public int getUniformValue();
+
+	/**
+	 * Reduces the memory used by the array, if the values it holds can be
+	 * stored more compactly than they are. No writes may be made to the array
+	 * while it is being compacted.
+	 *
+	 * @return true if the storage was changed
+	 */
+	public boolean compact();
+
+	/**
+	 * Frees any memory used by the array outside the Java heap. The array must
+	 * not be used after it is released.
+	 */
+	public void release();
+}
@@ -0,0 +1,163 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A queue of threads waiting for an update to an atomic store.<br>
+ * <br>
+ * Threads park on the key of the element they are waiting for, usually its
+ * index, and the keys are hashed to a fixed number of stripes. An update to
+ * an element only unparks the threads parked on its stripe, and the threads
+ * which are waiting for any update. Threads with keys in the same stripe may
+ * be woken early, and then retry and park again.<br>
+ * <br>
+ * Waking is a single volatile read when no threads are parked.<br>
+ * <br>
+ * Parks are always timed, so a wake up which is missed only delays the
+ * waiting thread.
+ */
+public final class AtomicWaitQueue {
+	/**
+	 * The key for threads which wait for any update to the store, and for
+	 * updates which may affect every element
+	 */
+	public static final int ANY = -1;
+	private static final int STRIPE_SHIFT = 6;
+	private static final int STRIPES = 1 << STRIPE_SHIFT;
+	private static final int STRIPE_MASK = STRIPES - 1;
+	private final ConcurrentLinkedQueue<Thread>[] parked;
+	private final AtomicIntegerArray stripeWaiting = new AtomicIntegerArray(STRIPES + 1);
+	private final AtomicInteger waiting = new AtomicInteger(0);
+
+	@SuppressWarnings("unchecked")
+	public AtomicWaitQueue() {
+		parked = new ConcurrentLinkedQueue[STRIPES + 1];
+		for (int i = 0; i < parked.length; i++) {
+			parked[i] = new ConcurrentLinkedQueue<Thread>();
+		}
+	}
+
+	/**
+	 * Parks the current thread until any update to the store, the timeout
+	 * expires or the thread is interrupted.<br>
+	 * <br>
+	 * The interrupted flag of the thread is cleared.
+	 *
+	 * @param nanos the maximum time to park, in nanoseconds
+	 * @return true if the thread was interrupted
+	 */
+	public boolean park(long nanos) {
+		return park(ANY, nanos);
+	}
+
+	/**
+	 * Parks the current thread until the element with the given key is
+	 * updated, the timeout expires or the thread is interrupted.<br>
+	 * <br>
+	 * The interrupted flag of the thread is cleared.
+	 *
+	 * @param key the key of the element, or ANY to wait for any update
+	 * @param nanos the maximum time to park, in nanoseconds
+	 * @return true if the thread was interrupted
+	 */
+	public boolean park(int key, long nanos) {
+		int stripe = getStripe(key);
+		Thread thread = Thread.currentThread();
+		waiting.incrementAndGet();
+		stripeWaiting.incrementAndGet(stripe);
+		parked[stripe].add(thread);
+		try {
+			LockSupport.parkNanos(this, nanos);
+		} finally {
+			parked[stripe].remove(thread);
+			stripeWaiting.decrementAndGet(stripe);
+			waiting.decrementAndGet();
+		}
+		return Thread.interrupted();
+	}
+
+	/**
+	 * Unparks all the threads which are parked in the queue
+	 */
+	public void wake() {
+		if (waiting.get() == 0) {
+			return;
+		}
+		for (int i = 0; i < parked.length; i++) {
+			wakeStripe(i);
+		}
+	}
+
+	/**
+	 * Unparks the threads which are parked on the stripe for the given key,
+	 * and the threads which are waiting for any update
+	 *
+	 * @param key the key of the updated element, or ANY to unpark all threads
+	 */
+	public void wake(int key) {
+		if (key == ANY) {
+			wake();
+			return;
+		}
+		if (waiting.get() == 0) {
+			return;
+		}
+		wakeStripe(getStripe(key));
+		wakeStripe(STRIPES);
+	}
+
+	/**
+	 * Gets the number of threads parked in the queue
+	 *
+	 * @return the number of threads
+	 */
+	public int getWaiting() {
+		return waiting.get();
+	}
+
+	private void wakeStripe(int stripe) {
+		if (stripeWaiting.get(stripe) == 0) {
+			return;
+		}
+		Thread thread;
+		ConcurrentLinkedQueue<Thread> queue = parked[stripe];
+		while ((thread = queue.poll()) != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private static int getStripe(int key) {
+		if (key == ANY) {
+			return STRIPES;
+		}
+		return (key ^ (key >>> STRIPE_SHIFT)) & STRIPE_MASK;
+	}
+}
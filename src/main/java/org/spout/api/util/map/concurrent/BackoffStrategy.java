@@ -0,0 +1,47 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+/**
+ * A strategy for waiting before an atomic store retries a contended
+ * operation.
+ */
+public interface BackoffStrategy {
+	/**
+	 * Waits before an operation is retried.<br>
+	 * <br>
+	 * A thread which parks should park in the wait queue on the given key, so
+	 * that it is woken when the element it is waiting for is updated.
+	 *
+	 * @param attempt the number of failed attempts, starting at 1
+	 * @param key the key of the element being waited for, or
+	 *            AtomicWaitQueue.ANY if the operation waits for the whole store
+	 * @param queue the wait queue for the store
+	 * @param stats the contention counters for the store
+	 * @return true if the thread was interrupted while waiting
+	 */
+	public boolean backoff(int attempt, int key, AtomicWaitQueue queue, ContentionStats stats);
+}
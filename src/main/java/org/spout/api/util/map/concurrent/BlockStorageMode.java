@@ -0,0 +1,73 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+/**
+ * The storage used by an AtomicBlockStore for its block id array.
+ */
+public enum BlockStorageMode {
+	/**
+	 * Stores a single id while all the blocks in the store are the same, and
+	 * switches to 16 bits per block on the first different write
+	 */
+	ARRAY,
+	/**
+	 * Stores a single id while all the blocks in the store are the same, and
+	 * then uses between 1 and 16 bits per block depending on the number of
+	 * distinct ids in the store.<br>
+	 * <br>
+	 * Blocks which have data or auxiliary data are stored using a record
+	 * index, so each of them uses a separate palette entry.
+	 */
+	PALETTE,
+	/**
+	 * Stores a single id while all the blocks in the store are the same, and
+	 * switches to 16 bits per block, stored outside the Java heap, on the
+	 * first different write.<br>
+	 * <br>
+	 * The memory must be freed by calling AtomicBlockStore.release() when the
+	 * store is no longer used. If off heap storage is not supported by the
+	 * JVM, this is the same as ARRAY.
+	 */
+	OFF_HEAP;
+
+	/**
+	 * Creates a new block id array of the given length for this mode
+	 *
+	 * @param length the length of the array
+	 * @return the array
+	 */
+	public AtomicShortStorage createStorage(int length) {
+		switch (this) {
+			case PALETTE:
+				return new AtomicPaletteShortArray(length);
+			case OFF_HEAP:
+				return new AtomicPaletteShortArray(length, 0, AtomicDirectShortArray.isSupported());
+			default:
+				return new AtomicPaletteShortArray(length, 0);
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.Arrays;
+
+/**
+ * A batch of block changes for a single AtomicBlockStore, which are applied
+ * together by AtomicBlockStore.setBlocks(...).<br>
+ * <br>
+ * If the same block is changed more than once, only the last change is kept.
+ * A change can have an expected block state, in which case it is only applied
+ * if the block matches that state when the batch is applied.<br>
+ * <br>
+ * Batches are not thread safe, and should be filled by a single thread.
+ *
+ * @param <T> the type of the auxiliary data
+ */
+public final class BlockStoreBatch<T> {
+	private static final int INITIAL_CAPACITY = 16;
+	private final int shift;
+	private final int doubleShift;
+	private final int[] slots;
+	private int size = 0;
+	private int[] indexes;
+	private short[] ids;
+	private short[] data;
+	private Object[] auxData;
+	private boolean[] expect;
+	private short[] expectIds;
+	private short[] expectData;
+	private Object[] expectAuxData;
+	private boolean[] applied;
+
+	/**
+	 * Creates a batch for stores with 2^shift blocks along each side
+	 *
+	 * @param shift the log2 of the side length
+	 */
+	public BlockStoreBatch(int shift) {
+		this.shift = shift;
+		this.doubleShift = shift << 1;
+		slots = new int[1 << (3 * shift)];
+		Arrays.fill(slots, -1);
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Gets the shift of the stores that this batch can be applied to
+	 *
+	 * @return the log2 of the side length
+	 */
+	public int getShift() {
+		return shift;
+	}
+
+	/**
+	 * Gets the number of blocks changed by the batch
+	 *
+	 * @return the number of blocks
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a change which sets the block at (x, y, z)
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param id the new block id
+	 * @param data the new block data
+	 * @param auxData the new block auxiliary data
+	 */
+	public void set(int x, int y, int z, short id, short data, T auxData) {
+		int slot = getSlot(x, y, z);
+		this.ids[slot] = id;
+		this.data[slot] = data;
+		this.auxData[slot] = auxData;
+		this.expect[slot] = false;
+		this.expectAuxData[slot] = null;
+	}
+
+	/**
+	 * Adds a change which sets the block at (x, y, z), but only if the block
+	 * matches the expected state when the batch is applied
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param expectId the expected block id
+	 * @param expectData the expected block data
+	 * @param expectAuxData the expected block auxiliary data
+	 * @param id the new block id
+	 * @param data the new block data
+	 * @param auxData the new block auxiliary data
+	 */
+	public void compareAndSet(int x, int y, int z, short expectId, short expectData, T expectAuxData, short id, short data, T auxData) {
+		int slot = getSlot(x, y, z);
+		this.ids[slot] = id;
+		this.data[slot] = data;
+		this.auxData[slot] = auxData;
+		this.expect[slot] = true;
+		this.expectIds[slot] = expectId;
+		this.expectData[slot] = expectData;
+		this.expectAuxData[slot] = expectAuxData;
+	}
+
+	/**
+	 * Gets if the change at the given position in the batch was applied by
+	 * the last call to AtomicBlockStore.setBlocks(...)
+	 *
+	 * @param i the position of the change in the batch
+	 * @return true if the change was applied
+	 */
+	public boolean isApplied(int i) {
+		checkSlot(i);
+		return applied[i];
+	}
+
+	/**
+	 * Gets the x coordinate of the change at the given position in the batch
+	 *
+	 * @param i the position of the change in the batch
+	 * @return the x coordinate
+	 */
+	public int getX(int i) {
+		checkSlot(i);
+		return indexes[i] >> doubleShift;
+	}
+
+	/**
+	 * Gets the y coordinate of the change at the given position in the batch
+	 *
+	 * @param i the position of the change in the batch
+	 * @return the y coordinate
+	 */
+	public int getY(int i) {
+		checkSlot(i);
+		return indexes[i] & ((1 << shift) - 1);
+	}
+
+	/**
+	 * Gets the z coordinate of the change at the given position in the batch
+	 *
+	 * @param i the position of the change in the batch
+	 * @return the z coordinate
+	 */
+	public int getZ(int i) {
+		checkSlot(i);
+		return (indexes[i] >> shift) & ((1 << shift) - 1);
+	}
+
+	/**
+	 * Removes all the changes from the batch
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			slots[indexes[i]] = -1;
+		}
+		Arrays.fill(auxData, 0, size, null);
+		Arrays.fill(expectAuxData, 0, size, null);
+		size = 0;
+	}
+
+	final int getIndex(int i) {
+		return indexes[i];
+	}
+
+	final short getId(int i) {
+		return ids[i];
+	}
+
+	final short getData(int i) {
+		return data[i];
+	}
+
+	@SuppressWarnings("unchecked")
+	final T getAuxData(int i) {
+		return (T) auxData[i];
+	}
+
+	final boolean hasExpected(int i) {
+		return expect[i];
+	}
+
+	final short getExpectedId(int i) {
+		return expectIds[i];
+	}
+
+	final short getExpectedData(int i) {
+		return expectData[i];
+	}
+
+	@SuppressWarnings("unchecked")
+	final T getExpectedAuxData(int i) {
+		return (T) expectAuxData[i];
+	}
+
+	final void setApplied(int i, boolean applied) {
+		this.applied[i] = applied;
+	}
+
+	private final int getSlot(int x, int y, int z) {
+		int side = 1 << shift;
+		if (x < 0 || y < 0 || z < 0 || x >= side || y >= side || z >= side) {
+			throw new IllegalArgumentException("Block (" + x + ", " + y + ", " + z + ") is outside the store");
+		}
+		int index = (x << doubleShift) + (z << shift) + y;
+		int slot = slots[index];
+		if (slot == -1) {
+			if (size == indexes.length) {
+				allocate(size << 1);
+			}
+			slot = size++;
+			slots[index] = slot;
+			indexes[slot] = index;
+			applied[slot] = false;
+		}
+		return slot;
+	}
+
+	private final void checkSlot(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Change " + i + " is out of range for a batch of size " + size);
+		}
+	}
+
+	private final void allocate(int capacity) {
+		if (indexes == null) {
+			indexes = new int[capacity];
+			ids = new short[capacity];
+			data = new short[capacity];
+			auxData = new Object[capacity];
+			expect = new boolean[capacity];
+			expectIds = new short[capacity];
+			expectData = new short[capacity];
+			expectAuxData = new Object[capacity];
+			applied = new boolean[capacity];
+		} else {
+			indexes = Arrays.copyOf(indexes, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+			data = Arrays.copyOf(data, capacity);
+			auxData = Arrays.copyOf(auxData, capacity);
+			expect = Arrays.copyOf(expect, capacity);
+			expectIds = Arrays.copyOf(expectIds, capacity);
+			expectData = Arrays.copyOf(expectData, capacity);
+			expectAuxData = Arrays.copyOf(expectAuxData, capacity);
+			applied = Arrays.copyOf(applied, capacity);
+		}
+	}
+}
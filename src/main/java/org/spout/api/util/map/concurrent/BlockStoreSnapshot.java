@@ -0,0 +1,164 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+/**
+ * An immutable snapshot of the blocks in an AtomicBlockStore.<br>
+ * <br>
+ * The blocks are stored in sections, one for each x coordinate. Sections
+ * which have not changed since the previous snapshot of the store are shared
+ * with that snapshot, so taking a snapshot only copies the changed sections.
+ *
+ * @param <T> the type of the auxiliary data
+ */
+public final class BlockStoreSnapshot<T> {
+	private final int shift;
+	private final int version;
+	private final int[] sectionVersions;
+	private final short[][] ids;
+	private final short[][] data;
+	private final T[][] auxData;
+	private volatile short[] flatIds = null;
+	private volatile short[] flatData = null;
+
+	BlockStoreSnapshot(int shift, int version, int[] sectionVersions, short[][] ids, short[][] data, T[][] auxData) {
+		this.shift = shift;
+		this.version = version;
+		this.sectionVersions = sectionVersions;
+		this.ids = ids;
+		this.data = data;
+		this.auxData = auxData;
+	}
+
+	/**
+	 * Gets the version of the store when the snapshot was taken.<br>
+	 * <br>
+	 * Two snapshots of the same store with the same version contain the same
+	 * blocks.
+	 *
+	 * @return the version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the block id for a block in the snapshot
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the block id
+	 */
+	public short getBlockId(int x, int y, int z) {
+		return ids[x][(z << shift) + y];
+	}
+
+	/**
+	 * Gets the block data for a block in the snapshot
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the block data
+	 */
+	public short getData(int x, int y, int z) {
+		return data[x][(z << shift) + y];
+	}
+
+	/**
+	 * Gets the auxiliary data for a block in the snapshot
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the auxiliary data
+	 */
+	public T getAuxData(int x, int y, int z) {
+		return auxData[x][(z << shift) + y];
+	}
+
+	/**
+	 * Gets the block ids for every block in the snapshot, in the same order
+	 * as AtomicBlockStore.getBlockIdArray().<br>
+	 * <br>
+	 * The array is created on the first call and shared by later calls, so it
+	 * must not be modified.
+	 *
+	 * @return the block ids
+	 */
+	public short[] getBlockIds() {
+		short[] flat = flatIds;
+		if (flat == null) {
+			flat = flatten(ids);
+			flatIds = flat;
+		}
+		return flat;
+	}
+
+	/**
+	 * Gets the block data for every block in the snapshot, in the same order
+	 * as AtomicBlockStore.getDataArray().<br>
+	 * <br>
+	 * The array is created on the first call and shared by later calls, so it
+	 * must not be modified.
+	 *
+	 * @return the block data
+	 */
+	public short[] getBlockData() {
+		short[] flat = flatData;
+		if (flat == null) {
+			flat = flatten(data);
+			flatData = flat;
+		}
+		return flat;
+	}
+
+	final int getSectionVersion(int section) {
+		return sectionVersions[section];
+	}
+
+	final short[] getSectionIds(int section) {
+		return ids[section];
+	}
+
+	final short[] getSectionData(int section) {
+		return data[section];
+	}
+
+	final T[] getSectionAuxData(int section) {
+		return auxData[section];
+	}
+
+	private final short[] flatten(short[][] sections) {
+		int sectionLength = sections[0].length;
+		short[] flat = new short[sections.length * sectionLength];
+		for (int i = 0; i < sections.length; i++) {
+			System.arraycopy(sections[i], 0, flat, i * sectionLength, sectionLength);
+		}
+		return flat;
+	}
+}
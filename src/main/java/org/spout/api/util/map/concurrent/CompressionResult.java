@@ -0,0 +1,73 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+/**
+ * The result of compressing the auxiliary store of an AtomicBlockStore.
+ */
+public final class CompressionResult {
+	private final int reclaimed;
+	private final int moved;
+	private final long time;
+
+	public CompressionResult(int reclaimed, int moved, long time) {
+		this.reclaimed = reclaimed;
+		this.moved = moved;
+		this.time = time;
+	}
+
+	/**
+	 * Gets the number of record slots which were freed by the compression
+	 *
+	 * @return the number of slots reclaimed
+	 */
+	public int getReclaimed() {
+		return reclaimed;
+	}
+
+	/**
+	 * Gets the number of records which were moved to a lower index
+	 *
+	 * @return the number of records moved
+	 */
+	public int getMoved() {
+		return moved;
+	}
+
+	/**
+	 * Gets the time taken by the compression
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + "{reclaimed=" + reclaimed + ", moved=" + moved + ", time=" + time + "ns}";
+	}
+}
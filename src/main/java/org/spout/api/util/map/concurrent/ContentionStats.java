@@ -0,0 +1,139 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the contention on an atomic store.<br>
+ * <br>
+ * The counters are only updated when an operation has to be retried, so they
+ * add no cost to uncontended operations. They can be sampled at any time,
+ * but the values are not read at the same time instant.
+ */
+public final class ContentionStats {
+	private final AtomicLong retries = new AtomicLong(0);
+	private final AtomicLong casFailures = new AtomicLong(0);
+	private final AtomicLong spins = new AtomicLong(0);
+	private final AtomicLong yields = new AtomicLong(0);
+	private final AtomicLong parks = new AtomicLong(0);
+
+	/**
+	 * Records that an operation was retried
+	 */
+	public void recordRetry() {
+		retries.incrementAndGet();
+	}
+
+	/**
+	 * Records that a compare and set failed because of a concurrent update
+	 */
+	public void recordCasFailure() {
+		casFailures.incrementAndGet();
+	}
+
+	/**
+	 * Records that a thread busy waited before a retry
+	 */
+	public void recordSpin() {
+		spins.incrementAndGet();
+	}
+
+	/**
+	 * Records that a thread yielded before a retry
+	 */
+	public void recordYield() {
+		yields.incrementAndGet();
+	}
+
+	/**
+	 * Records that a thread parked before a retry
+	 */
+	public void recordPark() {
+		parks.incrementAndGet();
+	}
+
+	/**
+	 * Gets the number of operations which were retried
+	 *
+	 * @return the number of retries
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * Gets the number of failed compare and set operations
+	 *
+	 * @return the number of failures
+	 */
+	public long getCasFailures() {
+		return casFailures.get();
+	}
+
+	/**
+	 * Gets the number of times a thread busy waited
+	 *
+	 * @return the number of spins
+	 */
+	public long getSpins() {
+		return spins.get();
+	}
+
+	/**
+	 * Gets the number of times a thread yielded
+	 *
+	 * @return the number of yields
+	 */
+	public long getYields() {
+		return yields.get();
+	}
+
+	/**
+	 * Gets the number of times a thread parked
+	 *
+	 * @return the number of parks
+	 */
+	public long getParks() {
+		return parks.get();
+	}
+
+	/**
+	 * Resets all the counters to zero
+	 */
+	public void reset() {
+		retries.set(0);
+		casFailures.set(0);
+		spins.set(0);
+		yields.set(0);
+		parks.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "ContentionStats{retries=" + getRetries() + ", casFailures=" + getCasFailures() + ", spins=" + getSpins() + ", yields=" + getYields() + ", parks=" + getParks() + "}";
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+/**
+ * The standard backoff strategies for atomic stores
+ */
+public enum StandardBackoff implements BackoffStrategy {
+	/**
+	 * Busy waits for an increasing number of iterations, and never gives up
+	 * the CPU.<br>
+	 * <br>
+	 * This has the lowest latency, but should only be used when there are
+	 * fewer threads than cores.
+	 */
+	SPIN {
+		@Override
+		public boolean backoff(int attempt, int key, AtomicWaitQueue queue, ContentionStats stats) {
+			spin(attempt, stats);
+			return false;
+		}
+	},
+	/**
+	 * Busy waits for the first few attempts and then yields
+	 */
+	YIELD {
+		@Override
+		public boolean backoff(int attempt, int key, AtomicWaitQueue queue, ContentionStats stats) {
+			if (attempt <= SPIN_ATTEMPTS) {
+				spin(attempt, stats);
+			} else {
+				stats.recordYield();
+				Thread.yield();
+			}
+			return false;
+		}
+	},
+	/**
+	 * Busy waits for the first few attempts and then parks until the element is
+	 * updated
+	 */
+	PARK {
+		@Override
+		public boolean backoff(int attempt, int key, AtomicWaitQueue queue, ContentionStats stats) {
+			if (attempt <= SPIN_ATTEMPTS) {
+				spin(attempt, stats);
+				return false;
+			}
+			return park(attempt - SPIN_ATTEMPTS, key, queue, stats);
+		}
+	},
+	/**
+	 * Busy waits for the first few attempts, then yields, and then parks
+	 * until the element is updated.<br>
+	 * <br>
+	 * Both the busy waits and the park timeouts increase with the number of
+	 * attempts, so short waits stay on the CPU and long waits don't compete
+	 * for it.
+	 */
+	ADAPTIVE {
+		@Override
+		public boolean backoff(int attempt, int key, AtomicWaitQueue queue, ContentionStats stats) {
+			if (attempt <= SPIN_ATTEMPTS) {
+				spin(attempt, stats);
+				return false;
+			}
+			if (attempt <= SPIN_ATTEMPTS + YIELD_ATTEMPTS) {
+				stats.recordYield();
+				Thread.yield();
+				return false;
+			}
+			return park(attempt - SPIN_ATTEMPTS - YIELD_ATTEMPTS, key, queue, stats);
+		}
+	};
+
+	private static final int SPIN_ATTEMPTS = 10;
+	private static final int YIELD_ATTEMPTS = 5;
+	private static final int MAX_SPIN_SHIFT = 6;
+	private static final int MAX_PARK_SHIFT = 7;
+	private static final long MIN_PARK_NANOS = 10000L;
+
+	/**
+	 * The value written by spin(), which stops the busy wait loop from being
+	 * optimised away
+	 */
+	private static volatile int spinSink;
+
+	private static void spin(int attempt, ContentionStats stats) {
+		stats.recordSpin();
+		int iterations = 1 << Math.min(attempt, MAX_SPIN_SHIFT);
+		int sink = 0;
+		for (int i = 0; i < iterations; i++) {
+			sink += i;
+		}
+		spinSink = sink;
+	}
+
+	private static boolean park(int attempt, int key, AtomicWaitQueue queue, ContentionStats stats) {
+		stats.recordPark();
+		return queue.park(key, MIN_PARK_NANOS << Math.min(attempt - 1, MAX_PARK_SHIFT));
+	}
+}
@@ -0,0 +1,626 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.spout.api.math.MathHelper;
+import org.spout.api.util.concurrent.OptimisticReadWriteLock;
+
+import gnu.trove.function.TObjectFunction;
+import gnu.trove.impl.Constants;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.procedure.TLongObjectProcedure;
+import gnu.trove.procedure.TLongProcedure;
+import gnu.trove.procedure.TObjectProcedure;
+import gnu.trove.set.TLongSet;
+
+/**
+ * This is a synchronised long to Object hash map, where reads do not take a
+ * lock.<br>
+ * <br>
+ * The map is split into sub-maps in the same way as the
+ * {@link TSyncLongObjectHashMap}. Each sub-map is an open addressing hash
+ * table with a sequence lock. Reads are optimistic: the sequence number is
+ * read, the table is probed, and the read is retried if the sequence number
+ * changed. Writes to a sub-map are serialised by a lock and only change the
+ * sequence number while they modify the table.<br>
+ * <br>
+ * When a sub-map is resized, the new table is built while readers continue to
+ * use the old one, and then swapped in. Resizing never causes a read to be
+ * retried.
+ *
+ * @param <V> the value type
+ */
+public class TOptimisticLongObjectHashMap<V> implements TSyncLongObjectMap<V> {
+	private static final Object REMOVED = new Object();
+	private static final Object NULL_VALUE = new Object();
+	private static final int OPTIMISTIC_ATTEMPTS = 4;
+	private final int mapCount;
+	private final int mapMask;
+	private final int hashScramble;
+	private final int initialCapacity;
+	private final float loadFactor;
+	private final Stripe[] stripeArray;
+	private final long no_entry_key;
+	private final AtomicInteger totalKeys = new AtomicInteger(0);
+
+	/**
+	 * Creates a synchronised map with optimistic reads
+	 */
+	public TOptimisticLongObjectHashMap() {
+		this(16);
+	}
+
+	/**
+	 * Creates a synchronised map with optimistic reads
+	 *
+	 * @param mapCount the number of sub-maps
+	 */
+	public TOptimisticLongObjectHashMap(int mapCount) {
+		this(mapCount, 32);
+	}
+
+	/**
+	 * Creates a synchronised map with optimistic reads
+	 *
+	 * @param mapCount the number of sub-maps
+	 * @param initialCapacity the initial capacity of the map
+	 */
+	public TOptimisticLongObjectHashMap(int mapCount, int initialCapacity) {
+		this(mapCount, initialCapacity, 0.5F);
+	}
+
+	/**
+	 * Creates a synchronised map with optimistic reads
+	 *
+	 * @param mapCount the number of sub-maps
+	 * @param initialCapacity the initial capacity of the map
+	 * @param loadFactor the load factor for the map
+	 */
+	public TOptimisticLongObjectHashMap(int mapCount, int initialCapacity, float loadFactor) {
+		this(mapCount, initialCapacity, loadFactor, Constants.DEFAULT_LONG_NO_ENTRY_VALUE);
+	}
+
+	/**
+	 * Creates a synchronised map with optimistic reads
+	 *
+	 * @param mapCount the number of sub-maps
+	 * @param initialCapacity the initial capacity of the map
+	 * @param loadFactor the load factor for the map
+	 * @param noEntryKey the key used to indicate a null key
+	 */
+	public TOptimisticLongObjectHashMap(int mapCount, int initialCapacity, float loadFactor, long noEntryKey) {
+		if (mapCount > 0x100000) {
+			throw new IllegalArgumentException("Map count exceeds valid range");
+		}
+		if (!(loadFactor > 0F && loadFactor < 1F)) {
+			throw new IllegalArgumentException("Load factor must be between 0 and 1");
+		}
+		mapCount = MathHelper.roundUpPow2(mapCount);
+		mapMask = mapCount - 1;
+		this.mapCount = mapCount;
+		this.hashScramble = (mapCount << 8) + 1;
+		this.loadFactor = loadFactor;
+		this.initialCapacity = MathHelper.roundUpPow2(Math.max(4, (int) (initialCapacity / mapCount / loadFactor) + 1));
+		stripeArray = new Stripe[mapCount];
+		for (int i = 0; i < mapCount; i++) {
+			stripeArray[i] = new Stripe(new Table(this.initialCapacity, loadFactor));
+		}
+		this.no_entry_key = noEntryKey;
+	}
+
+	public void clear() {
+		for (int m = 0; m < mapCount; m++) {
+			clear(m);
+		}
+	}
+
+	private void clear(int m) {
+		Stripe stripe = stripeArray[m];
+		stripe.writeLock.lock();
+		try {
+			int seq = stripe.sequence.writeLock();
+			try {
+				stripe.table = new Table(initialCapacity, loadFactor);
+			} finally {
+				stripe.sequence.writeUnlock(seq);
+			}
+			totalKeys.addAndGet(-stripe.size);
+			stripe.size = 0;
+			stripe.used = 0;
+		} finally {
+			stripe.writeLock.unlock();
+		}
+	}
+
+	public boolean containsKey(long key) {
+		return read(key) != null;
+	}
+
+	public boolean containsValue(Object value) {
+		for (int m = 0; m < mapCount; m++) {
+			if (containsValue(m, value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean containsValue(int m, Object value) {
+		Stripe stripe = stripeArray[m];
+		stripe.writeLock.lock();
+		try {
+			Object[] values = stripe.table.values;
+			for (Object v : values) {
+				if (v != null && v != REMOVED && (value == null ? v == NULL_VALUE : value.equals(v))) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			stripe.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Executes the procedure for each entry in the map. Writes to each sub-map
+	 * are locked out while the procedure is executed for its entries, so the
+	 * procedure must not write to the map.
+	 *
+	 * @param procedure the procedure
+	 * @return false if the procedure returned false for any entry
+	 */
+	public boolean forEachEntry(TLongObjectProcedure<? super V> procedure) {
+		for (int m = 0; m < mapCount; m++) {
+			Stripe stripe = stripeArray[m];
+			stripe.writeLock.lock();
+			try {
+				Table table = stripe.table;
+				for (int i = 0; i < table.values.length; i++) {
+					Object value = table.values[i];
+					if (value != null && value != REMOVED && !procedure.execute(table.keys[i], unmask(value))) {
+						return false;
+					}
+				}
+			} finally {
+				stripe.writeLock.unlock();
+			}
+		}
+		return true;
+	}
+
+	public boolean forEachKey(TLongProcedure arg0) {
+		throw new UnsupportedOperationException("This operation is not supported");
+	}
+
+	public boolean forEachValue(TObjectProcedure<? super V> arg0) {
+		throw new UnsupportedOperationException("This operation is not supported");
+	}
+
+	public V get(long key) {
+		return unmask(read(key));
+	}
+
+	public long getNoEntryKey() {
+		return no_entry_key;
+	}
+
+	public boolean isEmpty() {
+		return totalKeys.get() == 0;
+	}
+
+	public TLongObjectIterator<V> iterator() {
+		throw new UnsupportedOperationException("This operation is not supported");
+	}
+
+	public TLongSet keySet() {
+		throw new UnsupportedOperationException("This operation is not supported");
+	}
+
+	public long[] keys(long[] dest) {
+		lockAll();
+		try {
+			int localSize = totalKeys.get();
+			long[] keys;
+			if (dest == null || dest.length < localSize) {
+				keys = new long[localSize];
+			} else {
+				keys = dest;
+			}
+			int position = 0;
+			for (int m = 0; m < mapCount; m++) {
+				Table table = stripeArray[m].table;
+				for (int i = 0; i < table.values.length; i++) {
+					Object value = table.values[i];
+					if (value != null && value != REMOVED) {
+						keys[position++] = table.keys[i];
+					}
+				}
+			}
+			if (position != localSize) {
+				throw new IllegalStateException("Key counter does not match actual total map size");
+			}
+			return keys;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public long[] keys() {
+		return keys(null);
+	}
+
+	public V put(long key, V value) {
+		return put(key, value, false);
+	}
+
+	public void putAll(Map<? extends Long, ? extends V> map) {
+		for (Map.Entry<? extends Long, ? extends V> entry : map.entrySet()) {
+			put(entry.getKey().longValue(), entry.getValue());
+		}
+	}
+
+	public void putAll(TLongObjectMap<? extends V> map) {
+		for (long key : map.keys()) {
+			put(key, map.get(key));
+		}
+	}
+
+	public V putIfAbsent(long key, V value) {
+		return put(key, value, true);
+	}
+
+	private V put(long key, V value, boolean onlyIfAbsent) {
+		Stripe stripe = stripeArray[mapHash(key)];
+		Object masked = value == null ? NULL_VALUE : value;
+		stripe.writeLock.lock();
+		try {
+			Table table = stripe.table;
+			int index = table.indexOf(key);
+			if (index >= 0) {
+				Object previous = table.values[index];
+				if (!onlyIfAbsent) {
+					int seq = stripe.sequence.writeLock();
+					try {
+						table.values[index] = masked;
+					} finally {
+						stripe.sequence.writeUnlock(seq);
+					}
+				}
+				return unmask(previous);
+			}
+			index = table.freeIndex(key);
+			if (table.values[index] == null) {
+				if (stripe.used >= table.threshold) {
+					table = resize(stripe);
+					index = table.freeIndex(key);
+				}
+				stripe.used++;
+			}
+			int seq = stripe.sequence.writeLock();
+			try {
+				table.keys[index] = key;
+				table.values[index] = masked;
+			} finally {
+				stripe.sequence.writeUnlock(seq);
+			}
+			stripe.size++;
+			totalKeys.incrementAndGet();
+			return null;
+		} finally {
+			stripe.writeLock.unlock();
+		}
+	}
+
+	public V remove(long key) {
+		Stripe stripe = stripeArray[mapHash(key)];
+		stripe.writeLock.lock();
+		try {
+			Table table = stripe.table;
+			int index = table.indexOf(key);
+			if (index < 0) {
+				return null;
+			}
+			Object previous = table.values[index];
+			removeIndex(stripe, table, index);
+			return unmask(previous);
+		} finally {
+			stripe.writeLock.unlock();
+		}
+	}
+
+	public boolean remove(long key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Cannot remove null values");
+		}
+		Stripe stripe = stripeArray[mapHash(key)];
+		stripe.writeLock.lock();
+		try {
+			Table table = stripe.table;
+			int index = table.indexOf(key);
+			if (index < 0 || table.values[index] != value) {
+				return false;
+			}
+			removeIndex(stripe, table, index);
+			return true;
+		} finally {
+			stripe.writeLock.unlock();
+		}
+	}
+
+	public boolean retainEntries(TLongObjectProcedure<? super V> arg0) {
+		throw new UnsupportedOperationException("This operation is not supported");
+	}
+
+	public int size() {
+		return totalKeys.get();
+	}
+
+	public void transformValues(TObjectFunction<V, V> arg0) {
+		throw new UnsupportedOperationException("This operation is not supported");
+	}
+
+	public Collection<V> valueCollection() {
+		HashSet<V> collection = new HashSet<V>();
+		lockAll();
+		try {
+			for (int m = 0; m < mapCount; m++) {
+				for (Object value : stripeArray[m].table.values) {
+					if (value != null && value != REMOVED) {
+						collection.add(unmask(value));
+					}
+				}
+			}
+		} finally {
+			unlockAll();
+		}
+		return Collections.unmodifiableCollection(collection);
+	}
+
+	public V[] values() {
+		return values(null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V[] values(V[] dest) {
+		lockAll();
+		try {
+			int localSize = totalKeys.get();
+			V[] values;
+			if (dest == null || dest.length < localSize) {
+				values = (V[]) new Object[localSize];
+			} else {
+				values = dest;
+			}
+			int position = 0;
+			for (int m = 0; m < mapCount; m++) {
+				for (Object value : stripeArray[m].table.values) {
+					if (value != null && value != REMOVED) {
+						values[position++] = unmask(value);
+					}
+				}
+			}
+			if (position != localSize) {
+				throw new IllegalStateException("Key counter does not match actual total map size");
+			}
+			return values;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Reads the stored value for a key, without locking. The read is retried
+	 * until no write happened to the sub-map while it was in progress. After
+	 * a few failed attempts, the reader waits for the write to complete.
+	 *
+	 * @param key the key
+	 * @return the stored value, or null if the key is not in the map
+	 */
+	private Object read(long key) {
+		Stripe stripe = stripeArray[mapHash(key)];
+		OptimisticReadWriteLock sequence = stripe.sequence;
+		int attempts = 0;
+		while (true) {
+			int seq;
+			if (attempts++ < OPTIMISTIC_ATTEMPTS) {
+				seq = sequence.tryReadLock();
+				if (seq == OptimisticReadWriteLock.UNSTABLE) {
+					continue;
+				}
+			} else {
+				seq = sequence.readLock();
+			}
+			Object value = stripe.table.get(key);
+			if (sequence.readUnlock(seq)) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry at the given index. The stripe's write lock must be
+	 * held.
+	 */
+	private void removeIndex(Stripe stripe, Table table, int index) {
+		int seq = stripe.sequence.writeLock();
+		try {
+			table.values[index] = REMOVED;
+		} finally {
+			stripe.sequence.writeUnlock(seq);
+		}
+		stripe.size--;
+		totalKeys.decrementAndGet();
+	}
+
+	/**
+	 * Copies the live entries of a stripe into a new table and publishes it.
+	 * The old table is not modified, so readers using it still get correct
+	 * results and the sequence number is not changed. The stripe's write lock
+	 * must be held.<br>
+	 * <br>
+	 * The table is doubled in size if it is more than half full of live
+	 * entries, otherwise it is rebuilt at the same size to clear removed
+	 * entries.
+	 */
+	private Table resize(Stripe stripe) {
+		Table old = stripe.table;
+		int capacity = old.keys.length;
+		if (stripe.size >= old.threshold >> 1) {
+			capacity <<= 1;
+		}
+		Table table = new Table(capacity, loadFactor);
+		for (int i = 0; i < old.values.length; i++) {
+			Object value = old.values[i];
+			if (value != null && value != REMOVED) {
+				int index = table.freeIndex(old.keys[i]);
+				table.keys[index] = old.keys[i];
+				table.values[index] = value;
+			}
+		}
+		stripe.table = table;
+		stripe.used = stripe.size;
+		return table;
+	}
+
+	private void lockAll() {
+		for (int m = 0; m < mapCount; m++) {
+			stripeArray[m].writeLock.lock();
+		}
+	}
+
+	private void unlockAll() {
+		for (int m = 0; m < mapCount; m++) {
+			stripeArray[m].writeLock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private V unmask(Object value) {
+		if (value == null || value == NULL_VALUE) {
+			return null;
+		}
+		return (V) value;
+	}
+
+	private int mapHash(long key) {
+		int intKey = (int) (key >> 32 ^ key);
+
+		return (0x7FFFFFFF & intKey) % hashScramble & mapMask;
+	}
+
+	private static final class Stripe {
+		private final ReentrantLock writeLock = new ReentrantLock();
+		private final OptimisticReadWriteLock sequence = new OptimisticReadWriteLock();
+		private volatile Table table;
+		/**
+		 * The number of live entries, guarded by the write lock
+		 */
+		private int size;
+		/**
+		 * The number of slots that are not free, including removed entries,
+		 * guarded by the write lock
+		 */
+		private int used;
+
+		private Stripe(Table table) {
+			this.table = table;
+		}
+	}
+
+	/**
+	 * An open addressing hash table with linear probing. A null value marks a
+	 * free slot.
+	 */
+	private static final class Table {
+		private final long[] keys;
+		private final Object[] values;
+		private final int mask;
+		private final int threshold;
+
+		private Table(int capacity, float loadFactor) {
+			keys = new long[capacity];
+			values = new Object[capacity];
+			mask = capacity - 1;
+			threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+		}
+
+		/**
+		 * Gets the stored value for a key. This is called by readers while the
+		 * table may be modified, so the number of probes is bounded.
+		 */
+		private Object get(long key) {
+			int index = slot(key) & mask;
+			for (int probes = 0; probes <= mask; probes++) {
+				Object value = values[index];
+				if (value == null) {
+					return null;
+				} else if (value != REMOVED && keys[index] == key) {
+					return value;
+				}
+				index = index + 1 & mask;
+			}
+			return null;
+		}
+
+		private int indexOf(long key) {
+			int index = slot(key) & mask;
+			for (int probes = 0; probes <= mask; probes++) {
+				Object value = values[index];
+				if (value == null) {
+					return -1;
+				} else if (value != REMOVED && keys[index] == key) {
+					return index;
+				}
+				index = index + 1 & mask;
+			}
+			return -1;
+		}
+
+		private int freeIndex(long key) {
+			int index = slot(key) & mask;
+			while (true) {
+				Object value = values[index];
+				if (value == null || value == REMOVED) {
+					return index;
+				}
+				index = index + 1 & mask;
+			}
+		}
+
+		private static int slot(long key) {
+			long hash = key * 0x9E3779B97F4A7C15L;
+			return (int) (hash ^ hash >>> 32);
+		}
+	}
+}
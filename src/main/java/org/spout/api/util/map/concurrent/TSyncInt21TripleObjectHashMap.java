@@ -31,7 +31,9 @@ import org.spout.api.util.map.TInt21TripleObjectHashMap;
  * A simplistic map that supports a 3 21 bit integers for keys, using a trove
  * long Object hashmap in the backend. 1 bit is wasted.
  *
- * This map is backed by a read/write lock synchronised map.
+ * This map is backed by a read/write lock synchronised map. A
+ * {@link TOptimisticLongObjectHashMap} can be passed to the constructor to
+ * use optimistic reads instead.
  *
  * @param <K> the value type
  */
@@ -49,12 +51,12 @@ public class TSyncInt21TripleObjectHashMap<K> extends TInt21TripleObjectHashMap<
 	}
 
 	public boolean remove(int x, int y, int z, K value) {
-		long key = key(x, y, z);
-		return ((TSyncLongObjectHashMap<K>) map).remove(key, value);
+		long key = toKey(x, y, z);
+		return ((TSyncLongObjectMap<K>) map).remove(key, value);
 	}
 
 	public K putIfAbsent(int x, int y, int z, K value) {
-		long key = key(x, y, z);
-		return ((TSyncLongObjectHashMap<K>) map).putIfAbsent(key, value);
+		long key = toKey(x, y, z);
+		return ((TSyncLongObjectMap<K>) map).putIfAbsent(key, value);
 	}
 }
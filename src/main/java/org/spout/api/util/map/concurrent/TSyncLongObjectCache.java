@@ -0,0 +1,470 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A synchronised long keyed cache with a maximum total weight, backed by a
+ * {@link TSyncLongObjectHashMap}.<br>
+ * <br>
+ * When an insert takes the total weight above the capacity, entries are
+ * evicted using the CLOCK algorithm. Each entry has a referenced bit which is
+ * set when it is read. The clock hand passes over the entries in insertion
+ * order, clearing the referenced bit of entries which have it set, and
+ * evicting the first entry which was not referenced since the last pass.<br>
+ * <br>
+ * Entries are never evicted while pinned. An entry is pinned if
+ * {@link #pin(long)} has been called more times than {@link #unpin(long)}, or
+ * if the {@link PinPolicy} says it is. Pins belong to the key, so they are
+ * kept when the value is replaced by {@link #put(long, Object)}. If every entry is pinned, the cache
+ * may stay above its capacity until an entry is unpinned and another insert
+ * is made, or {@link #evict()} is called.<br>
+ * <br>
+ * The {@link EvictionListener} is called for each evicted entry, after the
+ * entry has been removed from the map and outside of any lock. Entries
+ * removed by {@link #remove(long)} or {@link #clear()} are not passed to the
+ * listener.
+ *
+ * @param <V> the value type
+ */
+public class TSyncLongObjectCache<V> {
+	/**
+	 * The pin count of an entry which is being evicted
+	 */
+	private static final int EVICTING = -1;
+	private final TSyncLongObjectHashMap<Entry<V>> map;
+	private final ConcurrentLinkedQueue<Entry<V>> clock = new ConcurrentLinkedQueue<Entry<V>>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final AtomicLong weight = new AtomicLong(0);
+	private final AtomicInteger staleEntries = new AtomicInteger(0);
+	private final long capacity;
+	private final Weigher<? super V> weigher;
+	private final PinPolicy<? super V> pinPolicy;
+	private final EvictionListener<? super V> listener;
+
+	/**
+	 * Creates a cache where each entry has a weight of 1
+	 *
+	 * @param capacity the maximum number of entries
+	 */
+	public TSyncLongObjectCache(long capacity) {
+		this(capacity, null, null, null);
+	}
+
+	/**
+	 * Creates a cache where each entry has a weight of 1
+	 *
+	 * @param capacity the maximum number of entries
+	 * @param listener the listener to call for evicted entries, or null
+	 */
+	public TSyncLongObjectCache(long capacity, EvictionListener<? super V> listener) {
+		this(capacity, null, null, listener);
+	}
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param capacity the maximum total weight of the entries
+	 * @param weigher the weigher for the entries, or null to give each entry a
+	 *            weight of 1
+	 * @param pinPolicy the policy for pinning entries, or null
+	 * @param listener the listener to call for evicted entries, or null
+	 */
+	public TSyncLongObjectCache(long capacity, Weigher<? super V> weigher, PinPolicy<? super V> pinPolicy, EvictionListener<? super V> listener) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.map = new TSyncLongObjectHashMap<Entry<V>>();
+		this.capacity = capacity;
+		this.weigher = weigher;
+		this.pinPolicy = pinPolicy;
+		this.listener = listener;
+	}
+
+	/**
+	 * Gets a value from the cache, and marks it as recently used
+	 *
+	 * @param key the key
+	 * @return the value, or null if the key is not in the cache
+	 */
+	public V get(long key) {
+		Entry<V> entry = map.get(key);
+		if (entry == null) {
+			return null;
+		}
+		entry.referenced = true;
+		return entry.value;
+	}
+
+	/**
+	 * Gets if a key is in the cache. The entry is not marked as recently used.
+	 *
+	 * @param key the key
+	 * @return true if the key is in the cache
+	 */
+	public boolean containsKey(long key) {
+		return map.containsKey(key);
+	}
+
+	/**
+	 * Adds a value to the cache, replacing any previous value for the key, and
+	 * evicts entries if the cache is over capacity.<br>
+	 * <br>
+	 * The new value may itself be evicted, if it is the only entry that is not
+	 * pinned.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @return the previous value, or null if there was none
+	 */
+	public V put(long key, V value) {
+		int entryWeight = getWeight(value);
+		while (true) {
+			Entry<V> previous = map.get(key);
+			if (previous == null) {
+				Entry<V> entry = new Entry<V>(key, value, entryWeight, new AtomicInteger(0));
+				if (map.putIfAbsent(key, entry) == null) {
+					added(entry, null);
+					evict();
+					return null;
+				}
+			} else if (previous.pins.get() != EVICTING) {
+				// The new entry shares the pin count, so pins made before the
+				// replacement are still matched by unpin(key)
+				Entry<V> entry = new Entry<V>(key, value, entryWeight, previous.pins);
+				if (map.replace(key, previous, entry)) {
+					added(entry, previous);
+					evict();
+					return previous.value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a value to the cache if the key is not already in the cache, and
+	 * evicts entries if the cache is over capacity.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @return the current value, or null if the value was added
+	 */
+	public V putIfAbsent(long key, V value) {
+		Entry<V> entry = new Entry<V>(key, value, getWeight(value), new AtomicInteger(0));
+		Entry<V> previous = map.putIfAbsent(key, entry);
+		if (previous != null) {
+			previous.referenced = true;
+			return previous.value;
+		}
+		added(entry, null);
+		evict();
+		return null;
+	}
+
+	/**
+	 * Removes a key from the cache. The eviction listener is not called.
+	 *
+	 * @param key the key
+	 * @return the removed value, or null if the key was not in the cache
+	 */
+	public V remove(long key) {
+		Entry<V> entry = map.remove(key);
+		if (entry == null) {
+			return null;
+		}
+		discarded(entry);
+		return entry.value;
+	}
+
+	/**
+	 * Pins an entry so that it cannot be evicted. Each call must be matched by
+	 * a call to {@link #unpin(long)}.
+	 *
+	 * @param key the key
+	 * @return true if the entry was pinned, false if the key is not in the
+	 *         cache
+	 */
+	public boolean pin(long key) {
+		Entry<V> entry = map.get(key);
+		if (entry == null) {
+			return false;
+		}
+		while (true) {
+			int pins = entry.pins.get();
+			if (pins == EVICTING) {
+				return false;
+			}
+			if (entry.pins.compareAndSet(pins, pins + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Removes a pin added by {@link #pin(long)}
+	 *
+	 * @param key the key
+	 * @return true if a pin was removed
+	 */
+	public boolean unpin(long key) {
+		Entry<V> entry = map.get(key);
+		if (entry == null) {
+			return false;
+		}
+		while (true) {
+			int pins = entry.pins.get();
+			if (pins <= 0) {
+				return false;
+			}
+			if (entry.pins.compareAndSet(pins, pins - 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Evicts entries until the total weight is no more than the capacity, or
+	 * until every remaining entry is pinned or was recently used twice in a
+	 * row.
+	 *
+	 * @return the number of entries evicted
+	 */
+	public int evict() {
+		if (weight.get() <= capacity) {
+			return 0;
+		}
+		List<Entry<V>> evicted = new ArrayList<Entry<V>>();
+		evictionLock.lock();
+		try {
+			// Two passes, so that entries which had their referenced bit cleared on the
+			// first pass can be evicted on the second
+			int limit = (map.size() + staleEntries.get()) * 2 + 1;
+			for (int scanned = 0; scanned < limit && weight.get() > capacity; scanned++) {
+				Entry<V> entry = clock.poll();
+				if (entry == null) {
+					break;
+				} else if (entry.removed) {
+					staleEntries.decrementAndGet();
+				} else if (entry.referenced) {
+					entry.referenced = false;
+					clock.offer(entry);
+				} else if (isPinned(entry) || !entry.pins.compareAndSet(0, EVICTING)) {
+					clock.offer(entry);
+				} else if (map.remove(entry.key, entry)) {
+					entry.removed = true;
+					weight.addAndGet(-entry.weight);
+					evicted.add(entry);
+				} else {
+					// The entry was replaced, and its replacement shares the pin count
+					entry.pins.compareAndSet(EVICTING, 0);
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+		if (listener != null) {
+			for (Entry<V> entry : evicted) {
+				listener.evicted(entry.key, entry.value);
+			}
+		}
+		return evicted.size();
+	}
+
+	/**
+	 * Removes all entries from the cache. The eviction listener is not called.
+	 */
+	public void clear() {
+		evictionLock.lock();
+		try {
+			for (long key : map.keys()) {
+				remove(key);
+			}
+			purge();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the keys in the cache
+	 *
+	 * @return the keys
+	 */
+	public long[] keys() {
+		return map.keys();
+	}
+
+	/**
+	 * Gets the number of entries in the cache
+	 *
+	 * @return the number of entries
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * Gets the total weight of the entries in the cache
+	 *
+	 * @return the weight
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+
+	/**
+	 * Gets the maximum total weight of the entries in the cache
+	 *
+	 * @return the capacity
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	private int getWeight(V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Cannot cache null values");
+		}
+		int entryWeight = weigher == null ? 1 : weigher.getWeight(value);
+		if (entryWeight < 0) {
+			throw new IllegalStateException("Weigher returned a negative weight");
+		}
+		return entryWeight;
+	}
+
+	private void added(Entry<V> entry, Entry<V> previous) {
+		weight.addAndGet(entry.weight);
+		clock.offer(entry);
+		if (previous != null) {
+			discarded(previous);
+		}
+	}
+
+	/**
+	 * Updates the weight after an entry was removed from the map. The entry is
+	 * removed from the clock when the hand reaches it.
+	 */
+	private void discarded(Entry<V> entry) {
+		entry.removed = true;
+		weight.addAndGet(-entry.weight);
+		if (staleEntries.incrementAndGet() > map.size() + 16 && evictionLock.tryLock()) {
+			try {
+				purge();
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Removes entries which are no longer in the map from the clock. The
+	 * eviction lock must be held.
+	 */
+	private void purge() {
+		Iterator<Entry<V>> i = clock.iterator();
+		while (i.hasNext()) {
+			if (i.next().removed) {
+				i.remove();
+				staleEntries.decrementAndGet();
+			}
+		}
+	}
+
+	private boolean isPinned(Entry<V> entry) {
+		return entry.pins.get() != 0 || pinPolicy != null && pinPolicy.isPinned(entry.key, entry.value);
+	}
+
+	private static class Entry<V> {
+		private final long key;
+		private final V value;
+		private final int weight;
+		private final AtomicInteger pins;
+		private volatile boolean referenced = false;
+		private volatile boolean removed = false;
+
+		private Entry(long key, V value, int weight, AtomicInteger pins) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.pins = pins;
+		}
+	}
+
+	/**
+	 * Gives the weight of cache values
+	 *
+	 * @param <V> the value type
+	 */
+	public static interface Weigher<V> {
+		/**
+		 * Gets the weight of a value. This is called once, when the value is
+		 * added to the cache.
+		 *
+		 * @param value the value
+		 * @return the weight, which must not be negative
+		 */
+		public int getWeight(V value);
+	}
+
+	/**
+	 * Decides if cache values are pinned
+	 *
+	 * @param <V> the value type
+	 */
+	public static interface PinPolicy<V> {
+		/**
+		 * Gets if an entry is pinned, and so cannot be evicted. This is called
+		 * by the thread evicting entries.
+		 *
+		 * @param key the key
+		 * @param value the value
+		 * @return true if the entry is pinned
+		 */
+		public boolean isPinned(long key, V value);
+	}
+
+	/**
+	 * Receives cache values which have been evicted
+	 *
+	 * @param <V> the value type
+	 */
+	public static interface EvictionListener<V> {
+		/**
+		 * Called after an entry has been evicted from the cache
+		 *
+		 * @param key the key
+		 * @param value the value
+		 */
+		public void evicted(long key, V value);
+	}
+}
@@ -175,8 +175,27 @@ public class TSyncLongObjectHashMap<V> implements TSyncLongObjectMap<V> {
 		}
 	}
 
-	public boolean forEachEntry(TLongObjectProcedure<? super V> arg0) {
-		throw new UnsupportedOperationException("This operation is not supported");
+	/**
+	 * Executes the procedure for each entry in the map. Each sub-map is read
+	 * locked while the procedure is executed for its entries, so the procedure
+	 * must not write to the map.
+	 *
+	 * @param procedure the procedure
+	 * @return false if the procedure returned false for any entry
+	 */
+	public boolean forEachEntry(TLongObjectProcedure<? super V> procedure) {
+		for (int m = 0; m < mapCount; m++) {
+			Lock lock = lockArray[m].readLock();
+			lock.lock();
+			try {
+				if (!mapArray[m].forEachEntry(procedure)) {
+					return false;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return true;
 	}
 
 	public boolean forEachKey(TLongProcedure arg0) {
@@ -323,6 +342,34 @@ public class TSyncLongObjectHashMap<V> implements TSyncLongObjectMap<V> {
 		}
 	}
 
+	/**
+	 * Replaces the value for a key, but only if the key is mapped to a given
+	 * value
+	 *
+	 * @param key the key
+	 * @param oldValue the expected value
+	 * @param newValue the new value
+	 * @return true on success
+	 */
+	public boolean replace(long key, V oldValue, V newValue) {
+		if (oldValue == null || newValue == null) {
+			throw new IllegalArgumentException("Cannot replace null values");
+		}
+		int m = mapHash(key);
+		Lock lock = lockArray[m].writeLock();
+		lock.lock();
+		try {
+			if (mapArray[m].get(key) == oldValue) {
+				mapArray[m].put(key, newValue);
+				return true;
+			} else {
+				return false;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	public boolean retainEntries(TLongObjectProcedure<? super V> arg0) {
 		throw new UnsupportedOperationException("This operation is not supported");
 	}
@@ -0,0 +1,63 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import org.spout.api.util.map.TMortonInt21TripleObjectHashMap;
+
+/**
+ * A map that supports 3 21 bit integers for keys, where the keys are stored
+ * in Morton (Z-order) order, using a trove long Object hashmap in the
+ * backend.
+ *
+ * This map is backed by a read/write lock synchronised map. A
+ * {@link TOptimisticLongObjectHashMap} can be passed to the constructor to
+ * use optimistic reads instead.
+ *
+ * @param <K> the value type
+ */
+public class TSyncMortonInt21TripleObjectHashMap<K> extends TMortonInt21TripleObjectHashMap<K> {
+	public TSyncMortonInt21TripleObjectHashMap() {
+		map = new TSyncLongObjectHashMap<K>(100);
+	}
+
+	public TSyncMortonInt21TripleObjectHashMap(int capacity) {
+		map = new TSyncLongObjectHashMap<K>(capacity);
+	}
+
+	public TSyncMortonInt21TripleObjectHashMap(TSyncLongObjectMap<K> map) {
+		this.map = map;
+	}
+
+	public boolean remove(int x, int y, int z, K value) {
+		long key = toKey(x, y, z);
+		return ((TSyncLongObjectMap<K>) map).remove(key, value);
+	}
+
+	public K putIfAbsent(int x, int y, int z, K value) {
+		long key = toKey(x, y, z);
+		return ((TSyncLongObjectMap<K>) map).putIfAbsent(key, value);
+	}
+}
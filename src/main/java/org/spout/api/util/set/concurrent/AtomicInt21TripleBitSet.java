@@ -0,0 +1,451 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.set.concurrent;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.spout.api.util.map.concurrent.TOptimisticLongObjectHashMap;
+
+import gnu.trove.procedure.TLongProcedure;
+
+/**
+ * A set of positions, with three 21 bit integer coordinates, stored as a
+ * concurrent bitset.<br>
+ * <br>
+ * The positions are grouped into pages of 16x16x16 positions, and each page
+ * is 64 atomic long words with a summary word which has a bit set for each
+ * word that may have bits set. Pages are created the first time a position
+ * in them is added and are kept until the set is discarded, so this is
+ * intended for dense sets, such as the chunks loaded or observed around
+ * players.<br>
+ * <br>
+ * Adding, removing and testing positions does not lock, except for the first
+ * add to a page. Iteration and the bulk operations are not atomic, and may or
+ * may not see positions which are changed while they are in progress.
+ */
+public class AtomicInt21TripleBitSet {
+	private static final int PAGE_BITS = 4;
+	private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+	private static final int PAGE_WORDS = 64;
+	private final TOptimisticLongObjectHashMap<Page> pages = new TOptimisticLongObjectHashMap<Page>();
+	private final CopyOnWriteArrayList<Page> pageList = new CopyOnWriteArrayList<Page>();
+	private final AtomicInteger count = new AtomicInteger(0);
+
+	/**
+	 * Adds a position to the set
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return true if the position was not already in the set
+	 */
+	public boolean add(int x, int y, int z) {
+		Page page = getOrCreatePage(x, y, z);
+		int index = localIndex(x, y, z);
+		if (page.set(index >> 6, 1L << index)) {
+			count.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes a position from the set
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return true if the position was in the set
+	 */
+	public boolean remove(int x, int y, int z) {
+		Page page = pages.get(pageKey(x, y, z));
+		if (page == null) {
+			return false;
+		}
+		int index = localIndex(x, y, z);
+		if (page.clear(index >> 6, 1L << index)) {
+			count.decrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets if a position is in the set
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return true if the position is in the set
+	 */
+	public boolean contains(int x, int y, int z) {
+		Page page = pages.get(pageKey(x, y, z));
+		if (page == null) {
+			return false;
+		}
+		int index = localIndex(x, y, z);
+		return (page.words.get(index >> 6) & 1L << index) != 0;
+	}
+
+	/**
+	 * Gets the number of positions in the set.<br>
+	 * <br>
+	 * The count is updated after the bit is changed, so it may briefly be out
+	 * of date if other threads are updating the set.
+	 *
+	 * @return the number of positions
+	 */
+	public int size() {
+		return Math.max(0, count.get());
+	}
+
+	/**
+	 * Gets if the set is empty
+	 *
+	 * @return true if the set is empty
+	 */
+	public boolean isEmpty() {
+		return count.get() <= 0;
+	}
+
+	/**
+	 * Removes all positions from the set
+	 */
+	public void clear() {
+		for (Page page : pageList) {
+			for (int word = 0; word < PAGE_WORDS; word++) {
+				long old = page.words.getAndSet(word, 0);
+				if (old != 0) {
+					count.addAndGet(-Long.bitCount(old));
+					page.clearSummaryIfEmpty(word);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executes the procedure for each position in the set. The positions are
+	 * passed as keys, which can be decoded with {@link #keyX(long)},
+	 * {@link #keyY(long)} and {@link #keyZ(long)}.<br>
+	 * <br>
+	 * Empty pages and words are skipped using the summary words.
+	 *
+	 * @param procedure the procedure
+	 * @return false if the procedure returned false for any position
+	 */
+	public boolean forEach(TLongProcedure procedure) {
+		for (Page page : pageList) {
+			long summary = page.summary.get();
+			while (summary != 0) {
+				int word = Long.numberOfTrailingZeros(summary);
+				summary &= summary - 1;
+				long bits = page.words.get(word);
+				while (bits != 0) {
+					int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					int x = page.baseX + (index >> (PAGE_BITS << 1));
+					int z = page.baseZ + (index >> PAGE_BITS & PAGE_MASK);
+					int y = page.baseY + (index & PAGE_MASK);
+					if (!procedure.execute(key(x, y, z))) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the keys of the positions in the set
+	 *
+	 * @return the keys
+	 */
+	public long[] toArray() {
+		KeyCollector collector = new KeyCollector(size());
+		forEach(collector);
+		return collector.toArray();
+	}
+
+	/**
+	 * Adds all the positions in another set to this set
+	 *
+	 * @param other the other set
+	 * @return true if any positions were added
+	 */
+	public boolean addAll(AtomicInt21TripleBitSet other) {
+		boolean changed = false;
+		for (Page otherPage : other.pageList) {
+			if (otherPage.summary.get() == 0) {
+				continue;
+			}
+			Page page = getOrCreatePage(otherPage.baseX, otherPage.baseY, otherPage.baseZ);
+			for (int word = 0; word < PAGE_WORDS; word++) {
+				long bits = otherPage.words.get(word);
+				if (bits != 0) {
+					int added = page.setAll(word, bits);
+					if (added > 0) {
+						count.addAndGet(added);
+						changed = true;
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Removes all the positions in another set from this set
+	 *
+	 * @param other the other set
+	 * @return true if any positions were removed
+	 */
+	public boolean removeAll(AtomicInt21TripleBitSet other) {
+		boolean changed = false;
+		for (Page otherPage : other.pageList) {
+			Page page = pages.get(otherPage.key);
+			if (page == null) {
+				continue;
+			}
+			for (int word = 0; word < PAGE_WORDS; word++) {
+				long bits = otherPage.words.get(word);
+				if (bits != 0) {
+					int removed = page.clearAll(word, bits);
+					if (removed > 0) {
+						count.addAndGet(-removed);
+						changed = true;
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Removes all the positions which are not in another set from this set
+	 *
+	 * @param other the other set
+	 * @return true if any positions were removed
+	 */
+	public boolean retainAll(AtomicInt21TripleBitSet other) {
+		boolean changed = false;
+		for (Page page : pageList) {
+			Page otherPage = other.pages.get(page.key);
+			for (int word = 0; word < PAGE_WORDS; word++) {
+				long bits = otherPage == null ? 0 : otherPage.words.get(word);
+				int removed = page.clearAll(word, ~bits);
+				if (removed > 0) {
+					count.addAndGet(-removed);
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Gets the key for a position. The key layout is the same as the
+	 * {@link org.spout.api.util.set.TInt21HashSet}.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the key
+	 */
+	public static long key(int x, int y, int z) {
+		return ((long) x & 0x1FFFFF) << 42 | ((long) z & 0x1FFFFF) << 21 | (long) y & 0x1FFFFF;
+	}
+
+	/**
+	 * Gets the x coordinate from a key
+	 *
+	 * @param key the key
+	 * @return the x coordinate
+	 */
+	public static int keyX(long key) {
+		return (int) (key >>> 42) << 11 >> 11;
+	}
+
+	/**
+	 * Gets the y coordinate from a key
+	 *
+	 * @param key the key
+	 * @return the y coordinate
+	 */
+	public static int keyY(long key) {
+		return (int) key << 11 >> 11;
+	}
+
+	/**
+	 * Gets the z coordinate from a key
+	 *
+	 * @param key the key
+	 * @return the z coordinate
+	 */
+	public static int keyZ(long key) {
+		return (int) (key >>> 21) << 11 >> 11;
+	}
+
+	private Page getOrCreatePage(int x, int y, int z) {
+		long key = pageKey(x, y, z);
+		Page page = pages.get(key);
+		if (page == null) {
+			Page newPage = new Page(key, x & ~PAGE_MASK, y & ~PAGE_MASK, z & ~PAGE_MASK);
+			page = pages.putIfAbsent(key, newPage);
+			if (page == null) {
+				page = newPage;
+				pageList.add(page);
+			}
+		}
+		return page;
+	}
+
+	private static long pageKey(int x, int y, int z) {
+		return key(x >> PAGE_BITS, y >> PAGE_BITS, z >> PAGE_BITS);
+	}
+
+	private static int localIndex(int x, int y, int z) {
+		return (x & PAGE_MASK) << (PAGE_BITS << 1) | (z & PAGE_MASK) << PAGE_BITS | y & PAGE_MASK;
+	}
+
+	/**
+	 * Collects keys into an array, which grows if the set grows while it is
+	 * being copied
+	 */
+	private static final class KeyCollector implements TLongProcedure {
+		private long[] keys;
+		private int size = 0;
+
+		private KeyCollector(int capacity) {
+			keys = new long[capacity];
+		}
+
+		@Override
+		public boolean execute(long key) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, Math.max(16, size << 1));
+			}
+			keys[size++] = key;
+			return true;
+		}
+
+		private long[] toArray() {
+			return size == keys.length ? keys : Arrays.copyOf(keys, size);
+		}
+	}
+
+	private static final class Page {
+		private final long key;
+		private final int baseX;
+		private final int baseY;
+		private final int baseZ;
+		private final AtomicLongArray words = new AtomicLongArray(PAGE_WORDS);
+		private final AtomicLong summary = new AtomicLong(0);
+
+		private Page(long key, int baseX, int baseY, int baseZ) {
+			this.key = key;
+			this.baseX = baseX;
+			this.baseY = baseY;
+			this.baseZ = baseZ;
+		}
+
+		private boolean set(int word, long mask) {
+			return setAll(word, mask) != 0;
+		}
+
+		private boolean clear(int word, long mask) {
+			return clearAll(word, mask) != 0;
+		}
+
+		/**
+		 * Sets the bits in the mask, and returns the number of bits which were
+		 * not already set
+		 */
+		private int setAll(int word, long mask) {
+			while (true) {
+				long old = words.get(word);
+				long updated = old | mask;
+				if (updated == old) {
+					return 0;
+				}
+				if (words.compareAndSet(word, old, updated)) {
+					setSummary(word);
+					return Long.bitCount(updated ^ old);
+				}
+			}
+		}
+
+		/**
+		 * Clears the bits in the mask, and returns the number of bits which
+		 * were set
+		 */
+		private int clearAll(int word, long mask) {
+			while (true) {
+				long old = words.get(word);
+				long updated = old & ~mask;
+				if (updated == old) {
+					return 0;
+				}
+				if (words.compareAndSet(word, old, updated)) {
+					if (updated == 0) {
+						clearSummaryIfEmpty(word);
+					}
+					return Long.bitCount(updated ^ old);
+				}
+			}
+		}
+
+		private void setSummary(int word) {
+			long mask = 1L << word;
+			while (true) {
+				long old = summary.get();
+				if ((old & mask) != 0 || summary.compareAndSet(old, old | mask)) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Clears the summary bit for a word. Setters update the word before the
+		 * summary, so the word is checked again after the summary is cleared.
+		 */
+		private void clearSummaryIfEmpty(int word) {
+			long mask = 1L << word;
+			while (true) {
+				long old = summary.get();
+				if ((old & mask) == 0 || summary.compareAndSet(old, old & ~mask)) {
+					break;
+				}
+			}
+			if (words.get(word) != 0) {
+				setSummary(word);
+			}
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.set.concurrent;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import org.spout.api.util.map.concurrent.TOptimisticLongObjectHashMap;
+
+import gnu.trove.TLongCollection;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.procedure.TLongProcedure;
+import gnu.trove.set.TLongSet;
+
+/**
+ * A synchronised long hash set, where reads do not take a lock.<br>
+ * <br>
+ * This set is backed by a {@link TOptimisticLongObjectHashMap}. Bulk
+ * operations are not atomic.
+ */
+public class TOptimisticLongHashSet implements TLongSet {
+	private static final Object PRESENT = Boolean.TRUE;
+	private final TOptimisticLongObjectHashMap<Object> map;
+
+	/**
+	 * Creates a synchronised set with optimistic reads
+	 */
+	public TOptimisticLongHashSet() {
+		map = new TOptimisticLongObjectHashMap<Object>();
+	}
+
+	/**
+	 * Creates a synchronised set with optimistic reads
+	 *
+	 * @param capacity the initial capacity of the set
+	 */
+	public TOptimisticLongHashSet(int capacity) {
+		map = new TOptimisticLongObjectHashMap<Object>(16, capacity);
+	}
+
+	public long getNoEntryValue() {
+		return 0;
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	public boolean contains(long entry) {
+		return map.containsKey(entry);
+	}
+
+	public TLongIterator iterator() {
+		return new OptimisticLongIterator(toArray());
+	}
+
+	public long[] toArray() {
+		return toArray(null);
+	}
+
+	public long[] toArray(long[] dest) {
+		long[] keys = map.keys();
+		if (dest == null || dest.length < keys.length) {
+			dest = new long[keys.length];
+		}
+		for (int i = 0; i < keys.length; i++) {
+			dest[i] = keys[i];
+		}
+		return dest;
+	}
+
+	public boolean add(long entry) {
+		return map.putIfAbsent(entry, PRESENT) == null;
+	}
+
+	public boolean remove(long entry) {
+		return map.remove(entry) != null;
+	}
+
+	public boolean containsAll(Collection<?> collection) {
+		for (Object o : collection) {
+			if (!(o instanceof Long) || !contains(((Long) o).longValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean containsAll(TLongCollection collection) {
+		return containsAll(collection.toArray());
+	}
+
+	public boolean containsAll(long[] array) {
+		for (long entry : array) {
+			if (!contains(entry)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean addAll(Collection<? extends Long> collection) {
+		boolean changed = false;
+		for (Long entry : collection) {
+			changed |= add(entry.longValue());
+		}
+		return changed;
+	}
+
+	public boolean addAll(TLongCollection collection) {
+		return addAll(collection.toArray());
+	}
+
+	public boolean addAll(long[] array) {
+		boolean changed = false;
+		for (long entry : array) {
+			changed |= add(entry);
+		}
+		return changed;
+	}
+
+	public boolean retainAll(Collection<?> collection) {
+		boolean changed = false;
+		for (long entry : toArray()) {
+			if (!collection.contains(Long.valueOf(entry))) {
+				changed |= remove(entry);
+			}
+		}
+		return changed;
+	}
+
+	public boolean retainAll(TLongCollection collection) {
+		boolean changed = false;
+		for (long entry : toArray()) {
+			if (!collection.contains(entry)) {
+				changed |= remove(entry);
+			}
+		}
+		return changed;
+	}
+
+	public boolean retainAll(long[] array) {
+		TOptimisticLongHashSet retained = new TOptimisticLongHashSet(array.length);
+		retained.addAll(array);
+		return retainAll(retained);
+	}
+
+	public boolean removeAll(Collection<?> collection) {
+		boolean changed = false;
+		for (Object o : collection) {
+			if (o instanceof Long) {
+				changed |= remove(((Long) o).longValue());
+			}
+		}
+		return changed;
+	}
+
+	public boolean removeAll(TLongCollection collection) {
+		return removeAll(collection.toArray());
+	}
+
+	public boolean removeAll(long[] array) {
+		boolean changed = false;
+		for (long entry : array) {
+			changed |= remove(entry);
+		}
+		return changed;
+	}
+
+	public void clear() {
+		map.clear();
+	}
+
+	public boolean forEach(TLongProcedure procedure) {
+		for (long entry : toArray()) {
+			if (!procedure.execute(entry)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Iterates over a copy of the entries. Removing an entry removes it from
+	 * the set.
+	 */
+	private class OptimisticLongIterator implements TLongIterator {
+		private final long[] entries;
+		private int position = 0;
+		private boolean removable = false;
+
+		private OptimisticLongIterator(long[] entries) {
+			this.entries = entries;
+		}
+
+		public boolean hasNext() {
+			return position < entries.length;
+		}
+
+		public long next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			removable = true;
+			return entries[position++];
+		}
+
+		public void remove() {
+			if (!removable) {
+				throw new IllegalStateException("next() has not been called");
+			}
+			removable = false;
+			TOptimisticLongHashSet.this.remove(entries[position - 1]);
+		}
+	}
+}
@@ -33,7 +33,9 @@ import gnu.trove.set.hash.TIntHashSet;
 /**
  * A synchronized version of the {@link TByteTripleHashSet}.
  *
- * This set is backed by a read/write lock synchronised set.
+ * This set is backed by a read/write lock synchronised set. A
+ * {@link TOptimisticIntHashSet} can be passed to the constructor to use
+ * optimistic reads instead.
  */
 public class TSyncByteTripleHashSet extends TByteTripleHashSet {
 	public TSyncByteTripleHashSet() {
@@ -43,4 +45,8 @@ public class TSyncByteTripleHashSet extends TByteTripleHashSet {
 	public TSyncByteTripleHashSet(int capacity) {
 		super(TCollections.synchronizedSet(new TIntHashSet(capacity)));
 	}
+
+	public TSyncByteTripleHashSet(TOptimisticIntHashSet set) {
+		super(set);
+	}
 }
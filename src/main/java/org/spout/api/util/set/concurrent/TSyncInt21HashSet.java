@@ -33,7 +33,9 @@ import gnu.trove.set.hash.TLongHashSet;
 /**
  * A synchronized version of the {@link TInt21HashSet}.
  *
- * This set is backed by a read/write lock synchronised set.
+ * This set is backed by a read/write lock synchronised set. A
+ * {@link TOptimisticLongHashSet} can be passed to the constructor to use
+ * optimistic reads instead.
  */
 public class TSyncInt21HashSet extends TInt21HashSet {
 	public TSyncInt21HashSet() {
@@ -43,4 +45,8 @@ public class TSyncInt21HashSet extends TInt21HashSet {
 	public TSyncInt21HashSet(int capacity) {
 		super(TCollections.synchronizedSet(new TLongHashSet(capacity)));
 	}
+
+	public TSyncInt21HashSet(TOptimisticLongHashSet set) {
+		super(set);
+	}
 }
@@ -0,0 +1,141 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.entity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class ControllerTypeIndexTest {
+	private final ControllerTypeIndex index = new ControllerTypeIndex();
+
+	@Test
+	public void testHierarchy() {
+		assertEquals("Wrong hierarchy", new HashSet<Class<?>>(Arrays.asList(Mob.class, Animal.class, Controller.class, Tameable.class, Named.class)), new HashSet<Class<?>>(Arrays.asList(index.getHierarchy(Mob.class))));
+	}
+
+	@Test
+	public void testIndex() {
+		Entity a = createEntity(1);
+		Entity b = createEntity(2);
+		Entity c = createEntity(3);
+		index.add(a, new Mob());
+		index.add(b, new Animal());
+		index.add(c, new Other());
+
+		assertEquals("Wrong controllers", 3, index.count(Controller.class));
+		assertEquals("Wrong animals", new HashSet<Entity>(Arrays.asList(a, b)), index.getAll(Animal.class));
+		assertEquals("Wrong mobs", new HashSet<Entity>(Arrays.asList(a)), index.getAll(Mob.class));
+		assertEquals("Wrong interface entities", new HashSet<Entity>(Arrays.asList(a, c)), index.getAll(Named.class));
+		assertTrue("Unused type has entities", index.getAll(PlayerController.class).isEmpty());
+
+		index.setController(a, new Mob(), new Other());
+		assertEquals("Mob not removed", 0, index.count(Mob.class));
+		assertEquals("Wrong animals after change", new HashSet<Entity>(Arrays.asList(b)), index.getAll(Animal.class));
+		assertEquals("Shared interface changed", new HashSet<Entity>(Arrays.asList(a, c)), index.getAll(Named.class));
+		assertEquals("Wrong others", new HashSet<Entity>(Arrays.asList(a, c)), index.getAll(Other.class));
+
+		index.setController(b, new Animal(), null);
+		index.remove(c, new Other());
+		assertEquals("Wrong controllers after removal", new HashSet<Entity>(Arrays.asList(a)), index.getAll(Controller.class));
+		try {
+			index.getAll(Controller.class).clear();
+			assertTrue("Index view is modifiable", false);
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void testEmptyTypesDropped() {
+		Entity a = createEntity(1);
+		Entity b = createEntity(2);
+		index.add(a, new Mob());
+		index.add(b, new Other());
+		assertEquals("Wrong type count", 6, index.getTypeCount());
+
+		index.setController(a, new Mob(), new Other());
+		assertEquals("Empty types not dropped after change", 3, index.getTypeCount());
+		index.remove(a, new Other());
+		index.remove(b, new Other());
+		assertEquals("Empty types not dropped after removal", 0, index.getTypeCount());
+		assertEquals("Dropped type has entities", 0, index.count(Controller.class));
+
+		index.add(b, new Animal());
+		assertEquals("Dropped type not added again", new HashSet<Entity>(Arrays.asList(b)), index.getAll(Controller.class));
+	}
+
+	private static Entity createEntity(final int id) {
+		return (Entity) Proxy.newProxyInstance(Entity.class.getClassLoader(), new Class<?>[] {Entity.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getId") || name.equals("hashCode")) {
+					return id;
+				} else if (name.equals("equals")) {
+					return proxy == args[0];
+				} else if (name.equals("toString")) {
+					return "Entity " + id;
+				}
+				throw new UnsupportedOperationException(name);
+			}
+		});
+	}
+
+	private interface Named {
+	}
+
+	private interface Tameable extends Named {
+	}
+
+	private static class Animal extends Controller {
+		@Override
+		public void onAttached() {
+		}
+
+		@Override
+		public void onTick(float dt) {
+		}
+	}
+
+	private static class Mob extends Animal implements Tameable {
+	}
+
+	private static class Other extends Controller implements Named {
+		@Override
+		public void onAttached() {
+		}
+
+		@Override
+		public void onTick(float dt) {
+		}
+	}
+}
@@ -29,10 +29,23 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
+import org.spout.api.Game;
+import org.spout.api.Spout;
 import org.spout.api.exception.EventException;
+import org.spout.api.exception.IllegalPluginAccessException;
 
 public class SimpleEventManagerTest {
 	protected EventManager eventManager;
@@ -69,4 +82,315 @@ public class SimpleEventManagerTest {
 			assertEquals(calledOrders.get(order.getIndex()), order);
 		}
 	}
+
+	@Test
+	public void testExecutorModes() throws EventException {
+		for (boolean generate : new boolean[] {true, false}) {
+			final SimpleEventManager eventManager = new SimpleEventManager(generate);
+			final Object owner = new Object();
+			final AccessListener listener = new AccessListener();
+			eventManager.registerEvents(listener, owner);
+			eventManager.callEvent(new TestEvent());
+			eventManager.callEvent(new TestEvent());
+			HandlerList.unregisterAll(owner);
+			assertEquals("Public method not called", 2, listener.publicCalls);
+			assertEquals("Package method not called", 2, listener.packageCalls);
+			assertEquals("Private method not called", 2, listener.privateCalls);
+
+			for (Set<ListenerRegistration> registrations : eventManager.createRegisteredListeners(listener, owner).values()) {
+				for (ListenerRegistration registration : registrations) {
+					try {
+						registration.getExecutor().execute(new Event() {
+							@Override
+							public HandlerList getHandlers() {
+								return null;
+							}
+						});
+						fail("Executor accepted the wrong event type");
+					} catch (EventException e) {
+					}
+				}
+			}
+
+			for (ListenerRegistration registration : eventManager.createRegisteredListeners(listener, owner).get(TestEvent.class)) {
+				int publicCalls = listener.publicCalls;
+				int packageCalls = listener.packageCalls;
+				registration.getExecutor().execute(new TestEvent());
+				boolean generated = registration.getExecutor().getClass().getName().contains("$$EventExecutor$");
+				if (listener.publicCalls != publicCalls) {
+					assertEquals("Wrong executor type for public method", generate, generated);
+				} else if (listener.packageCalls != packageCalls) {
+					assertEquals("Wrong executor type for package method", generate, generated);
+				} else {
+					assertFalse("Private method did not use the reflective executor", generated);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBulkRegistration() {
+		final SimpleEventManager eventManager = new SimpleEventManager();
+		final Object owner = new Object();
+		List<TestListener> listeners = new ArrayList<TestListener>();
+		for (int i = 0; i < 5; i++) {
+			listeners.add(new TestListener());
+		}
+		eventManager.registerEvents(listeners, owner);
+		eventManager.callEvent(new TestEvent());
+		HandlerList.unregisterAll(owner);
+		for (TestListener listener : listeners) {
+			assertTrue("Listener not called", listener.hasBeenCalled());
+		}
+	}
+
+	@Test
+	public void testMissingHandlerList() {
+		final SimpleEventManager eventManager = new SimpleEventManager();
+		for (int i = 0; i < 2; i++) {
+			try {
+				eventManager.registerEvent(NoHandlersEvent.class, Order.DEFAULT, new EventExecutor() {
+					public void execute(Event event) throws EventException {
+					}
+				}, this);
+				fail("Registered an event without a handler list");
+			} catch (IllegalPluginAccessException e) {
+			}
+		}
+	}
+
+	@Test
+	public void testLazyEvents() {
+		final SimpleEventManager eventManager = new SimpleEventManager();
+		final Object owner = new Object();
+		final int[] created = new int[1];
+		EventFactory<LazyEvent> factory = new EventFactory<LazyEvent>() {
+			public LazyEvent createEvent() {
+				created[0]++;
+				return new LazyEvent();
+			}
+		};
+		assertFalse("Event has listeners", eventManager.hasListeners(LazyEvent.class));
+		assertNull("Event called without listeners", eventManager.callEvent(LazyEvent.class, factory));
+		assertEquals("Event created without listeners", 0, created[0]);
+
+		eventManager.registerEvent(LazyEvent.class, Order.MONITOR, new EventExecutor() {
+			public void execute(Event event) throws EventException {
+			}
+		}, owner);
+		assertTrue("Event has no listeners", eventManager.hasListeners(LazyEvent.class));
+		assertTrue("Event has no monitor listeners", eventManager.hasListeners(LazyEvent.class, Order.MONITOR));
+		assertFalse("Event has default listeners", eventManager.hasListeners(LazyEvent.class, Order.DEFAULT));
+		assertNotNull("Event not called", eventManager.callEvent(LazyEvent.class, factory));
+		assertEquals("Event not created", 1, created[0]);
+
+		HandlerList.unregisterAll(owner);
+		assertFalse("Event has listeners after unregistering", eventManager.hasListeners(LazyEvent.class));
+	}
+
+	@Test
+	public void testAsyncLanes() throws Exception {
+		// Registering onLate logs a warning through the game
+		if (Spout.getGame() == null) {
+			Spout.setGame((Game) Proxy.newProxyInstance(Game.class.getClassLoader(), new Class<?>[] {Game.class}, new InvocationHandler() {
+				private final Logger logger = Logger.getLogger(SimpleEventManagerTest.class.getName());
+
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("getLogger")) {
+						return logger;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				}
+			}));
+		}
+		ExecutorService workers = Executors.newFixedThreadPool(2);
+		try {
+			final SimpleEventManager eventManager = new SimpleEventManager(true, workers);
+			final Object owner = new Object();
+			AsyncListener listener = new AsyncListener();
+			eventManager.registerEvents(listener, owner);
+
+			LazyEvent event = new LazyEvent();
+			assertSame("Wrong event returned", event, eventManager.callEvent(event));
+			assertTrue("Async listener not called", listener.asyncCalled.await(10, TimeUnit.SECONDS));
+			assertSame("Sync listener not called on the caller thread", Thread.currentThread(), listener.syncThread);
+			assertSame("Late listener not called on the caller thread", Thread.currentThread(), listener.lateThread);
+			assertNotSame("Async listener called on the caller thread", Thread.currentThread(), listener.asyncThread);
+			assertTrue("Async listener called before sync listeners", listener.syncCalledFirst);
+
+			LazyEvent asyncEvent = new LazyEvent();
+			assertSame("Wrong event from future", asyncEvent, eventManager.callEventAsync(asyncEvent).get(10, TimeUnit.SECONDS));
+			assertNotSame("Async event called on the caller thread", Thread.currentThread(), listener.syncThread);
+			HandlerList.unregisterAll(owner);
+		} finally {
+			workers.shutdown();
+		}
+	}
+
+	public static class AsyncListener implements Listener {
+		private final CountDownLatch asyncCalled = new CountDownLatch(1);
+		private volatile Thread syncThread;
+		private volatile Thread lateThread;
+		private volatile Thread asyncThread;
+		private volatile boolean syncCalledFirst;
+
+		@EventHandler
+		public void onSync(LazyEvent event) {
+			syncThread = Thread.currentThread();
+		}
+
+		@EventHandler(order = Order.LATE, async = true)
+		public void onLate(LazyEvent event) {
+			lateThread = Thread.currentThread();
+		}
+
+		@EventHandler(order = Order.MONITOR, async = true)
+		public void onAsync(LazyEvent event) {
+			if (asyncThread == null) {
+				asyncThread = Thread.currentThread();
+				syncCalledFirst = syncThread != null && lateThread != null;
+				asyncCalled.countDown();
+			}
+		}
+	}
+
+	@Test
+	public void testBatchEvents() {
+		final SimpleEventManager eventManager = new SimpleEventManager();
+		final Object owner = new Object();
+		final int[] batchEntries = new int[1];
+		eventManager.registerEvent(CountBatchEvent.class, Order.DEFAULT, new EventExecutor() {
+			public void execute(Event event) throws EventException {
+				CountBatchEvent batch = (CountBatchEvent) event;
+				for (int i = 0; i < batch.size(); i++) {
+					if (!batch.isCancelled(i)) {
+						batchEntries[0]++;
+					}
+				}
+			}
+		}, owner);
+
+		CountBatchEvent batch = new CountBatchEvent(10);
+		eventManager.callBatchEvent(batch);
+		assertEquals("Single events created without listeners", 0, batch.created);
+		assertEquals("Wrong entries passed to batch listener", 10, batchEntries[0]);
+
+		final List<Integer> singleEntries = new ArrayList<Integer>();
+		eventManager.registerEvent(CountEvent.class, Order.DEFAULT, new EventExecutor() {
+			public void execute(Event event) throws EventException {
+				CountEvent single = (CountEvent) event;
+				singleEntries.add(single.index);
+				if ((single.index & 1) != 0) {
+					single.setCancelled(true);
+				}
+			}
+		}, owner);
+		batchEntries[0] = 0;
+		batch = new CountBatchEvent(10);
+		batch.setCancelled(4, true);
+		eventManager.callBatchEvent(batch);
+		HandlerList.unregisterAll(owner);
+		assertEquals("Wrong single events", Arrays.asList(0, 1, 2, 3, 5, 6, 7, 8, 9), singleEntries);
+		assertEquals("Wrong entries after cancelling", 4, batchEntries[0]);
+		assertTrue("Entry not cancelled", batch.isCancelled(3) && !batch.isCancelled(2));
+	}
+
+	public static class CountEvent extends Event implements Cancellable {
+		private static final HandlerList handlers = new HandlerList();
+		private final int index;
+
+		public CountEvent(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void setCancelled(boolean cancelled) {
+			super.setCancelled(cancelled);
+		}
+
+		@Override
+		public HandlerList getHandlers() {
+			return handlers;
+		}
+
+		public static HandlerList getHandlerList() {
+			return handlers;
+		}
+	}
+
+	public static class CountBatchEvent extends BatchEvent<CountEvent> {
+		private static final HandlerList handlers = new HandlerList();
+		private final int size;
+		private int created = 0;
+
+		public CountBatchEvent(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Class<CountEvent> getEventType() {
+			return CountEvent.class;
+		}
+
+		@Override
+		protected CountEvent createEvent(int index) {
+			created++;
+			return new CountEvent(index);
+		}
+
+		@Override
+		public HandlerList getHandlers() {
+			return handlers;
+		}
+
+		public static HandlerList getHandlerList() {
+			return handlers;
+		}
+	}
+
+	public static class LazyEvent extends Event {
+		private static final HandlerList handlers = new HandlerList();
+
+		@Override
+		public HandlerList getHandlers() {
+			return handlers;
+		}
+
+		public static HandlerList getHandlerList() {
+			return handlers;
+		}
+	}
+
+	public static class NoHandlersEvent extends Event {
+		@Override
+		public HandlerList getHandlers() {
+			return null;
+		}
+	}
+
+	public static class AccessListener implements Listener {
+		private int publicCalls = 0;
+		private int packageCalls = 0;
+		private int privateCalls = 0;
+
+		@EventHandler
+		public void onPublic(TestEvent event) {
+			publicCalls++;
+		}
+
+		@EventHandler
+		void onPackage(TestEvent event) {
+			packageCalls++;
+		}
+
+		@EventHandler
+		private void onPrivate(TestEvent event) {
+			privateCalls++;
+		}
+	}
 }
@@ -0,0 +1,128 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.geo;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.spout.api.basic.blocks.SpoutBlocks;
+import org.spout.api.collision.model.CollisionStrategy;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.material.GenericBlockMaterial;
+
+public class ColumnHeightMapTest {
+	private final static int HEIGHT = 64;
+
+	private final static BlockMaterial STONE = new GenericBlockMaterial("ColumnHeightMapTest Stone", 4011) {}.setOpaque(true);
+	private final static BlockMaterial GLASS = new GenericBlockMaterial("ColumnHeightMapTest Glass", 4012) {}.setOpaque(false);
+	private final static BlockMaterial FLOWER = new GenericBlockMaterial("ColumnHeightMapTest Flower", 4013) {}.setOpaque(false).setCollisionStrategy(CollisionStrategy.NOCOLLIDE);
+
+	private final BlockMaterial[] blocks = new BlockMaterial[16 * 16 * HEIGHT];
+	private final ColumnHeightMap map = new ColumnHeightMap(1, -1);
+	private final BlockData world = new TestWorld();
+
+	@Test
+	public void testHeights() throws IOException {
+		for (int i = 0; i < blocks.length; i++) {
+			blocks[i] = SpoutBlocks.air;
+		}
+		for (int x = 16; x < 32; x++) {
+			for (int z = -16; z < 0; z++) {
+				setBlock(x, 10, z, STONE);
+			}
+		}
+		assertTrue("Wrong height after placing", map.getHeight(20, -3, HeightMapType.OPAQUE) == 10);
+
+		setBlock(20, 20, -3, GLASS);
+		setBlock(20, 30, -3, FLOWER);
+		assertTrue("Wrong opaque height", map.getHeight(20, -3, HeightMapType.OPAQUE) == 10);
+		assertTrue("Wrong motion blocking height", map.getHeight(20, -3, HeightMapType.MOTION_BLOCKING) == 20);
+		assertTrue("Wrong non air height", map.getHeight(20, -3, HeightMapType.NON_AIR) == 30);
+		assertTrue("Wrong height in another column", map.getHeight(21, -3, HeightMapType.NON_AIR) == 10);
+
+		setBlock(20, 30, -3, SpoutBlocks.air);
+		assertTrue("Height not lowered after removing the top", map.getHeight(20, -3, HeightMapType.NON_AIR) == 20);
+		setBlock(20, 15, -3, STONE);
+		setBlock(20, 5, -3, SpoutBlocks.air);
+		assertTrue("Wrong height after changes below the top", map.getHeight(20, -3, HeightMapType.OPAQUE) == 15);
+		setBlock(20, 15, -3, SpoutBlocks.air);
+		setBlock(20, 10, -3, SpoutBlocks.air);
+		assertTrue("Empty column has a height", map.getHeight(20, -3, HeightMapType.OPAQUE) == ColumnHeightMap.NO_BLOCK);
+		setBlock(20, 20, -3, SpoutBlocks.air);
+		assertTrue("Air column has a motion blocking height", map.getHeight(20, -3, HeightMapType.MOTION_BLOCKING) == ColumnHeightMap.NO_BLOCK);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		map.output(out);
+		ColumnHeightMap loaded = new ColumnHeightMap(1, -1);
+		loaded.input(new ByteArrayInputStream(out.toByteArray()));
+		ColumnHeightMap recalculated = new ColumnHeightMap(1, -1);
+		recalculated.recalculate(HEIGHT - 1, world);
+		for (HeightMapType type : HeightMapType.values()) {
+			for (int x = 16; x < 32; x++) {
+				for (int z = -16; z < 0; z++) {
+					int height = map.getHeight(x, z, type);
+					assertTrue("Saved height mismatch at " + x + ", " + z, loaded.getHeight(x, z, type) == height);
+					assertTrue("Recalculated height mismatch at " + x + ", " + z, recalculated.getHeight(x, z, type) == height);
+				}
+			}
+		}
+	}
+
+	private void setBlock(int x, int y, int z, BlockMaterial material) {
+		blocks[getIndex(x, y, z)] = material;
+		map.blockChanged(x, y, z, material, world);
+	}
+
+	private static int getIndex(int x, int y, int z) {
+		return ((x & 15) * 16 + (z & 15)) * HEIGHT + y;
+	}
+
+	private class TestWorld implements BlockData {
+		public BlockMaterial getBlockMaterial(int x, int y, int z) {
+			return blocks[getIndex(x, y, z)];
+		}
+
+		public short getBlockId(int x, int y, int z) {
+			return getBlockMaterial(x, y, z).getId();
+		}
+
+		public short getBlockData(int x, int y, int z) {
+			return 0;
+		}
+
+		public byte getBlockLight(int x, int y, int z) {
+			return 0;
+		}
+
+		public byte getSkyLight(int x, int y, int z) {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.geo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.spout.api.collision.BoundingBox;
+import org.spout.api.entity.Controller;
+import org.spout.api.entity.Entity;
+import org.spout.api.entity.PlayerController;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.math.Vector3;
+
+public class EntitySpatialIndexTest {
+	private static final int ENTITIES = 2000;
+	private static final float RANGE = 200F;
+
+	private final EntitySpatialIndex index = new EntitySpatialIndex();
+	private final Entity[] entities = new Entity[ENTITIES];
+	private final Point[] positions = new Point[ENTITIES];
+
+	@Test
+	public void testQueries() {
+		Random r = new Random(7);
+		for (int i = 0; i < ENTITIES; i++) {
+			entities[i] = createEntity(i, (i & 3) == 0);
+			move(i, r);
+		}
+		for (int i = 0; i < ENTITIES; i += 2) {
+			move(i, r);
+		}
+		for (int i = 0; i < ENTITIES; i += 5) {
+			index.remove(entities[i]);
+			positions[i] = null;
+		}
+		assertEquals("Wrong size", ENTITIES - ENTITIES / 5, index.size());
+
+		for (int q = 0; q < 50; q++) {
+			Point center = randomPoint(r);
+			float radius = r.nextFloat() * 40F;
+			Set<Entity> expected = new HashSet<Entity>();
+			Set<Entity> expectedPlayers = new HashSet<Entity>();
+			for (int i = 0; i < ENTITIES; i++) {
+				if (positions[i] != null && distanceSquared(positions[i], center) <= radius * radius) {
+					expected.add(entities[i]);
+					if (entities[i].is(PlayerController.class)) {
+						expectedPlayers.add(entities[i]);
+					}
+				}
+			}
+			assertEquals("Wrong nearby entities", expected, index.getNearby(center, radius, null, new HashSet<Entity>()));
+			assertEquals("Wrong nearby players", expectedPlayers, index.getNearby(center, radius, PlayerController.class, new HashSet<Entity>()));
+
+			List<Entity> nearest = index.getNearest(center, 5, RANGE * 2, null);
+			assertEquals("Wrong number of nearest entities", 5, nearest.size());
+			double furthest = 0;
+			for (Entity e : nearest) {
+				double distance = distanceSquared(positionOf(e), center);
+				assertTrue("Nearest entities are not sorted", distance >= furthest);
+				furthest = distance;
+			}
+			for (int i = 0; i < ENTITIES; i++) {
+				if (positions[i] != null && !nearest.contains(entities[i])) {
+					assertTrue("Closer entity not returned", distanceSquared(positions[i], center) >= furthest);
+				}
+			}
+
+			// A small radius searches shells of cells instead of every entity
+			List<Entity> close = index.getNearest(center, 3, radius, null);
+			assertEquals("Wrong number of close entities", Math.min(3, expected.size()), close.size());
+			furthest = 0;
+			for (Entity e : close) {
+				double distance = distanceSquared(positionOf(e), center);
+				assertTrue("Close entities are not sorted", distance >= furthest);
+				furthest = distance;
+			}
+			for (Entity e : expected) {
+				if (!close.contains(e)) {
+					assertTrue("Closer entity not returned by shell search", distanceSquared(positionOf(e), center) >= furthest);
+				}
+			}
+		}
+
+		BoundingBox box = new BoundingBox(new Vector3(-50, -20, 10), new Vector3(30, 20, 90));
+		Set<Entity> expected = new HashSet<Entity>();
+		for (int i = 0; i < ENTITIES; i++) {
+			if (positions[i] != null && inBox(positions[i], box)) {
+				expected.add(entities[i]);
+			}
+		}
+		assertEquals("Wrong entities in box", expected, index.getInBox(box, null, new HashSet<Entity>()));
+
+		BoundingBox everything = new BoundingBox(new Vector3(-RANGE, -RANGE, -RANGE), new Vector3(RANGE, RANGE, RANGE));
+		assertEquals("Wrong entities in large box", ENTITIES - ENTITIES / 5, index.getInBox(everything, null, new ArrayList<Entity>()).size());
+	}
+
+	@Test
+	public void testNearestLimits() {
+		for (int i = 0; i < 3; i++) {
+			entities[i] = createEntity(i, false);
+			positions[i] = new Point(null, i * 10F, 0F, 0F);
+			index.update(entities[i], positions[i]);
+		}
+		Point origin = new Point(null, 0F, 0F, 0F);
+		List<Entity> nearest = index.getNearest(origin, 5, 15F, null);
+		assertEquals("Wrong nearest count", 2, nearest.size());
+		assertTrue("Wrong nearest order", nearest.get(0) == entities[0] && nearest.get(1) == entities[1]);
+		assertTrue("No entities requested", index.getNearest(origin, 0, 15F, null).isEmpty());
+		assertTrue("Remove failed", index.remove(entities[0]));
+		assertFalse("Removed twice", index.remove(entities[0]));
+		assertEquals("Wrong nearest after removal", entities[1], index.getNearest(origin, 1, 15F, null).get(0));
+	}
+
+	private void move(int i, Random r) {
+		positions[i] = randomPoint(r);
+		index.update(entities[i], positions[i]);
+	}
+
+	private Point positionOf(Entity e) {
+		for (int i = 0; i < ENTITIES; i++) {
+			if (entities[i] == e) {
+				return positions[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Point.getSquaredDistance(...) is infinite for points without a world, so
+	 * the distance is worked out from the coordinates
+	 */
+	private static double distanceSquared(Point a, Point b) {
+		double dx = a.getX() - b.getX();
+		double dy = a.getY() - b.getY();
+		double dz = a.getZ() - b.getZ();
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * BoundingBox.containsPoint(...) compares vector lengths, so the bounds are
+	 * checked directly
+	 */
+	private static boolean inBox(Point p, BoundingBox box) {
+		Vector3 min = box.getMin();
+		Vector3 max = box.getMax();
+		return p.getX() >= min.getX() && p.getY() >= min.getY() && p.getZ() >= min.getZ() && p.getX() <= max.getX() && p.getY() <= max.getY() && p.getZ() <= max.getZ();
+	}
+
+	private static Point randomPoint(Random r) {
+		return new Point(null, (r.nextFloat() * 2 - 1) * RANGE, (r.nextFloat() * 2 - 1) * RANGE / 4, (r.nextFloat() * 2 - 1) * RANGE);
+	}
+
+	private static Entity createEntity(final int id, final boolean player) {
+		return (Entity) Proxy.newProxyInstance(Entity.class.getClassLoader(), new Class<?>[] {Entity.class}, new InvocationHandler() {
+			@SuppressWarnings("unchecked")
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("is")) {
+					Class<? extends Controller> type = (Class<? extends Controller>) args[0];
+					return player ? type.isAssignableFrom(PlayerController.class) : type == Controller.class;
+				} else if (name.equals("getId") || name.equals("hashCode")) {
+					return id;
+				} else if (name.equals("equals")) {
+					return proxy == args[0];
+				} else if (name.equals("toString")) {
+					return "Entity " + id;
+				}
+				throw new UnsupportedOperationException(name);
+			}
+		});
+	}
+}
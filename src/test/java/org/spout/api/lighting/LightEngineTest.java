@@ -0,0 +1,188 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.lighting;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.material.GenericBlockMaterial;
+import org.spout.api.util.map.concurrent.AtomicLightStore;
+
+public class LightEngineTest {
+	private final static int CHUNKS = 3;
+	private final static int SIZE = CHUNKS << 4;
+
+	private final static BlockMaterial AIR = new GenericBlockMaterial("LightEngineTest Air", 4000) {}.setOpaque(false);
+	private final static BlockMaterial STONE = new GenericBlockMaterial("LightEngineTest Stone", 4001) {}.setOpaque(true);
+	private final static BlockMaterial TORCH = new GenericBlockMaterial("LightEngineTest Torch", 4002) {}.setOpaque(false).setLightLevel(14);
+
+	@Test
+	public void testBlockLight() {
+		TestWorld world = new TestWorld();
+		LightEngine engine = world.load();
+
+		// The torch is next to the corner shared by 4 chunks
+		world.setBlock(16, 8, 16, TORCH, engine);
+		assertTrue("No light was updated", engine.processUpdates() > 0);
+		for (int d = 0; d < 14; d++) {
+			assertTrue("Wrong light level at distance " + d, world.getBlockLight(16 - d, 8, 16) == 14 - d);
+			assertTrue("Wrong light level at distance " + d, world.getBlockLight(16, 8 + d, 16) == 14 - d);
+		}
+		assertTrue("Wrong diagonal light level", world.getBlockLight(13, 6, 17) == 14 - 6);
+
+		// A wall blocks the light, which has to go around it
+		for (int y = 0; y < SIZE; y++) {
+			for (int z = 0; z < SIZE; z++) {
+				world.setBlock(14, y, z, z == 20 ? AIR : STONE, engine);
+			}
+		}
+		engine.processUpdates();
+		assertTrue("Light passed through the wall", world.getBlockLight(14, 8, 16) == 0);
+		assertTrue("Wrong light level in the gap", world.getBlockLight(13, 8, 20) == 14 - 7);
+		assertTrue("Wrong light level around the wall", world.getBlockLight(13, 8, 16) == 14 - 11);
+
+		world.setBlock(16, 8, 16, AIR, engine);
+		engine.processUpdates();
+		world.checkDark();
+	}
+
+	@Test
+	public void testSkyLight() {
+		TestWorld world = new TestWorld();
+		LightEngine engine = world.load();
+		engine.processUpdates();
+		assertTrue("Open world is not fully lit", world.getSkyLight(5, 0, 40) == 15 && world.getSkyLight(40, 20, 5) == 15);
+
+		for (int x = 20; x <= 26; x++) {
+			for (int z = 20; z <= 26; z++) {
+				world.setBlock(x, 30, z, STONE, engine);
+			}
+		}
+		engine.processUpdates();
+		assertTrue("Roof does not block sky light", world.getSkyLight(23, 29, 23) == 11);
+		assertTrue("Roof blocks sky light at the edge", world.getSkyLight(19, 29, 23) == 15);
+		assertTrue("Sky light does not spread under the roof", world.getSkyLight(23, 0, 23) == 11);
+
+		for (int x = 0; x < SIZE; x++) {
+			for (int z = 0; z < SIZE; z++) {
+				world.setBlock(x, 40, z, STONE, engine);
+			}
+		}
+		engine.processUpdates();
+		assertTrue("Sky light passed through a full roof", world.getSkyLight(23, 10, 23) == 0 && world.getSkyLight(0, 0, 0) == 0);
+		assertTrue("Sky light was removed above the roof", world.getSkyLight(0, 41, 0) == 15);
+
+		world.setBlock(10, 40, 10, AIR, engine);
+		engine.processUpdates();
+		assertTrue("Sky light does not fall through a hole", world.getSkyLight(10, 0, 10) == 15);
+		assertTrue("Sky light does not spread from a hole", world.getSkyLight(12, 0, 10) == 13);
+	}
+
+	@Test
+	public void testChunkLoad() {
+		TestWorld world = new TestWorld();
+		LightEngine engine = world.load();
+		world.stores.remove(key(1, 0, 0));
+		world.setBlock(8, 8, 8, TORCH, engine);
+		engine.processUpdates();
+		assertTrue("Wrong light level at the chunk edge", world.getBlockLight(15, 8, 8) == 7);
+
+		world.stores.put(key(1, 0, 0), new AtomicLightStore(4));
+		engine.chunkLoaded(1, 0, 0);
+		engine.processUpdates();
+		assertTrue("Light did not spread into the loaded chunk", world.getBlockLight(16, 8, 8) == 6);
+		assertTrue("Sky light did not spread into the loaded chunk", world.getSkyLight(20, 0, 8) == 15);
+	}
+
+	private static long key(int x, int y, int z) {
+		return ((long) x << 40) | ((long) y << 20) | z;
+	}
+
+	private static class TestWorld implements LightAccess {
+		private final BlockMaterial[] blocks = new BlockMaterial[SIZE * SIZE * SIZE];
+		private final Map<Long, AtomicLightStore> stores = new HashMap<Long, AtomicLightStore>();
+
+		public TestWorld() {
+			for (int i = 0; i < blocks.length; i++) {
+				blocks[i] = AIR;
+			}
+		}
+
+		public LightEngine load() {
+			LightEngine engine = new LightEngine(this);
+			for (int x = 0; x < CHUNKS; x++) {
+				for (int y = 0; y < CHUNKS; y++) {
+					for (int z = 0; z < CHUNKS; z++) {
+						stores.put(key(x, y, z), new AtomicLightStore(4));
+						engine.chunkLoaded(x, y, z);
+					}
+				}
+			}
+			return engine;
+		}
+
+		public void setBlock(int x, int y, int z, BlockMaterial material, LightEngine engine) {
+			blocks[(x * SIZE + y) * SIZE + z] = material;
+			engine.blockChanged(x, y, z);
+		}
+
+		public BlockMaterial getBlockMaterial(int x, int y, int z) {
+			if (x < 0 || y < 0 || z < 0 || x >= SIZE || y >= SIZE || z >= SIZE || getLightStore(x >> 4, y >> 4, z >> 4) == null) {
+				return null;
+			}
+			return blocks[(x * SIZE + y) * SIZE + z];
+		}
+
+		public AtomicLightStore getLightStore(int x, int y, int z) {
+			return stores.get(key(x, y, z));
+		}
+
+		public int getHeight() {
+			return SIZE;
+		}
+
+		public int getBlockLight(int x, int y, int z) {
+			return getLightStore(x >> 4, y >> 4, z >> 4).getBlockLight(x & 15, y & 15, z & 15);
+		}
+
+		public int getSkyLight(int x, int y, int z) {
+			return getLightStore(x >> 4, y >> 4, z >> 4).getSkyLight(x & 15, y & 15, z & 15);
+		}
+
+		public void checkDark() {
+			for (AtomicLightStore store : stores.values()) {
+				byte[] light = store.getBlockLightArray(null);
+				for (int i = 0; i < light.length; i++) {
+					assertTrue("Block light was not removed", light[i] == 0);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gnu.trove.procedure.TIntFloatProcedure;
+import gnu.trove.procedure.TLongIntProcedure;
+
+import org.junit.Test;
+
+public class PackedKeyPrimitiveHashMapTest {
+	@Test
+	public void testAdjustOrPut() {
+		TIntPairIntHashMap map = new TIntPairIntHashMap(16);
+		assertEquals(5, map.adjustOrPut(-1, 2, 1, 5));
+		assertEquals(6, map.adjustOrPut(-1, 2, 1, 5));
+		assertTrue(map.adjust(-1, 2, 10));
+		assertFalse(map.adjust(2, -1, 10));
+		assertEquals(16, map.get(-1, 2));
+		assertTrue(map.increment(-1, 2));
+		assertEquals(17, map.get(-1, 2));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void testPutAllAndForEach() {
+		TIntPairIntHashMap map = new TIntPairIntHashMap();
+		long[] keys = {TIntPairHashSet.keysToLong(1, 2), TIntPairHashSet.keysToLong(-3, 4), TIntPairHashSet.keysToLong(5, -6)};
+		map.putAll(keys, new int[] {12, -34, 56});
+		assertEquals(3, map.size());
+		assertEquals(-34, map.get(-3, 4));
+		assertEquals(56, map.get(5, -6));
+
+		final int[] sum = new int[1];
+		assertTrue(map.forEachEntry(new TLongIntProcedure() {
+			@Override
+			public boolean execute(long key, int value) {
+				sum[0] += TIntPairHashSet.longToKey1(key) + TIntPairHashSet.longToKey2(key) + value;
+				return true;
+			}
+		}));
+		assertEquals(1 + 2 - 3 + 4 + 5 - 6 + 12 - 34 + 56, sum[0]);
+	}
+
+	@Test
+	public void testByteShortByteKeys() {
+		TByteShortByteKeyedFloatHashMap map = new TByteShortByteKeyedFloatHashMap(8, 0.5F);
+		map.put(1, 300, -2, 1.5F);
+		assertEquals(3.5F, map.adjustOrPut(1, 300, -2, 2F, 0F), 0F);
+		map.forEachEntry(new TIntFloatProcedure() {
+			@Override
+			public boolean execute(int key, float value) {
+				assertEquals(1, TByteShortByteKeyedMap.getXFromKey(key));
+				assertEquals(300, TByteShortByteKeyedMap.getYFromKey(key));
+				assertEquals(-2, TByteShortByteKeyedMap.getZFromKey(key));
+				return true;
+			}
+		});
+	}
+}
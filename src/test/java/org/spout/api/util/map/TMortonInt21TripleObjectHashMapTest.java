@@ -0,0 +1,147 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import gnu.trove.procedure.TObjectProcedure;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.spout.api.util.map.concurrent.TOptimisticLongObjectHashMap;
+import org.spout.api.util.map.concurrent.TSyncInt21TripleObjectHashMap;
+import org.spout.api.util.map.concurrent.TSyncMortonInt21TripleObjectHashMap;
+
+public class TMortonInt21TripleObjectHashMapTest {
+	private static final int MIN = -0x100000;
+	private static final int MAX = 0xFFFFF;
+
+	@Test
+	public void testKeyRoundTrip() {
+		int[] edges = {MIN, MIN + 1, -1, 0, 1, MAX - 1, MAX};
+		for (int x : edges) {
+			for (int y : edges) {
+				for (int z : edges) {
+					checkKey(x, y, z);
+				}
+			}
+		}
+		Random rand = new Random(1234);
+		for (int i = 0; i < 10000; i++) {
+			checkKey(rand.nextInt(1 << 21) + MIN, rand.nextInt(1 << 21) + MIN, rand.nextInt(1 << 21) + MIN);
+		}
+	}
+
+	private void checkKey(int x, int y, int z) {
+		long key = TMortonInt21TripleObjectHashMap.mortonKey(x, y, z);
+		assertEquals(x, TMortonInt21TripleObjectHashMap.mortonX(key));
+		assertEquals(y, TMortonInt21TripleObjectHashMap.mortonY(key));
+		assertEquals(z, TMortonInt21TripleObjectHashMap.mortonZ(key));
+	}
+
+	@Test
+	public void testNeighbourKeys() {
+		// The 8 positions in an aligned 2x2x2 cube have consecutive keys
+		long base = TMortonInt21TripleObjectHashMap.mortonKey(-2, 4, 6);
+		assertEquals(base + 1, TMortonInt21TripleObjectHashMap.mortonKey(-1, 4, 6));
+		assertEquals(base + 2, TMortonInt21TripleObjectHashMap.mortonKey(-2, 5, 6));
+		assertEquals(base + 4, TMortonInt21TripleObjectHashMap.mortonKey(-2, 4, 7));
+		assertEquals(base + 7, TMortonInt21TripleObjectHashMap.mortonKey(-1, 5, 7));
+	}
+
+	@Test
+	public void testMapOperations() {
+		TMortonInt21TripleObjectHashMap<String> map = new TMortonInt21TripleObjectHashMap<String>();
+		assertNull(map.put(-5, 2, 7, "a"));
+		assertNull(map.put(5, -2, -7, "b"));
+		assertEquals("a", map.put(-5, 2, 7, "c"));
+		assertEquals("c", map.get(-5, 2, 7));
+		assertEquals("b", map.get(5, -2, -7));
+		assertNull(map.get(-5, 2, -7));
+		assertEquals(2, map.size());
+		for (long key : map.keys()) {
+			String value = map.get(map.getKeyX(key), map.getKeyY(key), map.getKeyZ(key));
+			assertEquals(value, map.getInternalMap().get(key));
+		}
+		assertEquals("b", map.remove(5, -2, -7));
+		assertFalse(map.containsKey(5, -2, -7));
+
+		TUnmodifiableInt21TripleObjectHashMap<String> view = new TUnmodifiableInt21TripleObjectHashMap<String>(map);
+		assertEquals("c", view.get(-5, 2, 7));
+	}
+
+	@Test
+	public void testForEachInBox() {
+		checkForEachInBox(new TInt21TripleObjectHashMap<int[]>());
+		checkForEachInBox(new TMortonInt21TripleObjectHashMap<int[]>());
+		checkForEachInBox(new TSyncMortonInt21TripleObjectHashMap<int[]>());
+		checkForEachInBox(new TSyncInt21TripleObjectHashMap<int[]>(new TOptimisticLongObjectHashMap<int[]>()));
+	}
+
+	private void checkForEachInBox(TInt21TripleObjectHashMap<int[]> map) {
+		for (int x = -8; x < 8; x++) {
+			for (int y = 0; y < 4; y++) {
+				for (int z = -8; z < 8; z++) {
+					map.put(x, y, z, new int[] {x, y, z});
+				}
+			}
+		}
+		// A small box is probed, a large one is scanned
+		assertEquals(2 * 2 * 2, countInBox(map, -1, 1, -1, 0, 2, 0));
+		assertEquals(16 * 4 * 16, countInBox(map, -100, -100, -100, 100, 100, 100));
+		assertEquals(0, countInBox(map, 20, 0, 20, 30, 3, 30));
+		assertEquals(0, countInBox(map, 1, 0, 0, 0, 0, 0));
+
+		final int[] count = new int[1];
+		assertFalse(map.forEachInBox(-8, 0, -8, 7, 3, 7, new TObjectProcedure<int[]>() {
+			@Override
+			public boolean execute(int[] value) {
+				return ++count[0] < 3;
+			}
+		}));
+		assertEquals(3, count[0]);
+	}
+
+	private int countInBox(TInt21TripleObjectHashMap<int[]> map, final int minX, final int minY, final int minZ, final int maxX, final int maxY, final int maxZ) {
+		final Set<String> seen = new HashSet<String>();
+		map.forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, new TObjectProcedure<int[]>() {
+			@Override
+			public boolean execute(int[] value) {
+				assertFalse(value[0] < minX || value[0] > maxX);
+				assertFalse(value[1] < minY || value[1] > maxY);
+				assertFalse(value[2] < minZ || value[2] > maxZ);
+				assertFalse(seen.contains(value[0] + "," + value[1] + "," + value[2]));
+				seen.add(value[0] + "," + value[1] + "," + value[2]);
+				return true;
+			}
+		});
+		return seen.size();
+	}
+}
@@ -27,7 +27,11 @@ package org.spout.api.util.map.concurrent;
 
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.spout.api.basic.blocks.BlockFullState;
@@ -113,9 +117,10 @@ public class AtomicBlockStoreTest {
 			if (store.needsCompression()) {
 				System.out.println("Compressing store");
 				int size = store.getSize();
-				store.compress();
+				CompressionResult result = store.compress();
 				int newSize = store.getSize();
-				System.out.println("Size change: " + size + "->" + newSize);
+				System.out.println("Size change: " + size + "->" + newSize + ", " + result);
+				assertTrue("Compression result does not match the size change", result.getReclaimed() == size - newSize);
 				assertTrue("Compression didn't reduce the store size when needsCompression returned true.", size > newSize);
 				checkStoreValues();
 
@@ -129,6 +134,488 @@ public class AtomicBlockStoreTest {
 
 	}
 
+	@Test
+	public void testUniform() {
+		AtomicBlockStore<Integer> store = new AtomicBlockStore<Integer>(4, 10, BlockStorageMode.PALETTE);
+
+		assertTrue("New store should be uniform", store.getUniformBlockId() == 0);
+		store.setBlock(3, 4, 5, (short) 0, (short) 0, null);
+		assertTrue("Store should be uniform after writing the same id", store.getUniformBlockId() == 0);
+
+		short[] ids = store.getBlockIdArray();
+		short[] data = store.getDataArray();
+		for (int i = 0; i < MAX_SIZE; i++) {
+			assertTrue("Uniform store has a non-zero id or data value", ids[i] == 0 && data[i] == 0);
+		}
+
+		store.setBlock(3, 4, 5, (short) 1, (short) 2, null);
+		assertTrue("Store should not be uniform after writing a different block", store.getUniformBlockId() == -1);
+		assertTrue("Block id lost during inflation", store.getBlockId(3, 4, 5) == 1);
+		assertTrue("Block data lost during inflation", store.getData(3, 4, 5) == 2);
+		assertTrue("Block id changed during inflation", store.getBlockId(3, 4, 6) == 0);
+	}
+
+	@Test
+	public void testPaletteCompaction() {
+		AtomicBlockStore<Integer> store = new AtomicBlockStore<Integer>(4, 10, BlockStorageMode.PALETTE);
+		AtomicPaletteShortArray blockIds = (AtomicPaletteShortArray) store.getBlockIdStorage();
+		store.setBlock(0, 0, 0, (short) 1, (short) 0, null);
+
+		// Each block with data reserves an id, so the palette fills with ids which are freed again
+		for (int records = 10; records <= 300; records += 145) {
+			for (int i = 0; i < records; i++) {
+				store.setBlock(i & 15, (i >> 4) & 15, 1 + (i >> 8), (short) 2, (short) (i + 1), null);
+			}
+			int grownBits = blockIds.getBitsPerElement();
+			assertTrue("Reserved ids were not added to the palette", grownBits >= 4);
+			for (int i = 0; i < records; i++) {
+				store.setBlock(i & 15, (i >> 4) & 15, 1 + (i >> 8), (short) 0, (short) 0, null);
+			}
+			assertTrue("Palette shrank before compression", blockIds.getBitsPerElement() == grownBits);
+
+			store.compress();
+			assertTrue("Palette not rebuilt by compression, " + blockIds.getBitsPerElement() + " bits per element", blockIds.getBitsPerElement() == 1);
+			assertTrue("Palette has unused values", blockIds.getPaletteSize() == 2);
+			assertTrue("Block changed by compression", store.getBlockId(0, 0, 0) == 1 && store.getBlockId(0, 0, 1) == 0);
+		}
+
+		store.setBlock(0, 0, 0, (short) 0, (short) 0, null);
+		store.compress();
+		assertTrue("Store not uniform after compression", store.getUniformBlockId() == 0);
+		store.setBlock(0, 0, 0, (short) 3, (short) 0, null);
+		assertTrue("Write after compression lost", store.getBlockId(0, 0, 0) == 3);
+	}
+
+	@Test
+	public void testOffHeap() {
+		AtomicBlockStore<Integer> store = new AtomicBlockStore<Integer>(4, 10, BlockStorageMode.OFF_HEAP);
+		Random rand = new Random();
+		short[] expected = new short[MAX_SIZE];
+
+		for (int x = 0; x < 16; x++) {
+			for (int z = 0; z < 16; z++) {
+				for (int y = 0; y < 16; y++) {
+					short id = (short) rand.nextInt(1000);
+					expected[getIndex(x, y, z)] = id;
+					store.setBlock(x, y, z, id, (short) 0, null);
+				}
+			}
+		}
+
+		short[] ids = store.getBlockIdArray();
+		for (int i = 0; i < MAX_SIZE; i++) {
+			assertTrue("Off heap store mismatch at index " + i, ids[i] == expected[i]);
+		}
+		store.release();
+	}
+
+	@Test
+	public void testConcurrentCompression() throws InterruptedException {
+		final AtomicBlockStore<Integer> store = new AtomicBlockStore<Integer>(4);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicInteger compressions = new AtomicInteger(0);
+		final Integer[] written = new Integer[MAX_SIZE];
+
+		Thread compressor = new Thread() {
+			@Override
+			public void run() {
+				while (running.get()) {
+					if (store.needsCompression() && store.compress().getReclaimed() > 0) {
+						compressions.incrementAndGet();
+					}
+				}
+			}
+		};
+		compressor.start();
+
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; t++) {
+			final int writer = t;
+			writers[t] = new Thread() {
+				@Override
+				public void run() {
+					Random rand = new Random(writer);
+					BlockFullState<Integer> fullData = new BlockFullState<Integer>();
+					for (int pass = 0; pass < 100; pass++) {
+						// Fill the slices owned by this writer with records, then clear most of them
+						boolean fill = (pass & 1) == 0;
+						for (int x = writer; x < 16; x += writers.length) {
+							for (int z = 0; z < 16; z++) {
+								for (int y = 0; y < 16; y++) {
+									if (fill || rand.nextInt(8) != 0) {
+										Integer auxData = fill ? Integer.valueOf(rand.nextInt()) : null;
+										store.setBlock(x, y, z, (short) 1, (short) 0, auxData);
+										written[getIndex(x, y, z)] = auxData;
+									}
+									fullData = store.getFullData(x, y, z, fullData);
+									if (fullData.getAuxData() != written[getIndex(x, y, z)]) {
+										throw new IllegalStateException("Record changed during compression");
+									}
+								}
+							}
+						}
+					}
+				}
+			};
+			writers[t].start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		running.set(false);
+		compressor.join();
+
+		System.out.println("Compressed " + compressions.get() + " times during concurrent updates");
+		System.out.println(store.getContentionStats());
+
+		BlockFullState<Integer> fullData = new BlockFullState<Integer>();
+		for (int x = 0; x < 16; x++) {
+			for (int z = 0; z < 16; z++) {
+				for (int y = 0; y < 16; y++) {
+					fullData = store.getFullData(x, y, z, fullData);
+					assertTrue("Record lost during concurrent compression", fullData.getId() == 1 && fullData.getAuxData() == written[getIndex(x, y, z)]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSnapshot() throws InterruptedException {
+		Random rand = new Random();
+
+		for (int x = 0; x < 16; x++) {
+			for (int z = 0; z < 16; z++) {
+				for (int y = 0; y < 16; y++) {
+					short id = (short) (rand.nextInt());
+					short data = (short) (((rand.nextInt() & 0x3) != 0) ? (0) : (rand.nextInt()));
+					Integer auxData = (((rand.nextInt() & 0x3) != 0) ? (null) : (rand.nextInt()));
+					set(x, y, z, id, data, auxData);
+				}
+			}
+		}
+
+		short[] snapshotIds = new short[MAX_SIZE];
+		short[] snapshotData = new short[MAX_SIZE];
+		Integer[] snapshotAuxData = new Integer[MAX_SIZE];
+		store.getBlocks(snapshotIds, snapshotData, snapshotAuxData);
+		for (int i = 0; i < MAX_SIZE; i++) {
+			assertTrue("Snapshot mismatch at index " + i, snapshotIds[i] == ids[i] && snapshotData[i] == data[i] && snapshotAuxData[i] == auxData[i]);
+		}
+
+		short[] cuboidIds = new short[3 * 4 * 5];
+		short[] cuboidData = new short[3 * 4 * 5];
+		store.getBlocks(2, 3, 4, 3, 4, 5, cuboidIds, cuboidData, null);
+		int i = 0;
+		for (int x = 2; x < 5; x++) {
+			for (int z = 4; z < 9; z++) {
+				for (int y = 3; y < 7; y++) {
+					int index = getIndex(x, y, z);
+					assertTrue("Cuboid snapshot mismatch at " + x + ", " + y + ", " + z, cuboidIds[i] == ids[index] && cuboidData[i] == data[index]);
+					i++;
+				}
+			}
+		}
+
+		// The writer always updates the first block before the last block
+		final AtomicBlockStore<Integer> store = new AtomicBlockStore<Integer>(4);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				short generation = 0;
+				while (running.get()) {
+					generation++;
+					store.setBlock(0, 0, 0, generation, generation, null);
+					store.setBlock(15, 15, 15, generation, (short) 0, null);
+				}
+			}
+		};
+		writer.start();
+		try {
+			for (int pass = 0; pass < 10000; pass++) {
+				store.getBlocks(snapshotIds, snapshotData, null);
+				short first = snapshotIds[0];
+				short last = snapshotIds[MAX_SIZE - 1];
+				assertTrue("Torn snapshot, first block " + first + ", last block " + last, first == last || first == last + 1);
+				assertTrue("Torn snapshot, block data does not match id", snapshotData[0] == first);
+
+				BlockStoreSnapshot<Integer> snapshot = store.getSnapshot();
+				first = snapshot.getBlockId(0, 0, 0);
+				last = snapshot.getBlockId(15, 15, 15);
+				assertTrue("Torn copy on write snapshot, first block " + first + ", last block " + last, first == last || first == last + 1);
+			}
+		} finally {
+			running.set(false);
+			writer.join();
+		}
+	}
+
+	@Test
+	public void testCopyOnWriteSnapshot() {
+		AtomicBlockStore<Integer> store = new AtomicBlockStore<Integer>(4);
+
+		BlockStoreSnapshot<Integer> empty = store.getSnapshot();
+		assertTrue("Unchanged store returned a new snapshot", store.getSnapshot() == empty);
+		assertTrue("Uniform snapshot has wrong id", empty.getBlockId(5, 5, 5) == 0);
+
+		Integer auxData = Integer.valueOf(7);
+		store.setBlock(3, 4, 5, (short) 1, (short) 2, auxData);
+		BlockStoreSnapshot<Integer> first = store.getSnapshot();
+		assertTrue("Changed store returned the old snapshot", first != empty);
+		assertTrue("Old snapshot changed", empty.getBlockId(3, 4, 5) == 0 && empty.getData(3, 4, 5) == 0);
+		assertTrue("Snapshot has wrong block", first.getBlockId(3, 4, 5) == 1 && first.getData(3, 4, 5) == 2 && first.getAuxData(3, 4, 5) == auxData);
+
+		store.setBlock(9, 0, 0, (short) 5, (short) 0, null);
+		BlockStoreSnapshot<Integer> second = store.getSnapshot();
+		for (int x = 0; x < 16; x++) {
+			boolean shared = second.getSectionIds(x) == first.getSectionIds(x);
+			assertTrue("Section " + x + " was " + (shared ? "shared" : "copied"), shared == (x != 9));
+		}
+		assertTrue("Snapshot lost unchanged section", second.getBlockId(3, 4, 5) == 1 && second.getAuxData(3, 4, 5) == auxData);
+		assertTrue("Snapshot has wrong block", second.getBlockId(9, 0, 0) == 5);
+
+		short[] ids = store.getBlockIdArray();
+		short[] snapshotIds = second.getBlockIds();
+		for (int i = 0; i < MAX_SIZE; i++) {
+			assertTrue("Flattened snapshot mismatch at index " + i, ids[i] == snapshotIds[i]);
+		}
+
+		assertTrue("Block set with the wrong expected state", !store.compareAndSetBlock(9, 0, 0, (short) 6, (short) 0, null, (short) 7, (short) 0, null));
+		assertTrue("Block set with the wrong expected state", !store.compareAndSetBlock(3, 4, 5, (short) 1, (short) 3, auxData, (short) 7, (short) 0, null));
+		assertTrue("Failed compare and set invalidated the snapshot", store.getSnapshot() == second);
+	}
+
+	@Test
+	public void testBatch() throws InterruptedException {
+		final AtomicBlockStore<Integer> store = new AtomicBlockStore<Integer>(4);
+		Integer auxData = Integer.valueOf(3);
+		store.setBlock(1, 1, 1, (short) 4, (short) 0, null);
+
+		BlockStoreBatch<Integer> batch = new BlockStoreBatch<Integer>(4);
+		batch.set(0, 0, 0, (short) 1, (short) 0, null);
+		batch.set(0, 0, 0, (short) 2, (short) 5, auxData);
+		batch.compareAndSet(1, 1, 1, (short) 4, (short) 0, null, (short) 6, (short) 0, null);
+		batch.compareAndSet(2, 2, 2, (short) 9, (short) 0, null, (short) 7, (short) 0, null);
+		assertTrue("Changes to the same block were not coalesced", batch.size() == 3);
+
+		BlockStoreSnapshot<Integer> before = store.getSnapshot();
+		assertTrue("Atomic batch with a failed expectation was applied", store.setBlocks(batch, true) == 0);
+		assertTrue("Atomic batch changed the store", store.getBlockId(0, 0, 0) == 0 && store.getBlockId(1, 1, 1) == 4 && store.getBlockId(2, 2, 2) == 0);
+		BlockStoreSnapshot<Integer> after = store.getSnapshot();
+		for (int x = 0; x < 16; x++) {
+			assertTrue("Atomic batch changed section " + x, after.getSectionIds(x) == before.getSectionIds(x));
+		}
+
+		assertTrue("Wrong number of changes applied", store.setBlocks(batch, false) == 2);
+		assertTrue("Wrong changes recorded as applied", batch.isApplied(0) && batch.isApplied(1) && !batch.isApplied(2));
+		assertTrue("Coalesced change not applied", store.getBlockId(0, 0, 0) == 2 && store.getData(0, 0, 0) == 5 && store.getAuxData(0, 0, 0) == auxData);
+		assertTrue("Expected change not applied", store.getBlockId(1, 1, 1) == 6);
+		assertTrue("Failed change applied", store.getBlockId(2, 2, 2) == 0);
+		assertTrue("Dirty blocks not marked", store.getDirtyBlocks() == 2);
+
+		// Snapshots must never see part of a batch
+		final int rounds = 2000;
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				BlockStoreBatch<Integer> batch = new BlockStoreBatch<Integer>(4);
+				for (int i = 1; i <= rounds; i++) {
+					batch.clear();
+					for (int x = 0; x < 16; x += 5) {
+						batch.set(x, 8, 15 - x, (short) i, (short) 0, null);
+					}
+					store.setBlocks(batch, true);
+					store.setBlock(15, 15, 15, (short) i, (short) 0, null);
+				}
+			}
+		};
+		writer.start();
+		short[] ids = new short[MAX_SIZE];
+		while (writer.isAlive()) {
+			store.getBlocks(ids, null, null);
+			BlockStoreSnapshot<Integer> snapshot = store.getSnapshot();
+			for (int x = 5; x < 16; x += 5) {
+				assertTrue("Partial batch seen by getBlocks", ids[(x << 8) + ((15 - x) << 4) + 8] == ids[((15 - 0) << 4) + 8]);
+				assertTrue("Partial batch seen by snapshot", snapshot.getBlockId(x, 8, 15 - x) == snapshot.getBlockId(0, 8, 15));
+			}
+		}
+		writer.join();
+		assertTrue("Batch lost", store.getBlockId(10, 8, 5) == rounds && store.getBlockId(15, 15, 15) == rounds);
+	}
+
+	@Test
+	public void testMultiStoreBatch() throws InterruptedException {
+		final AtomicBlockStore<Integer> first = new AtomicBlockStore<Integer>(4);
+		final AtomicBlockStore<Integer> second = new AtomicBlockStore<Integer>(4);
+		final BlockStoreBatch<Integer> firstBatch = new BlockStoreBatch<Integer>(4);
+		final BlockStoreBatch<Integer> secondBatch = new BlockStoreBatch<Integer>(4);
+		firstBatch.set(0, 0, 0, (short) 1, (short) 0, null);
+		secondBatch.compareAndSet(1, 1, 1, (short) 4, (short) 0, null, (short) 2, (short) 0, null);
+
+		// The stores are given in reverse creation order, to check the write order is independent of the list order
+		List<AtomicBlockStore<Integer>> stores = Arrays.asList(second, first);
+		List<BlockStoreBatch<Integer>> batches = Arrays.asList(secondBatch, firstBatch);
+		assertTrue("Atomic batch with a failed expectation in one store was applied", AtomicBlockStore.setBlocks(stores, batches, true) == 0);
+		assertTrue("Atomic batch changed a store", first.getBlockId(0, 0, 0) == 0 && second.getBlockId(1, 1, 1) == 0);
+		assertTrue("Change recorded as applied", !firstBatch.isApplied(0) && !secondBatch.isApplied(0));
+
+		second.setBlock(1, 1, 1, (short) 4, (short) 0, null);
+		assertTrue("Wrong number of changes applied", AtomicBlockStore.setBlocks(stores, batches, true) == 2);
+		assertTrue("Atomic batch not applied to every store", first.getBlockId(0, 0, 0) == 1 && second.getBlockId(1, 1, 1) == 2);
+
+		try {
+			AtomicBlockStore.setBlocks(Arrays.asList(first, first), Arrays.asList(firstBatch, firstBatch), true);
+			assertTrue("The same store was accepted twice", false);
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Batches which share stores, listed in opposite orders, must not wait for each other forever
+		final int rounds = 2000;
+		Thread[] writers = new Thread[2];
+		for (int t = 0; t < writers.length; t++) {
+			final boolean reverse = t == 1;
+			writers[t] = new Thread() {
+				@Override
+				public void run() {
+					BlockStoreBatch<Integer> batch = new BlockStoreBatch<Integer>(4);
+					batch.set(3, 3, 3, (short) 5, (short) 0, null);
+					BlockStoreBatch<Integer> otherBatch = new BlockStoreBatch<Integer>(4);
+					otherBatch.set(3, 3, 3, (short) 5, (short) 0, null);
+					List<AtomicBlockStore<Integer>> stores = reverse ? Arrays.asList(second, first) : Arrays.asList(first, second);
+					List<BlockStoreBatch<Integer>> batches = Arrays.asList(batch, otherBatch);
+					for (int i = 0; i < rounds; i++) {
+						AtomicBlockStore.setBlocks(stores, batches, false);
+					}
+				}
+			};
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join(10000);
+			assertTrue("Batches sharing stores deadlocked", !writer.isAlive());
+		}
+	}
+
+	@Test
+	public void testChannels() throws InterruptedException {
+		final AtomicBlockStore<Integer> store = new AtomicBlockStore<Integer>(4, 10, BlockStorageMode.ARRAY, StandardBackoff.ADAPTIVE, 2);
+		store.setBlock(1, 2, 3, (short) 5, (short) 0, null);
+		assertTrue("Unset channel is not 0", store.getIntChannel(1, 2, 3, 0) == 0);
+		assertTrue("Channel set with the wrong expected value", !store.compareAndSetIntChannel(1, 2, 3, 0, 1, 2));
+		assertTrue("Channel not set", store.compareAndSetIntChannel(1, 2, 3, 0, 0, 7));
+		assertTrue("Float channel not set", store.compareAndSetFloatChannel(1, 2, 3, 1, 0F, 0.5F));
+		assertTrue("Wrong channel values", store.getIntChannel(1, 2, 3, 0) == 7 && store.getFloatChannel(1, 2, 3, 1) == 0.5F);
+		assertTrue("Block changed by channel update", store.getBlockId(1, 2, 3) == 5 && store.getData(1, 2, 3) == 0);
+
+		BlockFullState<Integer> fullData = store.getFullData(1, 2, 3);
+		assertTrue("Full state has wrong channels", fullData.getIntChannel(0) == 7 && fullData.getFloatChannel(1) == 0.5F);
+		store.setBlock(4, 4, 4, fullData);
+		assertTrue("Channels not copied by setBlock", store.getIntChannel(4, 4, 4, 0) == 7);
+
+		// A reused state must not keep channels from a store with more channels
+		AtomicBlockStore<Integer> wide = new AtomicBlockStore<Integer>(4, 10, BlockStorageMode.ARRAY, StandardBackoff.ADAPTIVE, 4);
+		wide.setBlock(1, 2, 3, (short) 5, (short) 1, null);
+		assertTrue("Channel not set", wide.compareAndSetIntChannel(1, 2, 3, 3, 0, 9));
+		BlockFullState<Integer> reused = wide.getFullData(1, 2, 3);
+		assertTrue("Full state has wrong channels", reused.getIntChannel(3) == 9);
+		store.getFullData(1, 2, 3, reused);
+		assertTrue("Reused full state kept a channel from another store", reused.getIntChannel(3) == 0 && reused.getChannels().length == 2);
+		assertTrue("Reused full state has wrong channels", reused.getIntChannel(0) == 7 && reused.getFloatChannel(1) == 0.5F);
+		wide.getFullData(1, 2, 3, reused);
+		store.getFullData(9, 9, 9, reused);
+		assertTrue("Reused full state kept a channel for a plain block", reused.getIntChannel(3) == 0 && reused.getChannels().length == 2);
+		store.setBlock(1, 2, 3, (short) 5, (short) 0, null);
+		assertTrue("Channels not cleared by setBlock", store.getIntChannel(1, 2, 3, 0) == 0);
+
+		// Concurrent increments of one channel must not be lost, even while records are moved by compression
+		final int increments = 5000;
+		final AtomicBoolean running = new AtomicBoolean(true);
+		Thread compressor = new Thread() {
+			@Override
+			public void run() {
+				Random rand = new Random();
+				while (running.get()) {
+					for (int i = 0; i < 500; i++) {
+						store.setBlock(rand.nextInt(16), rand.nextInt(16), 8 + rand.nextInt(8), (short) 1, (short) rand.nextInt(3), null);
+					}
+					store.compress();
+				}
+			}
+		};
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < increments; i++) {
+						while (true) {
+							int value = store.getIntChannel(4, 4, 4, 0);
+							if (store.compareAndSetIntChannel(4, 4, 4, 0, value, value + 1)) {
+								break;
+							}
+						}
+					}
+				}
+			};
+		}
+		compressor.start();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		running.set(false);
+		compressor.join();
+		assertTrue("Channel increments lost", store.getIntChannel(4, 4, 4, 0) == 7 + increments * threads.length);
+		assertTrue("Other channel changed", store.getFloatChannel(4, 4, 4, 1) == 0.5F);
+	}
+
+	@Test
+	public void testBackoffStrategies() throws InterruptedException {
+		final int increments = 2000;
+		for (StandardBackoff backoff : StandardBackoff.values()) {
+			final AtomicBlockStore<Integer> store = new AtomicBlockStore<Integer>(4, 10, BlockStorageMode.ARRAY, backoff);
+			store.setBlock(0, 0, 0, (short) 1, (short) 0, Integer.valueOf(0));
+
+			Thread[] threads = new Thread[4];
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread() {
+					@Override
+					public void run() {
+						BlockFullState<Integer> fullData = new BlockFullState<Integer>();
+						for (int i = 0; i < increments; i++) {
+							while (true) {
+								fullData = store.getFullData(0, 0, 0, fullData);
+								short count = fullData.getData();
+								if (store.compareAndSetBlock(0, 0, 0, (short) 1, count, fullData.getAuxData(), (short) 1, (short) (count + 1), Integer.valueOf(count + 1))) {
+									break;
+								}
+							}
+						}
+					}
+				};
+			}
+
+			long start = System.nanoTime();
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			long time = System.nanoTime() - start;
+
+			System.out.println(backoff + ": " + (time / 1000000) + "ms, " + store.getContentionStats());
+
+			BlockFullState<Integer> fullData = store.getFullData(0, 0, 0);
+			assertTrue(backoff + " lost updates, count " + fullData.getData(), fullData.getData() == threads.length * increments);
+			assertTrue(backoff + " record mismatch", fullData.getAuxData().intValue() == threads.length * increments);
+		}
+	}
+
 	private void set(int x, int y, int z, int id, int data, Integer auxData) {
 		int index = getIndex(x, y, z);
 
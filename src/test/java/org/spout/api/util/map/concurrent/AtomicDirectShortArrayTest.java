@@ -0,0 +1,140 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AtomicDirectShortArrayTest {
+	private final static int LENGTH = 10001;
+
+	@Test
+	public void testArray() {
+		if (!AtomicDirectShortArray.isSupported()) {
+			System.out.println("Off heap arrays are not supported, skipping test");
+			return;
+		}
+
+		Random rand = new Random();
+		AtomicDirectShortArray array = new AtomicDirectShortArray(LENGTH);
+		short[] arrayData = new short[LENGTH];
+
+		for (int i = 0; i < LENGTH; i++) {
+			assertTrue("New array is not zeroed", array.get(i) == 0);
+		}
+
+		for (int i = 0; i < LENGTH; i++) {
+			arrayData[i] = (short) rand.nextInt();
+			assertTrue("Get and set returned wrong old value", array.getAndSet(i, arrayData[i]) == 0);
+		}
+
+		for (int i = 0; i < LENGTH; i++) {
+			int index = rand.nextInt(LENGTH);
+			short value = (short) rand.nextInt();
+			assertTrue("Compare and set with incorrect expect was successful", !array.compareAndSet(index, (short) (arrayData[index] + 1), value));
+			assertTrue("Compare and set with correct expect was unsuccessful", array.compareAndSet(index, arrayData[index], value));
+			arrayData[index] = value;
+		}
+
+		short[] copy = array.getArray(null);
+		for (int i = 0; i < LENGTH; i++) {
+			assertTrue("Array data mismatch", array.get(i) == arrayData[i] && copy[i] == arrayData[i]);
+		}
+
+		array.release();
+		assertTrue("Array not released", array.isReleased());
+		try {
+			array.get(0);
+			assertTrue("Released array was read", false);
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	@Test
+	public void testConcurrentUpdates() throws InterruptedException {
+		if (!AtomicDirectShortArray.isSupported()) {
+			return;
+		}
+
+		final AtomicDirectShortArray array = new AtomicDirectShortArray(2);
+		final int increments = 10000;
+
+		// Both elements share one int, so updates to one must not lose updates to the other
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int index = t & 1;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < increments; i++) {
+						while (true) {
+							short value = array.get(index);
+							if (array.compareAndSet(index, value, (short) (value + 1))) {
+								break;
+							}
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		int expected = increments * threads.length / 2;
+		assertTrue("Lost updates, " + array.get(0) + " and " + array.get(1) + ", expected " + expected, array.get(0) == expected && array.get(1) == expected);
+		array.release();
+	}
+
+	@Test
+	public void testRelease() {
+		if (!AtomicDirectShortArray.isSupported()) {
+			return;
+		}
+
+		AtomicDirectShortArray array = new AtomicDirectShortArray(LENGTH);
+		array.set(0, (short) 1);
+		array.release();
+		assertTrue("Array not released", array.isReleased());
+		try {
+			array.get(0);
+			fail("Released array was read");
+		} catch (IllegalStateException e) {
+		}
+		try {
+			array.compareAndSet(0, (short) 1, (short) 2);
+			fail("Released array was written");
+		} catch (IllegalStateException e) {
+		}
+		// A second release has no effect
+		array.release();
+	}
+}
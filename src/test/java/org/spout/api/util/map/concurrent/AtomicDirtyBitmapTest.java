@@ -0,0 +1,135 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class AtomicDirtyBitmapTest {
+	private final static int LENGTH = 4096;
+
+	@Test
+	public void testSetAndDrain() {
+		Random rand = new Random();
+		AtomicDirtyBitmap bitmap = new AtomicDirtyBitmap(LENGTH);
+		boolean[] expected = new boolean[LENGTH];
+		int count = 0;
+
+		for (int i = 0; i < 1000; i++) {
+			int index = rand.nextInt(LENGTH);
+			boolean added = bitmap.set(index);
+			assertTrue("Set returned " + added + " for index " + index, added != expected[index]);
+			if (!expected[index]) {
+				expected[index] = true;
+				count++;
+			}
+		}
+
+		assertTrue("Count mismatch, expected " + count + ", got " + bitmap.getCount(), bitmap.getCount() == count);
+
+		int n = 0;
+		for (int i = 0; i < LENGTH; i++) {
+			assertTrue("Bit mismatch at index " + i, bitmap.get(i) == expected[i]);
+			if (expected[i]) {
+				assertTrue("Set index mismatch for bit " + n, bitmap.getSetIndex(n++) == i);
+			}
+		}
+		assertTrue("Set index found past the last set bit", bitmap.getSetIndex(n) == -1);
+
+		int last = -1;
+		int drained = 0;
+		for (int i = bitmap.drainNext(0); i >= 0; i = bitmap.drainNext(i + 1)) {
+			assertTrue("Drained index " + i + " out of order", i > last);
+			assertTrue("Drained index " + i + " was not set", expected[i]);
+			last = i;
+			drained++;
+		}
+
+		assertTrue("Drained " + drained + " bits, expected " + count, drained == count);
+		assertTrue("Bitmap not empty after drain", bitmap.isEmpty() && bitmap.drainNext(0) == -1);
+
+		bitmap.set(7);
+		bitmap.set(LENGTH - 1);
+		bitmap.clear();
+		assertTrue("Bitmap not empty after clear", bitmap.isEmpty() && bitmap.drainNext(0) == -1);
+	}
+
+	@Test
+	public void testConcurrentDrain() throws InterruptedException {
+		final AtomicDirtyBitmap bitmap = new AtomicDirtyBitmap(LENGTH);
+		final AtomicIntegerArray drained = new AtomicIntegerArray(LENGTH);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final int threads = 4;
+
+		Thread[] setters = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int offset = t;
+			setters[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = offset; i < LENGTH; i += threads) {
+						bitmap.set(i);
+					}
+				}
+			};
+		}
+
+		Thread drainer = new Thread() {
+			@Override
+			public void run() {
+				while (!done.get()) {
+					for (int i = bitmap.drainNext(0); i >= 0; i = bitmap.drainNext(i + 1)) {
+						drained.incrementAndGet(i);
+					}
+				}
+			}
+		};
+
+		drainer.start();
+		for (Thread setter : setters) {
+			setter.start();
+		}
+		for (Thread setter : setters) {
+			setter.join();
+		}
+		done.set(true);
+		drainer.join();
+
+		for (int i = bitmap.drainNext(0); i >= 0; i = bitmap.drainNext(i + 1)) {
+			drained.incrementAndGet(i);
+		}
+
+		for (int i = 0; i < LENGTH; i++) {
+			assertTrue("Index " + i + " drained " + drained.get(i) + " times", drained.get(i) == 1);
+		}
+		assertTrue("Count not zero after drain, " + bitmap.getCount(), bitmap.getCount() == 0);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AtomicNibbleArrayTest {
+	private final static int LENGTH = 10001;
+
+	@Test
+	public void testArray() {
+		AtomicNibbleArray array = new AtomicNibbleArray(LENGTH);
+		byte[] expected = new byte[LENGTH];
+		Random rand = new Random();
+
+		for (int i = 0; i < LENGTH * 4; i++) {
+			int index = rand.nextInt(LENGTH);
+			byte value = (byte) rand.nextInt(16);
+			assertTrue("Wrong old value at index " + index, array.getAndSet(index, value) == expected[index]);
+			expected[index] = value;
+		}
+
+		byte[] values = array.getArray(null);
+		byte[] packed = array.getPackedArray(null);
+		for (int i = 0; i < LENGTH; i++) {
+			assertTrue("Wrong value at index " + i, array.get(i) == expected[i] && values[i] == expected[i]);
+			assertTrue("Wrong packed value at index " + i, ((packed[i >> 1] >> ((i & 1) << 2)) & 0xF) == expected[i]);
+		}
+
+		assertTrue("Compare and set succeeded with the wrong value", !array.compareAndSet(7, (byte) ((expected[7] + 1) & 0xF), (byte) 3));
+		assertTrue("Compare and set failed", array.compareAndSet(7, expected[7], (byte) 3) && array.get(7) == 3);
+		assertTrue("Compare and set changed a neighbor", array.get(6) == expected[6] && array.get(8) == expected[8]);
+	}
+
+	@Test
+	public void testConcurrentUpdates() throws InterruptedException {
+		final AtomicNibbleArray array = new AtomicNibbleArray(16);
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int index = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					// Each thread cycles its own nibble, which shares an int with the others
+					for (int i = 0; i < 100000; i++) {
+						byte old = array.get(index);
+						if (!array.compareAndSet(index, old, (byte) ((old + 1) & 0xF))) {
+							throw new IllegalStateException("Nibble " + index + " was changed by another thread");
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			assertTrue("Update lost at index " + i, array.get(i) == 100000 % 16);
+		}
+	}
+}
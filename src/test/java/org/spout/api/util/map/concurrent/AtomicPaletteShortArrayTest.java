@@ -0,0 +1,173 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AtomicPaletteShortArrayTest {
+	private final static int LENGTH = 4096;
+	private final static int THREADS = 4;
+	private final static int READS = 2000;
+
+	@Test
+	public void testArray() {
+		Random rand = new Random();
+
+		AtomicPaletteShortArray array = new AtomicPaletteShortArray(LENGTH);
+		short[] arrayData = new short[LENGTH];
+
+		assertTrue("New array should be uniform", array.getBitsPerElement() == 0 && array.getUniformValue() == 0);
+
+		for (int distinct = 2; distinct <= 1024; distinct <<= 1) {
+			for (int i = 0; i < LENGTH; i++) {
+				short value = (short) rand.nextInt(distinct);
+				array.set(i, value);
+				arrayData[i] = value;
+			}
+
+			for (int i = 0; i < LENGTH; i++) {
+				assertTrue("Array data mismatch", array.get(i) == arrayData[i]);
+			}
+
+			for (int i = 0; i < LENGTH; i++) {
+				int index = rand.nextInt(LENGTH);
+				short value = (short) rand.nextInt(distinct);
+				assertTrue("Compare and set attempt failed, expected value incorrect", array.compareAndSet(index, arrayData[index], value));
+				arrayData[index] = value;
+				assertTrue("Compare and set attempt succeeded when it should have failed", !array.compareAndSet(index, (short) (arrayData[index] + 1), value));
+			}
+
+			short[] copy = array.getArray();
+			for (int i = 0; i < LENGTH; i++) {
+				assertTrue("Array data mismatch after compare and set updates", copy[i] == arrayData[i]);
+			}
+
+			System.out.println(distinct + " distinct values stored using " + array.getBitsPerElement() + " bits per element");
+			int expectedBits = 1;
+			while (expectedBits < 16 && 1 << expectedBits < distinct) {
+				expectedBits = expectedBits == 8 ? 16 : expectedBits << 1;
+			}
+			assertTrue("Wrong number of bits used per element", array.getBitsPerElement() == expectedBits);
+		}
+	}
+
+	@Test
+	public void testUniform() {
+		AtomicPaletteShortArray array = new AtomicPaletteShortArray(LENGTH);
+
+		assertTrue("Compare and set to the same value failed", array.compareAndSet(7, (short) 0, (short) 0));
+		assertTrue("Compare and set with incorrect expect was successful", !array.compareAndSet(7, (short) 1, (short) 2));
+		assertTrue("Array was inflated by a write of the same value", array.getUniformValue() == 0);
+
+		array.set(7, (short) -5);
+		assertTrue("Array was not inflated by a write of a different value", array.getUniformValue() == -1);
+		assertTrue("Inflated array should use 1 bit per element", array.getBitsPerElement() == 1);
+		for (int i = 0; i < LENGTH; i++) {
+			assertTrue("Array data mismatch after inflation", array.get(i) == (i == 7 ? -5 : 0));
+		}
+
+		AtomicPaletteShortArray direct = new AtomicPaletteShortArray(LENGTH, 0);
+		direct.set(LENGTH - 1, (short) 3);
+		assertTrue("Array should switch from uniform to direct storage", direct.getBitsPerElement() == 16);
+		assertTrue("Array data mismatch after inflation", direct.get(LENGTH - 1) == 3 && direct.get(0) == 0);
+	}
+
+	@Test
+	public void testConcurrentResize() throws InterruptedException {
+		final AtomicPaletteShortArray array = new AtomicPaletteShortArray(LENGTH);
+
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					// Each thread owns every THREADS'th element
+					for (int pass = 1; pass < 64; pass++) {
+						for (int i = offset; i < LENGTH; i += THREADS) {
+							short expected = (short) (pass == 1 ? 0 : (pass - 1) * THREADS + offset);
+							short value = (short) (pass * THREADS + offset);
+							if (!array.compareAndSet(i, expected, value)) {
+								throw new IllegalStateException("Update lost at index " + i);
+							}
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (int i = 0; i < LENGTH; i++) {
+			int offset = i % THREADS;
+			assertTrue("Concurrent update lost during palette resize", array.get(i) == (short) (63 * THREADS + offset));
+		}
+	}
+
+	@Test
+	public void testReadSpeed() {
+		Random rand = new Random();
+
+		AtomicShortArray plain = new AtomicShortArray(LENGTH);
+		AtomicPaletteShortArray palette = new AtomicPaletteShortArray(LENGTH);
+
+		for (int i = 0; i < LENGTH; i++) {
+			short value = (short) rand.nextInt(5);
+			plain.set(i, value);
+			palette.set(i, value);
+		}
+
+		long plainTime = readTime(plain);
+		long paletteTime = readTime(palette);
+
+		System.out.println("Time for " + READS + " passes of " + LENGTH + " reads, plain array " + plainTime + "ns, palette array " + paletteTime + "ns");
+		System.out.println("Memory used for block ids, plain array " + (LENGTH * 2) + " bytes, palette array " + (LENGTH * palette.getBitsPerElement() / 8) + " bytes");
+	}
+
+	private long readTime(AtomicShortStorage array) {
+		int sum = 0;
+		for (int pass = 0; pass < READS; pass++) {
+			for (int i = 0; i < LENGTH; i++) {
+				sum += array.get(i);
+			}
+		}
+		long startTime = System.nanoTime();
+		for (int pass = 0; pass < READS; pass++) {
+			for (int i = 0; i < LENGTH; i++) {
+				sum += array.get(i);
+			}
+		}
+		long endTime = System.nanoTime();
+		assertTrue(sum >= 0);
+		return endTime - startTime;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AtomicWaitQueueTest {
+	private final static long PARK_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	@Test
+	public void testKeyedWake() throws InterruptedException {
+		AtomicWaitQueue queue = new AtomicWaitQueue();
+		Thread waiter = startWaiter(queue, 1);
+
+		queue.wake(2);
+		Thread.sleep(50);
+		assertTrue("Thread was woken by an update to a different key", waiter.isAlive());
+
+		queue.wake(1);
+		waiter.join(1000);
+		assertFalse("Thread was not woken by an update to its key", waiter.isAlive());
+	}
+
+	@Test
+	public void testAnyWake() throws InterruptedException {
+		AtomicWaitQueue queue = new AtomicWaitQueue();
+		Thread waiter = startWaiter(queue, AtomicWaitQueue.ANY);
+
+		queue.wake(2);
+		waiter.join(1000);
+		assertFalse("Thread waiting for any update was not woken", waiter.isAlive());
+
+		waiter = startWaiter(queue, 1);
+		queue.wake(AtomicWaitQueue.ANY);
+		waiter.join(1000);
+		assertFalse("Thread was not woken by an update to all keys", waiter.isAlive());
+	}
+
+	private Thread startWaiter(final AtomicWaitQueue queue, final int key) throws InterruptedException {
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				queue.park(key, PARK_NANOS);
+			}
+		};
+		waiter.start();
+		while (queue.getWaiting() == 0) {
+			Thread.sleep(1);
+		}
+		return waiter;
+	}
+}
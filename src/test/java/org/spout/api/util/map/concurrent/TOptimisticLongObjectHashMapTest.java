@@ -0,0 +1,161 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TOptimisticLongObjectHashMapTest {
+	private final static int LENGTH = 20000;
+	private final static int READERS = 6;
+	private final static int WRITERS = 2;
+
+	@Test
+	public void testSingleThreaded() {
+		TOptimisticLongObjectHashMap<String> map = new TOptimisticLongObjectHashMap<String>(4, 8);
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1L, "a"));
+		assertNull(map.put(-1L, "b"));
+		assertEquals("a", map.put(1L, "c"));
+		assertEquals("c", map.putIfAbsent(1L, "d"));
+		assertEquals("c", map.get(1L));
+		assertEquals("b", map.get(-1L));
+		assertNull(map.get(2L));
+		assertEquals(2, map.size());
+
+		assertNull(map.put(3L, null));
+		assertTrue(map.containsKey(3L));
+		assertNull(map.get(3L));
+		assertTrue(map.containsValue(null));
+		assertTrue(map.containsValue("b"));
+		assertFalse(map.containsValue("a"));
+		assertNull(map.remove(3L));
+		assertFalse(map.containsKey(3L));
+
+		assertFalse(map.remove(-1L, "c"));
+		assertTrue(map.remove(-1L, "b"));
+		assertFalse(map.containsKey(-1L));
+		assertEquals(1, map.size());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1L));
+	}
+
+	@Test
+	public void testResize() {
+		TOptimisticLongObjectHashMap<Long> map = new TOptimisticLongObjectHashMap<Long>(4, 8);
+		Random rand = new Random(1234);
+		long[] keys = new long[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			keys[i] = rand.nextLong();
+			map.put(keys[i], Long.valueOf(keys[i] * 31));
+		}
+		assertEquals(LENGTH, map.size());
+		// Churn through removes and inserts so removed slots are reused
+		for (int i = 0; i < LENGTH; i += 2) {
+			assertEquals(Long.valueOf(keys[i] * 31), map.remove(keys[i]));
+			map.put(keys[i] + 1, Long.valueOf((keys[i] + 1) * 31));
+		}
+		for (int i = 0; i < LENGTH; i++) {
+			long key = (i & 1) == 0 ? keys[i] + 1 : keys[i];
+			assertEquals(Long.valueOf(key * 31), map.get(key));
+		}
+		long[] mapKeys = map.keys();
+		assertEquals(LENGTH, mapKeys.length);
+		Arrays.sort(mapKeys);
+		long[] expected = new long[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			expected[i] = (i & 1) == 0 ? keys[i] + 1 : keys[i];
+		}
+		Arrays.sort(expected);
+		assertArrayEquals(expected, mapKeys);
+		assertEquals(LENGTH, map.valueCollection().size());
+	}
+
+	@Test
+	public void testConcurrentReads() throws InterruptedException {
+		final TOptimisticLongObjectHashMap<Long> map = new TOptimisticLongObjectHashMap<Long>(4, 8);
+		final AtomicInteger remaining = new AtomicInteger(WRITERS);
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread[] threads = new Thread[READERS + WRITERS];
+		for (int t = 0; t < WRITERS; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = offset; i < LENGTH; i += WRITERS) {
+						map.put(i, Long.valueOf(i * 31L));
+						if ((i & 3) == 0) {
+							map.remove(i);
+						}
+					}
+					remaining.decrementAndGet();
+				}
+			};
+		}
+		for (int t = WRITERS; t < threads.length; t++) {
+			final Random rand = new Random(t);
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					while (remaining.get() > 0) {
+						long key = rand.nextInt(LENGTH);
+						Long value = map.get(key);
+						if (value != null && value.longValue() != key * 31L) {
+							failed.set(true);
+						}
+					}
+				}
+			};
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse("Reader saw a value that was never stored for its key", failed.get());
+		assertEquals(LENGTH - LENGTH / 4, map.size());
+		for (int i = 0; i < LENGTH; i++) {
+			if ((i & 3) == 0) {
+				assertNull(map.get(i));
+			} else {
+				assertEquals(Long.valueOf(i * 31L), map.get(i));
+			}
+		}
+	}
+}
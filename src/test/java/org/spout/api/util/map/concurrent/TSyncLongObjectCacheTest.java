@@ -0,0 +1,151 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TSyncLongObjectCacheTest {
+	@Test
+	public void testClockEviction() {
+		EvictionRecorder recorder = new EvictionRecorder();
+		TSyncLongObjectCache<String> cache = new TSyncLongObjectCache<String>(3, recorder);
+		cache.put(1, "a");
+		cache.put(2, "b");
+		cache.put(3, "c");
+		assertEquals(3, cache.size());
+		assertTrue(recorder.keys.isEmpty());
+
+		// 1 was used, so 2 is the first entry without a referenced bit
+		assertEquals("a", cache.get(1));
+		cache.put(4, "d");
+		assertEquals(3, cache.size());
+		assertEquals(1, recorder.keys.size());
+		assertEquals(Long.valueOf(2), recorder.keys.get(0));
+		assertEquals("b", recorder.values.get(0));
+		assertNull(cache.get(2));
+		assertEquals("a", cache.get(1));
+		assertEquals(3, cache.getWeight());
+	}
+
+	@Test
+	public void testPinning() {
+		EvictionRecorder recorder = new EvictionRecorder();
+		TSyncLongObjectCache<String> cache = new TSyncLongObjectCache<String>(2, null, new TSyncLongObjectCache.PinPolicy<String>() {
+			@Override
+			public boolean isPinned(long key, String value) {
+				return value.startsWith("pinned");
+			}
+		}, recorder);
+		cache.put(1, "pinned a");
+		assertTrue(cache.put(2, "b") == null);
+		assertTrue(cache.pin(2));
+		assertFalse(cache.pin(5));
+		cache.put(3, "c");
+		// 1 and 2 are pinned, so only the new entry can be evicted
+		assertEquals(Long.valueOf(3), recorder.keys.get(0));
+		assertTrue(cache.containsKey(1));
+		assertTrue(cache.containsKey(2));
+
+		assertTrue(cache.unpin(2));
+		assertFalse(cache.unpin(2));
+		cache.put(4, "d");
+		assertEquals(Long.valueOf(2), recorder.keys.get(1));
+		assertTrue(cache.containsKey(1));
+		assertTrue(cache.containsKey(4));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testPutAfterPin() {
+		EvictionRecorder recorder = new EvictionRecorder();
+		TSyncLongObjectCache<String> cache = new TSyncLongObjectCache<String>(1, recorder);
+		cache.put(1, "a");
+		assertTrue(cache.pin(1));
+		assertEquals("a", cache.put(1, "b"));
+		// The pin was made on the old value, but still holds the key
+		cache.put(2, "c");
+		assertEquals(Long.valueOf(2), recorder.keys.get(0));
+		assertTrue(cache.containsKey(1));
+
+		assertTrue(cache.unpin(1));
+		assertFalse(cache.unpin(1));
+		cache.put(3, "d");
+		assertEquals(Long.valueOf(1), recorder.keys.get(1));
+		assertEquals("b", recorder.values.get(1));
+		assertTrue(cache.containsKey(3));
+	}
+
+	@Test
+	public void testWeightAndRemove() {
+		EvictionRecorder recorder = new EvictionRecorder();
+		TSyncLongObjectCache<String> cache = new TSyncLongObjectCache<String>(10, new TSyncLongObjectCache.Weigher<String>() {
+			@Override
+			public int getWeight(String value) {
+				return value.length();
+			}
+		}, null, recorder);
+		cache.put(1, "aaaa");
+		cache.put(2, "bbbb");
+		assertEquals(8, cache.getWeight());
+		assertEquals("bbbb", cache.put(2, "bb"));
+		assertEquals(6, cache.getWeight());
+		assertEquals("aaaa", cache.putIfAbsent(1, "a"));
+		assertEquals("aaaa", cache.remove(1));
+		assertEquals(2, cache.getWeight());
+		for (int i = 0; i < 100; i++) {
+			cache.put(10 + i, "c");
+			cache.remove(10 + i);
+		}
+		assertTrue(recorder.keys.isEmpty());
+		cache.put(3, "ccccccccc");
+		assertEquals(1, recorder.keys.size());
+		assertTrue(cache.getWeight() <= cache.getCapacity());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+		assertEquals(1, recorder.keys.size());
+	}
+
+	private static class EvictionRecorder implements TSyncLongObjectCache.EvictionListener<String> {
+		private final List<Long> keys = new ArrayList<Long>();
+		private final List<String> values = new ArrayList<String>();
+
+		@Override
+		public void evicted(long key, String value) {
+			keys.add(key);
+			values.add(value);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * This file is part of SpoutAPI (http://www.spout.org/).
+ *
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.util.set.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class AtomicInt21TripleBitSetTest {
+	private final static int THREADS = 4;
+
+	@Test
+	public void testAddRemove() {
+		AtomicInt21TripleBitSet set = new AtomicInt21TripleBitSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(0, 0, 0));
+		assertTrue(set.add(-1, 5, -17));
+		assertTrue(set.add(100000, -3, 15));
+		assertFalse(set.add(-1, 5, -17));
+		assertEquals(3, set.size());
+		assertTrue(set.contains(-1, 5, -17));
+		assertFalse(set.contains(-1, 5, -16));
+		assertFalse(set.contains(1000, 1000, 1000));
+
+		Set<Long> expected = new HashSet<Long>();
+		expected.add(AtomicInt21TripleBitSet.key(0, 0, 0));
+		expected.add(AtomicInt21TripleBitSet.key(-1, 5, -17));
+		expected.add(AtomicInt21TripleBitSet.key(100000, -3, 15));
+		assertEquals(expected, toSet(set.toArray()));
+
+		long key = AtomicInt21TripleBitSet.key(-1, 5, -17);
+		assertEquals(-1, AtomicInt21TripleBitSet.keyX(key));
+		assertEquals(5, AtomicInt21TripleBitSet.keyY(key));
+		assertEquals(-17, AtomicInt21TripleBitSet.keyZ(key));
+
+		assertTrue(set.remove(-1, 5, -17));
+		assertFalse(set.remove(-1, 5, -17));
+		assertFalse(set.remove(1000, 1000, 1000));
+		assertEquals(2, set.size());
+
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertEquals(0, set.toArray().length);
+	}
+
+	@Test
+	public void testBulkOperations() {
+		AtomicInt21TripleBitSet a = new AtomicInt21TripleBitSet();
+		AtomicInt21TripleBitSet b = new AtomicInt21TripleBitSet();
+		for (int x = -8; x < 8; x++) {
+			for (int z = -8; z < 8; z++) {
+				a.add(x, 0, z);
+				if (x >= 0) {
+					b.add(x, 0, z);
+					b.add(x + 100, 0, z);
+				}
+			}
+		}
+		AtomicInt21TripleBitSet union = new AtomicInt21TripleBitSet();
+		assertTrue(union.addAll(a));
+		assertTrue(union.addAll(b));
+		assertFalse(union.addAll(a));
+		assertEquals(256 + 128, union.size());
+		assertEquals(256 + 128, union.toArray().length);
+
+		assertTrue(union.removeAll(b));
+		assertEquals(128, union.size());
+		assertTrue(union.contains(-1, 0, 0));
+		assertFalse(union.contains(0, 0, 0));
+
+		assertTrue(a.retainAll(b));
+		assertEquals(128, a.size());
+		assertTrue(a.contains(0, 0, 0));
+		assertFalse(a.contains(-1, 0, 0));
+		assertFalse(a.retainAll(b));
+	}
+
+	@Test
+	public void testConcurrentAdds() throws InterruptedException {
+		final AtomicInt21TripleBitSet set = new AtomicInt21TripleBitSet();
+		final long[][] added = new long[THREADS][];
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Random rand = new Random(thread);
+					long[] keys = new long[5000];
+					for (int i = 0; i < keys.length; i++) {
+						int x = rand.nextInt(64) - 32;
+						int y = rand.nextInt(16);
+						int z = rand.nextInt(64) - 32;
+						set.add(x, y, z);
+						keys[i] = AtomicInt21TripleBitSet.key(x, y, z);
+					}
+					added[thread] = keys;
+				}
+			};
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Set<Long> expected = new HashSet<Long>();
+		for (long[] keys : added) {
+			expected.addAll(toSet(keys));
+		}
+		long[] keys = set.toArray();
+		assertEquals(expected.size(), set.size());
+		assertEquals(expected.size(), keys.length);
+		assertEquals(expected, toSet(keys));
+	}
+
+	private static Set<Long> toSet(long[] keys) {
+		Set<Long> set = new HashSet<Long>();
+		for (long key : keys) {
+			set.add(key);
+		}
+		return set;
+	}
+}